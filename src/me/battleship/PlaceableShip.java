@@ -1,5 +1,9 @@
 package me.battleship;
 
+import me.battleship.core.Orientation;
+import me.battleship.core.Ship;
+import me.battleship.core.ShipClass;
+
 /**
  * A ship which still has to be placed
  * 
@@ -32,17 +36,23 @@ public class PlaceableShip extends Ship
 	private boolean onPlayground;
 
 	/**
-	 * Initializes a new {@link PlaceableShip} using an existing ship
+	 * Initializes a new {@link PlaceableShip}
 	 * 
-	 * @param ship
-	 *           the ship to use as base
+	 * @param shipClass
+	 *           the class of the ship
+	 * @param x
+	 *           the x position or <code>-1</code> if the ship is not placed
+	 * @param y
+	 *           the y position or <code>-1</code> if the ship is not placed
+	 * @param orientation
+	 *           the orientation
 	 */
-	public PlaceableShip(Ship ship)
+	public PlaceableShip(ShipClass shipClass, int x, int y, Orientation orientation)
 	{
-		super(ship);
-		onPlayground = ship.getX() >= 0;
-		lastX = ship.getX();
-		lastY = ship.getY();
+		super(shipClass, x, y, orientation);
+		onPlayground = x >= 0;
+		lastX = x;
+		lastY = y;
 	}
 
 	/**
@@ -1,21 +0,0 @@
-package me.battleship;
-
-/**
- * Storing all types of ships
- * 
- * @author manuel
- */
-public enum ShipType
-{
-	/** A ship with size 5 */
-	AIRCRAFT_CARRIER,
-
-	/** A ship with size 4 */
-	BATTLESHIP,
-
-	/** A ship with size 3 */
-	SUBMARINE,
-
-	/** A ship with size 2 */
-	DESTROYER
-}
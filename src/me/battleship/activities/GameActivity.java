@@ -8,6 +8,8 @@ import me.battleship.services.interfaces.GameServiceConnectedListener;
 import android.app.Activity;
 import android.content.Intent;
 import android.os.Bundle;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.view.Window;
 import android.widget.FrameLayout;
 
@@ -19,6 +21,12 @@ import android.widget.FrameLayout;
 public class GameActivity extends Activity implements GameServiceConnectedListener
 {
 
+	/** The id of the menu item for undoing a movement of a ship */
+	private static final int MENU_UNDO = 1;
+
+	/** The id of the menu item for redoing a movement of a ship */
+	private static final int MENU_REDO = 2;
+
 	/** The view for drawing the game **/
 	private GameUI ui;
 
@@ -55,6 +63,29 @@ public class GameActivity extends Activity implements GameServiceConnectedListen
 		ui.onDestroy();
 	}
 
+	@Override
+	public boolean onCreateOptionsMenu(Menu menu)
+	{
+		menu.add(Menu.NONE, MENU_UNDO, Menu.NONE, R.string.undo);
+		menu.add(Menu.NONE, MENU_REDO, Menu.NONE, R.string.redo);
+		return true;
+	}
+
+	@Override
+	public boolean onOptionsItemSelected(MenuItem item)
+	{
+		switch (item.getItemId())
+		{
+			case MENU_UNDO:
+				ui.undoPlacement();
+				return true;
+			case MENU_REDO:
+				ui.redoPlacement();
+				return true;
+		}
+		return super.onOptionsItemSelected(item);
+	}
+
 	@Override
 	public void onGameServiceConnected()
 	{
@@ -1,6 +1,7 @@
 package me.battleship.activities;
 
 import me.battleship.R;
+import me.battleship.core.Ruleset;
 import me.battleship.services.GameService;
 import me.battleship.services.XMPPConnectionService;
 import me.battleship.services.interfaces.MatchmakerConnection;
@@ -80,7 +81,8 @@ public class MatchSelectionActivity extends Activity implements OnClickListener,
 			MatchmakerConnection matchmaker = connection.getMatchmakerConnection(this);
 			try
 			{
-				matchmaker.queue();
+				// TODO Let the player choose the ruleset
+				matchmaker.queue(Ruleset.CLASSIC);
 			}
 			catch (XMPPException e)
 			{
@@ -96,11 +98,12 @@ public class MatchSelectionActivity extends Activity implements OnClickListener,
 	}
 	
 	@Override
-	public void onOpponentAssigned(String opponentJID, String matchId)
+	public void onOpponentAssigned(String opponentJID, String matchId, Ruleset ruleset)
 	{
 		Intent intent = new Intent(this, GameService.class);
 		intent.putExtra("opponentJID", opponentJID);
 		intent.putExtra("matchId", matchId);
+		intent.putExtra("ruleset", ruleset.getName());
 		startService(intent);
 
 		intent = new Intent(this, GameActivity.class);
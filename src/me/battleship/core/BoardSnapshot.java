@@ -0,0 +1,488 @@
+package me.battleship.core;
+
+import java.util.List;
+
+import me.battleship.core.geometry.CellRects;
+
+/**
+ * An immutable view of one playground and the fleet placed on it at one point
+ * of a game. Changes create a new snapshot which shares everything that was
+ * not changed with the original snapshot: moving a ship copies the positions
+ * of the fleet but shares the hits, a shot copies one chunk of the hits (see
+ * {@link ImmutableCellSet}) and the damage of the fleet but shares the
+ * positions.
+ * 
+ * @author Manuel Vögele
+ */
+public final class BoardSnapshot
+{
+	/** The size of the playground */
+	private final int size;
+
+	/** The classes of the ships, shared by all versions */
+	private final ShipClass[] shipClasses;
+
+	/**
+	 * The positions of the ships packed as described in {@link CellRects}.
+	 * Ships which are not placed have a negative position.
+	 */
+	private final long[] shipRects;
+
+	/** The orientations of the ships */
+	private final Orientation[] orientations;
+
+	/**
+	 * The destroyed fields of the ships. Bit <i>i</i> is set if the
+	 * <i>i</i>-th field of the ship (counted from its position) was destroyed.
+	 */
+	private final int[] damage;
+
+	/** The fields which were hit */
+	private final ImmutableCellSet hits;
+
+	/** The fields on which ships were placed when the placement was confirmed */
+	private final ImmutableCellSet shipFields;
+
+	/** The Zobrist hash of this snapshot, see {@link #getHash()} */
+	private final long hash;
+
+	/**
+	 * Initializes a new {@link BoardSnapshot}. The arrays are not copied and
+	 * must not be changed afterwards.
+	 * 
+	 * @param size
+	 *           the size of the playground
+	 * @param shipClasses
+	 *           the classes of the ships
+	 * @param shipRects
+	 *           the positions of the ships
+	 * @param orientations
+	 *           the orientations of the ships
+	 * @param damage
+	 *           the destroyed fields of the ships
+	 * @param hits
+	 *           the fields which were hit
+	 * @param shipFields
+	 *           the fields on which ships were placed
+	 */
+	BoardSnapshot(int size, ShipClass[] shipClasses, long[] shipRects, Orientation[] orientations, int[] damage, ImmutableCellSet hits, ImmutableCellSet shipFields)
+	{
+		this(size, shipClasses, shipRects, orientations, damage, hits, shipFields, computeHash(size, shipClasses, shipRects, orientations, hits, shipFields));
+	}
+
+	/**
+	 * Initializes a new {@link BoardSnapshot} with an already known hash. The
+	 * arrays are not copied and must not be changed afterwards.
+	 * 
+	 * @param size
+	 *           the size of the playground
+	 * @param shipClasses
+	 *           the classes of the ships
+	 * @param shipRects
+	 *           the positions of the ships
+	 * @param orientations
+	 *           the orientations of the ships
+	 * @param damage
+	 *           the destroyed fields of the ships
+	 * @param hits
+	 *           the fields which were hit
+	 * @param shipFields
+	 *           the fields on which ships were placed
+	 * @param hash
+	 *           the Zobrist hash of the snapshot
+	 */
+	private BoardSnapshot(int size, ShipClass[] shipClasses, long[] shipRects, Orientation[] orientations, int[] damage, ImmutableCellSet hits, ImmutableCellSet shipFields, long hash)
+	{
+		this.size = size;
+		this.shipClasses = shipClasses;
+		this.shipRects = shipRects;
+		this.orientations = orientations;
+		this.damage = damage;
+		this.hits = hits;
+		this.shipFields = shipFields;
+		this.hash = hash;
+	}
+
+	/**
+	 * Calculates the Zobrist hash of a snapshot from scratch
+	 * 
+	 * @param size
+	 *           the size of the playground
+	 * @param shipClasses
+	 *           the classes of the ships
+	 * @param shipRects
+	 *           the positions of the ships
+	 * @param orientations
+	 *           the orientations of the ships
+	 * @param hits
+	 *           the fields which were hit
+	 * @param shipFields
+	 *           the fields on which ships were placed
+	 * @return the hash
+	 */
+	private static long computeHash(int size, ShipClass[] shipClasses, long[] shipRects, Orientation[] orientations, ImmutableCellSet hits, ImmutableCellSet shipFields)
+	{
+		long hash = Zobrist.hashHits(hits) ^ Zobrist.hashShipFields(shipFields);
+		for (int i = 0;i < shipClasses.length;i++)
+		{
+			hash ^= getShipKey(size, shipClasses[i], shipRects[i], orientations[i]);
+		}
+		return hash;
+	}
+
+	/**
+	 * Returns the Zobrist key of a ship (see {@link Zobrist#getShipKey(int, long)})
+	 * 
+	 * @param size
+	 *           the size of the playground
+	 * @param shipClass
+	 *           the class of the ship
+	 * @param rect
+	 *           the position of the ship
+	 * @param orientation
+	 *           the orientation of the ship
+	 * @return the key or <code>0</code> if the ship is not placed on the
+	 *         playground
+	 */
+	private static long getShipKey(int size, ShipClass shipClass, long rect, Orientation orientation)
+	{
+		if (orientation == null || !CellRects.isWithin(rect, size))
+			return 0;
+		return Zobrist.getShipKey(shipClass.getLength(), rect);
+	}
+
+	/**
+	 * Creates a snapshot of an empty playground with the current positions of
+	 * the specified ships
+	 * 
+	 * @param size
+	 *           the size of the playground
+	 * @param ships
+	 *           the ships
+	 * @return the snapshot
+	 */
+	public static BoardSnapshot of(int size, List<Ship> ships)
+	{
+		ShipClass[] shipClasses = new ShipClass[ships.size()];
+		long[] shipRects = new long[shipClasses.length];
+		Orientation[] orientations = new Orientation[shipClasses.length];
+		for (int i = 0;i < shipClasses.length;i++)
+		{
+			Ship ship = ships.get(i);
+			shipClasses[i] = ship.getShipClass();
+			shipRects[i] = ship.getRect();
+			orientations[i] = ship.getOrientation();
+		}
+		ImmutableCellSet empty = ImmutableCellSet.empty(size * size);
+		return new BoardSnapshot(size, shipClasses, shipRects, orientations, new int[shipClasses.length], empty, empty);
+	}
+
+	/**
+	 * Returns a snapshot in which the positions of all ships are taken from the
+	 * specified ships
+	 * 
+	 * @param ships
+	 *           the ships in the same order as in this snapshot
+	 * @return the new snapshot
+	 */
+	BoardSnapshot withShips(List<Ship> ships)
+	{
+		long[] newRects = new long[shipRects.length];
+		Orientation[] newOrientations = new Orientation[orientations.length];
+		long newHash = hash;
+		for (int i = 0;i < newRects.length;i++)
+		{
+			Ship ship = ships.get(i);
+			newRects[i] = ship.getRect();
+			newOrientations[i] = ship.getOrientation();
+			if (newRects[i] != shipRects[i] || newOrientations[i] != orientations[i])
+				newHash ^= getShipKey(size, shipClasses[i], shipRects[i], orientations[i]) ^ getShipKey(size, shipClasses[i], newRects[i], newOrientations[i]);
+		}
+		return new BoardSnapshot(size, shipClasses, newRects, newOrientations, damage, hits, shipFields, newHash);
+	}
+
+	/**
+	 * Returns a snapshot in which the position of the specified ship is taken
+	 * from the ship
+	 * 
+	 * @param index
+	 *           the index of the ship
+	 * @param ship
+	 *           the ship
+	 * @return the new snapshot
+	 */
+	BoardSnapshot withShip(int index, Ship ship)
+	{
+		long[] newRects = shipRects.clone();
+		Orientation[] newOrientations = orientations.clone();
+		newRects[index] = ship.getRect();
+		newOrientations[index] = ship.getOrientation();
+		long newHash = hash ^ getShipKey(size, shipClasses[index], shipRects[index], orientations[index]) ^ getShipKey(size, shipClasses[index], newRects[index], newOrientations[index]);
+		return new BoardSnapshot(size, shipClasses, newRects, newOrientations, damage, hits, shipFields, newHash);
+	}
+
+	/**
+	 * Returns a snapshot with the specified fields as the fields on which ships
+	 * are placed
+	 * 
+	 * @param fields
+	 *           the fields
+	 * @return the new snapshot
+	 */
+	BoardSnapshot withShipFields(ImmutableCellSet fields)
+	{
+		long newHash = hash ^ Zobrist.hashShipFields(shipFields) ^ Zobrist.hashShipFields(fields);
+		return new BoardSnapshot(size, shipClasses, shipRects, orientations, damage, hits, fields, newHash);
+	}
+
+	/**
+	 * Returns a snapshot in which the specified field is hit
+	 * 
+	 * @param index
+	 *           the index of the field
+	 * @param ship
+	 *           the index of the ship on the field or <code>-1</code>
+	 * @param destroyedMask
+	 *           the destroyed fields of the ship after the shot
+	 * @return the new snapshot
+	 */
+	BoardSnapshot withShot(int index, int ship, int destroyedMask)
+	{
+		int[] newDamage = damage;
+		if (ship >= 0 && damage[ship] != destroyedMask)
+		{
+			newDamage = damage.clone();
+			newDamage[ship] = destroyedMask;
+		}
+		long newHash = hits.contains(index) ? hash : hash ^ Zobrist.getHitKey(index);
+		return new BoardSnapshot(size, shipClasses, shipRects, orientations, newDamage, hits.with(index), shipFields, newHash);
+	}
+
+	/**
+	 * Returns a snapshot in which the specified field of the opponents
+	 * playground is hit
+	 * 
+	 * @param index
+	 *           the index of the field
+	 * @param shipHit
+	 *           <code>true</code> if the shot hit a ship
+	 * @return the new snapshot
+	 */
+	BoardSnapshot withShotResult(int index, boolean shipHit)
+	{
+		long newHash = hits.contains(index) ? hash : hash ^ Zobrist.getHitKey(index);
+		if (shipHit && !shipFields.contains(index))
+			newHash ^= Zobrist.getShipFieldKey(index);
+		return new BoardSnapshot(size, shipClasses, shipRects, orientations, damage, hits.with(index), shipHit ? shipFields.with(index) : shipFields, newHash);
+	}
+
+	/**
+	 * Returns a snapshot with an additional sunk ship
+	 * 
+	 * @param shipClass
+	 *           the class of the ship
+	 * @param rect
+	 *           the position of the ship packed as described in
+	 *           {@link CellRects}
+	 * @param orientation
+	 *           the orientation of the ship
+	 * @return the new snapshot
+	 */
+	BoardSnapshot withSunkShip(ShipClass shipClass, long rect, Orientation orientation)
+	{
+		int count = shipClasses.length;
+		ShipClass[] newClasses = new ShipClass[count + 1];
+		System.arraycopy(shipClasses, 0, newClasses, 0, count);
+		newClasses[count] = shipClass;
+		long[] newRects = new long[count + 1];
+		System.arraycopy(shipRects, 0, newRects, 0, count);
+		newRects[count] = rect;
+		Orientation[] newOrientations = new Orientation[count + 1];
+		System.arraycopy(orientations, 0, newOrientations, 0, count);
+		newOrientations[count] = orientation;
+		int[] newDamage = new int[count + 1];
+		System.arraycopy(damage, 0, newDamage, 0, count);
+		newDamage[count] = (int) ((1L << shipClass.getLength()) - 1);
+		long newHash = hash ^ getShipKey(size, shipClass, rect, orientation);
+		return new BoardSnapshot(size, newClasses, newRects, newOrientations, newDamage, hits, shipFields, newHash);
+	}
+
+	/**
+	 * Returns the Zobrist hash of this snapshot. It covers the hit fields, the
+	 * fields on which ships were placed and the positions of the placed ships
+	 * (see {@link Zobrist}). It is updated incrementally by every change, so
+	 * comparing the hashes of two snapshots is a cheap test for a different
+	 * state. The damage of the ships is not hashed as it follows from the hits.
+	 * 
+	 * @return the hash
+	 */
+	public long getHash()
+	{
+		return hash;
+	}
+
+	/**
+	 * Returns the size of the playground
+	 * 
+	 * @return the size
+	 */
+	public int getSize()
+	{
+		return size;
+	}
+
+	/**
+	 * Returns the number of ships
+	 * 
+	 * @return the number of ships
+	 */
+	public int getShipCount()
+	{
+		return shipClasses.length;
+	}
+
+	/**
+	 * Returns the class of the ship with the specified index
+	 * 
+	 * @param index
+	 *           the index of the ship
+	 * @return the class of the ship
+	 */
+	public ShipClass getShipClass(int index)
+	{
+		return shipClasses[index];
+	}
+
+	/**
+	 * Returns the position of the ship with the specified index
+	 * 
+	 * @param index
+	 *           the index of the ship
+	 * @return the position packed as described in {@link CellRects}
+	 */
+	public long getShipRect(int index)
+	{
+		return shipRects[index];
+	}
+
+	/**
+	 * Returns the x position of the ship with the specified index
+	 * 
+	 * @param index
+	 *           the index of the ship
+	 * @return the x position
+	 */
+	public int getShipX(int index)
+	{
+		return CellRects.getLeft(shipRects[index]);
+	}
+
+	/**
+	 * Returns the y position of the ship with the specified index
+	 * 
+	 * @param index
+	 *           the index of the ship
+	 * @return the y position
+	 */
+	public int getShipY(int index)
+	{
+		return CellRects.getTop(shipRects[index]);
+	}
+
+	/**
+	 * Returns the orientation of the ship with the specified index
+	 * 
+	 * @param index
+	 *           the index of the ship
+	 * @return the orientation
+	 */
+	public Orientation getShipOrientation(int index)
+	{
+		return orientations[index];
+	}
+
+	/**
+	 * Returns whether the ship with the specified index lies completely on the
+	 * playground
+	 * 
+	 * @param index
+	 *           the index of the ship
+	 * @return <code>true</code> if the ship is placed
+	 */
+	public boolean isShipPlaced(int index)
+	{
+		return orientations[index] != null && CellRects.isWithin(shipRects[index], size);
+	}
+
+	/**
+	 * Returns the destroyed fields of the ship with the specified index
+	 * 
+	 * @param index
+	 *           the index of the ship
+	 * @return a bit mask in which bit <i>i</i> is set if the <i>i</i>-th field
+	 *         of the ship was destroyed
+	 */
+	public int getShipDamage(int index)
+	{
+		return damage[index];
+	}
+
+	/**
+	 * Returns whether all fields of the ship with the specified index are
+	 * destroyed
+	 * 
+	 * @param index
+	 *           the index of the ship
+	 * @return <code>true</code> if the ship is sunk
+	 */
+	public boolean isShipSunk(int index)
+	{
+		return Integer.bitCount(damage[index]) == shipClasses[index].getLength();
+	}
+
+	/**
+	 * Returns the fields which were hit
+	 * 
+	 * @return the fields
+	 */
+	public ImmutableCellSet getHits()
+	{
+		return hits;
+	}
+
+	/**
+	 * Returns the fields on which ships were placed when the placement was
+	 * confirmed
+	 * 
+	 * @return the fields
+	 */
+	public ImmutableCellSet getShipFields()
+	{
+		return shipFields;
+	}
+
+	/**
+	 * Writes the fields on which a ship was hit to the specified set
+	 * 
+	 * @param result
+	 *           the set to write the fields to
+	 * @return the passed set
+	 */
+	public CellSet getShipHits(CellSet result)
+	{
+		return hits.copyIntersectionTo(shipFields, result);
+	}
+
+	/**
+	 * Writes the fields which were hit without hitting a ship to the specified
+	 * set
+	 * 
+	 * @param result
+	 *           the set to write the fields to
+	 * @return the passed set
+	 */
+	public CellSet getMisses(CellSet result)
+	{
+		return hits.copyDifferenceTo(shipFields, result);
+	}
+}
@@ -0,0 +1,212 @@
+package me.battleship.core;
+
+/**
+ * Maps fields of a {@link Playground} to small values like the index of the
+ * ship placed on the field or the number of ships covering it. Fields which
+ * were never set map to <code>0</code>.
+ * <p>
+ * Like {@link CellSet} the map is stored dense in a <code>byte[]</code> for
+ * small playgrounds and sparse in an open addressing hash table for
+ * playgrounds with more than {@link CellSet#SPARSE_THRESHOLD} fields.
+ * 
+ * @author Manuel Vögele
+ */
+public class CellByteMap
+{
+	/** The minimum length of the hash table of sparse maps */
+	private static final int MIN_TABLE_LENGTH = 16;
+
+	/** Marks a slot of the hash table which was never used */
+	private static final int FREE = -1;
+
+	/** Marks a slot of the hash table whose field was removed */
+	private static final int REMOVED = -2;
+
+	/** The values of a dense map or <code>null</code> if the map is sparse */
+	private final byte[] values;
+
+	/** The fields of the hash table of a sparse map */
+	private int[] keys;
+
+	/** The values of the hash table of a sparse map */
+	private byte[] tableValues;
+
+	/** The number of fields with a value other than <code>0</code> in a sparse map */
+	private int count;
+
+	/** The number of slots of the hash table which are not {@link #FREE} */
+	private int usedSlots;
+
+	/**
+	 * Initializes a new {@link CellByteMap} with all values <code>0</code>
+	 * 
+	 * @param capacity
+	 *           the number of fields of the playground
+	 */
+	public CellByteMap(int capacity)
+	{
+		if (capacity > CellSet.SPARSE_THRESHOLD)
+		{
+			values = null;
+			keys = newKeys(MIN_TABLE_LENGTH);
+			tableValues = new byte[MIN_TABLE_LENGTH];
+		}
+		else
+		{
+			values = new byte[capacity];
+		}
+	}
+
+	/**
+	 * Returns the value of the field with the specified index
+	 * 
+	 * @param index
+	 *           the index of the field
+	 * @return the value
+	 */
+	public int get(int index)
+	{
+		if (values != null)
+			return values[index];
+		int slot = findSlot(index);
+		return slot < 0 ? 0 : tableValues[slot];
+	}
+
+	/**
+	 * Sets the value of the field with the specified index
+	 * 
+	 * @param index
+	 *           the index of the field
+	 * @param value
+	 *           the value, must fit into a <code>byte</code>
+	 */
+	public void put(int index, int value)
+	{
+		if (values != null)
+		{
+			values[index] = (byte) value;
+			return;
+		}
+		int slot = findSlot(index);
+		if (slot >= 0)
+		{
+			if (value == 0)
+			{
+				keys[slot] = REMOVED;
+				count--;
+			}
+			else
+			{
+				tableValues[slot] = (byte) value;
+			}
+			return;
+		}
+		if (value == 0)
+			return;
+		if ((usedSlots + 1) * 2 > keys.length)
+			rehash(count + 1);
+		int mask = keys.length - 1;
+		slot = CellSet.hash(index) & mask;
+		while (keys[slot] >= 0)
+		{
+			slot = (slot + 1) & mask;
+		}
+		if (keys[slot] == FREE)
+			usedSlots++;
+		keys[slot] = index;
+		tableValues[slot] = (byte) value;
+		count++;
+	}
+
+	/**
+	 * Sets the values of all fields to <code>0</code>
+	 */
+	public void clear()
+	{
+		if (values != null)
+		{
+			for (int i = 0;i < values.length;i++)
+			{
+				values[i] = 0;
+			}
+			return;
+		}
+		for (int i = 0;i < keys.length;i++)
+		{
+			keys[i] = FREE;
+		}
+		count = 0;
+		usedSlots = 0;
+	}
+
+	/**
+	 * Returns the slot of the hash table containing the specified field
+	 * 
+	 * @param index
+	 *           the index of the field
+	 * @return the slot or <code>-1</code> if the field is not in the table
+	 */
+	private int findSlot(int index)
+	{
+		int mask = keys.length - 1;
+		int slot = CellSet.hash(index) & mask;
+		while (keys[slot] != FREE)
+		{
+			if (keys[slot] == index)
+				return slot;
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	/**
+	 * Rebuilds the hash table with enough space for the specified number of
+	 * fields. Removed slots are dropped.
+	 * 
+	 * @param minCount
+	 *           the number of fields the table must be able to hold
+	 */
+	private void rehash(int minCount)
+	{
+		int length = MIN_TABLE_LENGTH;
+		while (length < minCount * 4)
+		{
+			length <<= 1;
+		}
+		int[] oldKeys = keys;
+		byte[] oldValues = tableValues;
+		keys = newKeys(length);
+		tableValues = new byte[length];
+		usedSlots = count;
+		int mask = length - 1;
+		for (int i = 0;i < oldKeys.length;i++)
+		{
+			if (oldKeys[i] < 0)
+				continue;
+			int slot = CellSet.hash(oldKeys[i]) & mask;
+			while (keys[slot] != FREE)
+			{
+				slot = (slot + 1) & mask;
+			}
+			keys[slot] = oldKeys[i];
+			tableValues[slot] = oldValues[i];
+		}
+	}
+
+	/**
+	 * Creates a new key table with all slots free
+	 * 
+	 * @param length
+	 *           the length of the table
+	 * @return the table
+	 */
+	private static int[] newKeys(int length)
+	{
+		int[] keys = new int[length];
+		for (int i = 0;i < length;i++)
+		{
+			keys[i] = FREE;
+		}
+		return keys;
+	}
+}
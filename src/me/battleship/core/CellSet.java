@@ -0,0 +1,686 @@
+package me.battleship.core;
+
+/**
+ * A set of fields of a {@link Playground}. Every field is identified by its
+ * index (see {@link Playground#getIndex(int, int)}). Unlike a
+ * <code>Set&lt;Point&gt;</code> no object is allocated per field.
+ * <p>
+ * Sets for small playgrounds are stored as a bit set and the set operations
+ * work on whole words. Sets with a capacity above {@link #SPARSE_THRESHOLD}
+ * are stored sparse in an open addressing hash table, so their memory usage
+ * and the cost of the operations depend on the number of fields in the set
+ * instead of the size of the playground. Sparse sets are iterated in no
+ * particular order.
+ * 
+ * @author Manuel Vögele
+ */
+public class CellSet
+{
+	/** The capacity above which sets are stored sparse */
+	public static final int SPARSE_THRESHOLD = 4096;
+
+	/** The minimum length of the hash table of sparse sets */
+	private static final int MIN_TABLE_LENGTH = 16;
+
+	/** Marks a slot of the hash table which was never used */
+	private static final int FREE = -1;
+
+	/** Marks a slot of the hash table whose field was removed */
+	private static final int REMOVED = -2;
+
+	/** The number of fields this set can hold */
+	private final int capacity;
+
+	/** The words storing the bits of a dense set or <code>null</code> if the set is sparse */
+	private final long[] words;
+
+	/** The hash table of a sparse set or <code>null</code> if the set is dense */
+	private int[] table;
+
+	/** The number of fields in a sparse set */
+	private int count;
+
+	/** The number of slots of the hash table which are not {@link #FREE} */
+	private int usedSlots;
+
+	/**
+	 * Initializes a new empty {@link CellSet} for a playground with the
+	 * default size
+	 */
+	public CellSet()
+	{
+		this(Playground.FIELD_COUNT);
+	}
+
+	/**
+	 * Initializes a new empty {@link CellSet}
+	 * 
+	 * @param capacity
+	 *           the number of fields the set can hold
+	 */
+	public CellSet(int capacity)
+	{
+		if (capacity < 0)
+			throw new IllegalArgumentException("capacity may not be negative");
+		this.capacity = capacity;
+		if (capacity > SPARSE_THRESHOLD)
+		{
+			words = null;
+			table = newTable(MIN_TABLE_LENGTH);
+		}
+		else
+		{
+			words = new long[(capacity + 63) >>> 6];
+		}
+	}
+
+	/**
+	 * Initializes a new {@link CellSet} containing the same fields as the
+	 * specified set
+	 * 
+	 * @param set
+	 *           the set to copy
+	 */
+	public CellSet(CellSet set)
+	{
+		this(set.capacity);
+		copyFrom(set);
+	}
+
+	/**
+	 * Returns the number of fields this set can hold
+	 * 
+	 * @return the capacity
+	 */
+	public int getCapacity()
+	{
+		return capacity;
+	}
+
+	/**
+	 * Returns whether this set is stored sparse
+	 * 
+	 * @return <code>true</code> if the set is stored in a hash table
+	 */
+	public boolean isSparse()
+	{
+		return words == null;
+	}
+
+	/**
+	 * Adds the field with the specified index
+	 * 
+	 * @param index
+	 *           the index of the field
+	 */
+	public void add(int index)
+	{
+		if (words != null)
+		{
+			words[index >>> 6] |= 1L << index;
+			return;
+		}
+		if (findSlot(index) >= 0)
+			return;
+		if ((usedSlots + 1) * 2 > table.length)
+			rehash(count + 1);
+		int mask = table.length - 1;
+		int slot = hash(index) & mask;
+		while (table[slot] >= 0)
+		{
+			slot = (slot + 1) & mask;
+		}
+		if (table[slot] == FREE)
+			usedSlots++;
+		table[slot] = index;
+		count++;
+	}
+
+	/**
+	 * Removes the field with the specified index
+	 * 
+	 * @param index
+	 *           the index of the field
+	 */
+	public void remove(int index)
+	{
+		if (words != null)
+		{
+			words[index >>> 6] &= ~(1L << index);
+			return;
+		}
+		int slot = findSlot(index);
+		if (slot >= 0)
+		{
+			table[slot] = REMOVED;
+			count--;
+		}
+	}
+
+	/**
+	 * Adds or removes the field with the specified index
+	 * 
+	 * @param index
+	 *           the index of the field
+	 * @param value
+	 *           <code>true</code> to add the field, <code>false</code> to remove
+	 *           it
+	 */
+	public void set(int index, boolean value)
+	{
+		if (value)
+			add(index);
+		else
+			remove(index);
+	}
+
+	/**
+	 * Returns whether the field with the specified index is in this set
+	 * 
+	 * @param index
+	 *           the index of the field
+	 * @return <code>true</code> if the field is in this set
+	 */
+	public boolean contains(int index)
+	{
+		if (words != null)
+			return (words[index >>> 6] & (1L << index)) != 0;
+		return findSlot(index) >= 0;
+	}
+
+	/**
+	 * Removes all fields from this set
+	 */
+	public void clear()
+	{
+		if (words != null)
+		{
+			for (int i = 0;i < words.length;i++)
+			{
+				words[i] = 0;
+			}
+			return;
+		}
+		for (int i = 0;i < table.length;i++)
+		{
+			table[i] = FREE;
+		}
+		count = 0;
+		usedSlots = 0;
+	}
+
+	/**
+	 * Returns whether this set is empty
+	 * 
+	 * @return <code>true</code> if the set contains no fields
+	 */
+	public boolean isEmpty()
+	{
+		if (words == null)
+			return count == 0;
+		for (long word : words)
+		{
+			if (word != 0)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the number of fields in this set
+	 * 
+	 * @return the number of fields
+	 */
+	public int size()
+	{
+		if (words == null)
+			return count;
+		int size = 0;
+		for (long word : words)
+		{
+			size += Long.bitCount(word);
+		}
+		return size;
+	}
+
+	/**
+	 * Returns the number of fields in this set which are not in the specified
+	 * set
+	 * 
+	 * @param set
+	 *           the other set
+	 * @return the number of fields
+	 */
+	public int sizeOfDifference(CellSet set)
+	{
+		checkCapacity(set);
+		int size = 0;
+		if (words == null)
+		{
+			for (int index : table)
+			{
+				if (index >= 0 && !set.contains(index))
+					size++;
+			}
+			return size;
+		}
+		for (int i = 0;i < words.length;i++)
+		{
+			size += Long.bitCount(words[i] & ~set.words[i]);
+		}
+		return size;
+	}
+
+	/**
+	 * Replaces the content of this set with the content of the specified set
+	 * 
+	 * @param set
+	 *           the set to copy
+	 * @return this set
+	 */
+	public CellSet copyFrom(CellSet set)
+	{
+		checkCapacity(set);
+		if (set == this)
+			return this;
+		if (words != null)
+		{
+			System.arraycopy(set.words, 0, words, 0, words.length);
+			return this;
+		}
+		if (table.length != set.table.length)
+			table = new int[set.table.length];
+		System.arraycopy(set.table, 0, table, 0, table.length);
+		count = set.count;
+		usedSlots = set.usedSlots;
+		return this;
+	}
+
+	/**
+	 * Adds all fields of the specified set to this set (union)
+	 * 
+	 * @param set
+	 *           the other set
+	 * @return this set
+	 */
+	public CellSet addAll(CellSet set)
+	{
+		checkCapacity(set);
+		if (words == null)
+		{
+			if (set != this)
+			{
+				for (int index : set.table)
+				{
+					if (index >= 0)
+						add(index);
+				}
+			}
+			return this;
+		}
+		for (int i = 0;i < words.length;i++)
+		{
+			words[i] |= set.words[i];
+		}
+		return this;
+	}
+
+	/**
+	 * Removes all fields from this set which are not in the specified set
+	 * (intersection)
+	 * 
+	 * @param set
+	 *           the other set
+	 * @return this set
+	 */
+	public CellSet retainAll(CellSet set)
+	{
+		checkCapacity(set);
+		if (words == null)
+		{
+			if (set != this)
+			{
+				for (int i = 0;i < table.length;i++)
+				{
+					if (table[i] >= 0 && !set.contains(table[i]))
+					{
+						table[i] = REMOVED;
+						count--;
+					}
+				}
+			}
+			return this;
+		}
+		for (int i = 0;i < words.length;i++)
+		{
+			words[i] &= set.words[i];
+		}
+		return this;
+	}
+
+	/**
+	 * Removes all fields of the specified set from this set (difference)
+	 * 
+	 * @param set
+	 *           the other set
+	 * @return this set
+	 */
+	public CellSet removeAll(CellSet set)
+	{
+		checkCapacity(set);
+		if (words == null)
+		{
+			if (set == this)
+			{
+				clear();
+				return this;
+			}
+			for (int i = 0;i < table.length;i++)
+			{
+				if (table[i] >= 0 && set.contains(table[i]))
+				{
+					table[i] = REMOVED;
+					count--;
+				}
+			}
+			return this;
+		}
+		for (int i = 0;i < words.length;i++)
+		{
+			words[i] &= ~set.words[i];
+		}
+		return this;
+	}
+
+	/**
+	 * Returns whether this set and the specified set have at least one field in
+	 * common
+	 * 
+	 * @param set
+	 *           the other set
+	 * @return <code>true</code> if the sets intersect
+	 */
+	public boolean intersects(CellSet set)
+	{
+		checkCapacity(set);
+		if (words == null)
+		{
+			CellSet smaller = count <= set.count ? this : set;
+			CellSet larger = smaller == this ? set : this;
+			for (int index : smaller.table)
+			{
+				if (index >= 0 && larger.contains(index))
+					return true;
+			}
+			return false;
+		}
+		for (int i = 0;i < words.length;i++)
+		{
+			if ((words[i] & set.words[i]) != 0)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the index of the first field in this set with an index greater
+	 * than or equal to the specified index. For sparse sets this has to look
+	 * at every field of the set, use a {@link FieldIterator} to iterate them.
+	 * 
+	 * @param from
+	 *           the index to start at
+	 * @return the index of the field or <code>-1</code> if there is no such
+	 *         field
+	 */
+	public int nextField(int from)
+	{
+		if (from >= capacity)
+			return -1;
+		if (words == null)
+		{
+			int next = -1;
+			for (int index : table)
+			{
+				if (index >= from && (next < 0 || index < next))
+					next = index;
+			}
+			return next;
+		}
+		int wordIndex = from >>> 6;
+		long word = words[wordIndex] & (-1L << from);
+		while (true)
+		{
+			if (word != 0)
+				return (wordIndex << 6) + Long.numberOfTrailingZeros(word);
+			if (++wordIndex == words.length)
+				return -1;
+			word = words[wordIndex];
+		}
+	}
+
+	/**
+	 * Returns the word with the specified index of a dense set. Bit <i>i</i> of
+	 * word <i>w</i> represents the field with the index <code>w * 64 + i</code>.
+	 * 
+	 * @param wordIndex
+	 *           the index of the word
+	 * @return the word
+	 */
+	long getWord(int wordIndex)
+	{
+		return words[wordIndex];
+	}
+
+	/**
+	 * Sets the specified bits of the word with the specified index of a dense
+	 * set
+	 * 
+	 * @param wordIndex
+	 *           the index of the word
+	 * @param bits
+	 *           the bits to set
+	 */
+	void setWordBits(int wordIndex, long bits)
+	{
+		words[wordIndex] |= bits;
+	}
+
+	/**
+	 * Clears the specified bits of the word with the specified index of a dense
+	 * set
+	 * 
+	 * @param wordIndex
+	 *           the index of the word
+	 * @param bits
+	 *           the bits to clear
+	 */
+	void clearWordBits(int wordIndex, long bits)
+	{
+		words[wordIndex] &= ~bits;
+	}
+
+	/**
+	 * Returns the number of words used by a dense set
+	 * 
+	 * @return the number of words
+	 */
+	int getWordCount()
+	{
+		return words.length;
+	}
+
+	/**
+	 * Returns the content of the slot with the specified index of the hash table
+	 * of a sparse set
+	 * 
+	 * @param slot
+	 *           the index of the slot
+	 * @return the index of the field in the slot or a negative value if the
+	 *         slot is empty
+	 */
+	int getSlot(int slot)
+	{
+		return table[slot];
+	}
+
+	/**
+	 * Returns the number of slots of the hash table of a sparse set
+	 * 
+	 * @return the number of slots
+	 */
+	int getSlotCount()
+	{
+		return table.length;
+	}
+
+	/**
+	 * Returns the slot of the hash table containing the specified field
+	 * 
+	 * @param index
+	 *           the index of the field
+	 * @return the slot or <code>-1</code> if the field is not in this set
+	 */
+	private int findSlot(int index)
+	{
+		int mask = table.length - 1;
+		int slot = hash(index) & mask;
+		while (table[slot] != FREE)
+		{
+			if (table[slot] == index)
+				return slot;
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	/**
+	 * Rebuilds the hash table with enough space for the specified number of
+	 * fields. Removed slots are dropped.
+	 * 
+	 * @param minCount
+	 *           the number of fields the table must be able to hold
+	 */
+	private void rehash(int minCount)
+	{
+		int length = MIN_TABLE_LENGTH;
+		while (length < minCount * 4)
+		{
+			length <<= 1;
+		}
+		int[] oldTable = table;
+		table = newTable(length);
+		usedSlots = count;
+		int mask = length - 1;
+		for (int index : oldTable)
+		{
+			if (index < 0)
+				continue;
+			int slot = hash(index) & mask;
+			while (table[slot] != FREE)
+			{
+				slot = (slot + 1) & mask;
+			}
+			table[slot] = index;
+		}
+	}
+
+	/**
+	 * Creates a new hash table with all slots free
+	 * 
+	 * @param length
+	 *           the length of the table
+	 * @return the table
+	 */
+	private static int[] newTable(int length)
+	{
+		int[] table = new int[length];
+		for (int i = 0;i < length;i++)
+		{
+			table[i] = FREE;
+		}
+		return table;
+	}
+
+	/**
+	 * Spreads the bits of a field index for the hash table
+	 * 
+	 * @param index
+	 *           the index of the field
+	 * @return the hash
+	 */
+	static int hash(int index)
+	{
+		int hash = index * 0x9E3779B9;
+		return hash ^ (hash >>> 16);
+	}
+
+	/**
+	 * Checks whether the specified set has the same capacity as this set
+	 * 
+	 * @param set
+	 *           the other set
+	 * @throws IllegalArgumentException
+	 *            if the capacities differ
+	 */
+	private void checkCapacity(CellSet set) throws IllegalArgumentException
+	{
+		if (set.capacity != capacity)
+			throw new IllegalArgumentException("Capacity " + set.capacity + " does not match capacity " + capacity);
+	}
+
+	@Override
+	public boolean equals(Object o)
+	{
+		if (o == this)
+			return true;
+		if (!(o instanceof CellSet))
+			return false;
+		CellSet set = (CellSet) o;
+		if (set.capacity != capacity)
+			return false;
+		if (words == null)
+			return count == set.count && sizeOfDifference(set) == 0;
+		for (int i = 0;i < words.length;i++)
+		{
+			if (words[i] != set.words[i])
+				return false;
+		}
+		return true;
+	}
+
+	@Override
+	public int hashCode()
+	{
+		if (words == null)
+		{
+			int hash = capacity;
+			for (int index : table)
+			{
+				if (index >= 0)
+					hash += hash(index);
+			}
+			return hash;
+		}
+		long hash = capacity;
+		for (long word : words)
+		{
+			hash = hash * 31 + word;
+		}
+		return (int) (hash ^ (hash >>> 32));
+	}
+
+	@Override
+	public String toString()
+	{
+		StringBuilder builder = new StringBuilder();
+		builder.append('[');
+		FieldIterator iterator = new FieldIterator().reset(this);
+		while (iterator.hasNext())
+		{
+			if (builder.length() > 1)
+				builder.append(", ");
+			builder.append(iterator.next());
+		}
+		return builder.append(']').toString();
+	}
+}
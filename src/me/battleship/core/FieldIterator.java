@@ -0,0 +1,92 @@
+package me.battleship.core;
+
+/**
+ * An iterator over the fields of a {@link CellSet}. The iterator does not
+ * allocate any memory while iterating and can be reused by resetting it to
+ * another set. The set must not be modified while it is iterated.
+ * 
+ * @author Manuel Vögele
+ */
+public class FieldIterator
+{
+	/** The set which is iterated */
+	private CellSet set;
+
+	/** Indicates whether the iterated set is sparse */
+	private boolean sparse;
+
+	/** The index of the current word of a dense set or the next slot of a sparse set */
+	private int position;
+
+	/** The remaining bits of the current word of a dense set */
+	private long word;
+
+	/**
+	 * Initializes a new empty {@link FieldIterator}
+	 */
+	public FieldIterator()
+	{
+		// Nothing to do
+	}
+
+	/**
+	 * Resets the iterator to iterate over the specified set
+	 * 
+	 * @param set
+	 *           the set
+	 * @return this iterator
+	 */
+	public FieldIterator reset(CellSet set)
+	{
+		this.set = set;
+		sparse = set.isSparse();
+		position = 0;
+		if (!sparse)
+			word = set.getWordCount() > 0 ? set.getWord(0) : 0;
+		return this;
+	}
+
+	/**
+	 * Returns whether there are fields left
+	 * 
+	 * @return <code>true</code> if there are fields left
+	 */
+	public boolean hasNext()
+	{
+		if (set == null)
+			return false;
+		if (sparse)
+		{
+			int slotCount = set.getSlotCount();
+			while (position < slotCount && set.getSlot(position) < 0)
+			{
+				position++;
+			}
+			return position < slotCount;
+		}
+		while (word == 0)
+		{
+			if (position + 1 >= set.getWordCount())
+				return false;
+			word = set.getWord(++position);
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the index of the next field and removes it from the iterator
+	 * 
+	 * @return the index of the next field or <code>-1</code> if there are no
+	 *         fields left
+	 */
+	public int next()
+	{
+		if (!hasNext())
+			return -1;
+		if (sparse)
+			return set.getSlot(position++);
+		int index = (position << 6) + Long.numberOfTrailingZeros(word);
+		word &= word - 1;
+		return index;
+	}
+}
@@ -0,0 +1,243 @@
+package me.battleship.core;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates random valid fleets for a {@link Ruleset}. A generator is not
+ * thread safe and does not allocate memory while generating fleets, so every
+ * thread should use its own generator and reuse it.
+ * <p>
+ * Fleets are drawn by rejection sampling: every ship gets a uniformly chosen
+ * placement from its {@link PlacementTable} and the fleet is discarded as soon
+ * as a ship overlaps a previous one. This yields every valid fleet with the
+ * same probability. If too many fleets in a row are discarded, which happens
+ * for rulesets with crowded playgrounds, the ships are placed one after
+ * another on the first free placement after a random one, backtracking if a
+ * ship does not fit anymore. If ships may not touch each other, a placement
+ * is only accepted if it does not touch the previous ships either.
+ * 
+ * @author Manuel Vögele
+ */
+public class FleetGenerator
+{
+	/** The number of discarded fleets after which the ships are placed one by one */
+	private static final int MAX_REJECTIONS = 1000;
+
+	/** The ruleset */
+	private final Ruleset ruleset;
+
+	/** Indicates whether ships may not touch each other */
+	private final boolean noTouch;
+
+	/** The random number generator */
+	private final Random random;
+
+	/** The fields occupied by the ships placed so far */
+	private final CellSet occupied;
+
+	/** The placement tables of the ships of the ruleset in fleet order */
+	private final PlacementTable[] fleetTables;
+
+	/** The placement tables of the ships of the last call to {@link #place(List)} */
+	private PlacementTable[] shipTables;
+
+	/** The placements of the ships of the last call to {@link #place(List)} */
+	private int[] shipPlacements;
+
+	/** The placement at which the search of each ship started while backtracking */
+	private int[] searchStarts;
+
+	/** The number of placements tried for each ship while backtracking */
+	private int[] searchCounts;
+
+	/**
+	 * Initializes a new {@link FleetGenerator}
+	 * 
+	 * @param ruleset
+	 *           the ruleset
+	 * @param random
+	 *           the random number generator
+	 */
+	public FleetGenerator(Ruleset ruleset, Random random)
+	{
+		this.ruleset = ruleset;
+		this.random = random;
+		noTouch = ruleset.isNoTouch();
+		occupied = new CellSet(ruleset.getFieldCount());
+		fleetTables = new PlacementTable[ruleset.getShipCount()];
+		int ship = 0;
+		for (int i = 0;i < ruleset.getShipClassCount();i++)
+		{
+			ShipClass shipClass = ruleset.getShipClass(i);
+			for (int j = 0;j < shipClass.getCount();j++)
+			{
+				fleetTables[ship++] = ruleset.getPlacementTable(shipClass.getLength());
+			}
+		}
+		shipTables = new PlacementTable[fleetTables.length];
+		shipPlacements = new int[fleetTables.length];
+		searchStarts = new int[fleetTables.length];
+		searchCounts = new int[fleetTables.length];
+	}
+
+	/**
+	 * Returns the ruleset
+	 * 
+	 * @return the ruleset
+	 */
+	public Ruleset getRuleset()
+	{
+		return ruleset;
+	}
+
+	/**
+	 * Generates a random fleet of the ruleset. The ships are in the order of
+	 * {@link Ruleset#createFleet()}, the placement of ship <i>i</i> is written
+	 * to <code>placements[i]</code> as a number of the
+	 * {@link Ruleset#getPlacementTable(int) placement table} of its length.
+	 * 
+	 * @param placements
+	 *           the array to write the placements to
+	 * @return <code>true</code> if a fleet was generated, <code>false</code> if
+	 *         the ships of the ruleset do not fit on the playground
+	 */
+	public boolean generate(int[] placements)
+	{
+		return generate(fleetTables, fleetTables.length, placements);
+	}
+
+	/**
+	 * Places the specified ships randomly on the playground. The lengths of the
+	 * ships must be lengths of the ruleset.
+	 * 
+	 * @param ships
+	 *           the ships
+	 * @return <code>true</code> if the ships were placed, <code>false</code> if
+	 *         they do not fit on the playground
+	 * @throws IllegalArgumentException
+	 *            if there is no ship class with the length of a ship
+	 */
+	public boolean place(List<Ship> ships) throws IllegalArgumentException
+	{
+		int count = ships.size();
+		if (count > shipTables.length)
+		{
+			shipTables = new PlacementTable[count];
+			shipPlacements = new int[count];
+			searchStarts = new int[count];
+			searchCounts = new int[count];
+		}
+		for (int i = 0;i < count;i++)
+		{
+			shipTables[i] = ruleset.getPlacementTable(ships.get(i).getSize());
+		}
+		if (!generate(shipTables, count, shipPlacements))
+			return false;
+		for (int i = 0;i < count;i++)
+		{
+			Ship ship = ships.get(i);
+			PlacementTable table = shipTables[i];
+			int placement = shipPlacements[i];
+			ship.setOrientation(table.getOrientation(placement));
+			ship.setPos(table.getX(placement), table.getY(placement));
+		}
+		return true;
+	}
+
+	/**
+	 * Generates random placements for ships
+	 * 
+	 * @param tables
+	 *           the placement tables of the ships
+	 * @param count
+	 *           the number of ships
+	 * @param placements
+	 *           the array to write the placements to
+	 * @return <code>true</code> if the ships were placed
+	 */
+	private boolean generate(PlacementTable[] tables, int count, int[] placements)
+	{
+		for (int attempt = 0;attempt < MAX_REJECTIONS;attempt++)
+		{
+			occupied.clear();
+			int ship = 0;
+			while (ship < count)
+			{
+				PlacementTable table = tables[ship];
+				int placement = random.nextInt(table.getPlacementCount());
+				if (!isFree(table, placement))
+					break;
+				table.addFields(placement, occupied);
+				placements[ship++] = placement;
+			}
+			if (ship == count)
+				return true;
+		}
+		return search(tables, count, placements);
+	}
+
+	/**
+	 * Places the ships one after another, backtracking if a ship does not fit
+	 * 
+	 * @param tables
+	 *           the placement tables of the ships
+	 * @param count
+	 *           the number of ships
+	 * @param placements
+	 *           the array to write the placements to
+	 * @return <code>true</code> if the ships were placed
+	 */
+	private boolean search(PlacementTable[] tables, int count, int[] placements)
+	{
+		if (count == 0)
+			return true;
+		occupied.clear();
+		int ship = 0;
+		searchStarts[0] = random.nextInt(tables[0].getPlacementCount());
+		searchCounts[0] = 0;
+		while (true)
+		{
+			PlacementTable table = tables[ship];
+			int placementCount = table.getPlacementCount();
+			if (searchCounts[ship] == placementCount)
+			{
+				if (ship == 0)
+					return false;
+				ship--;
+				tables[ship].removeFields(placements[ship], occupied);
+				searchCounts[ship]++;
+				continue;
+			}
+			int placement = (searchStarts[ship] + searchCounts[ship]) % placementCount;
+			if (!isFree(table, placement))
+			{
+				searchCounts[ship]++;
+				continue;
+			}
+			table.addFields(placement, occupied);
+			placements[ship++] = placement;
+			if (ship == count)
+				return true;
+			searchStarts[ship] = random.nextInt(tables[ship].getPlacementCount());
+			searchCounts[ship] = 0;
+		}
+	}
+
+	/**
+	 * Returns whether a ship can be positioned on the specified placement next
+	 * to the ships placed so far
+	 * 
+	 * @param table
+	 *           the placement table of the ship
+	 * @param placement
+	 *           the number of the placement
+	 * @return <code>true</code> if the placement is free
+	 */
+	private boolean isFree(PlacementTable table, int placement)
+	{
+		if (noTouch)
+			return table.isSeparated(placement, occupied);
+		return table.isLegal(placement, null, occupied);
+	}
+}
@@ -0,0 +1,311 @@
+package me.battleship.core;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * An immutable collection of fleets of a {@link Ruleset}, e.g. layouts which
+ * are hard to find for a computer player. The fleets are searched offline and
+ * shipped with the app, so a fleet can be chosen without any search on the
+ * device. Every fleet is valid: all ships are on the playground, they do not
+ * overlap and, if the ruleset demands it, they do not touch each other.
+ * <p>
+ * The ships of a fleet are in the order of {@link Ruleset#createFleet()}. The
+ * encoded library (version {@value #FORMAT_VERSION}) consists of the byte
+ * {@value #MAGIC}, the version of the format, the ruleset, the number of
+ * fleets and one ship word per ship of every fleet, all as described in
+ * {@link GameStateCodec}. A classic fleet takes 10 bytes.
+ * 
+ * @author Manuel Vögele
+ */
+public final class FleetLibrary
+{
+	/** The first byte of an encoded library */
+	public static final byte MAGIC = 0x46;
+
+	/** The version of the format written by this class */
+	public static final int FORMAT_VERSION = 1;
+
+	/** The ruleset */
+	private final Ruleset ruleset;
+
+	/** The placement tables of the ships in fleet order */
+	private final PlacementTable[] tables;
+
+	/** The placements of the ships of all fleets, fleet after fleet */
+	private final int[] placements;
+
+	/**
+	 * Initializes a new {@link FleetLibrary}
+	 * 
+	 * @param ruleset
+	 *           the ruleset
+	 * @param fleets
+	 *           the fleets, the placement of ship <i>i</i> of a fleet is
+	 *           element <i>i</i> as a number of the
+	 *           {@link Ruleset#getPlacementTable(int) placement table} of its
+	 *           length (see {@link FleetGenerator#generate(int[])})
+	 * @throws IllegalArgumentException
+	 *            if a fleet is not valid
+	 */
+	public FleetLibrary(Ruleset ruleset, List<int[]> fleets) throws IllegalArgumentException
+	{
+		this(ruleset, fleets.size());
+		int shipCount = tables.length;
+		for (int f = 0;f < fleets.size();f++)
+		{
+			int[] fleet = fleets.get(f);
+			if (fleet.length != shipCount)
+				throw new IllegalArgumentException("Fleet " + f + " has " + fleet.length + " ships instead of " + shipCount);
+			System.arraycopy(fleet, 0, placements, f * shipCount, shipCount);
+		}
+		validate();
+	}
+
+	/**
+	 * Initializes a new {@link FleetLibrary} without placements
+	 * 
+	 * @param ruleset
+	 *           the ruleset
+	 * @param fleetCount
+	 *           the number of fleets
+	 */
+	private FleetLibrary(Ruleset ruleset, int fleetCount)
+	{
+		this.ruleset = ruleset;
+		tables = new PlacementTable[ruleset.getShipCount()];
+		int ship = 0;
+		for (int i = 0;i < ruleset.getShipClassCount();i++)
+		{
+			ShipClass shipClass = ruleset.getShipClass(i);
+			for (int j = 0;j < shipClass.getCount();j++)
+			{
+				tables[ship++] = ruleset.getPlacementTable(shipClass.getLength());
+			}
+		}
+		placements = new int[fleetCount * tables.length];
+	}
+
+	/**
+	 * Returns the ruleset
+	 * 
+	 * @return the ruleset
+	 */
+	public Ruleset getRuleset()
+	{
+		return ruleset;
+	}
+
+	/**
+	 * Returns the number of fleets
+	 * 
+	 * @return the number of fleets
+	 */
+	public int getFleetCount()
+	{
+		return tables.length == 0 ? 0 : placements.length / tables.length;
+	}
+
+	/**
+	 * Writes the placements of the ships of a fleet to the specified array
+	 * 
+	 * @param index
+	 *           the index of the fleet
+	 * @param result
+	 *           the array to write the placements to, in the format of
+	 *           {@link FleetGenerator#generate(int[])}
+	 * @return the passed array
+	 */
+	public int[] getFleet(int index, int[] result)
+	{
+		System.arraycopy(placements, index * tables.length, result, 0, tables.length);
+		return result;
+	}
+
+	/**
+	 * Moves the specified ships to the positions of a fleet
+	 * 
+	 * @param index
+	 *           the index of the fleet
+	 * @param ships
+	 *           the ships in the order of {@link Ruleset#createFleet()}
+	 * @throws IllegalArgumentException
+	 *            if the ships do not belong to the ruleset
+	 */
+	public void placeFleet(int index, List<Ship> ships) throws IllegalArgumentException
+	{
+		if (ships.size() != tables.length)
+			throw new IllegalArgumentException("The ships do not belong to ruleset " + ruleset);
+		for (int i = 0;i < tables.length;i++)
+		{
+			if (ships.get(i).getSize() != tables[i].getLength())
+				throw new IllegalArgumentException("The ships do not belong to ruleset " + ruleset);
+		}
+		int offset = index * tables.length;
+		for (int i = 0;i < tables.length;i++)
+		{
+			Ship ship = ships.get(i);
+			PlacementTable table = tables[i];
+			int placement = placements[offset + i];
+			ship.setOrientation(table.getOrientation(placement));
+			ship.setPos(table.getX(placement), table.getY(placement));
+		}
+	}
+
+	/**
+	 * Moves the specified ships to the positions of a randomly chosen fleet
+	 * 
+	 * @param ships
+	 *           the ships in the order of {@link Ruleset#createFleet()}
+	 * @param random
+	 *           the random number generator
+	 * @return the index of the chosen fleet or <code>-1</code> if the library
+	 *         is empty
+	 * @throws IllegalArgumentException
+	 *            if the ships do not belong to the ruleset
+	 */
+	public int placeRandomFleet(List<Ship> ships, Random random) throws IllegalArgumentException
+	{
+		int fleetCount = getFleetCount();
+		if (fleetCount == 0)
+			return -1;
+		int index = random.nextInt(fleetCount);
+		placeFleet(index, ships);
+		return index;
+	}
+
+	/**
+	 * Returns the number of bytes the encoded library takes
+	 * 
+	 * @return the number of bytes
+	 */
+	public int getEncodedSize()
+	{
+		int wordSize = GameStateCodec.hasWideShipWords(ruleset.getSize()) ? 4 : 2;
+		return 2 + GameStateCodec.getRulesetSize(ruleset) + GameStateCodec.getVarLongSize(getFleetCount()) + placements.length * wordSize;
+	}
+
+	/**
+	 * Encodes the library into a new array
+	 * 
+	 * @return the encoded library
+	 */
+	public byte[] encode()
+	{
+		ByteBuffer out = ByteBuffer.allocate(getEncodedSize());
+		encode(out);
+		return out.array();
+	}
+
+	/**
+	 * Encodes the library at the position of the specified buffer
+	 * 
+	 * @param out
+	 *           the buffer to write to
+	 * @throws BufferOverflowException
+	 *            if the library does not fit into the buffer
+	 */
+	public void encode(ByteBuffer out) throws BufferOverflowException
+	{
+		int size = ruleset.getSize();
+		boolean wideWords = GameStateCodec.hasWideShipWords(size);
+		out.put(MAGIC);
+		out.put((byte) FORMAT_VERSION);
+		GameStateCodec.putRuleset(out, ruleset);
+		GameStateCodec.putVarLong(out, getFleetCount());
+		for (int i = 0;i < placements.length;i++)
+		{
+			PlacementTable table = tables[i % tables.length];
+			int placement = placements[i];
+			GameStateCodec.putShipWord(out, GameStateCodec.getShipWord(table.getX(placement), table.getY(placement), table.getOrientation(placement), size), wideWords);
+		}
+	}
+
+	/**
+	 * Decodes a library starting at the position of the specified buffer. The
+	 * position is moved behind the library.
+	 * 
+	 * @param in
+	 *           the buffer to read from
+	 * @return the library
+	 * @throws IllegalArgumentException
+	 *            if the buffer does not contain a valid library
+	 */
+	public static FleetLibrary decode(ByteBuffer in) throws IllegalArgumentException
+	{
+		try
+		{
+			if (in.get() != MAGIC)
+				throw new IllegalArgumentException("The data is not an encoded fleet library");
+			int version = in.get() & 0xFF;
+			if (version != FORMAT_VERSION)
+				throw new IllegalArgumentException("Unsupported format version " + version);
+			Ruleset ruleset = GameStateCodec.getRuleset(in);
+			int size = ruleset.getSize();
+			boolean wideWords = GameStateCodec.hasWideShipWords(size);
+			int wordSize = wideWords ? 4 : 2;
+			int shipCount = Math.max(ruleset.getShipCount(), 1);
+			FleetLibrary library = new FleetLibrary(ruleset, GameStateCodec.getCount(in, in.remaining() / wordSize / shipCount));
+			for (int i = 0;i < library.placements.length;i++)
+			{
+				int word = GameStateCodec.getShipWord(in, wideWords);
+				int field = (word >>> 1) - 1;
+				Orientation orientation = (word & 1) != 0 ? Orientation.VERTICAL : Orientation.HORIZONTAL;
+				int placement = word == 0 || field >= size * size ? -1 : library.tables[i % library.tables.length].getPlacement(field % size, field / size, orientation);
+				if (placement < 0)
+					throw new IllegalArgumentException("Fleet " + i / library.tables.length + " has a ship which is not on the playground");
+				library.placements[i] = placement;
+			}
+			library.validate();
+			return library;
+		}
+		catch (BufferUnderflowException e)
+		{
+			throw new IllegalArgumentException("The encoded fleet library is truncated");
+		}
+	}
+
+	/**
+	 * Decodes a library
+	 * 
+	 * @param data
+	 *           the encoded library
+	 * @return the library
+	 * @throws IllegalArgumentException
+	 *            if the data is not a valid library
+	 */
+	public static FleetLibrary decode(byte[] data) throws IllegalArgumentException
+	{
+		return decode(ByteBuffer.wrap(data));
+	}
+
+	/**
+	 * Checks that all fleets are valid
+	 * 
+	 * @throws IllegalArgumentException
+	 *            if a ship is not on the playground, overlaps or touches
+	 *            another ship although the ruleset forbids it
+	 */
+	private void validate() throws IllegalArgumentException
+	{
+		CellSet occupied = new CellSet(ruleset.getFieldCount());
+		for (int f = 0;f < getFleetCount();f++)
+		{
+			occupied.clear();
+			int offset = f * tables.length;
+			for (int i = 0;i < tables.length;i++)
+			{
+				PlacementTable table = tables[i];
+				int placement = placements[offset + i];
+				if (placement < 0 || placement >= table.getPlacementCount())
+					throw new IllegalArgumentException("Fleet " + f + " has a ship which is not on the playground");
+				if (!table.isLegal(placement, null, occupied) || (ruleset.isNoTouch() && !table.isSeparated(placement, occupied)))
+					throw new IllegalArgumentException("Fleet " + f + " has ships which overlap or touch each other");
+				table.addFields(placement, occupied);
+			}
+		}
+	}
+}
@@ -0,0 +1,526 @@
+package me.battleship.core;
+
+import me.battleship.core.geometry.CellRects;
+
+/**
+ * Infers which fields of the opponents playground can not hold a ship from the
+ * results of the own shots. A field is known to be empty if
+ * <ul>
+ * <li>a shot on it missed,</li>
+ * <li>no ship which is still afloat fits on it without covering a field which
+ * is known to be empty or a sunk ship, or</li>
+ * <li>ships may not touch each other (see {@link Ruleset#isNoTouch()}) and it
+ * touches a sunk ship, is diagonally adjacent to a hit or lies beside two
+ * hits in a row.</li>
+ * </ul>
+ * If ships may touch, a sunk ship can not be told apart from the ships next to
+ * it, so the sunk ships are only known if ships may not touch each other. All
+ * sets are allocated once, updates do not allocate memory.
+ * <p>
+ * The known empty fields are updated incrementally: a shot only visits the
+ * fields next to it, and a field which becomes unable to hold a ship can only
+ * take away the placements through it, so only the fields in its row and
+ * column closer than the length of the shortest ship afloat are checked
+ * again. The cost of an update and the memory used depend on the number of
+ * shots, not on the size of the playground. Once all ships are sunk the second
+ * rule is no longer applied.
+ * 
+ * @author Manuel Vögele
+ */
+public class FogOfWar
+{
+	/** The ruleset */
+	private final Ruleset ruleset;
+
+	/** The size of the playground */
+	private final int size;
+
+	/** The fields on which a shot missed */
+	private final CellSet misses;
+
+	/** The fields on which a shot hit a ship */
+	private final CellSet hits;
+
+	/** The fields of the sunk ships which are known */
+	private final CellSet sunk;
+
+	/** The fields which can not hold a ship */
+	private final CellSet knownEmpty;
+
+	/** The fields which became unable to hold a ship since the last update */
+	private final CellSet added;
+
+	/** The length of the shortest ship afloat the second rule was applied with or <code>0</code> */
+	private int gapLength;
+
+	/** The iterator reused for iterating the hits */
+	private final FieldIterator iterator = new FieldIterator();
+
+	/** The number of ships of every class of the ruleset which are still afloat */
+	private final int[] afloat;
+
+	/** The class of the last sunk ship or <code>null</code> if it is not known */
+	private ShipClass lastSunkClass;
+
+	/** The position of the last sunk ship as described in {@link CellRects} */
+	private long lastSunkRect;
+
+	/**
+	 * Initializes a new {@link FogOfWar} for a playground without any shots
+	 * 
+	 * @param ruleset
+	 *           the ruleset
+	 */
+	public FogOfWar(Ruleset ruleset)
+	{
+		this.ruleset = ruleset;
+		size = ruleset.getSize();
+		misses = new CellSet(ruleset.getFieldCount());
+		hits = new CellSet(ruleset.getFieldCount());
+		sunk = new CellSet(ruleset.getFieldCount());
+		knownEmpty = new CellSet(ruleset.getFieldCount());
+		added = new CellSet(ruleset.getFieldCount());
+		afloat = new int[ruleset.getShipClassCount()];
+		reset();
+	}
+
+	/**
+	 * Forgets all shots
+	 */
+	public void reset()
+	{
+		misses.clear();
+		hits.clear();
+		sunk.clear();
+		knownEmpty.clear();
+		added.clear();
+		gapLength = 0;
+		for (int i = 0;i < afloat.length;i++)
+		{
+			afloat[i] = ruleset.getShipClass(i).getCount();
+		}
+		lastSunkClass = null;
+		lastSunkRect = CellRects.EMPTY;
+		update();
+	}
+
+	/**
+	 * Replaces all shots with the shots on the specified board. The ships of
+	 * the board are the known sunk ships.
+	 * 
+	 * @param board
+	 *           the opponents board
+	 * @throws IllegalArgumentException
+	 *            if the board does not belong to the ruleset
+	 */
+	public void restore(BoardSnapshot board) throws IllegalArgumentException
+	{
+		if (board.getSize() != size)
+			throw new IllegalArgumentException("The board does not belong to the ruleset");
+		reset();
+		board.getShipHits(hits);
+		board.getMisses(misses);
+		for (int i = 0;i < board.getShipCount();i++)
+		{
+			if (!board.isShipPlaced(i))
+				continue;
+			addFields(board.getShipRect(i), sunk);
+			for (int c = 0;c < afloat.length;c++)
+			{
+				if (ruleset.getShipClass(c) == board.getShipClass(i))
+					afloat[c]--;
+			}
+		}
+		knownEmpty.copyFrom(misses);
+		if (ruleset.isNoTouch())
+		{
+			for (iterator.reset(hits);iterator.hasNext();)
+			{
+				int index = iterator.next();
+				addNoTouchFields(index % size, index / size);
+			}
+		}
+		// Check all fields again
+		gapLength = 0;
+		update();
+	}
+
+	/**
+	 * Records the result of a shot
+	 * 
+	 * @param x
+	 *           the x position of the shot
+	 * @param y
+	 *           the y position of the shot
+	 * @param result
+	 *           the result of the shot
+	 */
+	public void recordResult(int x, int y, ShotResult result)
+	{
+		lastSunkClass = null;
+		lastSunkRect = CellRects.EMPTY;
+		int index = y * size + x;
+		switch (result)
+		{
+			case MISS:
+				misses.add(index);
+				markEmpty(index);
+				break;
+			case HIT:
+				hits.add(index);
+				if (ruleset.isNoTouch())
+					addNoTouchFieldsAround(x, y);
+				break;
+			case SUNK:
+				hits.add(index);
+				if (ruleset.isNoTouch())
+				{
+					addNoTouchFieldsAround(x, y);
+					resolveSunkShip(x, y);
+				}
+				break;
+			case ALREADY_HIT:
+				return;
+		}
+		update();
+	}
+
+	/**
+	 * Returns the class of the ship sunk by the last recorded shot
+	 * 
+	 * @return the ship class or <code>null</code> if the last shot did not sink
+	 *         a ship or the sunk ship is not known
+	 */
+	public ShipClass getLastSunkClass()
+	{
+		return lastSunkClass;
+	}
+
+	/**
+	 * Returns the position of the ship sunk by the last recorded shot
+	 * 
+	 * @return the position packed as described in {@link CellRects} or
+	 *         {@link CellRects#EMPTY} if the sunk ship is not known
+	 */
+	public long getLastSunkRect()
+	{
+		return lastSunkRect;
+	}
+
+	/**
+	 * Returns whether the field at the specified position can not hold a ship
+	 * 
+	 * @param x
+	 *           the x position
+	 * @param y
+	 *           the y position
+	 * @return <code>true</code> if the field is known to be empty
+	 */
+	public boolean isKnownEmpty(int x, int y)
+	{
+		return knownEmpty.contains(y * size + x);
+	}
+
+	/**
+	 * Writes the fields which can not hold a ship to the specified set
+	 * 
+	 * @param result
+	 *           the set to write the fields to
+	 * @return the passed set
+	 */
+	public CellSet getKnownEmpty(CellSet result)
+	{
+		return result.copyFrom(knownEmpty);
+	}
+
+	/**
+	 * Returns the number of ships of the specified class of the ruleset which
+	 * may still be afloat
+	 * 
+	 * @param shipClass
+	 *           the index of the ship class
+	 * @return the number of ships
+	 */
+	public int getAfloatCount(int shipClass)
+	{
+		return afloat[shipClass];
+	}
+
+	/**
+	 * Determines the ship which was sunk by a shot on the specified field.
+	 * Ships do not touch each other, so the ship consists of the hits in a row
+	 * or column through the field.
+	 * 
+	 * @param x
+	 *           the x position of the shot
+	 * @param y
+	 *           the y position of the shot
+	 */
+	private void resolveSunkShip(int x, int y)
+	{
+		int left = x;
+		while (left > 0 && isUnsunkHit(left - 1, y))
+			left--;
+		int right = x;
+		while (right < size - 1 && isUnsunkHit(right + 1, y))
+			right++;
+		int top = y;
+		while (top > 0 && isUnsunkHit(x, top - 1))
+			top--;
+		int bottom = y;
+		while (bottom < size - 1 && isUnsunkHit(x, bottom + 1))
+			bottom++;
+		long rect = right > left ? CellRects.pack(left, y, right, y) : CellRects.pack(x, top, x, bottom);
+		int length = CellRects.getCellCount(rect);
+		for (int c = 0;c < afloat.length;c++)
+		{
+			ShipClass shipClass = ruleset.getShipClass(c);
+			if (afloat[c] > 0 && shipClass.getLength() == length)
+			{
+				afloat[c]--;
+				addFields(rect, sunk);
+				addFields(rect, added);
+				for (int y0 = CellRects.getTop(rect);y0 <= CellRects.getBottom(rect);y0++)
+				{
+					for (int x0 = CellRects.getLeft(rect);x0 <= CellRects.getRight(rect);x0++)
+					{
+						addNoTouchFields(x0, y0);
+					}
+				}
+				lastSunkClass = shipClass;
+				lastSunkRect = rect;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Returns whether the field at the specified position was hit and does not
+	 * belong to a known sunk ship
+	 * 
+	 * @param x
+	 *           the x position
+	 * @param y
+	 *           the y position
+	 * @return <code>true</code> if the field is a hit of a ship which may be
+	 *         afloat
+	 */
+	private boolean isUnsunkHit(int x, int y)
+	{
+		int index = y * size + x;
+		return hits.contains(index) && !sunk.contains(index);
+	}
+
+	/**
+	 * Applies the second rule to the fields which may have lost the last
+	 * placement covering them
+	 */
+	private void update()
+	{
+		// Every field covered by a longer ship is covered by the shortest one as well
+		int minLength = 0;
+		for (int c = 0;c < afloat.length;c++)
+		{
+			int length = ruleset.getShipClass(c).getLength();
+			if (afloat[c] > 0 && (minLength == 0 || length < minLength))
+				minLength = length;
+		}
+		if (minLength == 0)
+		{
+			added.clear();
+			return;
+		}
+		if (minLength != gapLength)
+		{
+			// A longer ship fits on fewer fields, the fields next to all blocked fields are checked again
+			gapLength = minLength;
+			added.copyFrom(knownEmpty).addAll(sunk);
+		}
+		for (iterator.reset(added);iterator.hasNext();)
+		{
+			int index = iterator.next();
+			int x = index % size;
+			int y = index / size;
+			for (int d = 1;d < minLength;d++)
+			{
+				checkGap(x - d, y);
+				checkGap(x + d, y);
+				checkGap(x, y - d);
+				checkGap(x, y + d);
+			}
+		}
+		added.clear();
+	}
+
+	/**
+	 * Marks the field at the specified position as empty if it is on the
+	 * playground and the shortest ship afloat does not fit on it without
+	 * covering a field which is known to be empty or a sunk ship
+	 * 
+	 * @param x
+	 *           the x position
+	 * @param y
+	 *           the y position
+	 */
+	private void checkGap(int x, int y)
+	{
+		if (x < 0 || y < 0 || x >= size || y >= size)
+			return;
+		int index = y * size + x;
+		if (knownEmpty.contains(index) || hits.contains(index))
+			return;
+		int length = gapLength;
+		int free = 1;
+		for (int x0 = x - 1;x0 >= 0 && free < length && !isBlocked(y * size + x0);x0--)
+			free++;
+		for (int x0 = x + 1;x0 < size && free < length && !isBlocked(y * size + x0);x0++)
+			free++;
+		if (free >= length)
+			return;
+		free = 1;
+		for (int y0 = y - 1;y0 >= 0 && free < length && !isBlocked(y0 * size + x);y0--)
+			free++;
+		for (int y0 = y + 1;y0 < size && free < length && !isBlocked(y0 * size + x);y0++)
+			free++;
+		// The field can not take away placements of other fields, so it is not added to the new fields
+		if (free < length)
+			knownEmpty.add(index);
+	}
+
+	/**
+	 * Returns whether no ship which is still afloat may cover the field with
+	 * the specified index
+	 * 
+	 * @param index
+	 *           the index of the field
+	 * @return <code>true</code> if the field is known to be empty or belongs to
+	 *         a sunk ship
+	 */
+	private boolean isBlocked(int index)
+	{
+		return knownEmpty.contains(index) || sunk.contains(index);
+	}
+
+	/**
+	 * Applies the rules for ships which may not touch each other to a new hit
+	 * and the hits next to it
+	 * 
+	 * @param x
+	 *           the x position of the hit
+	 * @param y
+	 *           the y position of the hit
+	 */
+	private void addNoTouchFieldsAround(int x, int y)
+	{
+		addNoTouchFields(x, y);
+		if (isHit(x - 1, y))
+			addNoTouchFields(x - 1, y);
+		if (isHit(x + 1, y))
+			addNoTouchFields(x + 1, y);
+		if (isHit(x, y - 1))
+			addNoTouchFields(x, y - 1);
+		if (isHit(x, y + 1))
+			addNoTouchFields(x, y + 1);
+	}
+
+	/**
+	 * Marks the fields which can not hold a ship because ships may not touch
+	 * each other and there is a hit at the specified position as empty
+	 * 
+	 * @param x
+	 *           the x position of the hit
+	 * @param y
+	 *           the y position of the hit
+	 */
+	private void addNoTouchFields(int x, int y)
+	{
+		addEmpty(x - 1, y - 1);
+		addEmpty(x + 1, y - 1);
+		addEmpty(x - 1, y + 1);
+		addEmpty(x + 1, y + 1);
+		if (isHit(x - 1, y) || isHit(x + 1, y))
+		{
+			addEmpty(x, y - 1);
+			addEmpty(x, y + 1);
+		}
+		if (isHit(x, y - 1) || isHit(x, y + 1))
+		{
+			addEmpty(x - 1, y);
+			addEmpty(x + 1, y);
+		}
+		if (sunk.contains(y * size + x))
+		{
+			addEmpty(x - 1, y);
+			addEmpty(x + 1, y);
+			addEmpty(x, y - 1);
+			addEmpty(x, y + 1);
+		}
+	}
+
+	/**
+	 * Returns whether a shot at the specified position hit a ship
+	 * 
+	 * @param x
+	 *           the x position
+	 * @param y
+	 *           the y position
+	 * @return <code>true</code> if the position is on the playground and the
+	 *         field was hit
+	 */
+	private boolean isHit(int x, int y)
+	{
+		return x >= 0 && y >= 0 && x < size && y < size && hits.contains(y * size + x);
+	}
+
+	/**
+	 * Marks the field at the specified position as empty if it is on the
+	 * playground and was not hit
+	 * 
+	 * @param x
+	 *           the x position
+	 * @param y
+	 *           the y position
+	 */
+	private void addEmpty(int x, int y)
+	{
+		if (x < 0 || y < 0 || x >= size || y >= size)
+			return;
+		int index = y * size + x;
+		if (!hits.contains(index))
+			markEmpty(index);
+	}
+
+	/**
+	 * Marks a field as empty and remembers it for the next update
+	 * 
+	 * @param index
+	 *           the index of the field
+	 */
+	private void markEmpty(int index)
+	{
+		if (!knownEmpty.contains(index))
+		{
+			knownEmpty.add(index);
+			added.add(index);
+		}
+	}
+
+	/**
+	 * Adds the fields of the specified rectangle to the specified set
+	 * 
+	 * @param rect
+	 *           the rectangle packed as described in {@link CellRects}
+	 * @param set
+	 *           the set
+	 */
+	private void addFields(long rect, CellSet set)
+	{
+		for (int y = CellRects.getTop(rect);y <= CellRects.getBottom(rect);y++)
+		{
+			for (int x = CellRects.getLeft(rect);x <= CellRects.getRight(rect);x++)
+			{
+				set.add(y * size + x);
+			}
+		}
+	}
+}
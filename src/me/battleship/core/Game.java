@@ -0,0 +1,639 @@
+package me.battleship.core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+import me.battleship.core.geometry.CellRects;
+
+/**
+ * The rules of a match seen from one player: the own and the opponents ships
+ * and playgrounds, the validation of the ship placement and the resolution of
+ * shots. This class does not depend on Android and can be used on any JVM.
+ * <p>
+ * All changes are made by the methods of this class, which are synchronized.
+ * After every change a new immutable {@link GameSnapshot} is published, other
+ * threads should only read the state of the game through
+ * {@link #getSnapshot()}. The ships and playgrounds returned by the other
+ * getters are the live state of the game and must not be modified.
+ * 
+ * @author Manuel Vögele
+ */
+public class Game
+{
+	/** A list containing the own ships */
+	private final List<Ship> ownShips;
+
+	/** A list containing the opponents ships */
+	private final List<Ship> opponentShips;
+
+	/** The own playground */
+	private final Playground ownPlayground;
+
+	/** The enemies playground */
+	private final Playground opponentPlayground;
+
+	/** The occupancy of the own playground by the own ships */
+	private final OccupancyGrid ownOccupancy;
+
+	/** The occupancy of the enemies playground by the opponents ships */
+	private final OccupancyGrid opponentOccupancy;
+
+	/** The inference of the empty fields of the enemies playground */
+	private final FogOfWar opponentFog;
+
+	/** The ruleset of the game */
+	private final Ruleset ruleset;
+
+	/** The size of the playgrounds */
+	private final int size;
+
+	/** The number of movements of ships which can be undone */
+	public static final int HISTORY_CAPACITY = 256;
+
+	/** The movements of the own ships in the placement phase */
+	private final PlacementHistory history;
+
+	/** The random number generator for placing the own ships, created on first use */
+	private Random random;
+
+	/** The generator for placing the own ships randomly, created on first use */
+	private FleetGenerator fleetGenerator;
+
+	/** Indicates whether the game is in the placement phase */
+	private volatile boolean placementPhase;
+
+	/** Indicates whether the player may shoot next */
+	private boolean ownTurn;
+
+	/** Indicates whether the order of the turns was decided */
+	private boolean turnDecided;
+
+	/** The set reused for reading fields from the playgrounds and grids */
+	private final CellSet fields;
+
+	/** The latest snapshot of the game */
+	private volatile GameSnapshot snapshot;
+
+	/**
+	 * Initializes a new {@link Game} in the placement phase. The own fleet is
+	 * created from the ruleset.
+	 * 
+	 * @param ruleset
+	 *           the ruleset of the game
+	 */
+	public Game(Ruleset ruleset)
+	{
+		this.ruleset = ruleset;
+		this.size = ruleset.getSize();
+		ownShips = ruleset.createFleet();
+		opponentShips = new ArrayList<Ship>(ownShips.size());
+		ownPlayground = new Playground(size);
+		opponentPlayground = new Playground(size);
+		ownOccupancy = new OccupancyGrid(size, ruleset.isNoTouch());
+		for (Ship ship : ownShips)
+		{
+			ownOccupancy.track(ship);
+		}
+		opponentOccupancy = new OccupancyGrid(size, ruleset.isNoTouch());
+		opponentFog = new FogOfWar(ruleset);
+		placementPhase = true;
+		history = new PlacementHistory(size, HISTORY_CAPACITY);
+		fields = new CellSet(size * size);
+		snapshot = new GameSnapshot(0, ruleset, true, false, false, BoardSnapshot.of(size, ownShips), BoardSnapshot.of(size, opponentShips), ImmutableCellSet.copyOf(ownOccupancy.getConflicts(fields)), ImmutableCellSet.copyOf(opponentFog.getKnownEmpty(fields)));
+	}
+
+	/**
+	 * Initializes a new {@link Game} with the state of the specified snapshot,
+	 * e.g. one restored by {@link GameStateCodec}
+	 * 
+	 * @param snapshot
+	 *           the snapshot
+	 */
+	public Game(GameSnapshot snapshot)
+	{
+		this(snapshot.getRuleset());
+		BoardSnapshot ownBoard = snapshot.getOwnBoard();
+		for (int i = 0;i < ownShips.size();i++)
+		{
+			Ship ship = ownShips.get(i);
+			ship.setOrientation(ownBoard.getShipOrientation(i));
+			ship.setPos(ownBoard.getShipX(i), ownBoard.getShipY(i));
+		}
+		placementPhase = snapshot.isInPlacementPhase();
+		ownTurn = snapshot.isOwnTurn();
+		turnDecided = snapshot.isTurnDecided();
+		if (!placementPhase)
+		{
+			for (Ship ship : ownShips)
+			{
+				ownPlayground.placeShip(ship);
+			}
+		}
+		FieldIterator iterator = new FieldIterator();
+		for (iterator.reset(ownBoard.getHits().copyTo(fields));iterator.hasNext();)
+		{
+			int index = iterator.next();
+			ownPlayground.shoot(ownPlayground.getX(index), ownPlayground.getY(index));
+		}
+		BoardSnapshot opponentBoard = snapshot.getOpponentBoard();
+		for (int i = 0;i < opponentBoard.getShipCount();i++)
+		{
+			Ship ship = new Ship(opponentBoard.getShipClass(i), opponentBoard.getShipX(i), opponentBoard.getShipY(i), opponentBoard.getShipOrientation(i));
+			opponentShips.add(ship);
+			opponentOccupancy.track(ship);
+		}
+		for (iterator.reset(opponentBoard.getHits().copyTo(fields));iterator.hasNext();)
+		{
+			int index = iterator.next();
+			opponentPlayground.setHit(opponentPlayground.getX(index), opponentPlayground.getY(index), true);
+		}
+		for (iterator.reset(opponentBoard.getShipFields().copyTo(fields));iterator.hasNext();)
+		{
+			int index = iterator.next();
+			opponentPlayground.setIsShip(opponentPlayground.getX(index), opponentPlayground.getY(index), true);
+		}
+		opponentFog.restore(opponentBoard);
+		ImmutableCellSet invalidFields = ImmutableCellSet.copyOf(ownOccupancy.getConflicts(fields));
+		this.snapshot = new GameSnapshot(snapshot.getVersion(), ruleset, placementPhase, ownTurn, turnDecided, snapshot.getOwnBoard(), opponentBoard, invalidFields, ImmutableCellSet.copyOf(opponentFog.getKnownEmpty(fields)));
+	}
+
+	/**
+	 * Returns the latest snapshot of the game. This does not lock.
+	 * 
+	 * @return the snapshot
+	 */
+	public GameSnapshot getSnapshot()
+	{
+		return snapshot;
+	}
+
+	/**
+	 * Publishes a new snapshot based on the latest one. The known empty fields
+	 * are read from the inference if the opponents board changed.
+	 * 
+	 * @param ownBoard
+	 *           the own board
+	 * @param opponentBoard
+	 *           the opponents board
+	 * @param invalidFieldsChanged
+	 *           <code>true</code> if the invalid fields have to be read from
+	 *           the grid, otherwise they are shared with the latest snapshot
+	 */
+	private void publish(BoardSnapshot ownBoard, BoardSnapshot opponentBoard, boolean invalidFieldsChanged)
+	{
+		GameSnapshot latest = snapshot;
+		ImmutableCellSet invalidFields = latest.getInvalidFields();
+		if (invalidFieldsChanged)
+			invalidFields = ImmutableCellSet.copyOf(ownOccupancy.getConflicts(fields));
+		ImmutableCellSet knownEmptyFields = latest.getKnownEmptyFields();
+		if (opponentBoard != latest.getOpponentBoard())
+			knownEmptyFields = ImmutableCellSet.copyOf(opponentFog.getKnownEmpty(fields));
+		snapshot = new GameSnapshot(latest.getVersion() + 1, ruleset, placementPhase, ownTurn, turnDecided, ownBoard, opponentBoard, invalidFields, knownEmptyFields);
+	}
+
+	/**
+	 * Returns the ruleset of the game
+	 * 
+	 * @return the ruleset
+	 */
+	public Ruleset getRuleset()
+	{
+		return ruleset;
+	}
+
+	/**
+	 * Returns the players ships
+	 * 
+	 * @return the players ships
+	 */
+	public List<Ship> getOwnShips()
+	{
+		return ownShips;
+	}
+
+	/**
+	 * Moves one of the players ships. Pass a negative position to take the ship
+	 * from the playground.
+	 * 
+	 * @param index
+	 *           the index of the ship in the list of the players ships
+	 * @param x
+	 *           the new x position
+	 * @param y
+	 *           the new y position
+	 * @param orientation
+	 *           the new orientation
+	 * @return <code>true</code> if the ship was moved, <code>false</code> if
+	 *         the game is not in the placement phase
+	 */
+	public synchronized boolean moveShip(int index, int x, int y, Orientation orientation)
+	{
+		if (!placementPhase)
+			return false;
+		Ship ship = ownShips.get(index);
+		history.record(index, ship.getX(), ship.getY(), ship.getOrientation(), x, y, orientation, false);
+		ship.setOrientation(orientation);
+		ship.setPos(x, y);
+		GameSnapshot latest = snapshot;
+		publish(latest.getOwnBoard().withShip(index, ship), latest.getOpponentBoard(), true);
+		return true;
+	}
+
+	/**
+	 * Returns the opponents ships
+	 * 
+	 * @return the opponents ships
+	 */
+	public List<Ship> getOpponentShips()
+	{
+		return opponentShips;
+	}
+
+	/**
+	 * Returns the size of the playgrounds
+	 * 
+	 * @return the size
+	 */
+	public int getSize()
+	{
+		return size;
+	}
+
+	/**
+	 * Returns the own playground
+	 * 
+	 * @return the own playground
+	 */
+	public Playground getOwnPlayground()
+	{
+		return ownPlayground;
+	}
+
+	/**
+	 * Returns the opponents playground
+	 * 
+	 * @return the opponents playground
+	 */
+	public Playground getOpponentPlayground()
+	{
+		return opponentPlayground;
+	}
+
+	/**
+	 * Returns whether all ships are placed on the playground
+	 * 
+	 * @param ships
+	 *           the ships
+	 * @return <code>true</code> is all ships are placed on the playground
+	 */
+	public boolean areAllShipsPlaced(Collection<Ship> ships)
+	{
+		for (Ship ship : ships)
+		{
+			if (!CellRects.isWithin(ship.getRect(), size))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Writes the fields on which the specified ships overlap, or touch if the
+	 * ruleset forbids it, to the specified set
+	 * 
+	 * @param ships
+	 *           the ships
+	 * @param result
+	 *           the set to write the fields to
+	 * @return the passed set
+	 */
+	public CellSet getInvalidFields(Collection<Ship> ships, CellSet result)
+	{
+		return getOccupancyGrid(ships).getConflicts(result);
+	}
+
+	/**
+	 * Returns whether there are fields on which the specified ships overlap, or
+	 * touch if the ruleset forbids it
+	 * 
+	 * @param ships
+	 *           the ships
+	 * @return <code>true</code> if the ships overlap
+	 */
+	public boolean hasInvalidFields(Collection<Ship> ships)
+	{
+		return getOccupancyGrid(ships).hasConflicts();
+	}
+
+	/**
+	 * Returns the occupancy grid for the specified ships. The maintained grids
+	 * are used for the own and the opponents ships, for any other collection a
+	 * new grid is created.
+	 * 
+	 * @param ships
+	 *           the ships
+	 * @return the occupancy grid
+	 */
+	private OccupancyGrid getOccupancyGrid(Collection<Ship> ships)
+	{
+		if (ships == ownShips)
+			return ownOccupancy;
+		if (ships == opponentShips)
+			return opponentOccupancy;
+		return new OccupancyGrid(ships, size, ruleset.isNoTouch());
+	}
+
+	/**
+	 * Returns whether the own ships are placed correctly
+	 * 
+	 * @return <code>true</code> if all ships are placed and do not overlap or
+	 *         touch illegally
+	 */
+	public synchronized boolean isPlacementValid()
+	{
+		return areAllShipsPlaced(ownShips) && !ownOccupancy.hasConflicts();
+	}
+
+	/**
+	 * Places the own ships randomly on the playground
+	 * 
+	 * @return <code>true</code> if the ships were placed, <code>false</code> if
+	 *         the game is not in the placement phase or the ships do not fit on
+	 *         the playground
+	 */
+	public synchronized boolean placeShipsRandomly()
+	{
+		if (!placementPhase)
+			return false;
+		if (random == null)
+			random = new Random();
+		if (fleetGenerator == null)
+			fleetGenerator = new FleetGenerator(ruleset, random);
+		if (!fleetGenerator.place(ownShips))
+			return false;
+		publishFleet();
+		return true;
+	}
+
+	/**
+	 * Places the own ships like a randomly chosen fleet of the specified
+	 * library, e.g. a layout which is hard to find for computer players. No
+	 * search is done, so this is as fast as placing the ships randomly.
+	 * 
+	 * @param library
+	 *           the library
+	 * @return <code>true</code> if the ships were placed, <code>false</code> if
+	 *         the game is not in the placement phase or the library is empty
+	 * @throws IllegalArgumentException
+	 *            if the fleets of the library do not fit the ruleset of the
+	 *            game
+	 */
+	public synchronized boolean placeShipsFromLibrary(FleetLibrary library) throws IllegalArgumentException
+	{
+		Ruleset libraryRuleset = library.getRuleset();
+		if (libraryRuleset.getSize() != size || libraryRuleset.isNoTouch() != ruleset.isNoTouch())
+			throw new IllegalArgumentException("The fleet library does not belong to ruleset " + ruleset);
+		if (!placementPhase || library.getFleetCount() == 0)
+			return false;
+		if (random == null)
+			random = new Random();
+		library.placeRandomFleet(ownShips, random);
+		publishFleet();
+		return true;
+	}
+
+	/**
+	 * Records the movement of all own ships as a single step in the history
+	 * and publishes the new positions
+	 */
+	private void publishFleet()
+	{
+		GameSnapshot latest = snapshot;
+		BoardSnapshot oldBoard = latest.getOwnBoard();
+		for (int i = 0;i < ownShips.size();i++)
+		{
+			Ship ship = ownShips.get(i);
+			history.record(i, oldBoard.getShipX(i), oldBoard.getShipY(i), oldBoard.getShipOrientation(i), ship.getX(), ship.getY(), ship.getOrientation(), i > 0);
+		}
+		publish(oldBoard.withShips(ownShips), latest.getOpponentBoard(), true);
+	}
+
+	/**
+	 * Undoes the latest movement of the own ships in the placement phase. A
+	 * random placement of the fleet is undone as a whole.
+	 * 
+	 * @return <code>true</code> if a movement was undone, <code>false</code> if
+	 *         the game is not in the placement phase or there is nothing to
+	 *         undo
+	 */
+	public synchronized boolean undoPlacement()
+	{
+		if (!placementPhase || !history.canUndo())
+			return false;
+		long entry;
+		do
+		{
+			entry = history.undo();
+			Ship ship = ownShips.get(PlacementHistory.getShip(entry));
+			ship.setOrientation(PlacementHistory.getOldOrientation(entry));
+			ship.setPos(history.getOldX(entry), history.getOldY(entry));
+		}
+		while (PlacementHistory.isJoined(entry));
+		GameSnapshot latest = snapshot;
+		publish(latest.getOwnBoard().withShips(ownShips), latest.getOpponentBoard(), true);
+		return true;
+	}
+
+	/**
+	 * Redoes the latest undone movement of the own ships in the placement
+	 * phase
+	 * 
+	 * @return <code>true</code> if a movement was redone, <code>false</code> if
+	 *         the game is not in the placement phase or there is nothing to
+	 *         redo
+	 */
+	public synchronized boolean redoPlacement()
+	{
+		if (!placementPhase || !history.canRedo())
+			return false;
+		do
+		{
+			long entry = history.redo();
+			Ship ship = ownShips.get(PlacementHistory.getShip(entry));
+			ship.setOrientation(PlacementHistory.getNewOrientation(entry));
+			ship.setPos(history.getNewX(entry), history.getNewY(entry));
+		}
+		while (history.isNextJoined());
+		GameSnapshot latest = snapshot;
+		publish(latest.getOwnBoard().withShips(ownShips), latest.getOpponentBoard(), true);
+		return true;
+	}
+
+	/**
+	 * Confirms the current placement of the ships and ends the placement phase.
+	 * 
+	 * @return <code>true</code> if the ships are placed correctly and the ships
+	 *         were successfully confirmed.
+	 */
+	public synchronized boolean confirmShips()
+	{
+		if (!placementPhase || !isPlacementValid())
+			return false;
+		for (Ship ship : ownShips)
+		{
+			ownPlayground.placeShip(ship);
+		}
+		placementPhase = false;
+		history.clear();
+		GameSnapshot latest = snapshot;
+		publish(latest.getOwnBoard().withShipFields(ImmutableCellSet.copyOf(ownPlayground.getShipFields(fields))), latest.getOpponentBoard(), false);
+		return true;
+	}
+
+	/**
+	 * Resolves a shot of the opponent on the own playground
+	 * 
+	 * @param x
+	 *           the x position
+	 * @param y
+	 *           the y position
+	 * @return the result of the shot
+	 */
+	public synchronized ShotResult receiveShot(int x, int y)
+	{
+		ShotResult result = ownPlayground.shoot(x, y);
+		if (result == ShotResult.ALREADY_HIT)
+			return result;
+		Ship ship = ownPlayground.getShip(x, y);
+		int shipIndex = ship == null ? -1 : ownShips.indexOf(ship);
+		int destroyedMask = ship == null ? 0 : ship.getDestroyedMask();
+		turnDecided = true;
+		GameSnapshot latest = snapshot;
+		publish(latest.getOwnBoard().withShot(ownPlayground.getIndex(x, y), shipIndex, destroyedMask), latest.getOpponentBoard(), false);
+		return result;
+	}
+
+	/**
+	 * Records the result of an own shot on the opponents playground
+	 * 
+	 * @param x
+	 *           the x position
+	 * @param y
+	 *           the y position
+	 * @param result
+	 *           the result reported by the opponent
+	 */
+	public synchronized void receiveShotResult(int x, int y, ShotResult result)
+	{
+		if (result == ShotResult.ALREADY_HIT || opponentPlayground.isHit(x, y))
+			return;
+		boolean shipHit = result != ShotResult.MISS;
+		opponentPlayground.setHit(x, y, true);
+		opponentPlayground.setIsShip(x, y, shipHit);
+		opponentFog.recordResult(x, y, result);
+		turnDecided = true;
+		GameSnapshot latest = snapshot;
+		BoardSnapshot opponentBoard = latest.getOpponentBoard().withShotResult(opponentPlayground.getIndex(x, y), shipHit);
+		ShipClass sunkClass = opponentFog.getLastSunkClass();
+		if (sunkClass != null)
+		{
+			long rect = opponentFog.getLastSunkRect();
+			Orientation orientation = CellRects.getHeight(rect) > 1 ? Orientation.VERTICAL : Orientation.HORIZONTAL;
+			Ship ship = new Ship(sunkClass, CellRects.getLeft(rect), CellRects.getTop(rect), orientation);
+			for (int i = 0;i < ship.getSize();i++)
+			{
+				ship.destroyFieldAt(i);
+			}
+			opponentShips.add(ship);
+			opponentOccupancy.track(ship);
+			opponentBoard = opponentBoard.withSunkShip(sunkClass, rect, orientation);
+		}
+		publish(latest.getOwnBoard(), opponentBoard, false);
+	}
+
+	/**
+	 * Returns whether the field at the specified position of the opponents
+	 * playground can not hold a ship
+	 * 
+	 * @param x
+	 *           the x position
+	 * @param y
+	 *           the y position
+	 * @return <code>true</code> if the field is known to be empty
+	 */
+	public boolean isKnownEmpty(int x, int y)
+	{
+		return snapshot.getKnownEmptyFields().contains(y * size + x);
+	}
+
+	/**
+	 * Returns whether all own ships are sunk
+	 * 
+	 * @return <code>true</code> if all own ships are sunk
+	 */
+	public synchronized boolean isDefeated()
+	{
+		return !placementPhase && ownPlayground.getRemainingShipFieldCount() == 0;
+	}
+
+	/**
+	 * Returns whether all ships of the opponent are sunk, so the fields of the
+	 * whole opponent fleet are known
+	 * 
+	 * @return <code>true</code> if all fields of the opponent fleet were hit
+	 */
+	public boolean isOpponentDefeated()
+	{
+		return snapshot.getOpponentBoard().getShipFields().size() == ruleset.getFleetFieldCount();
+	}
+
+	/**
+	 * Sets whether the player may shoot next. This marks the order of the
+	 * turns as decided.
+	 * 
+	 * @param ownTurn
+	 *           <code>true</code> if it is the players turn
+	 */
+	public synchronized void setOwnTurn(boolean ownTurn)
+	{
+		if (turnDecided && this.ownTurn == ownTurn)
+			return;
+		this.ownTurn = ownTurn;
+		turnDecided = true;
+		GameSnapshot latest = snapshot;
+		publish(latest.getOwnBoard(), latest.getOpponentBoard(), false);
+	}
+
+	/**
+	 * Returns whether the player may shoot next
+	 * 
+	 * @return <code>true</code> if it is the players turn
+	 */
+	public boolean isOwnTurn()
+	{
+		return snapshot.isOwnTurn();
+	}
+
+	/**
+	 * Returns whether the order of the turns was decided
+	 * 
+	 * @return <code>true</code> if the order of the turns was decided
+	 */
+	public boolean isTurnDecided()
+	{
+		return snapshot.isTurnDecided();
+	}
+
+	/**
+	 * Returns whether the game is in the placement phase
+	 * 
+	 * @return <code>true</code> if the game is in the placement phase
+	 */
+	public boolean isInPlacementPhase()
+	{
+		return placementPhase;
+	}
+}
@@ -0,0 +1,221 @@
+package me.battleship.core;
+
+/**
+ * An immutable version of the state of a {@link Game}. Every change of the
+ * game publishes a new snapshot which shares all unchanged parts with the
+ * previous one (see {@link BoardSnapshot}). Readers on any thread get a
+ * consistent view of the game without locking and can keep using a snapshot
+ * while the game goes on.
+ * 
+ * @author Manuel Vögele
+ */
+public final class GameSnapshot
+{
+	/** The number of changes of the game before this snapshot */
+	private final long version;
+
+	/** The ruleset of the game */
+	private final Ruleset ruleset;
+
+	/** Indicates whether the game is in the placement phase */
+	private final boolean placementPhase;
+
+	/** Indicates whether the player may shoot next */
+	private final boolean ownTurn;
+
+	/** Indicates whether the order of the turns was decided */
+	private final boolean turnDecided;
+
+	/** The own playground and ships */
+	private final BoardSnapshot ownBoard;
+
+	/** The opponents playground and ships */
+	private final BoardSnapshot opponentBoard;
+
+	/**
+	 * The fields on which the own ships are placed illegally (see
+	 * {@link OccupancyGrid#getConflicts(CellSet)})
+	 */
+	private final ImmutableCellSet invalidFields;
+
+	/**
+	 * The fields of the opponents playground which can not hold a ship (see
+	 * {@link FogOfWar})
+	 */
+	private final ImmutableCellSet knownEmptyFields;
+
+	/**
+	 * Initializes a new {@link GameSnapshot}
+	 * 
+	 * @param version
+	 *           the number of changes of the game before this snapshot
+	 * @param ruleset
+	 *           the ruleset of the game
+	 * @param placementPhase
+	 *           <code>true</code> if the game is in the placement phase
+	 * @param ownTurn
+	 *           <code>true</code> if the player may shoot next
+	 * @param turnDecided
+	 *           <code>true</code> if the order of the turns was decided
+	 * @param ownBoard
+	 *           the own playground and ships
+	 * @param opponentBoard
+	 *           the opponents playground and ships
+	 * @param invalidFields
+	 *           the fields on which the own ships are placed illegally
+	 * @param knownEmptyFields
+	 *           the fields of the opponents playground which can not hold a
+	 *           ship
+	 */
+	GameSnapshot(long version, Ruleset ruleset, boolean placementPhase, boolean ownTurn, boolean turnDecided, BoardSnapshot ownBoard, BoardSnapshot opponentBoard, ImmutableCellSet invalidFields, ImmutableCellSet knownEmptyFields)
+	{
+		this.version = version;
+		this.ruleset = ruleset;
+		this.placementPhase = placementPhase;
+		this.ownTurn = ownTurn;
+		this.turnDecided = turnDecided;
+		this.ownBoard = ownBoard;
+		this.opponentBoard = opponentBoard;
+		this.invalidFields = invalidFields;
+		this.knownEmptyFields = knownEmptyFields;
+	}
+
+	/**
+	 * Returns the number of changes of the game before this snapshot. A newer
+	 * snapshot of the same game has a higher version.
+	 * 
+	 * @return the version
+	 */
+	public long getVersion()
+	{
+		return version;
+	}
+
+	/**
+	 * Returns the Zobrist hash of the state of the game. It covers both boards
+	 * (see {@link BoardSnapshot#getHash()}), the phase and whose turn it is,
+	 * but not the version, so e.g. a restored game can be checked against the
+	 * state which was saved.
+	 * 
+	 * @return the hash
+	 */
+	public long getHash()
+	{
+		// The opponents board is rotated, so equal boards on both sides do not cancel out
+		long hash = ownBoard.getHash() ^ Long.rotateLeft(opponentBoard.getHash(), 32);
+		if (placementPhase)
+			hash ^= Zobrist.PLACEMENT_PHASE;
+		if (ownTurn)
+			hash ^= Zobrist.OWN_TURN;
+		return hash;
+	}
+
+	/**
+	 * Returns the ruleset of the game
+	 * 
+	 * @return the ruleset
+	 */
+	public Ruleset getRuleset()
+	{
+		return ruleset;
+	}
+
+	/**
+	 * Returns whether the game is in the placement phase
+	 * 
+	 * @return <code>true</code> if the game is in the placement phase
+	 */
+	public boolean isInPlacementPhase()
+	{
+		return placementPhase;
+	}
+
+	/**
+	 * Returns whether the player may shoot next
+	 * 
+	 * @return <code>true</code> if it is the players turn
+	 */
+	public boolean isOwnTurn()
+	{
+		return ownTurn;
+	}
+
+	/**
+	 * Returns whether the order of the turns was decided, i.e. whether
+	 * {@link #isOwnTurn()} is meaningful in the battle phase
+	 * 
+	 * @return <code>true</code> if the order of the turns was decided
+	 */
+	public boolean isTurnDecided()
+	{
+		return turnDecided;
+	}
+
+	/**
+	 * Returns the own playground and ships
+	 * 
+	 * @return the own board
+	 */
+	public BoardSnapshot getOwnBoard()
+	{
+		return ownBoard;
+	}
+
+	/**
+	 * Returns the opponents playground and ships
+	 * 
+	 * @return the opponents board
+	 */
+	public BoardSnapshot getOpponentBoard()
+	{
+		return opponentBoard;
+	}
+
+	/**
+	 * Returns the fields on which the own ships overlap, or touch if the
+	 * ruleset forbids it
+	 * 
+	 * @return the fields
+	 */
+	public ImmutableCellSet getInvalidFields()
+	{
+		return invalidFields;
+	}
+
+	/**
+	 * Returns the fields of the opponents playground which can not hold a
+	 * ship. This includes the fields on which a shot missed.
+	 * 
+	 * @return the fields
+	 */
+	public ImmutableCellSet getKnownEmptyFields()
+	{
+		return knownEmptyFields;
+	}
+
+	/**
+	 * Returns whether all own ships are placed on the playground
+	 * 
+	 * @return <code>true</code> if all ships are placed
+	 */
+	public boolean areAllShipsPlaced()
+	{
+		for (int i = 0;i < ownBoard.getShipCount();i++)
+		{
+			if (!ownBoard.isShipPlaced(i))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns whether the own ships are placed correctly
+	 * 
+	 * @return <code>true</code> if all ships are placed and do not overlap or
+	 *         touch illegally
+	 */
+	public boolean isPlacementValid()
+	{
+		return invalidFields.isEmpty() && areAllShipsPlaced();
+	}
+}
@@ -0,0 +1,835 @@
+package me.battleship.core;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import me.battleship.core.geometry.CellRects;
+
+/**
+ * Encodes the state of a match into a compact binary format and back. The
+ * format is used to persist a running match, to resynchronize it and as a
+ * fixture format, a classic game takes about 60 bytes plus the match id.
+ * <p>
+ * The format (version {@value #FORMAT_VERSION}) consists of:
+ * <ul>
+ * <li>the byte {@value #MAGIC} and the version of the format</li>
+ * <li>a byte of flags: the phase, the turn, whether the turn was decided and
+ * which boards follow</li>
+ * <li>the ruleset: <code>1</code> for {@link Ruleset#CLASSIC},
+ * <code>2</code> for {@link Ruleset#CLASSIC_NO_TOUCH} or <code>0</code>
+ * followed by its name, size, rule flags and ship classes</li>
+ * <li>the version of the snapshot</li>
+ * <li>the match id</li>
+ * <li>the own fleet in the order of {@link Ruleset#createFleet()}, one ship
+ * word per ship</li>
+ * <li>the hits on the own playground as a bit mask</li>
+ * <li>the known ships of the opponent as ship class index and ship word</li>
+ * <li>the hits on the opponents playground and the fields on which they hit a
+ * ship as bit masks</li>
+ * </ul>
+ * Numbers and string lengths are written as unsigned variable length
+ * integers (7 bits per byte, the highest bit set on all bytes but the last),
+ * strings in UTF-8. A ship word is <code>0</code> for a ship which is not on
+ * the playground and <code>(field + 1) * 2 + vertical</code> otherwise, where
+ * <code>field</code> is the index of its first field. It takes 2 bytes if all
+ * words of the playground fit into them, otherwise 4. A bit mask holds one bit
+ * per field, 8 fields per byte starting with the lowest bit. Boards without
+ * hits are left out. The fields of the own ships, the invalid fields and the
+ * known empty fields of the opponents playground are not written, they are
+ * derived from the fleets and the hits.
+ * 
+ * @author Manuel Vögele
+ */
+public class GameStateCodec
+{
+	/** The first byte of an encoded match */
+	public static final byte MAGIC = 0x42;
+
+	/** The version of the format written by this codec */
+	public static final int FORMAT_VERSION = 1;
+
+	/** The flag indicating the placement phase */
+	private static final int FLAG_PLACEMENT_PHASE = 1;
+
+	/** The flag indicating the players turn */
+	private static final int FLAG_OWN_TURN = 2;
+
+	/** The flag indicating that the hits on the own playground follow */
+	private static final int FLAG_OWN_HITS = 4;
+
+	/** The flag indicating that the hits on the opponents playground follow */
+	private static final int FLAG_OPPONENT_HITS = 8;
+
+	/** The flag indicating that the match has an id */
+	private static final int FLAG_MATCH_ID = 16;
+
+	/** The flag indicating that the order of the turns was decided */
+	private static final int FLAG_TURN_DECIDED = 32;
+
+	/** The id of a ruleset which is written in full */
+	private static final int RULESET_CUSTOM = 0;
+
+	/** The id of {@link Ruleset#CLASSIC} */
+	private static final int RULESET_CLASSIC = 1;
+
+	/** The id of {@link Ruleset#CLASSIC_NO_TOUCH} */
+	private static final int RULESET_CLASSIC_NO_TOUCH = 2;
+
+	/** The charset of strings */
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * This class should not be instantiated
+	 */
+	private GameStateCodec()
+	{
+		// Nothing to do
+	}
+
+	/**
+	 * Encodes the specified match into a new array
+	 * 
+	 * @param matchId
+	 *           the id of the match or <code>null</code>
+	 * @param snapshot
+	 *           the state of the game
+	 * @return the encoded match
+	 */
+	public static byte[] encode(String matchId, GameSnapshot snapshot)
+	{
+		byte[] matchIdBytes = matchId == null ? null : matchId.getBytes(UTF8);
+		ByteBuffer buffer = ByteBuffer.allocate(getEncodedSize(matchIdBytes, snapshot));
+		encode(matchIdBytes, snapshot, buffer);
+		return buffer.array();
+	}
+
+	/**
+	 * Encodes the specified match into the specified buffer starting at its
+	 * position
+	 * 
+	 * @param matchId
+	 *           the id of the match or <code>null</code>
+	 * @param snapshot
+	 *           the state of the game
+	 * @param out
+	 *           the buffer to write to
+	 * @throws BufferOverflowException
+	 *            if the match does not fit into the buffer
+	 */
+	public static void encode(String matchId, GameSnapshot snapshot, ByteBuffer out) throws BufferOverflowException
+	{
+		encode(matchId == null ? null : matchId.getBytes(UTF8), snapshot, out);
+	}
+
+	/**
+	 * Returns the number of bytes the specified match takes
+	 * 
+	 * @param matchId
+	 *           the id of the match or <code>null</code>
+	 * @param snapshot
+	 *           the state of the game
+	 * @return the number of bytes
+	 */
+	public static int getEncodedSize(String matchId, GameSnapshot snapshot)
+	{
+		return getEncodedSize(matchId == null ? null : matchId.getBytes(UTF8), snapshot);
+	}
+
+	/**
+	 * Encodes the specified match
+	 * 
+	 * @param matchId
+	 *           the id of the match in UTF-8 or <code>null</code>
+	 * @param snapshot
+	 *           the state of the game
+	 * @param out
+	 *           the buffer to write to
+	 * @throws BufferOverflowException
+	 *            if the match does not fit into the buffer
+	 */
+	private static void encode(byte[] matchId, GameSnapshot snapshot, ByteBuffer out) throws BufferOverflowException
+	{
+		Ruleset ruleset = snapshot.getRuleset();
+		BoardSnapshot ownBoard = snapshot.getOwnBoard();
+		BoardSnapshot opponentBoard = snapshot.getOpponentBoard();
+		int flags = getFlags(matchId, snapshot);
+		out.put(MAGIC);
+		out.put((byte) FORMAT_VERSION);
+		out.put((byte) flags);
+		putRuleset(out, ruleset);
+		putVarLong(out, snapshot.getVersion());
+		if (matchId != null)
+			putString(out, matchId);
+		boolean wideWords = hasWideShipWords(ruleset.getSize());
+		for (int i = 0;i < ownBoard.getShipCount();i++)
+		{
+			putShipWord(out, ownBoard, i, wideWords);
+		}
+		if ((flags & FLAG_OWN_HITS) != 0)
+			putBits(out, ownBoard.getHits());
+		putVarLong(out, opponentBoard.getShipCount());
+		for (int i = 0;i < opponentBoard.getShipCount();i++)
+		{
+			putVarLong(out, getShipClassIndex(ruleset, opponentBoard.getShipClass(i)));
+			putShipWord(out, opponentBoard, i, wideWords);
+		}
+		if ((flags & FLAG_OPPONENT_HITS) != 0)
+		{
+			putBits(out, opponentBoard.getHits());
+			putBits(out, opponentBoard.getShipFields());
+		}
+	}
+
+	/**
+	 * Returns the number of bytes the specified match takes
+	 * 
+	 * @param matchId
+	 *           the id of the match in UTF-8 or <code>null</code>
+	 * @param snapshot
+	 *           the state of the game
+	 * @return the number of bytes
+	 */
+	private static int getEncodedSize(byte[] matchId, GameSnapshot snapshot)
+	{
+		Ruleset ruleset = snapshot.getRuleset();
+		int flags = getFlags(matchId, snapshot);
+		int size = 3 + getRulesetSize(ruleset);
+		size += getVarLongSize(snapshot.getVersion());
+		if (matchId != null)
+			size += getStringSize(matchId.length);
+		int wordSize = hasWideShipWords(ruleset.getSize()) ? 4 : 2;
+		int maskSize = (ruleset.getFieldCount() + 7) / 8;
+		size += snapshot.getOwnBoard().getShipCount() * wordSize;
+		if ((flags & FLAG_OWN_HITS) != 0)
+			size += maskSize;
+		BoardSnapshot opponentBoard = snapshot.getOpponentBoard();
+		size += getVarLongSize(opponentBoard.getShipCount());
+		for (int i = 0;i < opponentBoard.getShipCount();i++)
+		{
+			size += getVarLongSize(getShipClassIndex(ruleset, opponentBoard.getShipClass(i))) + wordSize;
+		}
+		if ((flags & FLAG_OPPONENT_HITS) != 0)
+			size += 2 * maskSize;
+		return size;
+	}
+
+	/**
+	 * Decodes a match starting at the position of the specified buffer. The
+	 * position is moved behind the match.
+	 * 
+	 * @param in
+	 *           the buffer to read from
+	 * @return the match
+	 * @throws IllegalArgumentException
+	 *            if the buffer does not contain a valid match
+	 */
+	public static MatchState decode(ByteBuffer in) throws IllegalArgumentException
+	{
+		try
+		{
+			return decodeMatch(in);
+		}
+		catch (BufferUnderflowException e)
+		{
+			throw new IllegalArgumentException("The encoded match is truncated");
+		}
+	}
+
+	/**
+	 * Decodes a match
+	 * 
+	 * @param data
+	 *           the encoded match
+	 * @return the match
+	 * @throws IllegalArgumentException
+	 *            if the data is not a valid match
+	 */
+	public static MatchState decode(byte[] data) throws IllegalArgumentException
+	{
+		return decode(ByteBuffer.wrap(data));
+	}
+
+	/**
+	 * Decodes a match
+	 * 
+	 * @param in
+	 *           the buffer to read from
+	 * @return the match
+	 * @throws IllegalArgumentException
+	 *            if the buffer does not contain a valid match
+	 * @throws BufferUnderflowException
+	 *            if the match is truncated
+	 */
+	private static MatchState decodeMatch(ByteBuffer in) throws IllegalArgumentException, BufferUnderflowException
+	{
+		if (in.get() != MAGIC)
+			throw new IllegalArgumentException("The data is not an encoded match");
+		int version = in.get() & 0xFF;
+		if (version != FORMAT_VERSION)
+			throw new IllegalArgumentException("Unsupported format version " + version);
+		int flags = in.get() & 0xFF;
+		Ruleset ruleset = getRuleset(in);
+		long snapshotVersion = getVarLong(in);
+		String matchId = (flags & FLAG_MATCH_ID) != 0 ? getString(in) : null;
+		int size = ruleset.getSize();
+		boolean wideWords = hasWideShipWords(size);
+		boolean placementPhase = (flags & FLAG_PLACEMENT_PHASE) != 0;
+
+		List<Ship> ownShips = ruleset.createFleet();
+		for (int i = 0;i < ownShips.size();i++)
+		{
+			getShipWord(in, ownShips.get(i), size, wideWords);
+		}
+		ImmutableCellSet empty = ImmutableCellSet.empty(ruleset.getFieldCount());
+		ImmutableCellSet ownHits = (flags & FLAG_OWN_HITS) != 0 ? getBits(in, ruleset.getFieldCount()) : empty;
+
+		int opponentShipCount = getCount(in, Playground.MAX_SHIPS);
+		List<Ship> opponentShips = new ArrayList<Ship>(opponentShipCount);
+		for (int i = 0;i < opponentShipCount;i++)
+		{
+			int classIndex = getCount(in, ruleset.getShipClassCount() - 1);
+			Ship ship = new Ship(ruleset.getShipClass(classIndex), -1, -1, null);
+			getShipWord(in, ship, size, wideWords);
+			opponentShips.add(ship);
+		}
+		ImmutableCellSet opponentHits = empty;
+		ImmutableCellSet opponentShipFields = empty;
+		if ((flags & FLAG_OPPONENT_HITS) != 0)
+		{
+			opponentHits = getBits(in, ruleset.getFieldCount());
+			opponentShipFields = getBits(in, ruleset.getFieldCount());
+		}
+
+		CellSet fields = new CellSet(ruleset.getFieldCount());
+		ImmutableCellSet ownShipFields = placementPhase ? empty : ImmutableCellSet.copyOf(getShipFields(ownShips, size, fields));
+		BoardSnapshot ownBoard = createBoard(size, ownShips, ownHits, ownShipFields);
+		BoardSnapshot opponentBoard = createBoard(size, opponentShips, opponentHits, opponentShipFields);
+		ImmutableCellSet invalidFields = ImmutableCellSet.copyOf(new OccupancyGrid(ownShips, size, ruleset.isNoTouch()).getConflicts(fields));
+		FogOfWar fog = new FogOfWar(ruleset);
+		fog.restore(opponentBoard);
+		ImmutableCellSet knownEmptyFields = ImmutableCellSet.copyOf(fog.getKnownEmpty(fields));
+		GameSnapshot snapshot = new GameSnapshot(snapshotVersion, ruleset, placementPhase, (flags & FLAG_OWN_TURN) != 0, (flags & FLAG_TURN_DECIDED) != 0, ownBoard, opponentBoard, invalidFields, knownEmptyFields);
+		return new MatchState(matchId, snapshot);
+	}
+
+	/**
+	 * Returns the flags of a match
+	 * 
+	 * @param matchId
+	 *           the id of the match or <code>null</code>
+	 * @param snapshot
+	 *           the state of the game
+	 * @return the flags
+	 */
+	private static int getFlags(byte[] matchId, GameSnapshot snapshot)
+	{
+		int flags = 0;
+		if (snapshot.isInPlacementPhase())
+			flags |= FLAG_PLACEMENT_PHASE;
+		if (snapshot.isOwnTurn())
+			flags |= FLAG_OWN_TURN;
+		if (snapshot.isTurnDecided())
+			flags |= FLAG_TURN_DECIDED;
+		if (!snapshot.getOwnBoard().getHits().isEmpty())
+			flags |= FLAG_OWN_HITS;
+		BoardSnapshot opponentBoard = snapshot.getOpponentBoard();
+		if (!opponentBoard.getHits().isEmpty() || !opponentBoard.getShipFields().isEmpty())
+			flags |= FLAG_OPPONENT_HITS;
+		if (matchId != null)
+			flags |= FLAG_MATCH_ID;
+		return flags;
+	}
+
+	/**
+	 * Returns the id under which the specified ruleset is written
+	 * 
+	 * @param ruleset
+	 *           the ruleset
+	 * @return the id
+	 */
+	private static int getRulesetId(Ruleset ruleset)
+	{
+		if (ruleset == Ruleset.CLASSIC)
+			return RULESET_CLASSIC;
+		if (ruleset == Ruleset.CLASSIC_NO_TOUCH)
+			return RULESET_CLASSIC_NO_TOUCH;
+		return RULESET_CUSTOM;
+	}
+
+	/**
+	 * Writes a ruleset
+	 * 
+	 * @param out
+	 *           the buffer to write to
+	 * @param ruleset
+	 *           the ruleset
+	 */
+	static void putRuleset(ByteBuffer out, Ruleset ruleset)
+	{
+		int rulesetId = getRulesetId(ruleset);
+		out.put((byte) rulesetId);
+		if (rulesetId != RULESET_CUSTOM)
+			return;
+		putString(out, ruleset.getName().getBytes(UTF8));
+		putVarLong(out, ruleset.getSize());
+		out.put((byte) (ruleset.isNoTouch() ? 1 : 0));
+		putVarLong(out, ruleset.getShipClassCount());
+		for (int i = 0;i < ruleset.getShipClassCount();i++)
+		{
+			ShipClass shipClass = ruleset.getShipClass(i);
+			putString(out, shipClass.getName().getBytes(UTF8));
+			out.put((byte) shipClass.getLength());
+			putString(out, shipClass.getSprite().getBytes(UTF8));
+			putVarLong(out, shipClass.getCount());
+		}
+	}
+
+	/**
+	 * Returns the number of bytes a ruleset takes
+	 * 
+	 * @param ruleset
+	 *           the ruleset
+	 * @return the number of bytes
+	 */
+	static int getRulesetSize(Ruleset ruleset)
+	{
+		int size = 1;
+		if (getRulesetId(ruleset) != RULESET_CUSTOM)
+			return size;
+		size += getStringSize(ruleset.getName().getBytes(UTF8).length);
+		size += getVarLongSize(ruleset.getSize()) + 1;
+		size += getVarLongSize(ruleset.getShipClassCount());
+		for (int i = 0;i < ruleset.getShipClassCount();i++)
+		{
+			ShipClass shipClass = ruleset.getShipClass(i);
+			size += getStringSize(shipClass.getName().getBytes(UTF8).length) + 1;
+			size += getStringSize(shipClass.getSprite().getBytes(UTF8).length);
+			size += getVarLongSize(shipClass.getCount());
+		}
+		return size;
+	}
+
+	/**
+	 * Reads a ruleset
+	 * 
+	 * @param in
+	 *           the buffer to read from
+	 * @return the ruleset
+	 * @throws IllegalArgumentException
+	 *            if the ruleset is invalid
+	 */
+	static Ruleset getRuleset(ByteBuffer in) throws IllegalArgumentException
+	{
+		int id = in.get() & 0xFF;
+		switch (id)
+		{
+			case RULESET_CLASSIC:
+				return Ruleset.CLASSIC;
+			case RULESET_CLASSIC_NO_TOUCH:
+				return Ruleset.CLASSIC_NO_TOUCH;
+			case RULESET_CUSTOM:
+				String name = getString(in);
+				int size = getCount(in, Playground.MAX_SIZE);
+				boolean noTouch = in.get() != 0;
+				ShipClass[] shipClasses = new ShipClass[getCount(in, Playground.MAX_SHIPS)];
+				for (int i = 0;i < shipClasses.length;i++)
+				{
+					String className = getString(in);
+					int length = in.get() & 0xFF;
+					String sprite = getString(in);
+					shipClasses[i] = new ShipClass(className, length, sprite, getCount(in, Playground.MAX_SHIPS));
+				}
+				return new Ruleset(name, size, noTouch, shipClasses);
+			default:
+				throw new IllegalArgumentException("Unknown ruleset " + id);
+		}
+	}
+
+	/**
+	 * Returns the index of the specified class in the ruleset
+	 * 
+	 * @param ruleset
+	 *           the ruleset
+	 * @param shipClass
+	 *           the ship class
+	 * @return the index
+	 * @throws IllegalArgumentException
+	 *            if the ship class is not part of the ruleset
+	 */
+	private static int getShipClassIndex(Ruleset ruleset, ShipClass shipClass) throws IllegalArgumentException
+	{
+		for (int i = 0;i < ruleset.getShipClassCount();i++)
+		{
+			if (ruleset.getShipClass(i) == shipClass)
+				return i;
+		}
+		throw new IllegalArgumentException("Ship class " + shipClass + " is not part of ruleset " + ruleset);
+	}
+
+	/**
+	 * Returns whether ship words of a playground of the specified size need 4
+	 * bytes
+	 * 
+	 * @param size
+	 *           the size of the playground
+	 * @return <code>true</code> if a ship word takes 4 bytes
+	 */
+	static boolean hasWideShipWords(int size)
+	{
+		return (size * size + 1) * 2 > 0xFFFF;
+	}
+
+	/**
+	 * Writes the position of a ship as ship word
+	 * 
+	 * @param out
+	 *           the buffer to write to
+	 * @param board
+	 *           the board of the ship
+	 * @param index
+	 *           the index of the ship
+	 * @param wide
+	 *           <code>true</code> if the word takes 4 bytes
+	 */
+	private static void putShipWord(ByteBuffer out, BoardSnapshot board, int index, boolean wide)
+	{
+		int word = 0;
+		if (board.isShipPlaced(index))
+			word = getShipWord(board.getShipX(index), board.getShipY(index), board.getShipOrientation(index), board.getSize());
+		putShipWord(out, word, wide);
+	}
+
+	/**
+	 * Writes a ship word
+	 * 
+	 * @param out
+	 *           the buffer to write to
+	 * @param word
+	 *           the ship word
+	 * @param wide
+	 *           <code>true</code> if the word takes 4 bytes
+	 */
+	static void putShipWord(ByteBuffer out, int word, boolean wide)
+	{
+		if (wide)
+			out.putInt(word);
+		else
+			out.putShort((short) word);
+	}
+
+	/**
+	 * Returns the ship word of a ship on the playground
+	 * 
+	 * @param x
+	 *           the x position of the ship
+	 * @param y
+	 *           the y position of the ship
+	 * @param orientation
+	 *           the orientation of the ship
+	 * @param size
+	 *           the size of the playground
+	 * @return the ship word
+	 */
+	static int getShipWord(int x, int y, Orientation orientation, int size)
+	{
+		return (y * size + x + 1) << 1 | (orientation == Orientation.VERTICAL ? 1 : 0);
+	}
+
+	/**
+	 * Reads a ship word and moves the ship to its position
+	 * 
+	 * @param in
+	 *           the buffer to read from
+	 * @param ship
+	 *           the ship
+	 * @param size
+	 *           the size of the playground
+	 * @param wide
+	 *           <code>true</code> if the word takes 4 bytes
+	 * @throws IllegalArgumentException
+	 *            if the ship is not on the playground
+	 */
+	private static void getShipWord(ByteBuffer in, Ship ship, int size, boolean wide) throws IllegalArgumentException
+	{
+		applyShipWord(getShipWord(in, wide), ship, size);
+	}
+
+	/**
+	 * Reads a ship word
+	 * 
+	 * @param in
+	 *           the buffer to read from
+	 * @param wide
+	 *           <code>true</code> if the word takes 4 bytes
+	 * @return the ship word
+	 */
+	static int getShipWord(ByteBuffer in, boolean wide)
+	{
+		return wide ? in.getInt() : in.getShort() & 0xFFFF;
+	}
+
+	/**
+	 * Moves a ship to the position of a ship word. A ship word of
+	 * <code>0</code> leaves the ship where it is.
+	 * 
+	 * @param word
+	 *           the ship word
+	 * @param ship
+	 *           the ship
+	 * @param size
+	 *           the size of the playground
+	 * @throws IllegalArgumentException
+	 *            if the ship is not on the playground
+	 */
+	static void applyShipWord(int word, Ship ship, int size) throws IllegalArgumentException
+	{
+		if (word == 0)
+			return;
+		int field = (word >>> 1) - 1;
+		Orientation orientation = (word & 1) != 0 ? Orientation.VERTICAL : Orientation.HORIZONTAL;
+		int x = field % size;
+		int y = field / size;
+		if (y >= size || !CellRects.isWithin(Ship.getRectForPos(x, y, ship.getSize(), orientation), size))
+			throw new IllegalArgumentException("Ship " + ship.getShipClass().getName() + " is not on the playground");
+		ship.setOrientation(orientation);
+		ship.setPos(x, y);
+	}
+
+	/**
+	 * Writes the fields of the specified ships to the specified set
+	 * 
+	 * @param ships
+	 *           the ships
+	 * @param size
+	 *           the size of the playground
+	 * @param result
+	 *           the set to write the fields to
+	 * @return the passed set
+	 */
+	private static CellSet getShipFields(List<Ship> ships, int size, CellSet result)
+	{
+		result.clear();
+		for (int i = 0;i < ships.size();i++)
+		{
+			Ship ship = ships.get(i);
+			if (ship.getOrientation() == null || ship.getX() < 0)
+				continue;
+			int step = ship.getOrientation() == Orientation.VERTICAL ? size : 1;
+			int field = ship.getY() * size + ship.getX();
+			for (int j = 0;j < ship.getSize();j++)
+			{
+				result.add(field + j * step);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Creates a board with the specified ships, the damage of the ships is
+	 * derived from the hits
+	 * 
+	 * @param size
+	 *           the size of the playground
+	 * @param ships
+	 *           the ships
+	 * @param hits
+	 *           the fields which were hit
+	 * @param shipFields
+	 *           the fields on which ships are placed
+	 * @return the board
+	 */
+	private static BoardSnapshot createBoard(int size, List<Ship> ships, ImmutableCellSet hits, ImmutableCellSet shipFields)
+	{
+		ShipClass[] shipClasses = new ShipClass[ships.size()];
+		long[] shipRects = new long[shipClasses.length];
+		Orientation[] orientations = new Orientation[shipClasses.length];
+		int[] damage = new int[shipClasses.length];
+		for (int i = 0;i < shipClasses.length;i++)
+		{
+			Ship ship = ships.get(i);
+			shipClasses[i] = ship.getShipClass();
+			shipRects[i] = ship.getRect();
+			orientations[i] = ship.getOrientation();
+			if (ship.getOrientation() == null || ship.getX() < 0)
+				continue;
+			int step = ship.getOrientation() == Orientation.VERTICAL ? size : 1;
+			int field = ship.getY() * size + ship.getX();
+			for (int j = 0;j < ship.getSize();j++)
+			{
+				if (hits.contains(field + j * step))
+					damage[i] |= 1 << j;
+			}
+		}
+		return new BoardSnapshot(size, shipClasses, shipRects, orientations, damage, hits, shipFields);
+	}
+
+	/**
+	 * Writes a set as bit mask
+	 * 
+	 * @param out
+	 *           the buffer to write to
+	 * @param set
+	 *           the set
+	 */
+	private static void putBits(ByteBuffer out, ImmutableCellSet set)
+	{
+		int byteCount = (set.getCapacity() + 7) / 8;
+		for (int i = 0;i < byteCount;i++)
+		{
+			out.put((byte) (set.getWord(i >>> 3) >>> ((i & 7) << 3)));
+		}
+	}
+
+	/**
+	 * Reads a bit mask
+	 * 
+	 * @param in
+	 *           the buffer to read from
+	 * @param capacity
+	 *           the number of fields of the playground
+	 * @return the set of the fields in the mask
+	 * @throws IllegalArgumentException
+	 *            if the mask contains fields outside of the playground
+	 */
+	private static ImmutableCellSet getBits(ByteBuffer in, int capacity) throws IllegalArgumentException
+	{
+		CellSet set = new CellSet(capacity);
+		int byteCount = (capacity + 7) / 8;
+		for (int i = 0;i < byteCount;i++)
+		{
+			int bits = in.get() & 0xFF;
+			while (bits != 0)
+			{
+				int index = (i << 3) + Integer.numberOfTrailingZeros(bits);
+				if (index >= capacity)
+					throw new IllegalArgumentException("Field " + index + " is not on the playground");
+				set.add(index);
+				bits &= bits - 1;
+			}
+		}
+		return ImmutableCellSet.copyOf(set);
+	}
+
+	/**
+	 * Writes a string
+	 * 
+	 * @param out
+	 *           the buffer to write to
+	 * @param bytes
+	 *           the string in UTF-8
+	 */
+	private static void putString(ByteBuffer out, byte[] bytes)
+	{
+		putVarLong(out, bytes.length);
+		out.put(bytes);
+	}
+
+	/**
+	 * Reads a string
+	 * 
+	 * @param in
+	 *           the buffer to read from
+	 * @return the string
+	 * @throws IllegalArgumentException
+	 *            if the length of the string is invalid
+	 */
+	private static String getString(ByteBuffer in) throws IllegalArgumentException
+	{
+		byte[] bytes = new byte[getCount(in, in.remaining())];
+		in.get(bytes);
+		return new String(bytes, UTF8);
+	}
+
+	/**
+	 * Returns the number of bytes a string takes
+	 * 
+	 * @param length
+	 *           the number of bytes of the string in UTF-8
+	 * @return the number of bytes
+	 */
+	private static int getStringSize(int length)
+	{
+		return getVarLongSize(length) + length;
+	}
+
+	/**
+	 * Writes an unsigned variable length integer
+	 * 
+	 * @param out
+	 *           the buffer to write to
+	 * @param value
+	 *           the value, must not be negative
+	 */
+	static void putVarLong(ByteBuffer out, long value)
+	{
+		while ((value & ~0x7FL) != 0)
+		{
+			out.put((byte) (value & 0x7F | 0x80));
+			value >>>= 7;
+		}
+		out.put((byte) value);
+	}
+
+	/**
+	 * Reads an unsigned variable length integer
+	 * 
+	 * @param in
+	 *           the buffer to read from
+	 * @return the value
+	 * @throws IllegalArgumentException
+	 *            if the value takes more than 63 bits
+	 */
+	static long getVarLong(ByteBuffer in) throws IllegalArgumentException
+	{
+		long value = 0;
+		for (int shift = 0;shift < 63;shift += 7)
+		{
+			int b = in.get();
+			value |= (long) (b & 0x7F) << shift;
+			if (b >= 0)
+				return value;
+		}
+		throw new IllegalArgumentException("Invalid number");
+	}
+
+	/**
+	 * Reads an unsigned variable length integer which is a count
+	 * 
+	 * @param in
+	 *           the buffer to read from
+	 * @param max
+	 *           the highest valid value
+	 * @return the value
+	 * @throws IllegalArgumentException
+	 *            if the value is greater than max
+	 */
+	static int getCount(ByteBuffer in, int max) throws IllegalArgumentException
+	{
+		long value = getVarLong(in);
+		if (value > max)
+			throw new IllegalArgumentException("Invalid count " + value);
+		return (int) value;
+	}
+
+	/**
+	 * Returns the number of bytes an unsigned variable length integer takes
+	 * 
+	 * @param value
+	 *           the value
+	 * @return the number of bytes
+	 */
+	static int getVarLongSize(long value)
+	{
+		int size = 1;
+		while ((value & ~0x7FL) != 0)
+		{
+			size++;
+			value >>>= 7;
+		}
+		return size;
+	}
+}
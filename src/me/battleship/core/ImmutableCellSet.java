@@ -0,0 +1,380 @@
+package me.battleship.core;
+
+/**
+ * An immutable set of fields of a {@link Playground}. Every field is
+ * identified by its index (see {@link Playground#getIndex(int, int)}).
+ * <p>
+ * The bits of the set are split into chunks of {@link #CHUNK_FIELDS} fields.
+ * Adding or removing a field creates a new set which shares all chunks but the
+ * modified one with the original set, so a new version of a set is cheap even
+ * for large playgrounds. Chunks without any field are not allocated at all.
+ * 
+ * @author Manuel Vögele
+ */
+public final class ImmutableCellSet
+{
+	/** The number of words per chunk as a power of two */
+	private static final int CHUNK_SHIFT = 4;
+
+	/** The number of words per chunk */
+	private static final int CHUNK_WORDS = 1 << CHUNK_SHIFT;
+
+	/** The number of fields per chunk */
+	public static final int CHUNK_FIELDS = CHUNK_WORDS * 64;
+
+	/** The number of fields this set can hold */
+	private final int capacity;
+
+	/** The chunks of the set, <code>null</code> for chunks without any field */
+	private final long[][] chunks;
+
+	/** The number of fields in this set */
+	private final int size;
+
+	/**
+	 * Initializes a new {@link ImmutableCellSet}
+	 * 
+	 * @param capacity
+	 *           the number of fields the set can hold
+	 * @param chunks
+	 *           the chunks, the array is not copied
+	 * @param size
+	 *           the number of fields in the chunks
+	 */
+	private ImmutableCellSet(int capacity, long[][] chunks, int size)
+	{
+		this.capacity = capacity;
+		this.chunks = chunks;
+		this.size = size;
+	}
+
+	/**
+	 * Returns an empty set
+	 * 
+	 * @param capacity
+	 *           the number of fields the set can hold
+	 * @return the empty set
+	 */
+	public static ImmutableCellSet empty(int capacity)
+	{
+		if (capacity < 0)
+			throw new IllegalArgumentException("capacity may not be negative");
+		return new ImmutableCellSet(capacity, new long[(capacity + CHUNK_FIELDS - 1) / CHUNK_FIELDS][], 0);
+	}
+
+	/**
+	 * Returns a set containing the same fields as the specified set
+	 * 
+	 * @param set
+	 *           the set to copy
+	 * @return the immutable set
+	 */
+	public static ImmutableCellSet copyOf(CellSet set)
+	{
+		int capacity = set.getCapacity();
+		long[][] chunks = new long[(capacity + CHUNK_FIELDS - 1) / CHUNK_FIELDS][];
+		if (set.isSparse())
+		{
+			for (int slot = 0;slot < set.getSlotCount();slot++)
+			{
+				int index = set.getSlot(slot);
+				if (index < 0)
+					continue;
+				long[] chunk = chunks[index / CHUNK_FIELDS];
+				if (chunk == null)
+					chunk = chunks[index / CHUNK_FIELDS] = new long[CHUNK_WORDS];
+				chunk[(index >>> 6) & (CHUNK_WORDS - 1)] |= 1L << index;
+			}
+			return new ImmutableCellSet(capacity, chunks, set.size());
+		}
+		int size = 0;
+		for (int w = 0;w < set.getWordCount();w++)
+		{
+			long word = set.getWord(w);
+			if (word == 0)
+				continue;
+			long[] chunk = chunks[w >>> CHUNK_SHIFT];
+			if (chunk == null)
+				chunk = chunks[w >>> CHUNK_SHIFT] = new long[CHUNK_WORDS];
+			chunk[w & (CHUNK_WORDS - 1)] = word;
+			size += Long.bitCount(word);
+		}
+		return new ImmutableCellSet(capacity, chunks, size);
+	}
+
+	/**
+	 * Returns the number of fields this set can hold
+	 * 
+	 * @return the capacity
+	 */
+	public int getCapacity()
+	{
+		return capacity;
+	}
+
+	/**
+	 * Returns the number of fields in this set
+	 * 
+	 * @return the number of fields
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Returns whether this set is empty
+	 * 
+	 * @return <code>true</code> if the set contains no fields
+	 */
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	/**
+	 * Returns whether the field with the specified index is in this set
+	 * 
+	 * @param index
+	 *           the index of the field
+	 * @return <code>true</code> if the field is in this set
+	 */
+	public boolean contains(int index)
+	{
+		long[] chunk = chunks[index / CHUNK_FIELDS];
+		return chunk != null && (chunk[(index >>> 6) & (CHUNK_WORDS - 1)] & (1L << index)) != 0;
+	}
+
+	/**
+	 * Returns the word with the specified index. Bit <i>i</i> of word
+	 * <i>w</i> is set if the field <code>w * 64 + i</code> is in this set.
+	 * 
+	 * @param index
+	 *           the index of the word
+	 * @return the word
+	 */
+	long getWord(int index)
+	{
+		long[] chunk = chunks[index >>> CHUNK_SHIFT];
+		return chunk == null ? 0 : chunk[index & (CHUNK_WORDS - 1)];
+	}
+
+	/**
+	 * Returns a set containing the fields of this set and the field with the
+	 * specified index
+	 * 
+	 * @param index
+	 *           the index of the field
+	 * @return the new set or this set if it already contains the field
+	 */
+	public ImmutableCellSet with(int index)
+	{
+		if (contains(index))
+			return this;
+		return update(index, true);
+	}
+
+	/**
+	 * Returns a set containing the fields of this set except the field with the
+	 * specified index
+	 * 
+	 * @param index
+	 *           the index of the field
+	 * @return the new set or this set if it does not contain the field
+	 */
+	public ImmutableCellSet without(int index)
+	{
+		if (!contains(index))
+			return this;
+		return update(index, false);
+	}
+
+	/**
+	 * Creates a copy of this set in which the field with the specified index is
+	 * added or removed. Only the chunk of the field is copied.
+	 * 
+	 * @param index
+	 *           the index of the field
+	 * @param value
+	 *           <code>true</code> to add the field, <code>false</code> to remove
+	 *           it
+	 * @return the new set
+	 */
+	private ImmutableCellSet update(int index, boolean value)
+	{
+		long[][] newChunks = chunks.clone();
+		int chunkIndex = index / CHUNK_FIELDS;
+		long[] chunk = chunks[chunkIndex] == null ? new long[CHUNK_WORDS] : chunks[chunkIndex].clone();
+		if (value)
+			chunk[(index >>> 6) & (CHUNK_WORDS - 1)] |= 1L << index;
+		else
+			chunk[(index >>> 6) & (CHUNK_WORDS - 1)] &= ~(1L << index);
+		newChunks[chunkIndex] = chunk;
+		return new ImmutableCellSet(capacity, newChunks, value ? size + 1 : size - 1);
+	}
+
+	/**
+	 * Replaces the content of the specified set with the content of this set
+	 * 
+	 * @param result
+	 *           the set to write the fields to
+	 * @return the passed set
+	 * @throws IllegalArgumentException
+	 *            if the capacity of the set does not match
+	 */
+	public CellSet copyTo(CellSet result) throws IllegalArgumentException
+	{
+		return write(null, false, result);
+	}
+
+	/**
+	 * Replaces the content of the specified set with the fields which are in
+	 * this set and in the other set
+	 * 
+	 * @param set
+	 *           the other set
+	 * @param result
+	 *           the set to write the fields to
+	 * @return the passed set
+	 * @throws IllegalArgumentException
+	 *            if the capacities of the sets do not match
+	 */
+	public CellSet copyIntersectionTo(ImmutableCellSet set, CellSet result) throws IllegalArgumentException
+	{
+		return write(set, true, result);
+	}
+
+	/**
+	 * Replaces the content of the specified set with the fields which are in
+	 * this set but not in the other set
+	 * 
+	 * @param set
+	 *           the other set
+	 * @param result
+	 *           the set to write the fields to
+	 * @return the passed set
+	 * @throws IllegalArgumentException
+	 *            if the capacities of the sets do not match
+	 */
+	public CellSet copyDifferenceTo(ImmutableCellSet set, CellSet result) throws IllegalArgumentException
+	{
+		return write(set, false, result);
+	}
+
+	/**
+	 * Replaces the content of the specified set with the fields of this set
+	 * filtered by the other set
+	 * 
+	 * @param set
+	 *           the other set or <code>null</code> to write all fields
+	 * @param retain
+	 *           <code>true</code> to keep only the fields in the other set,
+	 *           <code>false</code> to keep only the fields not in the other set
+	 * @param result
+	 *           the set to write the fields to
+	 * @return the passed set
+	 * @throws IllegalArgumentException
+	 *            if the capacities of the sets do not match
+	 */
+	private CellSet write(ImmutableCellSet set, boolean retain, CellSet result) throws IllegalArgumentException
+	{
+		if (result.getCapacity() != capacity || (set != null && set.capacity != capacity))
+			throw new IllegalArgumentException("Capacities do not match capacity " + capacity);
+		result.clear();
+		boolean sparse = result.isSparse();
+		for (int c = 0;c < chunks.length;c++)
+		{
+			long[] chunk = chunks[c];
+			if (chunk == null)
+				continue;
+			long[] other = set == null ? null : set.chunks[c];
+			if (other == null && retain)
+				continue;
+			for (int i = 0;i < CHUNK_WORDS;i++)
+			{
+				long word = chunk[i];
+				if (other != null)
+					word &= retain ? other[i] : ~other[i];
+				int wordIndex = (c << CHUNK_SHIFT) + i;
+				if (!sparse)
+				{
+					if (word != 0)
+						result.setWordBits(wordIndex, word);
+					continue;
+				}
+				while (word != 0)
+				{
+					result.add((wordIndex << 6) + Long.numberOfTrailingZeros(word));
+					word &= word - 1;
+				}
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object o)
+	{
+		if (o == this)
+			return true;
+		if (!(o instanceof ImmutableCellSet))
+			return false;
+		ImmutableCellSet set = (ImmutableCellSet) o;
+		if (set.capacity != capacity || set.size != size)
+			return false;
+		for (int c = 0;c < chunks.length;c++)
+		{
+			long[] chunk = chunks[c];
+			long[] other = set.chunks[c];
+			if (chunk == other)
+				continue;
+			for (int i = 0;i < CHUNK_WORDS;i++)
+			{
+				if ((chunk == null ? 0 : chunk[i]) != (other == null ? 0 : other[i]))
+					return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public int hashCode()
+	{
+		// Words without fields must not contribute, they may be allocated or not
+		long hash = capacity;
+		for (int c = 0;c < chunks.length;c++)
+		{
+			if (chunks[c] == null)
+				continue;
+			for (int i = 0;i < CHUNK_WORDS;i++)
+			{
+				hash += chunks[c][i] * (2 * ((c << CHUNK_SHIFT) + i) + 1);
+			}
+		}
+		return (int) (hash ^ (hash >>> 32));
+	}
+
+	@Override
+	public String toString()
+	{
+		StringBuilder builder = new StringBuilder();
+		builder.append('[');
+		for (int c = 0;c < chunks.length;c++)
+		{
+			if (chunks[c] == null)
+				continue;
+			for (int i = 0;i < CHUNK_WORDS;i++)
+			{
+				long word = chunks[c][i];
+				while (word != 0)
+				{
+					if (builder.length() > 1)
+						builder.append(", ");
+					builder.append((((c << CHUNK_SHIFT) + i) << 6) + Long.numberOfTrailingZeros(word));
+					word &= word - 1;
+				}
+			}
+		}
+		return builder.append(']').toString();
+	}
+}
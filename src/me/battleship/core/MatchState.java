@@ -0,0 +1,52 @@
+package me.battleship.core;
+
+/**
+ * The complete state of a match: its id and a snapshot of the game. This is
+ * what {@link GameStateCodec} encodes and decodes.
+ * 
+ * @author Manuel Vögele
+ */
+public final class MatchState
+{
+	/** The id of the match */
+	private final String matchId;
+
+	/** The state of the game */
+	private final GameSnapshot snapshot;
+
+	/**
+	 * Initializes a new {@link MatchState}
+	 * 
+	 * @param matchId
+	 *           the id of the match, may be <code>null</code>
+	 * @param snapshot
+	 *           the state of the game
+	 */
+	public MatchState(String matchId, GameSnapshot snapshot)
+	{
+		if (snapshot == null)
+			throw new NullPointerException("snapshot may not be null");
+		this.matchId = matchId;
+		this.snapshot = snapshot;
+	}
+
+	/**
+	 * Returns the id of the match
+	 * 
+	 * @return the id or <code>null</code> if the match has no id
+	 */
+	public String getMatchId()
+	{
+		return matchId;
+	}
+
+	/**
+	 * Returns the state of the game
+	 * 
+	 * @return the snapshot
+	 */
+	public GameSnapshot getSnapshot()
+	{
+		return snapshot;
+	}
+}
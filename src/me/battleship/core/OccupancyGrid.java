@@ -0,0 +1,289 @@
+package me.battleship.core;
+
+import java.util.Collection;
+
+import me.battleship.core.geometry.CellRects;
+
+/**
+ * Counts how many ships occupy each field of a {@link Playground}. The grid is
+ * updated incrementally whenever a tracked ship is moved or rotated, so the
+ * fields on which ships overlap can be read without looking at the ships.
+ * <p>
+ * If ships may not touch each other, the grid additionally counts for every
+ * field how many ships cover it after growing them by one field in every
+ * direction. A field of a ship is a conflict if the grown area of another ship
+ * covers it, so touching ships are reported like overlapping ones.
+ * 
+ * @author Manuel Vögele
+ */
+public class OccupancyGrid
+{
+	/** The size of the playground */
+	private final int size;
+
+	/** Indicates whether ships may not touch each other */
+	private final boolean noTouch;
+
+	/** The number of ships on each field indexed by the field index */
+	private final CellByteMap counts;
+
+	/**
+	 * The number of ships grown by one field covering each field indexed by the
+	 * field index or <code>null</code> if ships may touch each other
+	 */
+	private final CellByteMap haloCounts;
+
+	/** The fields on which the ships are placed illegally */
+	private final CellSet conflicts;
+
+	/**
+	 * Initializes a new empty {@link OccupancyGrid} for a playground with the
+	 * default size
+	 */
+	public OccupancyGrid()
+	{
+		this(Playground.SIZE);
+	}
+
+	/**
+	 * Initializes a new empty {@link OccupancyGrid}
+	 * 
+	 * @param size
+	 *           the size of the playground
+	 */
+	public OccupancyGrid(int size)
+	{
+		this(size, false);
+	}
+
+	/**
+	 * Initializes a new empty {@link OccupancyGrid}
+	 * 
+	 * @param size
+	 *           the size of the playground
+	 * @param noTouch
+	 *           <code>true</code> if ships may not touch each other, not even
+	 *           diagonally
+	 */
+	public OccupancyGrid(int size, boolean noTouch)
+	{
+		this.size = size;
+		this.noTouch = noTouch;
+		counts = new CellByteMap(size * size);
+		haloCounts = noTouch ? new CellByteMap(size * size) : null;
+		conflicts = new CellSet(size * size);
+	}
+
+	/**
+	 * Initializes a new {@link OccupancyGrid} containing the current positions
+	 * of the specified ships. The ships are not tracked, later movements are not
+	 * reflected by the grid.
+	 * 
+	 * @param ships
+	 *           the ships
+	 * @param size
+	 *           the size of the playground
+	 */
+	public OccupancyGrid(Collection<Ship> ships, int size)
+	{
+		this(ships, size, false);
+	}
+
+	/**
+	 * Initializes a new {@link OccupancyGrid} containing the current positions
+	 * of the specified ships. The ships are not tracked, later movements are not
+	 * reflected by the grid.
+	 * 
+	 * @param ships
+	 *           the ships
+	 * @param size
+	 *           the size of the playground
+	 * @param noTouch
+	 *           <code>true</code> if ships may not touch each other, not even
+	 *           diagonally
+	 */
+	public OccupancyGrid(Collection<Ship> ships, int size, boolean noTouch)
+	{
+		this(size, noTouch);
+		for (Ship ship : ships)
+		{
+			add(ship);
+		}
+	}
+
+	/**
+	 * Adds the ship to the grid and keeps the grid up to date when the ship is
+	 * moved or rotated
+	 * 
+	 * @param ship
+	 *           the ship
+	 */
+	public void track(Ship ship)
+	{
+		ship.setOccupancyGrid(this);
+		add(ship);
+	}
+
+	/**
+	 * Removes the ship from the grid and stops tracking its movements
+	 * 
+	 * @param ship
+	 *           the ship
+	 */
+	public void untrack(Ship ship)
+	{
+		remove(ship);
+		ship.setOccupancyGrid(null);
+	}
+
+	/**
+	 * Adds the fields covered by the ship at its current position
+	 * 
+	 * @param ship
+	 *           the ship
+	 */
+	void add(Ship ship)
+	{
+		update(ship, 1);
+	}
+
+	/**
+	 * Removes the fields covered by the ship at its current position
+	 * 
+	 * @param ship
+	 *           the ship
+	 */
+	void remove(Ship ship)
+	{
+		update(ship, -1);
+	}
+
+	/**
+	 * Adds delta to the count of every field covered by the ship. Ships which
+	 * are not placed on the playground are ignored, as well as the parts of a
+	 * ship outside of the playground.
+	 * 
+	 * @param ship
+	 *           the ship
+	 * @param delta
+	 *           the value to add
+	 */
+	private void update(Ship ship, int delta)
+	{
+		int x = ship.getX();
+		int y = ship.getY();
+		Orientation orientation = ship.getOrientation();
+		if (x < 0 || y < 0 || orientation == null)
+			return;
+		if (noTouch)
+		{
+			updateNoTouch(ship.getRect(), delta);
+			return;
+		}
+		int dx = orientation == Orientation.HORIZONTAL ? 1 : 0;
+		int dy = 1 - dx;
+		for (int i = 0;i < ship.getSize();i++)
+		{
+			if (x >= size || y >= size)
+				return;
+			int index = y * size + x;
+			int count = counts.get(index) + delta;
+			counts.put(index, count);
+			conflicts.set(index, count > 1);
+			x += dx;
+			y += dy;
+		}
+	}
+
+	/**
+	 * Adds delta to the count of every field covered by the ship and to the
+	 * halo count of every field covered by the ship grown by one field
+	 * 
+	 * @param rect
+	 *           the packed rectangle of the ship
+	 * @param delta
+	 *           the value to add
+	 */
+	private void updateNoTouch(long rect, int delta)
+	{
+		long halo = CellRects.getIntersection(CellRects.grow(rect, 1), CellRects.pack(0, 0, size - 1, size - 1));
+		for (int y = CellRects.getTop(halo);y <= CellRects.getBottom(halo);y++)
+		{
+			for (int x = CellRects.getLeft(halo);x <= CellRects.getRight(halo);x++)
+			{
+				int index = y * size + x;
+				int count = counts.get(index);
+				if (CellRects.contains(rect, x, y))
+				{
+					count += delta;
+					counts.put(index, count);
+				}
+				int haloCount = haloCounts.get(index) + delta;
+				haloCounts.put(index, haloCount);
+				conflicts.set(index, count > 0 && haloCount > 1);
+			}
+		}
+	}
+
+	/**
+	 * Returns whether ships may not touch each other
+	 * 
+	 * @return <code>true</code> if touching ships are conflicts
+	 */
+	public boolean isNoTouch()
+	{
+		return noTouch;
+	}
+
+	/**
+	 * Returns the number of ships on the field at the specified position
+	 * 
+	 * @param x
+	 *           the x position
+	 * @param y
+	 *           the y position
+	 * @return the number of ships
+	 */
+	public int getCount(int x, int y)
+	{
+		return counts.get(y * size + x);
+	}
+
+	/**
+	 * Returns whether more than one ship is placed on the field at the
+	 * specified position or, if ships may not touch each other, a ship placed on
+	 * the field touches another ship
+	 * 
+	 * @param x
+	 *           the x position
+	 * @param y
+	 *           the y position
+	 * @return <code>true</code> if the ships on this field are placed illegally
+	 */
+	public boolean isConflict(int x, int y)
+	{
+		return conflicts.contains(y * size + x);
+	}
+
+	/**
+	 * Returns whether there is any field on which ships are placed illegally
+	 * 
+	 * @return <code>true</code> if ships overlap or touch illegally
+	 */
+	public boolean hasConflicts()
+	{
+		return !conflicts.isEmpty();
+	}
+
+	/**
+	 * Writes all fields on which ships are placed illegally to the specified set
+	 * 
+	 * @param result
+	 *           the set to write the fields to
+	 * @return the passed set
+	 */
+	public CellSet getConflicts(CellSet result)
+	{
+		return result.copyFrom(conflicts);
+	}
+}
@@ -1,4 +1,4 @@
-package me.battleship;
+package me.battleship.core;
 
 /**
  * The orientation of a ship
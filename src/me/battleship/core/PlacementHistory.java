@@ -0,0 +1,402 @@
+package me.battleship.core;
+
+/**
+ * A bounded undo and redo history for the movements of ships in the placement
+ * phase. Every movement is packed into a single <code>long</code> holding the
+ * index of the ship, the field it was on before and after the movement and
+ * both orientations. The movements are kept in a ring buffer which is
+ * allocated once, so recording a movement does not allocate memory. If the
+ * history is full, the oldest movement is dropped.
+ * <p>
+ * Movements can be joined into one step, e.g. all ships moved by a random
+ * placement of the fleet, which are undone and redone together. Taking a ship
+ * from the playground and putting it back right away (as happens while
+ * dragging a ship) is merged into a single movement, or dropped if the ship is
+ * back on its old position.
+ * 
+ * @author Manuel Vögele
+ */
+public class PlacementHistory
+{
+	/** The number of bits used for a field */
+	private static final int FIELD_BITS = 21;
+
+	/** The mask for a field */
+	private static final long FIELD_MASK = (1L << FIELD_BITS) - 1;
+
+	/** The shift of the field after the movement */
+	private static final int NEW_FIELD_SHIFT = FIELD_BITS;
+
+	/** The shift of the orientation before the movement */
+	private static final int OLD_ORIENTATION_SHIFT = 2 * FIELD_BITS;
+
+	/** The shift of the orientation after the movement */
+	private static final int NEW_ORIENTATION_SHIFT = OLD_ORIENTATION_SHIFT + 2;
+
+	/** The shift of the index of the ship */
+	private static final int SHIP_SHIFT = NEW_ORIENTATION_SHIFT + 2;
+
+	/** The maximum number of ships */
+	public static final int MAX_SHIPS = 1 << 16;
+
+	/** The bit marking a movement which belongs to the same step as the previous one */
+	private static final long JOINED = 1L << 62;
+
+	/** The value returned if there is no movement */
+	public static final long NONE = -1;
+
+	/** The orientations by their ordinal */
+	private static final Orientation[] ORIENTATIONS = Orientation.values();
+
+	/** The size of the playground */
+	private final int size;
+
+	/** The recorded movements */
+	private final long[] entries;
+
+	/** The position of the oldest movement in the ring buffer */
+	private int first;
+
+	/** The number of movements which can be undone */
+	private int undoCount;
+
+	/** The number of movements which can be redone */
+	private int redoCount;
+
+	/**
+	 * Initializes a new {@link PlacementHistory}
+	 * 
+	 * @param size
+	 *           the size of the playground
+	 * @param capacity
+	 *           the maximum number of movements to remember
+	 * @throws IllegalArgumentException
+	 *            if the capacity is not positive or the playground is too
+	 *            large
+	 */
+	public PlacementHistory(int size, int capacity) throws IllegalArgumentException
+	{
+		if (capacity <= 0)
+			throw new IllegalArgumentException("capacity must be positive");
+		if ((long) size * size >= FIELD_MASK)
+			throw new IllegalArgumentException("size " + size + " is too large");
+		this.size = size;
+		entries = new long[capacity];
+	}
+
+	/**
+	 * Records the movement of a ship. All movements which could be redone are
+	 * discarded.
+	 * 
+	 * @param ship
+	 *           the index of the ship
+	 * @param oldX
+	 *           the x position before the movement
+	 * @param oldY
+	 *           the y position before the movement
+	 * @param oldOrientation
+	 *           the orientation before the movement
+	 * @param newX
+	 *           the x position after the movement
+	 * @param newY
+	 *           the y position after the movement
+	 * @param newOrientation
+	 *           the orientation after the movement
+	 * @param joined
+	 *           <code>true</code> if the movement belongs to the same step as
+	 *           the previous one
+	 * @throws IllegalArgumentException
+	 *            if the index of the ship is too large
+	 */
+	public void record(int ship, int oldX, int oldY, Orientation oldOrientation, int newX, int newY, Orientation newOrientation, boolean joined) throws IllegalArgumentException
+	{
+		if (ship < 0 || ship >= MAX_SHIPS)
+			throw new IllegalArgumentException("Invalid ship index " + ship);
+		long oldField = packField(oldX, oldY);
+		long newField = packField(newX, newY);
+		redoCount = 0;
+		if (undoCount > 0 && !joined)
+		{
+			// A ship taken from the playground and put back is a single movement
+			int last = index(undoCount - 1);
+			long entry = entries[last];
+			if (getShip(entry) == ship && (entry >>> NEW_FIELD_SHIFT & FIELD_MASK) == 0)
+			{
+				oldField = entry & FIELD_MASK;
+				oldOrientation = unpackOrientation(entry >>> OLD_ORIENTATION_SHIFT);
+				joined = (entry & JOINED) != 0;
+				undoCount--;
+			}
+		}
+		// The orientation of a ship which is not on the playground does not matter
+		if (oldField == newField && (oldOrientation == newOrientation || newField == 0))
+			return;
+		long entry = (long) ship << SHIP_SHIFT | packOrientation(newOrientation) << NEW_ORIENTATION_SHIFT | packOrientation(oldOrientation) << OLD_ORIENTATION_SHIFT | newField << NEW_FIELD_SHIFT | oldField;
+		if (joined && undoCount > 0)
+			entry |= JOINED;
+		if (undoCount == entries.length)
+		{
+			first = index(1);
+			undoCount--;
+		}
+		entries[index(undoCount++)] = entry;
+	}
+
+	/**
+	 * Removes all movements
+	 */
+	public void clear()
+	{
+		first = 0;
+		undoCount = 0;
+		redoCount = 0;
+	}
+
+	/**
+	 * Returns whether there is a movement which can be undone
+	 * 
+	 * @return <code>true</code> if a movement can be undone
+	 */
+	public boolean canUndo()
+	{
+		return undoCount > 0;
+	}
+
+	/**
+	 * Returns whether there is a movement which can be redone
+	 * 
+	 * @return <code>true</code> if a movement can be redone
+	 */
+	public boolean canRedo()
+	{
+		return redoCount > 0;
+	}
+
+	/**
+	 * Takes the latest movement of the history. The ship has to be moved back
+	 * to the position returned by {@link #getOldX(long)} and
+	 * {@link #getOldY(long)}. If {@link #isJoined(long)} returns
+	 * <code>true</code> for the movement, the previous movement belongs to the
+	 * same step and has to be undone as well.
+	 * 
+	 * @return the movement or {@link #NONE} if there is no movement to undo
+	 */
+	public long undo()
+	{
+		if (undoCount == 0)
+			return NONE;
+		undoCount--;
+		redoCount++;
+		return entries[index(undoCount)];
+	}
+
+	/**
+	 * Takes the latest undone movement of the history. The ship has to be
+	 * moved to the position returned by {@link #getNewX(long)} and
+	 * {@link #getNewY(long)}. If {@link #isNextJoined()} returns
+	 * <code>true</code> afterwards, the next movement belongs to the same step
+	 * and has to be redone as well.
+	 * 
+	 * @return the movement or {@link #NONE} if there is no movement to redo
+	 */
+	public long redo()
+	{
+		if (redoCount == 0)
+			return NONE;
+		redoCount--;
+		return entries[index(undoCount++)];
+	}
+
+	/**
+	 * Returns whether the next movement which can be redone belongs to the
+	 * same step as the last redone movement
+	 * 
+	 * @return <code>true</code> if the next movement has to be redone as well
+	 */
+	public boolean isNextJoined()
+	{
+		return redoCount > 0 && (entries[index(undoCount)] & JOINED) != 0;
+	}
+
+	/**
+	 * Returns whether the specified movement belongs to the same step as the
+	 * previous one
+	 * 
+	 * @param entry
+	 *           the movement
+	 * @return <code>true</code> if the movement is joined with the previous one
+	 */
+	public static boolean isJoined(long entry)
+	{
+		return (entry & JOINED) != 0;
+	}
+
+	/**
+	 * Returns the index of the ship of the specified movement
+	 * 
+	 * @param entry
+	 *           the movement
+	 * @return the index of the ship
+	 */
+	public static int getShip(long entry)
+	{
+		return (int) (entry >>> SHIP_SHIFT & (MAX_SHIPS - 1));
+	}
+
+	/**
+	 * Returns the x position of the ship before the specified movement
+	 * 
+	 * @param entry
+	 *           the movement
+	 * @return the x position or <code>-1</code> if the ship was not on the
+	 *         playground
+	 */
+	public int getOldX(long entry)
+	{
+		return unpackX(entry & FIELD_MASK);
+	}
+
+	/**
+	 * Returns the y position of the ship before the specified movement
+	 * 
+	 * @param entry
+	 *           the movement
+	 * @return the y position or <code>-1</code> if the ship was not on the
+	 *         playground
+	 */
+	public int getOldY(long entry)
+	{
+		return unpackY(entry & FIELD_MASK);
+	}
+
+	/**
+	 * Returns the orientation of the ship before the specified movement
+	 * 
+	 * @param entry
+	 *           the movement
+	 * @return the orientation
+	 */
+	public static Orientation getOldOrientation(long entry)
+	{
+		return unpackOrientation(entry >>> OLD_ORIENTATION_SHIFT);
+	}
+
+	/**
+	 * Returns the x position of the ship after the specified movement
+	 * 
+	 * @param entry
+	 *           the movement
+	 * @return the x position or <code>-1</code> if the ship is not on the
+	 *         playground
+	 */
+	public int getNewX(long entry)
+	{
+		return unpackX(entry >>> NEW_FIELD_SHIFT & FIELD_MASK);
+	}
+
+	/**
+	 * Returns the y position of the ship after the specified movement
+	 * 
+	 * @param entry
+	 *           the movement
+	 * @return the y position or <code>-1</code> if the ship is not on the
+	 *         playground
+	 */
+	public int getNewY(long entry)
+	{
+		return unpackY(entry >>> NEW_FIELD_SHIFT & FIELD_MASK);
+	}
+
+	/**
+	 * Returns the orientation of the ship after the specified movement
+	 * 
+	 * @param entry
+	 *           the movement
+	 * @return the orientation
+	 */
+	public static Orientation getNewOrientation(long entry)
+	{
+		return unpackOrientation(entry >>> NEW_ORIENTATION_SHIFT);
+	}
+
+	/**
+	 * Returns the position of the movement with the specified age in the ring
+	 * buffer
+	 * 
+	 * @param offset
+	 *           the number of movements since the oldest one
+	 * @return the position in the ring buffer
+	 */
+	private int index(int offset)
+	{
+		int index = first + offset;
+		return index >= entries.length ? index - entries.length : index;
+	}
+
+	/**
+	 * Packs a position into a field. Positions outside of the playground are
+	 * packed as <code>0</code>, all others as their index plus one.
+	 * 
+	 * @param x
+	 *           the x position
+	 * @param y
+	 *           the y position
+	 * @return the packed field
+	 */
+	private long packField(int x, int y)
+	{
+		if (x < 0 || y < 0 || x >= size || y >= size)
+			return 0;
+		return y * size + x + 1;
+	}
+
+	/**
+	 * Returns the x position of a packed field
+	 * 
+	 * @param field
+	 *           the packed field
+	 * @return the x position
+	 */
+	private int unpackX(long field)
+	{
+		return field == 0 ? -1 : (int) (field - 1) % size;
+	}
+
+	/**
+	 * Returns the y position of a packed field
+	 * 
+	 * @param field
+	 *           the packed field
+	 * @return the y position
+	 */
+	private int unpackY(long field)
+	{
+		return field == 0 ? -1 : (int) (field - 1) / size;
+	}
+
+	/**
+	 * Packs an orientation into two bits
+	 * 
+	 * @param orientation
+	 *           the orientation or <code>null</code>
+	 * @return the packed orientation
+	 */
+	private static long packOrientation(Orientation orientation)
+	{
+		return orientation == null ? 0 : orientation.ordinal() + 1;
+	}
+
+	/**
+	 * Returns the orientation packed into the lowest two bits of the specified
+	 * value
+	 * 
+	 * @param bits
+	 *           the bits
+	 * @return the orientation or <code>null</code>
+	 */
+	private static Orientation unpackOrientation(long bits)
+	{
+		int value = (int) (bits & 3);
+		return value == 0 ? null : ORIENTATIONS[value - 1];
+	}
+}
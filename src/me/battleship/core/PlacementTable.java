@@ -0,0 +1,541 @@
+package me.battleship.core;
+
+import me.battleship.core.geometry.CellRects;
+
+/**
+ * An immutable table of all placements of a ship with a specific length on a
+ * playground with a specific size. The placements are numbered: first all
+ * horizontal placements row by row, then all vertical placements row by row.
+ * <p>
+ * For playgrounds whose sets are stored as bit sets (see
+ * {@link CellSet#SPARSE_THRESHOLD}) every placement is stored as the few words
+ * of a {@link CellSet} it covers together with the bits within these words. A
+ * placement is checked against the words of the miss and the occupied set
+ * with one bit operation per word. For sparse playgrounds the fields of the
+ * placement are looked up one by one. The same is stored for every placement
+ * grown by one field in every direction, for rulesets in which ships may not
+ * touch each other.
+ * <p>
+ * The legal placements are returned as a bit mask over the placement numbers:
+ * bit <i>i</i> of word <i>w</i> represents placement <code>w * 64 + i</code>.
+ * 
+ * @author Manuel Vögele
+ */
+public final class PlacementTable
+{
+	/** The size of the playground */
+	private final int size;
+
+	/** The length of the ship */
+	private final int length;
+
+	/** The number of horizontal placements per row */
+	private final int horizontalPerRow;
+
+	/** The number of horizontal placements */
+	private final int horizontalCount;
+
+	/** The number of placements */
+	private final int placementCount;
+
+	/**
+	 * The first entry of every placement in {@link #entryWords} and
+	 * {@link #entryMasks}. The entries of placement <i>p</i> end where the
+	 * entries of placement <i>p + 1</i> begin. <code>null</code> for sparse
+	 * playgrounds.
+	 */
+	private final int[] entryOffsets;
+
+	/** The index of the word of a {@link CellSet} covered by an entry */
+	private final int[] entryWords;
+
+	/** The bits of the word covered by an entry */
+	private final long[] entryMasks;
+
+	/**
+	 * The first entry of every placement in {@link #haloWords} and
+	 * {@link #haloMasks} which describe the placement grown by one field in
+	 * every direction. <code>null</code> for sparse playgrounds.
+	 */
+	private final int[] haloOffsets;
+
+	/** The index of the word of a {@link CellSet} covered by a halo entry */
+	private final int[] haloWords;
+
+	/** The bits of the word covered by a halo entry */
+	private final long[] haloMasks;
+
+	/**
+	 * Initializes a new {@link PlacementTable}
+	 * 
+	 * @param size
+	 *           the size of the playground
+	 * @param length
+	 *           the length of the ship
+	 * @throws IllegalArgumentException
+	 *            if the ship does not fit on the playground
+	 */
+	public PlacementTable(int size, int length) throws IllegalArgumentException
+	{
+		if (size < 1 || size > Playground.MAX_SIZE)
+			throw new IllegalArgumentException("size " + size + " is not between 1 and " + Playground.MAX_SIZE);
+		if (length < 1 || length > size)
+			throw new IllegalArgumentException("A ship of length " + length + " does not fit on a playground of size " + size);
+		this.size = size;
+		this.length = length;
+		horizontalPerRow = size - length + 1;
+		horizontalCount = horizontalPerRow * size;
+		placementCount = horizontalCount * 2;
+		if (size * size > CellSet.SPARSE_THRESHOLD)
+		{
+			entryOffsets = null;
+			entryWords = null;
+			entryMasks = null;
+			haloOffsets = null;
+			haloWords = null;
+			haloMasks = null;
+			return;
+		}
+		// Every row of a rectangle covers at most two words
+		int[] words = new int[placementCount * (length + 3) * 2];
+		long[] masks = new long[words.length];
+
+		entryOffsets = new int[placementCount + 1];
+		int entryCount = 0;
+		for (int placement = 0;placement < placementCount;placement++)
+		{
+			entryOffsets[placement] = entryCount;
+			entryCount = appendEntries(getRect(placement), words, masks, entryCount);
+		}
+		entryOffsets[placementCount] = entryCount;
+		entryWords = new int[entryCount];
+		entryMasks = new long[entryCount];
+		System.arraycopy(words, 0, entryWords, 0, entryCount);
+		System.arraycopy(masks, 0, entryMasks, 0, entryCount);
+
+		haloOffsets = new int[placementCount + 1];
+		long playground = CellRects.pack(0, 0, size - 1, size - 1);
+		entryCount = 0;
+		for (int placement = 0;placement < placementCount;placement++)
+		{
+			haloOffsets[placement] = entryCount;
+			long halo = CellRects.getIntersection(CellRects.grow(getRect(placement), 1), playground);
+			entryCount = appendEntries(halo, words, masks, entryCount);
+		}
+		haloOffsets[placementCount] = entryCount;
+		haloWords = new int[entryCount];
+		haloMasks = new long[entryCount];
+		System.arraycopy(words, 0, haloWords, 0, entryCount);
+		System.arraycopy(masks, 0, haloMasks, 0, entryCount);
+	}
+
+	/**
+	 * Appends the entries for the fields of the specified rectangle to the
+	 * specified arrays. Fields within the same word are merged into one entry.
+	 * 
+	 * @param rect
+	 *           the packed rectangle
+	 * @param words
+	 *           the indices of the words of the entries
+	 * @param masks
+	 *           the bits of the entries
+	 * @param entryCount
+	 *           the number of entries already in the arrays
+	 * @return the number of entries afterwards
+	 */
+	private int appendEntries(long rect, int[] words, long[] masks, int entryCount)
+	{
+		int first = entryCount;
+		for (int y = CellRects.getTop(rect);y <= CellRects.getBottom(rect);y++)
+		{
+			for (int x = CellRects.getLeft(rect);x <= CellRects.getRight(rect);x++)
+			{
+				int field = y * size + x;
+				int word = field >>> 6;
+				if (entryCount == first || words[entryCount - 1] != word)
+				{
+					words[entryCount] = word;
+					masks[entryCount] = 0;
+					entryCount++;
+				}
+				masks[entryCount - 1] |= 1L << field;
+			}
+		}
+		return entryCount;
+	}
+
+	/**
+	 * Returns the size of the playground
+	 * 
+	 * @return the size
+	 */
+	public int getSize()
+	{
+		return size;
+	}
+
+	/**
+	 * Returns the length of the ship
+	 * 
+	 * @return the length
+	 */
+	public int getLength()
+	{
+		return length;
+	}
+
+	/**
+	 * Returns the number of placements
+	 * 
+	 * @return the number of placements
+	 */
+	public int getPlacementCount()
+	{
+		return placementCount;
+	}
+
+	/**
+	 * Returns the number of words of a bit mask over all placements
+	 * 
+	 * @return the number of words
+	 */
+	public int getWordCount()
+	{
+		return (placementCount + 63) >>> 6;
+	}
+
+	/**
+	 * Returns the number of the placement of a ship positioned on the
+	 * specified field
+	 * 
+	 * @param x
+	 *           the x position of the ship
+	 * @param y
+	 *           the y position of the ship
+	 * @param orientation
+	 *           the orientation of the ship
+	 * @return the number of the placement or <code>-1</code> if the ship does
+	 *         not lie completely on the playground
+	 */
+	public int getPlacement(int x, int y, Orientation orientation)
+	{
+		if (x < 0 || y < 0 || orientation == null)
+			return -1;
+		if (orientation == Orientation.VERTICAL)
+		{
+			if (x >= size || y >= horizontalPerRow)
+				return -1;
+			return horizontalCount + y * size + x;
+		}
+		if (x >= horizontalPerRow || y >= size)
+			return -1;
+		return y * horizontalPerRow + x;
+	}
+
+	/**
+	 * Returns the x position of the ship for the specified placement
+	 * 
+	 * @param placement
+	 *           the number of the placement
+	 * @return the x position
+	 */
+	public int getX(int placement)
+	{
+		if (placement < horizontalCount)
+			return placement % horizontalPerRow;
+		return (placement - horizontalCount) % size;
+	}
+
+	/**
+	 * Returns the y position of the ship for the specified placement
+	 * 
+	 * @param placement
+	 *           the number of the placement
+	 * @return the y position
+	 */
+	public int getY(int placement)
+	{
+		if (placement < horizontalCount)
+			return placement / horizontalPerRow;
+		return (placement - horizontalCount) / size;
+	}
+
+	/**
+	 * Returns the orientation of the ship for the specified placement
+	 * 
+	 * @param placement
+	 *           the number of the placement
+	 * @return the orientation
+	 */
+	public Orientation getOrientation(int placement)
+	{
+		return placement < horizontalCount ? Orientation.HORIZONTAL : Orientation.VERTICAL;
+	}
+
+	/**
+	 * Returns the index of the field the ship is positioned on for the
+	 * specified placement
+	 * 
+	 * @param placement
+	 *           the number of the placement
+	 * @return the index of the field
+	 */
+	public int getAnchor(int placement)
+	{
+		return getY(placement) * size + getX(placement);
+	}
+
+	/**
+	 * Returns the fields covered by the specified placement
+	 * 
+	 * @param placement
+	 *           the number of the placement
+	 * @return the fields packed as described in {@link CellRects}
+	 */
+	public long getRect(int placement)
+	{
+		return CellRects.forShip(getX(placement), getY(placement), length, placement < horizontalCount);
+	}
+
+	/**
+	 * Returns whether the specified placement does not cover any field of the
+	 * specified sets
+	 * 
+	 * @param placement
+	 *           the number of the placement
+	 * @param misses
+	 *           the fields on which no ship can be or <code>null</code>
+	 * @param occupied
+	 *           the fields which are already occupied by ships or
+	 *           <code>null</code>
+	 * @return <code>true</code> if the placement is legal
+	 */
+	public boolean isLegal(int placement, CellSet misses, CellSet occupied)
+	{
+		if (entryOffsets == null)
+		{
+			int field = getAnchor(placement);
+			int step = placement < horizontalCount ? 1 : size;
+			for (int i = 0;i < length;i++, field += step)
+			{
+				if ((misses != null && misses.contains(field)) || (occupied != null && occupied.contains(field)))
+					return false;
+			}
+			return true;
+		}
+		for (int entry = entryOffsets[placement];entry < entryOffsets[placement + 1];entry++)
+		{
+			int word = entryWords[entry];
+			long blocked = 0;
+			if (misses != null)
+				blocked |= misses.getWord(word);
+			if (occupied != null)
+				blocked |= occupied.getWord(word);
+			if ((blocked & entryMasks[entry]) != 0)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns whether the specified placement grown by one field in every
+	 * direction does not cover any field of the specified set. Used for
+	 * rulesets in which ships may not touch each other.
+	 * 
+	 * @param placement
+	 *           the number of the placement
+	 * @param occupied
+	 *           the fields which are already occupied by ships
+	 * @return <code>true</code> if the placement does not touch any occupied
+	 *         field
+	 */
+	public boolean isSeparated(int placement, CellSet occupied)
+	{
+		if (haloOffsets == null)
+		{
+			long halo = CellRects.grow(getRect(placement), 1);
+			for (int y = Math.max(CellRects.getTop(halo), 0);y <= Math.min(CellRects.getBottom(halo), size - 1);y++)
+			{
+				for (int x = Math.max(CellRects.getLeft(halo), 0);x <= Math.min(CellRects.getRight(halo), size - 1);x++)
+				{
+					if (occupied.contains(y * size + x))
+						return false;
+				}
+			}
+			return true;
+		}
+		for (int entry = haloOffsets[placement];entry < haloOffsets[placement + 1];entry++)
+		{
+			if ((occupied.getWord(haloWords[entry]) & haloMasks[entry]) != 0)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Adds the fields covered by the specified placement to the specified set
+	 * 
+	 * @param placement
+	 *           the number of the placement
+	 * @param set
+	 *           the set
+	 */
+	public void addFields(int placement, CellSet set)
+	{
+		if (entryOffsets == null)
+		{
+			int field = getAnchor(placement);
+			int step = placement < horizontalCount ? 1 : size;
+			for (int i = 0;i < length;i++, field += step)
+			{
+				set.add(field);
+			}
+			return;
+		}
+		for (int entry = entryOffsets[placement];entry < entryOffsets[placement + 1];entry++)
+		{
+			set.setWordBits(entryWords[entry], entryMasks[entry]);
+		}
+	}
+
+	/**
+	 * Removes the fields covered by the specified placement from the specified
+	 * set
+	 * 
+	 * @param placement
+	 *           the number of the placement
+	 * @param set
+	 *           the set
+	 */
+	public void removeFields(int placement, CellSet set)
+	{
+		if (entryOffsets == null)
+		{
+			int field = getAnchor(placement);
+			int step = placement < horizontalCount ? 1 : size;
+			for (int i = 0;i < length;i++, field += step)
+			{
+				set.remove(field);
+			}
+			return;
+		}
+		for (int entry = entryOffsets[placement];entry < entryOffsets[placement + 1];entry++)
+		{
+			set.clearWordBits(entryWords[entry], entryMasks[entry]);
+		}
+	}
+
+	/**
+	 * Writes the placements which do not cover any field of the specified sets
+	 * to the specified bit mask
+	 * 
+	 * @param misses
+	 *           the fields on which no ship can be or <code>null</code>
+	 * @param occupied
+	 *           the fields which are already occupied by ships or
+	 *           <code>null</code>
+	 * @param result
+	 *           the bit mask with at least {@link #getWordCount()} words
+	 * @return the number of legal placements
+	 * @throws IllegalArgumentException
+	 *            if a set does not belong to a playground of this size
+	 */
+	public int getLegalPlacements(CellSet misses, CellSet occupied, long[] result) throws IllegalArgumentException
+	{
+		checkSet(misses);
+		checkSet(occupied);
+		int count = 0;
+		int wordCount = getWordCount();
+		for (int w = 0;w < wordCount;w++)
+		{
+			long word = 0;
+			int end = Math.min(placementCount - (w << 6), 64);
+			for (int i = 0;i < end;i++)
+			{
+				if (isLegal((w << 6) + i, misses, occupied))
+					word |= 1L << i;
+			}
+			result[w] = word;
+			count += Long.bitCount(word);
+		}
+		return count;
+	}
+
+	/**
+	 * Writes the fields on which a ship with the specified orientation can be
+	 * positioned without covering any field of the specified sets to the
+	 * specified set. The previous content of the set is replaced.
+	 * 
+	 * @param orientation
+	 *           the orientation of the ship
+	 * @param misses
+	 *           the fields on which no ship can be or <code>null</code>
+	 * @param occupied
+	 *           the fields which are already occupied by ships or
+	 *           <code>null</code>
+	 * @param result
+	 *           the set to write the fields to
+	 * @return the passed set
+	 * @throws IllegalArgumentException
+	 *            if a set does not belong to a playground of this size
+	 */
+	public CellSet getLegalAnchors(Orientation orientation, CellSet misses, CellSet occupied, CellSet result) throws IllegalArgumentException
+	{
+		checkSet(misses);
+		checkSet(occupied);
+		checkSet(result);
+		result.clear();
+		int first = orientation == Orientation.VERTICAL ? horizontalCount : 0;
+		int end = first + horizontalCount;
+		for (int placement = first;placement < end;placement++)
+		{
+			if (isLegal(placement, misses, occupied))
+				result.add(getAnchor(placement));
+		}
+		return result;
+	}
+
+	/**
+	 * Writes the fields on which a ship with the specified orientation can be
+	 * positioned without covering or touching any field of the specified set
+	 * to the specified set. The previous content of the set is replaced.
+	 * 
+	 * @param orientation
+	 *           the orientation of the ship
+	 * @param occupied
+	 *           the fields which are already occupied by ships
+	 * @param result
+	 *           the set to write the fields to
+	 * @return the passed set
+	 * @throws IllegalArgumentException
+	 *            if a set does not belong to a playground of this size
+	 */
+	public CellSet getSeparatedAnchors(Orientation orientation, CellSet occupied, CellSet result) throws IllegalArgumentException
+	{
+		checkSet(occupied);
+		checkSet(result);
+		result.clear();
+		int first = orientation == Orientation.VERTICAL ? horizontalCount : 0;
+		int end = first + horizontalCount;
+		for (int placement = first;placement < end;placement++)
+		{
+			if (isSeparated(placement, occupied))
+				result.add(getAnchor(placement));
+		}
+		return result;
+	}
+
+	/**
+	 * Checks whether the specified set belongs to a playground of this size
+	 * 
+	 * @param set
+	 *           the set or <code>null</code>
+	 * @throws IllegalArgumentException
+	 *            if the capacity of the set does not match
+	 */
+	private void checkSet(CellSet set) throws IllegalArgumentException
+	{
+		if (set != null && set.getCapacity() != size * size)
+			throw new IllegalArgumentException("Capacity " + set.getCapacity() + " does not match a playground of size " + size);
+	}
+}
@@ -0,0 +1,487 @@
+package me.battleship.core;
+
+/**
+ * This is where game takes place. The state of the fields is stored in
+ * {@link CellSet CellSets}. Every field is identified by its index
+ * (<code>y * size + x</code>). Playgrounds with more than
+ * {@link CellSet#SPARSE_THRESHOLD} fields are stored sparse, so their memory
+ * usage depends on the number of marked fields instead of the size.
+ * 
+ * @author manuel
+ */
+public class Playground
+{
+	/**
+	 * The default size of the playground. The playground is assumed to be
+	 * square so this is used for the x and y size.
+	 */
+	public static final int SIZE = 10;
+
+	/** The number of fields on a playground with the default size */
+	public static final int FIELD_COUNT = SIZE * SIZE;
+
+	/** The maximum size of a playground */
+	public static final int MAX_SIZE = 1000;
+
+	/** The size of this playground */
+	private final int size;
+
+	/** The fields which were already hit */
+	private final CellSet hits;
+
+	/** The fields a ship is placed on */
+	private final CellSet shipFields;
+
+	/** The maximum number of ships that can be placed on a playground */
+	public static final int MAX_SHIPS = Byte.MAX_VALUE;
+
+	/**
+	 * The index of the ship placed on the fields indexed by the field index.
+	 * <code>0</code> means there is no ship, otherwise the ship is stored at
+	 * <code>ships[shipIndices.get(field) - 1]</code>.
+	 */
+	private final CellByteMap shipIndices;
+
+	/** The ships placed on this playground */
+	private Ship[] ships;
+
+	/** The number of ships placed on this playground */
+	private int shipCount;
+
+	/** The Zobrist hash of the hit fields and the fields with a ship, see {@link #getHash()} */
+	private long hash;
+
+	/**
+	 * Constructs a new playground with the default size
+	 */
+	public Playground()
+	{
+		this(SIZE);
+	}
+
+	/**
+	 * Constructs a new playground
+	 * 
+	 * @param size
+	 *           the size of the playground in x and y direction
+	 * @throws IllegalArgumentException
+	 *            if the size is not between 1 and {@link #MAX_SIZE}
+	 */
+	public Playground(int size) throws IllegalArgumentException
+	{
+		if (size < 1 || size > MAX_SIZE)
+			throw new IllegalArgumentException("Invalid playground size " + size);
+		this.size = size;
+		hits = new CellSet(size * size);
+		shipFields = new CellSet(size * size);
+		shipIndices = new CellByteMap(size * size);
+		ships = new Ship[8];
+		shipCount = 0;
+	}
+
+	/**
+	 * Removes all ships and hits from the playground, so it can be reused for
+	 * another game without allocating a new one
+	 */
+	public void clear()
+	{
+		hits.clear();
+		shipFields.clear();
+		shipIndices.clear();
+		for (int i = 0;i < shipCount;i++)
+		{
+			ships[i] = null;
+		}
+		shipCount = 0;
+		hash = 0;
+	}
+
+	/**
+	 * Returns a field of the playground. The returned field is a view on this
+	 * playground - changes to the field are written through to the playground.
+	 * 
+	 * @param x
+	 *           the x position of the field
+	 * @param y
+	 *           the y position of the field
+	 * @return the field at the specified position
+	 */
+	public PlaygroundField getField(int x, int y)
+	{
+		return new PlaygroundField(this, x, y);
+	}
+
+	/**
+	 * Returns whether the field at the specified position was already hit
+	 * 
+	 * @param x
+	 *           the x position of the field
+	 * @param y
+	 *           the y position of the field
+	 * @return <code>true</code> if the field was already hit
+	 */
+	public boolean isHit(int x, int y)
+	{
+		return hits.contains(getIndex(x, y));
+	}
+
+	/**
+	 * Sets whether the field at the specified position was already hit
+	 * 
+	 * @param x
+	 *           the x position of the field
+	 * @param y
+	 *           the y position of the field
+	 * @param hit
+	 *           <code>true</code> if the field was already hit
+	 */
+	public void setHit(int x, int y, boolean hit)
+	{
+		int index = getIndex(x, y);
+		if (hits.contains(index) == hit)
+			return;
+		hits.set(index, hit);
+		hash ^= Zobrist.getHitKey(index);
+	}
+
+	/**
+	 * Returns whether a ship is placed on the field at the specified position
+	 * 
+	 * @param x
+	 *           the x position of the field
+	 * @param y
+	 *           the y position of the field
+	 * @return <code>true</code> if a ship is on this field
+	 */
+	public boolean isShip(int x, int y)
+	{
+		return shipFields.contains(getIndex(x, y));
+	}
+
+	/**
+	 * Sets whether a ship is placed on the field at the specified position
+	 * without assigning a concrete ship to the field
+	 * 
+	 * @param x
+	 *           the x position of the field
+	 * @param y
+	 *           the y position of the field
+	 * @param ship
+	 *           <code>true</code> if a ship is on this field
+	 */
+	public void setIsShip(int x, int y, boolean ship)
+	{
+		int index = getIndex(x, y);
+		if (shipFields.contains(index) != ship)
+		{
+			shipFields.set(index, ship);
+			hash ^= Zobrist.getShipFieldKey(index);
+		}
+		if (!ship)
+			shipIndices.put(index, 0);
+	}
+
+	/**
+	 * Returns the ship placed on the field at the specified position
+	 * 
+	 * @param x
+	 *           the x position of the field
+	 * @param y
+	 *           the y position of the field
+	 * @return the ship or <code>null</code> if there is no ship on this field
+	 */
+	public Ship getShip(int x, int y)
+	{
+		int shipIndex = shipIndices.get(getIndex(x, y));
+		if (shipIndex == 0)
+			return null;
+		return ships[shipIndex - 1];
+	}
+
+	/**
+	 * Places a ship on the field at the specified position
+	 * 
+	 * @param x
+	 *           the x position of the field
+	 * @param y
+	 *           the y position of the field
+	 * @param ship
+	 *           the ship or <code>null</code> to remove the ship from the field
+	 */
+	public void setShip(int x, int y, Ship ship)
+	{
+		setIsShip(x, y, ship != null);
+		if (ship != null)
+			shipIndices.put(getIndex(x, y), getShipIndex(ship) + 1);
+	}
+
+	/**
+	 * Places a ship on all fields it covers
+	 * 
+	 * @param ship
+	 *           the ship
+	 */
+	public void placeShip(Ship ship)
+	{
+		int shipIndex = getShipIndex(ship) + 1;
+		boolean horizontal = ship.getOrientation() == Orientation.HORIZONTAL;
+		for (int i = 0;i < ship.getSize();i++)
+		{
+			int x = horizontal ? ship.getX() + i : ship.getX();
+			int y = horizontal ? ship.getY() : ship.getY() + i;
+			setIsShip(x, y, true);
+			shipIndices.put(getIndex(x, y), shipIndex);
+		}
+	}
+
+	/**
+	 * Shoots at the specified field. Marks the field as hit and destroys the
+	 * corresponding field of the ship placed on it.
+	 * 
+	 * @param x
+	 *           the x position of the field
+	 * @param y
+	 *           the y position of the field
+	 * @return the result of the shot
+	 */
+	public ShotResult shoot(int x, int y)
+	{
+		if (isHit(x, y))
+			return ShotResult.ALREADY_HIT;
+		setHit(x, y, true);
+		int shipIndex = shipIndices.get(getIndex(x, y));
+		if (shipIndex == 0)
+			return isShip(x, y) ? ShotResult.HIT : ShotResult.MISS;
+		Ship ship = ships[shipIndex - 1];
+		if (ship.destroyFieldAt(ship.getFieldIndex(x, y)))
+			return ShotResult.SUNK;
+		return ShotResult.HIT;
+	}
+
+	/**
+	 * Returns the number of ships placed on this playground
+	 * 
+	 * @return the number of ships
+	 */
+	public int getShipCount()
+	{
+		return shipCount;
+	}
+
+	/**
+	 * Returns the ship with the specified index
+	 * 
+	 * @param index
+	 *           the index of the ship in the order the ships were placed
+	 * @return the ship
+	 */
+	public Ship getShipByIndex(int index)
+	{
+		if (index < 0 || index >= shipCount)
+			throw new IndexOutOfBoundsException("Ship index " + index + " is out of bounds (" + shipCount + " ships)");
+		return ships[index];
+	}
+
+	/**
+	 * Returns the index of the specified ship in this playground. Registers the
+	 * ship if it is not yet known.
+	 * 
+	 * @param ship
+	 *           the ship
+	 * @return the index of the ship
+	 * @throws IllegalStateException
+	 *            if there are already {@link #MAX_SHIPS} ships on this
+	 *            playground
+	 */
+	private int getShipIndex(Ship ship) throws IllegalStateException
+	{
+		for (int i = 0;i < shipCount;i++)
+		{
+			if (ships[i] == ship)
+				return i;
+		}
+		if (shipCount == MAX_SHIPS)
+			throw new IllegalStateException("There are already " + MAX_SHIPS + " ships on this playground");
+		if (shipCount == ships.length)
+		{
+			Ship[] newShips = new Ship[Math.min(ships.length * 2, MAX_SHIPS)];
+			System.arraycopy(ships, 0, newShips, 0, shipCount);
+			ships = newShips;
+		}
+		ships[shipCount] = ship;
+		return shipCount++;
+	}
+
+	/**
+	 * Returns the Zobrist hash of the hit fields and the fields on which a
+	 * ship is placed (see {@link Zobrist}). The hash is updated with every
+	 * change of a field, so it is available in constant time.
+	 * 
+	 * @return the hash
+	 */
+	public long getHash()
+	{
+		return hash;
+	}
+
+	/**
+	 * Returns the number of fields which were already hit
+	 * 
+	 * @return the number of hit fields
+	 */
+	public int getHitCount()
+	{
+		return hits.size();
+	}
+
+	/**
+	 * Returns the number of fields a ship is placed on which were not hit yet
+	 * 
+	 * @return the number of remaining ship fields
+	 */
+	public int getRemainingShipFieldCount()
+	{
+		return shipFields.sizeOfDifference(hits);
+	}
+
+	/**
+	 * Writes all fields which were already hit to the specified set
+	 * 
+	 * @param result
+	 *           the set to write the fields to
+	 * @return the passed set
+	 */
+	public CellSet getHits(CellSet result)
+	{
+		return result.copyFrom(hits);
+	}
+
+	/**
+	 * Writes all fields a ship is placed on to the specified set
+	 * 
+	 * @param result
+	 *           the set to write the fields to
+	 * @return the passed set
+	 */
+	public CellSet getShipFields(CellSet result)
+	{
+		return result.copyFrom(shipFields);
+	}
+
+	/**
+	 * Writes all fields which were hit and contain a ship to the specified set
+	 * 
+	 * @param result
+	 *           the set to write the fields to
+	 * @return the passed set
+	 */
+	public CellSet getShipHits(CellSet result)
+	{
+		return result.copyFrom(hits).retainAll(shipFields);
+	}
+
+	/**
+	 * Writes all fields which were hit but contain no ship to the specified set
+	 * 
+	 * @param result
+	 *           the set to write the fields to
+	 * @return the passed set
+	 */
+	public CellSet getMisses(CellSet result)
+	{
+		return result.copyFrom(hits).removeAll(shipFields);
+	}
+
+	/**
+	 * Writes all fields containing a ship which were not hit yet to the
+	 * specified set
+	 * 
+	 * @param result
+	 *           the set to write the fields to
+	 * @return the passed set
+	 */
+	public CellSet getRemainingShipFields(CellSet result)
+	{
+		return result.copyFrom(shipFields).removeAll(hits);
+	}
+
+	/**
+	 * Returns the size of the playground in x and y direction
+	 * 
+	 * @return the size
+	 */
+	public int getSize()
+	{
+		return size;
+	}
+
+	/**
+	 * Returns the number of fields of the playground
+	 * 
+	 * @return the number of fields
+	 */
+	public int getFieldCount()
+	{
+		return size * size;
+	}
+
+	/**
+	 * Returns the index of the field at the specified position
+	 * 
+	 * @param x
+	 *           the x position
+	 * @param y
+	 *           the y position
+	 * @return the index of the field
+	 */
+	public int getIndex(int x, int y)
+	{
+		return y * size + x;
+	}
+
+	/**
+	 * Returns the x position of the field with the specified index
+	 * 
+	 * @param index
+	 *           the index of the field
+	 * @return the x position
+	 */
+	public int getX(int index)
+	{
+		return index % size;
+	}
+
+	/**
+	 * Returns the y position of the field with the specified index
+	 * 
+	 * @param index
+	 *           the index of the field
+	 * @return the y position
+	 */
+	public int getY(int index)
+	{
+		return index / size;
+	}
+
+	/**
+	 * Returns whether the specified coordinate is on the field or not
+	 * 
+	 * @param x
+	 *           the x pos
+	 * @param y
+	 *           the y pos
+	 * @return if the specified position is on the playground
+	 */
+	public boolean isPosOnPlaygroud(int x, int y)
+	{
+		if (x < 0)
+			return false;
+		if (y < 0)
+			return false;
+		if (x >= size)
+			return false;
+		if (y >= size)
+			return false;
+		return true;
+	}
+}
@@ -1,30 +1,37 @@
-package me.battleship;
+package me.battleship.core;
 
 /**
- * A single field of the {@link Playground}
+ * A single field of the {@link Playground}. A field does not store any state
+ * by itself, it is a view on the bit masks of the playground it belongs to.
  * 
  * @author manuel
  */
 public class PlaygroundField
 {
-	/** Indicates whether this field was already hit */
-	private boolean hit;
+	/** The playground this field belongs to */
+	private final Playground playground;
 
-	/** Indicates whether a ship is on this field */
-	private boolean isShip;
+	/** The x position of this field */
+	private final int x;
 
-	/** The ship placed on this field */
-	private Ship ship;
+	/** The y position of this field */
+	private final int y;
 
 	/**
-	 * Constructs a new playground field. All values are <code>false</code> per
-	 * default.
+	 * Constructs a new view on a field of a playground
+	 * 
+	 * @param playground
+	 *           the playground the field belongs to
+	 * @param x
+	 *           the x position of the field
+	 * @param y
+	 *           the y position of the field
 	 */
-	public PlaygroundField()
+	public PlaygroundField(Playground playground, int x, int y)
 	{
-		hit = false;
-		isShip = false;
-		ship = null;
+		this.playground = playground;
+		this.x = x;
+		this.y = y;
 	}
 
 	/**
@@ -34,7 +41,7 @@ public class PlaygroundField
 	 */
 	public boolean isHit()
 	{
-		return hit;
+		return playground.isHit(x, y);
 	}
 
 	/**
@@ -45,7 +52,7 @@ public class PlaygroundField
 	 */
 	public void setHit(boolean hit)
 	{
-		this.hit = hit;
+		playground.setHit(x, y, hit);
 	}
 
 	/**
@@ -56,7 +63,7 @@ public class PlaygroundField
 	 */
 	public void setIsShip(boolean ship)
 	{
-		this.isShip = ship;
+		playground.setIsShip(x, y, ship);
 	}
 
 	/**
@@ -66,7 +73,7 @@ public class PlaygroundField
 	 */
 	public boolean isShip()
 	{
-		return isShip;
+		return playground.isShip(x, y);
 	}
 
 	/**
@@ -77,8 +84,7 @@ public class PlaygroundField
 	 */
 	public void setShip(Ship ship)
 	{
-		isShip = ship != null;
-		this.ship = ship;
+		playground.setShip(x, y, ship);
 	}
 
 	/**
@@ -88,6 +94,6 @@ public class PlaygroundField
 	 */
 	public Ship getShip()
 	{
-		return ship;
+		return playground.getShip(x, y);
 	}
 }
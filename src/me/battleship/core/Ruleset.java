@@ -0,0 +1,441 @@
+package me.battleship.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import me.battleship.core.geometry.CellRects;
+
+/**
+ * An immutable description of a game variant: the size of the playgrounds and
+ * the classes of ships the fleets consist of.
+ * <p>
+ * For every ship length of the ruleset and both orientations the fields on
+ * which such a ship can be positioned without leaving an empty playground are
+ * computed once when the ruleset is created. They form a rectangle which is
+ * stored packed (see {@link CellRects}). For playgrounds whose sets are stored
+ * as bit sets (see {@link CellSet#SPARSE_THRESHOLD}) the fields are also kept
+ * as a {@link CellSet} which is copied into the callers set. The
+ * {@link PlacementTable PlacementTables} of the ship lengths are built once as
+ * well and allow to filter the placements against the fields of a playground.
+ * 
+ * @author Manuel Vögele
+ */
+public final class Ruleset
+{
+	/** The classic game: a 10x10 playground and five ships */
+	public static final Ruleset CLASSIC = new Ruleset("classic", Playground.SIZE,
+	          new ShipClass("Aircraft carrier", 5, "aircraftcarrier", 1),
+	          new ShipClass("Battleship", 4, "battleship", 1),
+	          new ShipClass("Submarine", 3, "submarine", 2),
+	          new ShipClass("Destroyer", 2, "destroyer", 1));
+
+	/**
+	 * The classic game in the variant in which ships may not touch each other,
+	 * not even diagonally
+	 */
+	public static final Ruleset CLASSIC_NO_TOUCH = new Ruleset("classic-no-touch", Playground.SIZE, true,
+	          new ShipClass("Aircraft carrier", 5, "aircraftcarrier", 1),
+	          new ShipClass("Battleship", 4, "battleship", 1),
+	          new ShipClass("Submarine", 3, "submarine", 2),
+	          new ShipClass("Destroyer", 2, "destroyer", 1));
+
+	/**
+	 * Returns the built-in ruleset with the specified name
+	 * 
+	 * @param name
+	 *           the name
+	 * @return the ruleset
+	 * @throws IllegalArgumentException
+	 *            if there is no built-in ruleset with the name
+	 */
+	public static Ruleset forName(String name) throws IllegalArgumentException
+	{
+		if (CLASSIC.getName().equals(name))
+			return CLASSIC;
+		if (CLASSIC_NO_TOUCH.getName().equals(name))
+			return CLASSIC_NO_TOUCH;
+		throw new IllegalArgumentException("Unknown ruleset " + name);
+	}
+
+	/** The name of the ruleset */
+	private final String name;
+
+	/** The size of the playgrounds */
+	private final int size;
+
+	/** Indicates whether ships may not touch each other */
+	private final boolean noTouch;
+
+	/** The ship classes */
+	private final ShipClass[] shipClasses;
+
+	/** The number of ships in a fleet */
+	private final int shipCount;
+
+	/** The number of fields covered by a fleet */
+	private final int fleetFieldCount;
+
+	/**
+	 * The packed rectangles of the fields on which a ship can be positioned
+	 * indexed by {@link #getMaskIndex(int, Orientation)}. Lengths which are not
+	 * part of the ruleset map to {@link CellRects#EMPTY}.
+	 */
+	private final long[] anchorRects;
+
+	/**
+	 * The fields on which a ship can be positioned indexed by
+	 * {@link #getMaskIndex(int, Orientation)} or <code>null</code> for sparse
+	 * playgrounds and lengths which are not part of the ruleset
+	 */
+	private final CellSet[] placementMasks;
+
+	/**
+	 * The tables of all placements indexed by the length of the ship or
+	 * <code>null</code> for lengths which are not part of the ruleset
+	 */
+	private final PlacementTable[] placementTables;
+
+	/**
+	 * Initializes a new {@link Ruleset}
+	 * 
+	 * @param name
+	 *           the name of the ruleset
+	 * @param size
+	 *           the size of the playgrounds
+	 * @param shipClasses
+	 *           the ship classes
+	 * @throws IllegalArgumentException
+	 *            if the size is invalid, a ship does not fit on the playground
+	 *            or the fleet has more than {@link Playground#MAX_SHIPS} ships
+	 */
+	public Ruleset(String name, int size, ShipClass... shipClasses) throws IllegalArgumentException
+	{
+		this(name, size, false, shipClasses);
+	}
+
+	/**
+	 * Initializes a new {@link Ruleset}
+	 * 
+	 * @param name
+	 *           the name of the ruleset
+	 * @param size
+	 *           the size of the playgrounds
+	 * @param noTouch
+	 *           <code>true</code> if ships may not touch each other, not even
+	 *           diagonally
+	 * @param shipClasses
+	 *           the ship classes
+	 * @throws IllegalArgumentException
+	 *            if the size is invalid, a ship does not fit on the playground
+	 *            or the fleet has more than {@link Playground#MAX_SHIPS} ships
+	 */
+	public Ruleset(String name, int size, boolean noTouch, ShipClass... shipClasses) throws IllegalArgumentException
+	{
+		if (name == null)
+			throw new NullPointerException("name may not be null");
+		if (size < 1 || size > Playground.MAX_SIZE)
+			throw new IllegalArgumentException("size " + size + " is not between 1 and " + Playground.MAX_SIZE);
+		this.name = name;
+		this.size = size;
+		this.noTouch = noTouch;
+		this.shipClasses = shipClasses.clone();
+		int count = 0;
+		int fields = 0;
+		for (ShipClass shipClass : this.shipClasses)
+		{
+			if (shipClass.getLength() > size)
+				throw new IllegalArgumentException("Ship class " + shipClass.getName() + " does not fit on a playground of size " + size);
+			count += shipClass.getCount();
+			fields += shipClass.getCount() * shipClass.getLength();
+		}
+		if (count > Playground.MAX_SHIPS)
+			throw new IllegalArgumentException("The fleet has " + count + " ships, only " + Playground.MAX_SHIPS + " are supported");
+		shipCount = count;
+		fleetFieldCount = fields;
+
+		int fieldCount = size * size;
+		anchorRects = new long[(ShipClass.MAX_LENGTH + 1) * 2];
+		placementMasks = new CellSet[anchorRects.length];
+		placementTables = new PlacementTable[ShipClass.MAX_LENGTH + 1];
+		for (int i = 0;i < anchorRects.length;i++)
+		{
+			anchorRects[i] = CellRects.EMPTY;
+		}
+		for (ShipClass shipClass : this.shipClasses)
+		{
+			int length = shipClass.getLength();
+			if (placementTables[length] == null)
+				placementTables[length] = new PlacementTable(size, length);
+			for (Orientation orientation : Orientation.values())
+			{
+				int maskIndex = getMaskIndex(length, orientation);
+				if (!CellRects.isEmpty(anchorRects[maskIndex]))
+					continue;
+				long rect;
+				if (orientation == Orientation.VERTICAL)
+					rect = CellRects.pack(0, 0, size - 1, size - length);
+				else
+					rect = CellRects.pack(0, 0, size - length, size - 1);
+				anchorRects[maskIndex] = rect;
+				if (fieldCount <= CellSet.SPARSE_THRESHOLD)
+					placementMasks[maskIndex] = fillMask(rect, new CellSet(fieldCount));
+			}
+		}
+	}
+
+	/**
+	 * Returns the name of the ruleset
+	 * 
+	 * @return the name
+	 */
+	public String getName()
+	{
+		return name;
+	}
+
+	/**
+	 * Returns the size of the playgrounds
+	 * 
+	 * @return the size
+	 */
+	public int getSize()
+	{
+		return size;
+	}
+
+	/**
+	 * Returns whether ships may not touch each other
+	 * 
+	 * @return <code>true</code> if ships may not touch each other, not even
+	 *         diagonally
+	 */
+	public boolean isNoTouch()
+	{
+		return noTouch;
+	}
+
+	/**
+	 * Returns the number of fields of a playground
+	 * 
+	 * @return the number of fields
+	 */
+	public int getFieldCount()
+	{
+		return size * size;
+	}
+
+	/**
+	 * Returns the number of ship classes
+	 * 
+	 * @return the number of ship classes
+	 */
+	public int getShipClassCount()
+	{
+		return shipClasses.length;
+	}
+
+	/**
+	 * Returns the ship class with the specified index
+	 * 
+	 * @param index
+	 *           the index
+	 * @return the ship class
+	 */
+	public ShipClass getShipClass(int index)
+	{
+		return shipClasses[index];
+	}
+
+	/**
+	 * Returns the number of ships in a fleet
+	 * 
+	 * @return the number of ships
+	 */
+	public int getShipCount()
+	{
+		return shipCount;
+	}
+
+	/**
+	 * Returns the number of fields covered by a fleet
+	 * 
+	 * @return the number of fields
+	 */
+	public int getFleetFieldCount()
+	{
+		return fleetFieldCount;
+	}
+
+	/**
+	 * Creates a new fleet. None of the ships is placed on the playground.
+	 * 
+	 * @return the fleet
+	 */
+	public List<Ship> createFleet()
+	{
+		List<Ship> fleet = new ArrayList<Ship>(shipCount);
+		for (ShipClass shipClass : shipClasses)
+		{
+			for (int i = 0;i < shipClass.getCount();i++)
+			{
+				fleet.add(new Ship(shipClass, -1, -1, null));
+			}
+		}
+		return fleet;
+	}
+
+	/**
+	 * Returns the packed rectangle (see {@link CellRects}) of the fields on
+	 * which a ship with the specified length and orientation can be positioned
+	 * 
+	 * @param length
+	 *           the length of the ship
+	 * @param orientation
+	 *           the orientation of the ship
+	 * @return the packed rectangle
+	 * @throws IllegalArgumentException
+	 *            if there is no ship class with the specified length
+	 */
+	public long getAnchorRect(int length, Orientation orientation) throws IllegalArgumentException
+	{
+		long rect = CellRects.EMPTY;
+		if (length >= 1 && length <= ShipClass.MAX_LENGTH)
+			rect = anchorRects[getMaskIndex(length, orientation)];
+		if (CellRects.isEmpty(rect))
+			throw new IllegalArgumentException("There is no ship class with length " + length + " in ruleset " + name);
+		return rect;
+	}
+
+	/**
+	 * Returns whether a ship with the specified length and orientation
+	 * positioned on the specified field lies completely on the playground
+	 * 
+	 * @param length
+	 *           the length of the ship
+	 * @param x
+	 *           the x position of the ship
+	 * @param y
+	 *           the y position of the ship
+	 * @param orientation
+	 *           the orientation of the ship
+	 * @return <code>true</code> if the ship lies on the playground
+	 * @throws IllegalArgumentException
+	 *            if there is no ship class with the specified length
+	 */
+	public boolean canPlace(int length, int x, int y, Orientation orientation) throws IllegalArgumentException
+	{
+		return CellRects.contains(getAnchorRect(length, orientation), x, y);
+	}
+
+	/**
+	 * Returns the table of all placements of a ship with the specified length
+	 * 
+	 * @param length
+	 *           the length of the ship
+	 * @return the table
+	 * @throws IllegalArgumentException
+	 *            if there is no ship class with the specified length
+	 */
+	public PlacementTable getPlacementTable(int length) throws IllegalArgumentException
+	{
+		PlacementTable table = null;
+		if (length >= 1 && length <= ShipClass.MAX_LENGTH)
+			table = placementTables[length];
+		if (table == null)
+			throw new IllegalArgumentException("There is no ship class with length " + length + " in ruleset " + name);
+		return table;
+	}
+
+	/**
+	 * Writes the fields on which a ship with the specified length and
+	 * orientation can be positioned to the specified set. The previous content
+	 * of the set is replaced.
+	 * 
+	 * @param length
+	 *           the length of the ship
+	 * @param orientation
+	 *           the orientation of the ship
+	 * @param result
+	 *           the set to write the fields to
+	 * @return the passed set
+	 * @throws IllegalArgumentException
+	 *            if there is no ship class with the specified length
+	 */
+	public CellSet getPlacementMask(int length, Orientation orientation, CellSet result) throws IllegalArgumentException
+	{
+		long rect = getAnchorRect(length, orientation);
+		CellSet mask = placementMasks[getMaskIndex(length, orientation)];
+		if (mask != null)
+			return result.copyFrom(mask);
+		result.clear();
+		return fillMask(rect, result);
+	}
+
+	/**
+	 * Writes the fields on which a ship with the specified length and
+	 * orientation can be positioned next to the specified ships to the
+	 * specified set. If ships may not touch each other, positions touching an
+	 * occupied field are left out as well. The previous content of the set is
+	 * replaced.
+	 * 
+	 * @param length
+	 *           the length of the ship
+	 * @param orientation
+	 *           the orientation of the ship
+	 * @param occupied
+	 *           the fields occupied by the other ships
+	 * @param result
+	 *           the set to write the fields to
+	 * @return the passed set
+	 * @throws IllegalArgumentException
+	 *            if there is no ship class with the specified length
+	 */
+	public CellSet getLegalAnchors(int length, Orientation orientation, CellSet occupied, CellSet result) throws IllegalArgumentException
+	{
+		PlacementTable table = getPlacementTable(length);
+		if (noTouch)
+			return table.getSeparatedAnchors(orientation, occupied, result);
+		return table.getLegalAnchors(orientation, null, occupied, result);
+	}
+
+	/**
+	 * Adds the fields of the specified rectangle to the specified set
+	 * 
+	 * @param rect
+	 *           the packed rectangle
+	 * @param result
+	 *           the set to add the fields to
+	 * @return the passed set
+	 */
+	private CellSet fillMask(long rect, CellSet result)
+	{
+		for (int y = CellRects.getTop(rect);y <= CellRects.getBottom(rect);y++)
+		{
+			for (int x = CellRects.getLeft(rect);x <= CellRects.getRight(rect);x++)
+			{
+				result.add(y * size + x);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the index of the masks for the specified length and orientation
+	 * 
+	 * @param length
+	 *           the length of the ship
+	 * @param orientation
+	 *           the orientation of the ship
+	 * @return the index
+	 */
+	private static int getMaskIndex(int length, Orientation orientation)
+	{
+		return length * 2 + (orientation == Orientation.VERTICAL ? 1 : 0);
+	}
+
+	@Override
+	public String toString()
+	{
+		return name + " " + size + "x" + size;
+	}
+}
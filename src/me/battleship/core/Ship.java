@@ -0,0 +1,338 @@
+package me.battleship.core;
+
+import me.battleship.core.geometry.CellRects;
+
+/**
+ * A ship
+ * 
+ * @author manuel
+ */
+public class Ship
+{
+	/** The class of the ship */
+	private final ShipClass shipClass;
+
+	/** The size of the ship */
+	private final int size;
+
+	/** The x position of the ship */
+	private int x;
+
+	/** The y position of the ship */
+	private int y;
+
+	/** The orientation of the ship */
+	private Orientation orientation;
+
+	/**
+	 * The full position of the ship packed as described in {@link CellRects}
+	 */
+	private long pos;
+
+	/**
+	 * A bit mask containing the fields that were destroyed. Bit <i>i</i> is set
+	 * if the <i>i</i>-th field of the ship (counted from its position) was
+	 * destroyed.
+	 */
+	private int destroyedMask;
+
+	/** The number of fields of the ship which were not destroyed yet */
+	private int health;
+
+	/** The grid which is updated when the ship moves */
+	private OccupancyGrid occupancyGrid;
+
+	/**
+	 * Constructs a new ship
+	 * 
+	 * @param shipClass
+	 *           The class of the ship
+	 * @param x
+	 *           The x position of the ship
+	 * @param y
+	 *           The y position of the ship
+	 * @param orientation
+	 *           the orientation of the ship
+	 */
+	public Ship(ShipClass shipClass, int x, int y, Orientation orientation)
+	{
+		if (shipClass == null)
+		{
+			throw new NullPointerException("shipClass may not be null");
+		}
+		this.shipClass = shipClass;
+		this.x = x;
+		this.y = y;
+		this.orientation = orientation;
+		this.size = shipClass.getLength();
+		this.pos = getRectForPos(x, y, size, orientation);
+		destroyedMask = 0;
+		health = size;
+	}
+
+	/**
+	 * Initializes a new {@link Ship} making a copy of an exsisting ship
+	 * 
+	 * @param ship
+	 *           the ship to make a copy of
+	 */
+	public Ship(Ship ship)
+	{
+		this.shipClass = ship.shipClass;
+		this.x = ship.x;
+		this.y = ship.y;
+		this.orientation = ship.orientation;
+		this.pos = ship.pos;
+		this.size = ship.size;
+		this.destroyedMask = ship.destroyedMask;
+		this.health = ship.health;
+	}
+
+	/**
+	 * Returns the packed rectangle (see {@link CellRects}) for the specified
+	 * position
+	 * 
+	 * @param x
+	 *           the x position
+	 * @param y
+	 *           the y position
+	 * @param size
+	 *           the ships size
+	 * @param orientation
+	 *           the orientation
+	 * @return the packed rectangle for the specified position
+	 */
+	public static long getRectForPos(int x, int y, int size, Orientation orientation)
+	{
+		return CellRects.forShip(x, y, size, orientation != Orientation.VERTICAL);
+	}
+
+	/**
+	 * Returns the class of the ship
+	 * 
+	 * @return the class of the ship
+	 */
+	public ShipClass getShipClass()
+	{
+		return shipClass;
+	}
+
+	/**
+	 * Returns the size of the ship
+	 * 
+	 * @return the size of the ship
+	 */
+	public int getSize()
+	{
+		return size;
+	}
+
+	/**
+	 * Returns the x pos of the ship
+	 * 
+	 * @return the x pos of the ship
+	 */
+	public int getX()
+	{
+		return x;
+	}
+
+	/**
+	 * Returns the y pos of the ship
+	 * 
+	 * @return the y pos of the ship
+	 */
+	public int getY()
+	{
+		return y;
+	}
+
+	/**
+	 * Sets the position of the ship
+	 * 
+	 * @param x
+	 *           the x position
+	 * @param y
+	 *           the y position
+	 */
+	public void setPos(int x, int y)
+	{
+		if (occupancyGrid != null)
+			occupancyGrid.remove(this);
+		this.x = x;
+		this.y = y;
+		this.pos = getRectForPos(x, y, size, orientation);
+		if (occupancyGrid != null)
+			occupancyGrid.add(this);
+	}
+
+	/**
+	 * Returns the orientation of the ship
+	 * 
+	 * @return the orientation of the ship
+	 */
+	public Orientation getOrientation()
+	{
+		return orientation;
+	}
+
+	/**
+	 * Sets the orientation of the ship
+	 * 
+	 * @param orientation
+	 *           the orientation
+	 */
+	public void setOrientation(Orientation orientation)
+	{
+		if (occupancyGrid != null)
+			occupancyGrid.remove(this);
+		this.orientation = orientation;
+		this.pos = getRectForPos(x, y, size, orientation);
+		if (occupancyGrid != null)
+			occupancyGrid.add(this);
+	}
+
+	/**
+	 * Sets the grid which is updated when the ship moves
+	 * 
+	 * @param occupancyGrid
+	 *           the grid or <code>null</code> if no grid should be updated
+	 */
+	void setOccupancyGrid(OccupancyGrid occupancyGrid)
+	{
+		this.occupancyGrid = occupancyGrid;
+	}
+
+	/**
+	 * Returns the pos of the ship
+	 * 
+	 * @return the pos packed as described in {@link CellRects}
+	 */
+	public long getRect()
+	{
+		return pos;
+	}
+
+	/**
+	 * Returns the index of the field of the ship at the specified position
+	 * counted from the position of the ship
+	 * 
+	 * @param xpos
+	 *           the x position
+	 * @param ypos
+	 *           the y position
+	 * @return the index of the field or <code>-1</code> if the position is not a
+	 *         position of this ship
+	 */
+	public int getFieldIndex(int xpos, int ypos)
+	{
+		int index;
+		if (orientation == Orientation.HORIZONTAL)
+		{
+			if (ypos != y)
+				return -1;
+			index = xpos - x;
+		}
+		else
+		{
+			if (xpos != x)
+				return -1;
+			index = ypos - y;
+		}
+		if (index < 0 || index >= size)
+			return -1;
+		return index;
+	}
+
+	/**
+	 * Destroys the field with the specified index. Does nothing if the field was
+	 * already destroyed.
+	 * 
+	 * @param index
+	 *           the index of the field counted from the position of the ship
+	 * @return <code>true</code> if all fields of the ship are destroyed
+	 *         afterwards
+	 */
+	public boolean destroyFieldAt(int index)
+	{
+		int bit = 1 << index;
+		if ((destroyedMask & bit) == 0)
+		{
+			destroyedMask |= bit;
+			health--;
+		}
+		return health == 0;
+	}
+
+	/**
+	 * Repairs all destroyed fields of the ship, e.g. to use it in another game
+	 */
+	public void repair()
+	{
+		destroyedMask = 0;
+		health = size;
+	}
+
+	/**
+	 * Destroys the field at the specified position
+	 * 
+	 * @param xpos
+	 *           the x position
+	 * @param ypos
+	 *           the y position
+	 * @throws IllegalArgumentException
+	 *            if the field is not a field of the ship
+	 */
+	public void destroyField(int xpos, int ypos) throws IllegalArgumentException
+	{
+		int index = getFieldIndex(xpos, ypos);
+		if (index < 0)
+		{
+			throw new IllegalArgumentException("Position " + xpos + "," + ypos + " is not a position of this ship (" + x + "," + y + "," + orientation + ")");
+		}
+		destroyFieldAt(index);
+	}
+
+	/**
+	 * Returns the destroyed fields of the ship
+	 * 
+	 * @return a bit mask in which bit <i>i</i> is set if the <i>i</i>-th field
+	 *         of the ship was destroyed
+	 */
+	public int getDestroyedMask()
+	{
+		return destroyedMask;
+	}
+
+	/**
+	 * Returns whether the field with the specified index was destroyed
+	 * 
+	 * @param index
+	 *           the index of the field counted from the position of the ship
+	 * @return <code>true</code> if the field was destroyed
+	 */
+	public boolean isFieldDestroyed(int index)
+	{
+		return (destroyedMask & (1 << index)) != 0;
+	}
+
+	/**
+	 * Returns the number of fields of this ship which were not destroyed yet
+	 * 
+	 * @return the remaining health
+	 */
+	public int getHealth()
+	{
+		return health;
+	}
+
+	/**
+	 * Returns if all fields of this ship are destroyed
+	 * 
+	 * @return if all fields of this ship are destroyed
+	 */
+	public boolean areAllFieldsDestroyed()
+	{
+		return health == 0;
+	}
+}
@@ -0,0 +1,103 @@
+package me.battleship.core;
+
+/**
+ * An immutable description of a class of ships in a {@link Ruleset}: its
+ * name, its length, the name of the sprite used to draw it and how many ships
+ * of the class belong to a fleet
+ * 
+ * @author Manuel Vögele
+ */
+public final class ShipClass
+{
+	/** The maximum length of a ship */
+	public static final int MAX_LENGTH = 32;
+
+	/** The name of the class */
+	private final String name;
+
+	/** The length of the ships of this class */
+	private final int length;
+
+	/** The name of the sprite used to draw ships of this class */
+	private final String sprite;
+
+	/** The number of ships of this class in a fleet */
+	private final int count;
+
+	/**
+	 * Initializes a new {@link ShipClass}
+	 * 
+	 * @param name
+	 *           the name of the class
+	 * @param length
+	 *           the length of the ships
+	 * @param sprite
+	 *           the name of the sprite used to draw the ships
+	 * @param count
+	 *           the number of ships of this class in a fleet
+	 * @throws IllegalArgumentException
+	 *            if the length is not between 1 and {@link #MAX_LENGTH} or the
+	 *            count is negative
+	 */
+	public ShipClass(String name, int length, String sprite, int count) throws IllegalArgumentException
+	{
+		if (name == null)
+			throw new NullPointerException("name may not be null");
+		if (sprite == null)
+			throw new NullPointerException("sprite may not be null");
+		if (length < 1 || length > MAX_LENGTH)
+			throw new IllegalArgumentException("length " + length + " of ship class " + name + " is not between 1 and " + MAX_LENGTH);
+		if (count < 0)
+			throw new IllegalArgumentException("count of ship class " + name + " may not be negative");
+		this.name = name;
+		this.length = length;
+		this.sprite = sprite;
+		this.count = count;
+	}
+
+	/**
+	 * Returns the name of the class
+	 * 
+	 * @return the name
+	 */
+	public String getName()
+	{
+		return name;
+	}
+
+	/**
+	 * Returns the length of the ships of this class
+	 * 
+	 * @return the length
+	 */
+	public int getLength()
+	{
+		return length;
+	}
+
+	/**
+	 * Returns the name of the sprite used to draw ships of this class
+	 * 
+	 * @return the name of the sprite
+	 */
+	public String getSprite()
+	{
+		return sprite;
+	}
+
+	/**
+	 * Returns the number of ships of this class in a fleet
+	 * 
+	 * @return the number of ships
+	 */
+	public int getCount()
+	{
+		return count;
+	}
+
+	@Override
+	public String toString()
+	{
+		return name + "(" + length + ")x" + count;
+	}
+}
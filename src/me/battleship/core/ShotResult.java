@@ -0,0 +1,21 @@
+package me.battleship.core;
+
+/**
+ * The result of a shot on a {@link Playground}
+ * 
+ * @author Manuel Vögele
+ */
+public enum ShotResult
+{
+	/** The shot hit the water */
+	MISS,
+
+	/** The shot hit a ship */
+	HIT,
+
+	/** The shot hit a ship and destroyed its last field */
+	SUNK,
+
+	/** The field was already hit before */
+	ALREADY_HIT
+}
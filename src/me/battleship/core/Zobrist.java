@@ -0,0 +1,156 @@
+package me.battleship.core;
+
+/**
+ * The keys of the Zobrist hashes of boards and games. The hash of a state is
+ * the XOR of the keys of all its features (a hit field, a field with a ship, a
+ * placed ship, ...), so a change of a feature updates the hash with a single
+ * XOR and equal states always have equal hashes. Different states have equal
+ * hashes only with a probability of about 2<sup>-64</sup>.
+ * <p>
+ * The keys are not taken from a random table but derived from the feature by
+ * a fixed mixing function. They need no memory even for the largest
+ * playgrounds, and every client computes the same keys, so the hashes can be
+ * compared between clients. The keys are part of the protocol and must never
+ * change.
+ * 
+ * @author Manuel Vögele
+ */
+public final class Zobrist
+{
+	/** The domain of the keys of hit fields */
+	private static final int HIT = 1;
+
+	/** The domain of the keys of fields on which a ship is placed */
+	private static final int SHIP_FIELD = 2;
+
+	/** The domain of the keys of placed ships */
+	private static final int SHIP = 3;
+
+	/** The key of a game in the placement phase */
+	public static final long PLACEMENT_PHASE = mix(4);
+
+	/** The key of a game in which the player may shoot next */
+	public static final long OWN_TURN = mix(5);
+
+	/**
+	 * There are only static methods
+	 */
+	private Zobrist()
+	{
+		// Nothing to do
+	}
+
+	/**
+	 * Returns the key of the field with the specified index being hit
+	 * 
+	 * @param index
+	 *           the index of the field
+	 * @return the key
+	 */
+	public static long getHitKey(int index)
+	{
+		return mix((long) index << 3 | HIT);
+	}
+
+	/**
+	 * Returns the key of a ship being placed on the field with the specified
+	 * index
+	 * 
+	 * @param index
+	 *           the index of the field
+	 * @return the key
+	 */
+	public static long getShipFieldKey(int index)
+	{
+		return mix((long) index << 3 | SHIP_FIELD);
+	}
+
+	/**
+	 * Returns the key of a ship with the specified length being placed at the
+	 * specified position. Ships with the same length are interchangeable, so
+	 * swapping them does not change the hash.
+	 * 
+	 * @param length
+	 *           the length of the ship
+	 * @param rect
+	 *           the position of the ship packed as described in
+	 *           {@link me.battleship.core.geometry.CellRects}
+	 * @return the key
+	 */
+	public static long getShipKey(int length, long rect)
+	{
+		return mix(rect ^ mix((long) length << 3 | SHIP));
+	}
+
+	/**
+	 * Returns the XOR of the keys of all hit fields in the specified set
+	 * 
+	 * @param hits
+	 *           the hit fields
+	 * @return the hash of the fields
+	 */
+	static long hashHits(ImmutableCellSet hits)
+	{
+		return hashFields(hits, HIT);
+	}
+
+	/**
+	 * Returns the XOR of the keys of all fields in the specified set on which
+	 * a ship is placed
+	 * 
+	 * @param shipFields
+	 *           the fields on which a ship is placed
+	 * @return the hash of the fields
+	 */
+	static long hashShipFields(ImmutableCellSet shipFields)
+	{
+		return hashFields(shipFields, SHIP_FIELD);
+	}
+
+	/**
+	 * Returns the XOR of the keys of all fields in the specified set
+	 * 
+	 * @param fields
+	 *           the fields
+	 * @param domain
+	 *           the domain of the keys
+	 * @return the hash of the fields
+	 */
+	private static long hashFields(ImmutableCellSet fields, int domain)
+	{
+		long hash = 0;
+		if (fields.isEmpty())
+			return hash;
+		int wordCount = (fields.getCapacity() + 63) >>> 6;
+		for (int w = 0;w < wordCount;w++)
+		{
+			long word = fields.getWord(w);
+			while (word != 0)
+			{
+				int index = (w << 6) + Long.numberOfTrailingZeros(word);
+				hash ^= mix((long) index << 3 | domain);
+				word &= word - 1;
+			}
+		}
+		return hash;
+	}
+
+	/**
+	 * Mixes the bits of the specified value (a step of SplitMix64: the golden
+	 * ratio increment followed by its finalizer). The function is a bijection,
+	 * so different features never share a key. It is also used for deriving
+	 * unrelated seeds and keys from consecutive values. The keys depend on it,
+	 * so it must never change.
+	 * 
+	 * @param value
+	 *           the value
+	 * @return the mixed value
+	 */
+	public static long mix(long value)
+	{
+		long z = value + 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+}
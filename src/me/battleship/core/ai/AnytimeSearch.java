@@ -0,0 +1,814 @@
+package me.battleship.core.ai;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import me.battleship.core.CellSet;
+import me.battleship.core.FieldIterator;
+import me.battleship.core.FogOfWar;
+import me.battleship.core.Orientation;
+import me.battleship.core.PlacementTable;
+import me.battleship.core.Ruleset;
+import me.battleship.core.ShotResult;
+import me.battleship.core.geometry.CellRects;
+
+/**
+ * A search for the best shot which runs on a background executor under a
+ * wall-clock budget. The search samples complete opponent fleets which are
+ * consistent with all shots so far and shoots at the field covered by most of
+ * them. The more fleets are sampled, the better the answer gets, so the best
+ * shot found so far can be taken at any time.
+ * <p>
+ * The fleets are built ship by ship: first a ship is placed on the hits
+ * around every shot which sank a ship which is not known (see
+ * {@link FogOfWar}), then as long as a hit is not covered a ship is placed
+ * over it, the remaining ships are placed randomly. Fleets which
+ * break a rule are discarded, as are fleets with a ship lying on hits only
+ * which does not cover exactly one shot which sank a ship: such a ship would
+ * have been reported sunk. Until enough fleets are found, the shot of a
+ * {@link DensityAI} is used.
+ * <p>
+ * The state of the search is only touched by the executor. Callers on other
+ * threads never block: shot results are queued and applied by the next
+ * search, and the best shot is published through an atomic variable. A new
+ * result or {@link #cancel()} stops a running search at once. Sampled fleets
+ * which are still consistent with the new results are kept for the next
+ * search. A search can also be run on the calling thread with a fixed number
+ * of attempts instead of a deadline, see {@link #search(int)}. A search
+ * created without an executor can only be used this way.
+ * 
+ * @author Manuel Vögele
+ */
+public class AnytimeSearch
+{
+	/**
+	 * The listener which is informed when a search ends
+	 * 
+	 * @author Manuel Vögele
+	 */
+	public interface Listener
+	{
+		/**
+		 * Called on the executor when a search reached its deadline. It is not
+		 * called if the search was cancelled.
+		 * 
+		 * @param field
+		 *           the index of the best field found
+		 */
+		public void onSearchFinished(int field);
+	}
+
+	/** The maximum number of fleets which are kept */
+	public static final int MAX_SAMPLES = 20000;
+
+	/** The number of fleets which must be found before they are trusted more than the density */
+	private static final int MIN_SAMPLES = 32;
+
+	/** The number of random placements tried for a ship before the fleet is discarded */
+	private static final int TRIES = 64;
+
+	/** The number of new fleets after which the best shot is published again */
+	private static final int PUBLISH_INTERVAL = 64;
+
+	/** The results of shots by their ordinal */
+	private static final ShotResult[] RESULTS = ShotResult.values();
+
+	/** The bits of a sampled ship holding the number of the placement */
+	private static final int PLACEMENT_BITS = 24;
+
+	/** The entry of {@link #pendingResults} forgetting all shots */
+	private static final int RESET = -1;
+
+	/** The ruleset */
+	private final Ruleset ruleset;
+
+	/** The size of the playground */
+	private final int size;
+
+	/** The executor running the searches or <code>null</code> if it only searches on the calling thread */
+	private final Executor executor;
+
+	/** The number of the current turn, a search stops if it changes */
+	private final AtomicInteger turn = new AtomicInteger();
+
+	/** The turn in the upper and the best field in the lower 32 bits */
+	private final AtomicLong best = new AtomicLong(-1);
+
+	/** The shot results which were not applied yet, see {@link #pack(int, ShotResult)} */
+	private final ConcurrentLinkedQueue<Integer> pendingResults = new ConcurrentLinkedQueue<Integer>();
+
+	/** The lock held by the executor while touching the state below */
+	private final Object searchLock = new Object();
+
+	/** The random number generator */
+	private final Random random;
+
+	/** The fallback used until enough fleets are sampled */
+	private final DensityAI density;
+
+	/** The inference of the fields which can not hold a ship */
+	private final FogOfWar fog;
+
+	/** The different lengths of the ship classes */
+	private final int[] lengths;
+
+	/** The placement tables for the lengths */
+	private final PlacementTable[] tables;
+
+	/** The index of the length of every ship which may still be afloat */
+	private final int[] ships;
+
+	/** The number of ships which may still be afloat */
+	private int shipCount;
+
+	/** The sampled fleets, {@link Ruleset#getShipCount()} entries per fleet */
+	private final int[] samples;
+
+	/** The number of sampled fleets */
+	private int sampleCount;
+
+	/** The number of sampled fleets covering every field */
+	private final int[] counts;
+
+	/** The fields which were shot at */
+	private final CellSet shots;
+
+	/** The fields which can not hold a ship which is still afloat */
+	private final CellSet blocked;
+
+	/** The hits which must be covered by the ships which are still afloat */
+	private final CellSet hits;
+
+	/** The fields which were not hit */
+	private final CellSet notHit;
+
+	/** The shots which sank a ship which is not known */
+	private final CellSet sunkShots;
+
+	/** The fields covered by the fleet being built */
+	private final CellSet occupied;
+
+	/** The hits not yet covered by the fleet being built */
+	private final CellSet uncovered;
+
+	/** The ships not yet placed while building a fleet */
+	private final boolean[] placed;
+
+	/** The iterator reused for choosing hits */
+	private final FieldIterator iterator = new FieldIterator();
+
+	/** The iterator reused for iterating the shots which sank a ship */
+	private final FieldIterator sunkIterator = new FieldIterator();
+
+	/**
+	 * Initializes a new {@link AnytimeSearch} for a playground without any
+	 * shots which only searches on the calling thread, see
+	 * {@link #search(int)}
+	 * 
+	 * @param ruleset
+	 *           the ruleset
+	 * @param random
+	 *           the random number generator
+	 */
+	public AnytimeSearch(Ruleset ruleset, Random random)
+	{
+		this(ruleset, null, random);
+	}
+
+	/**
+	 * Initializes a new {@link AnytimeSearch} for a playground without any
+	 * shots
+	 * 
+	 * @param ruleset
+	 *           the ruleset
+	 * @param executor
+	 *           the executor running the searches
+	 * @param random
+	 *           the random number generator
+	 */
+	public AnytimeSearch(Ruleset ruleset, Executor executor, Random random)
+	{
+		this.ruleset = ruleset;
+		this.executor = executor;
+		this.random = random;
+		size = ruleset.getSize();
+		density = new DensityAI(ruleset, random);
+		fog = new FogOfWar(ruleset);
+		lengths = new int[ruleset.getShipClassCount()];
+		tables = new PlacementTable[lengths.length];
+		for (int c = 0;c < lengths.length;c++)
+		{
+			lengths[c] = ruleset.getShipClass(c).getLength();
+			tables[c] = ruleset.getPlacementTable(lengths[c]);
+		}
+		ships = new int[ruleset.getShipCount()];
+		placed = new boolean[ships.length];
+		samples = new int[MAX_SAMPLES * ships.length];
+		counts = new int[ruleset.getFieldCount()];
+		shots = new CellSet(ruleset.getFieldCount());
+		blocked = new CellSet(ruleset.getFieldCount());
+		hits = new CellSet(ruleset.getFieldCount());
+		notHit = new CellSet(ruleset.getFieldCount());
+		sunkShots = new CellSet(ruleset.getFieldCount());
+		occupied = new CellSet(ruleset.getFieldCount());
+		uncovered = new CellSet(ruleset.getFieldCount());
+		clear();
+	}
+
+	/**
+	 * Returns the ruleset
+	 * 
+	 * @return the ruleset
+	 */
+	public Ruleset getRuleset()
+	{
+		return ruleset;
+	}
+
+	/**
+	 * Starts a search for the next shot. A running search is cancelled. This
+	 * method returns at once.
+	 * 
+	 * @param budgetMillis
+	 *           the time in milliseconds after which the search ends
+	 * @param listener
+	 *           the listener to inform when the search ends or
+	 *           <code>null</code>
+	 * @throws IllegalStateException
+	 *            if the search was created without an executor
+	 */
+	public void start(long budgetMillis, final Listener listener) throws IllegalStateException
+	{
+		if (executor == null)
+			throw new IllegalStateException("The search has no executor to run in the background");
+		final int searchTurn = turn.incrementAndGet();
+		final long deadline = System.nanoTime() + budgetMillis * 1000000L;
+		executor.execute(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				search(searchTurn, deadline, Integer.MAX_VALUE, listener);
+			}
+		});
+	}
+
+	/**
+	 * Searches for the next shot on the calling thread. A running search is
+	 * cancelled. The search ends after the specified number of attempts to
+	 * build a fleet, so its result only depends on the random number
+	 * generator and not on the speed of the machine.
+	 * 
+	 * @param attempts
+	 *           the number of attempts to build a fleet
+	 * @return the index of the best field found
+	 */
+	public int search(int attempts)
+	{
+		int searchTurn = turn.incrementAndGet();
+		search(searchTurn, Long.MAX_VALUE, attempts, null);
+		return getBestShot();
+	}
+
+	/**
+	 * Stops the running search. The best shot is forgotten.
+	 */
+	public void cancel()
+	{
+		turn.incrementAndGet();
+	}
+
+	/**
+	 * Forgets all shots and sampled fleets, e.g. for a new game, and cancels
+	 * the running search. The shots are forgotten by the next search, results
+	 * recorded afterwards are kept. This method returns at once.
+	 */
+	public void reset()
+	{
+		pendingResults.add(Integer.valueOf(RESET));
+		cancel();
+	}
+
+	/**
+	 * Records the result of a shot and cancels the running search. The result
+	 * is applied by the next search. This method returns at once.
+	 * 
+	 * @param x
+	 *           the x position of the shot
+	 * @param y
+	 *           the y position of the shot
+	 * @param result
+	 *           the result of the shot
+	 */
+	public void recordResult(int x, int y, ShotResult result)
+	{
+		if (result == ShotResult.ALREADY_HIT)
+			return;
+		pendingResults.add(Integer.valueOf(pack(y * size + x, result)));
+		cancel();
+	}
+
+	/**
+	 * Returns the best shot found by the search of the current turn so far
+	 * 
+	 * @return the index of the field or <code>-1</code> if the search did not
+	 *         find a shot yet or was cancelled
+	 */
+	public int getBestShot()
+	{
+		long value = best.get();
+		if ((int) (value >>> 32) != turn.get())
+			return -1;
+		return (int) value;
+	}
+
+	/**
+	 * Runs a search on the executor
+	 * 
+	 * @param searchTurn
+	 *           the turn the search belongs to
+	 * @param deadline
+	 *           the value of {@link System#nanoTime()} at which the search
+	 *           ends
+	 * @param attempts
+	 *           the number of attempts to build a fleet after which the search
+	 *           ends
+	 * @param listener
+	 *           the listener to inform when the search ends or
+	 *           <code>null</code>
+	 */
+	void search(int searchTurn, long deadline, int attempts, Listener listener)
+	{
+		int field;
+		synchronized (searchLock)
+		{
+			if (turn.get() != searchTurn)
+				return;
+			applyPendingResults();
+			field = chooseShot();
+			publish(searchTurn, field);
+			int found = 0;
+			for (int attempt = 0;attempt < attempts && sampleCount < MAX_SAMPLES && turn.get() == searchTurn && System.nanoTime() < deadline;attempt++)
+			{
+				if (!sampleFleet())
+					continue;
+				if (++found % PUBLISH_INTERVAL == 0)
+				{
+					field = chooseShot();
+					publish(searchTurn, field);
+				}
+			}
+			if (turn.get() != searchTurn)
+				return;
+			field = chooseShot();
+			publish(searchTurn, field);
+		}
+		if (listener != null && turn.get() == searchTurn)
+			listener.onSearchFinished(field);
+	}
+
+	/**
+	 * Publishes the best shot of a turn
+	 * 
+	 * @param searchTurn
+	 *           the turn
+	 * @param field
+	 *           the index of the field
+	 */
+	private void publish(int searchTurn, int field)
+	{
+		best.set((long) searchTurn << 32 | (field & 0xFFFFFFFFL));
+	}
+
+	/**
+	 * Applies the queued shot results and removes the fleets which are not
+	 * consistent with them any more
+	 */
+	private void applyPendingResults()
+	{
+		boolean changed = false;
+		Integer packed;
+		while ((packed = pendingResults.poll()) != null)
+		{
+			if (packed.intValue() == RESET)
+			{
+				clear();
+				changed = false;
+				continue;
+			}
+			int index = packed.intValue() >>> 2;
+			ShotResult result = RESULTS[packed.intValue() & 3];
+			if (shots.contains(index))
+				continue;
+			shots.add(index);
+			density.recordResult(index % size, index / size, result);
+			fog.recordResult(index % size, index / size, result);
+			if (result != ShotResult.MISS)
+			{
+				hits.add(index);
+				notHit.remove(index);
+			}
+			long rect = fog.getLastSunkRect();
+			if (result == ShotResult.SUNK && CellRects.isEmpty(rect))
+				sunkShots.add(index);
+			for (int y = CellRects.getTop(rect);y <= CellRects.getBottom(rect);y++)
+			{
+				for (int x = CellRects.getLeft(rect);x <= CellRects.getRight(rect);x++)
+				{
+					hits.remove(y * size + x);
+					blocked.add(y * size + x);
+				}
+			}
+			changed = true;
+		}
+		if (!changed)
+			return;
+		blocked.addAll(fog.getKnownEmpty(occupied));
+		if (updateShips())
+		{
+			// A ship was sunk, the fleets have one ship too many
+			sampleCount = 0;
+			Arrays.fill(counts, 0);
+			return;
+		}
+		for (int s = sampleCount - 1;s >= 0;s--)
+		{
+			if (!isConsistent(s))
+				removeSample(s);
+		}
+	}
+
+	/**
+	 * Forgets all shots and sampled fleets
+	 */
+	private void clear()
+	{
+		density.reset();
+		fog.reset();
+		shots.clear();
+		blocked.clear();
+		hits.clear();
+		notHit.clear();
+		for (int index = 0;index < counts.length;index++)
+		{
+			notHit.add(index);
+		}
+		sunkShots.clear();
+		sampleCount = 0;
+		Arrays.fill(counts, 0);
+		updateShips();
+	}
+
+	/**
+	 * Updates the ships which may still be afloat
+	 * 
+	 * @return <code>true</code> if the ships changed
+	 */
+	private boolean updateShips()
+	{
+		int count = 0;
+		for (int c = 0;c < lengths.length;c++)
+		{
+			for (int i = 0;i < fog.getAfloatCount(c);i++)
+			{
+				ships[count++] = c;
+			}
+		}
+		boolean changed = count != shipCount;
+		shipCount = count;
+		return changed;
+	}
+
+	/**
+	 * Returns the field covered by most fleets which was not shot at
+	 * 
+	 * @return the index of the field or <code>-1</code> if every field was
+	 *         shot at
+	 */
+	private int chooseShot()
+	{
+		if (sampleCount < MIN_SAMPLES)
+			return density.chooseShot();
+		int bestField = -1;
+		int bestCount = 0;
+		int ties = 0;
+		for (int index = 0;index < counts.length;index++)
+		{
+			int count = counts[index];
+			if (count < bestCount || count == 0 || shots.contains(index))
+				continue;
+			if (count > bestCount)
+			{
+				bestCount = count;
+				ties = 0;
+			}
+			if (random.nextInt(++ties) == 0)
+				bestField = index;
+		}
+		return bestField >= 0 ? bestField : density.chooseShot();
+	}
+
+	/**
+	 * Tries to build a fleet which is consistent with all shots and adds it to
+	 * the sampled fleets
+	 * 
+	 * @return <code>true</code> if a fleet was found
+	 */
+	private boolean sampleFleet()
+	{
+		occupied.clear();
+		uncovered.copyFrom(hits);
+		for (int i = 0;i < shipCount;i++)
+		{
+			placed[i] = false;
+		}
+		int offset = sampleCount * ships.length;
+		int step = 0;
+		sunkIterator.reset(sunkShots);
+		while (sunkIterator.hasNext())
+		{
+			// A ship lying on hits only, sunk by the shot
+			int shot = sunkIterator.next();
+			int ship = -1;
+			int placement = -1;
+			for (int t = 0;t < TRIES && placement < 0 && step < shipCount;t++)
+			{
+				ship = chooseUnplacedShip(shipCount - step);
+				PlacementTable table = tables[ships[ship]];
+				int candidate = getCoveringPlacement(table, shot);
+				if (candidate >= 0 && table.isLegal(candidate, notHit, null) && isLegal(table, candidate))
+					placement = candidate;
+				else
+					placed[ship] = false;
+			}
+			if (placement < 0)
+				return false;
+			addShip(offset, step++, ship, placement);
+		}
+		for (;step < shipCount;step++)
+		{
+			int ship = chooseUnplacedShip(shipCount - step);
+			PlacementTable table = tables[ships[ship]];
+			int placement = -1;
+			if (uncovered.isEmpty())
+			{
+				for (int t = 0;t < TRIES && placement < 0;t++)
+				{
+					int candidate = random.nextInt(table.getPlacementCount());
+					if (isLegal(table, candidate))
+						placement = candidate;
+				}
+			}
+			else
+			{
+				int hit = chooseUncoveredHit();
+				for (int t = 0;t < TRIES && placement < 0;t++)
+				{
+					int candidate = getCoveringPlacement(table, hit);
+					if (candidate >= 0 && isLegal(table, candidate))
+						placement = candidate;
+				}
+			}
+			if (placement < 0)
+				return false;
+			addShip(offset, step, ship, placement);
+		}
+		if (!uncovered.isEmpty())
+			return false;
+		addToCounts(sampleCount++, 1);
+		return true;
+	}
+
+	/**
+	 * Adds a ship to the fleet being built
+	 * 
+	 * @param offset
+	 *           the offset of the fleet in {@link #samples}
+	 * @param step
+	 *           the number of ships added before
+	 * @param ship
+	 *           the index of the ship
+	 * @param placement
+	 *           the number of the placement of the ship
+	 */
+	private void addShip(int offset, int step, int ship, int placement)
+	{
+		PlacementTable table = tables[ships[ship]];
+		table.addFields(placement, occupied);
+		table.removeFields(placement, uncovered);
+		samples[offset + step] = ships[ship] << PLACEMENT_BITS | placement;
+	}
+
+	/**
+	 * Returns a random placement covering the specified field
+	 * 
+	 * @param table
+	 *           the placement table of the ship
+	 * @param field
+	 *           the index of the field
+	 * @return the number of the placement or <code>-1</code> if the chosen
+	 *         placement does not lie on the playground
+	 */
+	private int getCoveringPlacement(PlacementTable table, int field)
+	{
+		int shift = random.nextInt(table.getLength());
+		if (random.nextBoolean())
+			return table.getPlacement(field % size - shift, field / size, Orientation.HORIZONTAL);
+		return table.getPlacement(field % size, field / size - shift, Orientation.VERTICAL);
+	}
+
+	/**
+	 * Chooses a random ship which was not placed yet and marks it as placed
+	 * 
+	 * @param remaining
+	 *           the number of ships which were not placed yet
+	 * @return the index of the ship
+	 */
+	private int chooseUnplacedShip(int remaining)
+	{
+		int n = random.nextInt(remaining);
+		for (int i = 0;i < shipCount;i++)
+		{
+			if (!placed[i] && n-- == 0)
+			{
+				placed[i] = true;
+				return i;
+			}
+		}
+		throw new IllegalStateException("No ship left");
+	}
+
+	/**
+	 * Chooses a random hit which is not covered by the fleet being built
+	 * 
+	 * @return the index of the field
+	 */
+	private int chooseUncoveredHit()
+	{
+		int n = random.nextInt(uncovered.size());
+		iterator.reset(uncovered);
+		int field = iterator.next();
+		while (n-- > 0)
+			field = iterator.next();
+		return field;
+	}
+
+	/**
+	 * Returns whether a ship can be added to the fleet being built with the
+	 * specified placement
+	 * 
+	 * @param table
+	 *           the placement table of the ship
+	 * @param placement
+	 *           the number of the placement
+	 * @return <code>true</code> if the placement is legal
+	 */
+	private boolean isLegal(PlacementTable table, int placement)
+	{
+		if (!isSinkConsistent(table, placement))
+			return false;
+		if (ruleset.isNoTouch())
+			return table.isLegal(placement, blocked, null) && table.isSeparated(placement, occupied);
+		return table.isLegal(placement, blocked, occupied);
+	}
+
+	/**
+	 * Returns whether a ship with the specified placement agrees with the
+	 * shots which sank a ship: a ship is sunk if and only if it lies on hits
+	 * only, so a ship lying on hits only must cover exactly one shot which sank
+	 * a ship which is not known
+	 * 
+	 * @param table
+	 *           the placement table of the ship
+	 * @param placement
+	 *           the number of the placement
+	 * @return <code>true</code> if the placement agrees with the shots
+	 */
+	private boolean isSinkConsistent(PlacementTable table, int placement)
+	{
+		if (!table.isLegal(placement, notHit, null))
+			return true;
+		int sunkCount = 0;
+		long rect = table.getRect(placement);
+		for (int y = CellRects.getTop(rect);y <= CellRects.getBottom(rect);y++)
+		{
+			for (int x = CellRects.getLeft(rect);x <= CellRects.getRight(rect);x++)
+			{
+				if (sunkShots.contains(y * size + x))
+					sunkCount++;
+			}
+		}
+		return sunkCount == 1;
+	}
+
+	/**
+	 * Returns whether a sampled fleet is consistent with all shots
+	 * 
+	 * @param sample
+	 *           the index of the fleet
+	 * @return <code>true</code> if the fleet is consistent
+	 */
+	private boolean isConsistent(int sample)
+	{
+		uncovered.copyFrom(hits);
+		int offset = sample * ships.length;
+		for (int i = 0;i < shipCount;i++)
+		{
+			int entry = samples[offset + i];
+			PlacementTable table = tables[entry >>> PLACEMENT_BITS];
+			int placement = entry & ((1 << PLACEMENT_BITS) - 1);
+			if (!table.isLegal(placement, blocked, null) || !isSinkConsistent(table, placement))
+				return false;
+			table.removeFields(placement, uncovered);
+		}
+		if (!uncovered.isEmpty())
+			return false;
+		sunkIterator.reset(sunkShots);
+		while (sunkIterator.hasNext())
+		{
+			if (!isSunkShipOf(sample, sunkIterator.next()))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns whether a sampled fleet has a ship lying on hits only which
+	 * covers the specified field
+	 * 
+	 * @param sample
+	 *           the index of the fleet
+	 * @param field
+	 *           the index of the field
+	 * @return <code>true</code> if there is such a ship
+	 */
+	private boolean isSunkShipOf(int sample, int field)
+	{
+		int offset = sample * ships.length;
+		for (int i = 0;i < shipCount;i++)
+		{
+			int entry = samples[offset + i];
+			PlacementTable table = tables[entry >>> PLACEMENT_BITS];
+			int placement = entry & ((1 << PLACEMENT_BITS) - 1);
+			if (CellRects.contains(table.getRect(placement), field % size, field / size) && table.isLegal(placement, notHit, null))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Removes a sampled fleet by replacing it with the last one
+	 * 
+	 * @param sample
+	 *           the index of the fleet
+	 */
+	private void removeSample(int sample)
+	{
+		addToCounts(sample, -1);
+		sampleCount--;
+		System.arraycopy(samples, sampleCount * ships.length, samples, sample * ships.length, ships.length);
+	}
+
+	/**
+	 * Adds a value to the counts of the fields covered by a sampled fleet
+	 * 
+	 * @param sample
+	 *           the index of the fleet
+	 * @param delta
+	 *           the value to add
+	 */
+	private void addToCounts(int sample, int delta)
+	{
+		int offset = sample * ships.length;
+		for (int i = 0;i < shipCount;i++)
+		{
+			int entry = samples[offset + i];
+			PlacementTable table = tables[entry >>> PLACEMENT_BITS];
+			int placement = entry & ((1 << PLACEMENT_BITS) - 1);
+			int field = table.getAnchor(placement);
+			int step = table.getOrientation(placement) == Orientation.HORIZONTAL ? 1 : size;
+			for (int j = 0;j < table.getLength();j++, field += step)
+			{
+				counts[field] += delta;
+			}
+		}
+	}
+
+	/**
+	 * Packs the result of a shot into an int
+	 * 
+	 * @param index
+	 *           the index of the field
+	 * @param result
+	 *           the result
+	 * @return the packed result
+	 */
+	private static int pack(int index, ShotResult result)
+	{
+		return index << 2 | result.ordinal();
+	}
+}
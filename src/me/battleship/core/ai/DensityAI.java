@@ -0,0 +1,649 @@
+package me.battleship.core.ai;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import me.battleship.core.CellSet;
+import me.battleship.core.FieldIterator;
+import me.battleship.core.FogOfWar;
+import me.battleship.core.Orientation;
+import me.battleship.core.PlacementTable;
+import me.battleship.core.Ruleset;
+import me.battleship.core.ShipClass;
+import me.battleship.core.ShotResult;
+import me.battleship.core.geometry.CellRects;
+
+/**
+ * A computer player choosing its shots by the placement density: every field
+ * is scored by the number of placements of the ships which are still afloat
+ * that cover it. Placements covering a field which is known to be empty (see
+ * {@link FogOfWar}) or a sunk ship are not counted. As long as there are hits
+ * of ships which are not sunk, only placements covering these hits are
+ * counted, weighted by the number of hits they cover.
+ * <p>
+ * If ships may touch each other, the {@link FogOfWar} can not tell which ship
+ * was sunk. If the hits next to the shot leave no choice (see
+ * {@link #findCertainSunkShip(int, int)}), the fields of the ship are blocked
+ * and one ship of its length is taken from the ships afloat. Otherwise the
+ * sunk ship is guessed (see {@link #guessSunkShip(int, int)}) and only its
+ * hits are not targeted any more.
+ * <p>
+ * The densities are kept up to date incrementally: a shot only visits the
+ * placements which cover the shot field or a field which became known to be
+ * empty. The placements covering a field are calculated from its position, so
+ * no tables besides the densities and one bit per placement are needed.
+ * Choosing a shot is a single pass over the fields. Nothing is allocated after
+ * the construction. The densities at the start of a game are copied from the
+ * {@link DensityTables} if they contain the ruleset. The habits of a known
+ * opponent can be taken into account by a {@link PlacementHeatmap}, which
+ * scales the scores of the fields.
+ * 
+ * @author Manuel Vögele
+ */
+public class DensityAI implements ShotStrategy
+{
+	/** Removes a placement from the densities */
+	private static final int KILL = 0;
+
+	/** Adds a hit covered by a placement to the target densities */
+	private static final int HIT = 1;
+
+	/** Removes a hit covered by a placement from the target densities */
+	private static final int RETIRE = 2;
+
+	/** The ruleset */
+	private final Ruleset ruleset;
+
+	/** The size of the playground */
+	private final int size;
+
+	/** The random number generator used for choosing between equal fields */
+	private final Random random;
+
+	/** The inference of the fields which can not hold a ship */
+	private final FogOfWar fog;
+
+	/** The different lengths of the ship classes */
+	private final int[] lengths;
+
+	/** The placement tables for the lengths */
+	private final PlacementTable[] tables;
+
+	/** The number of ships of every length which may still be afloat */
+	private final int[] weights;
+
+	/** The number of ships of every length which were found to be sunk without the help of the {@link FogOfWar} */
+	private final int[] foundSunk;
+
+	/** The placements of every length which may still hold a ship as a bit mask */
+	private final long[][] alive;
+
+	/** The number of hits of ships which are not sunk covered by every placement of every length */
+	private final byte[][] hitCounts;
+
+	/** The weighted number of possible placements covering every field */
+	private final int[] density;
+
+	/** The weighted number of hits covered by the possible placements covering every field */
+	private final int[] targetDensity;
+
+	/** The fields which were shot at */
+	private final CellSet shots;
+
+	/** The fields which can not hold a ship which is still afloat */
+	private final CellSet blocked;
+
+	/** The hits of ships which are not known to be sunk */
+	private final CellSet unsunkHits;
+
+	/** The set reused for reading the known empty fields */
+	private final CellSet knownEmpty;
+
+	/** The iterator reused for iterating the new known empty fields */
+	private final FieldIterator iterator = new FieldIterator();
+
+	/** The precomputed opening densities */
+	private final DensityTables densityTables;
+
+	/** The offset of the opening densities of the ruleset in {@link #densityTables} or <code>-1</code> */
+	private final int openingTable;
+
+	/** The weights of the fields learned from the opponent or <code>null</code> */
+	private int[] priorWeights;
+
+	/**
+	 * Initializes a new {@link DensityAI} for a playground without any shots
+	 * 
+	 * @param ruleset
+	 *           the ruleset
+	 * @param random
+	 *           the random number generator used for choosing between fields
+	 *           with the same score
+	 */
+	public DensityAI(Ruleset ruleset, Random random)
+	{
+		this(ruleset, random, DensityTables.getDefault());
+	}
+
+	/**
+	 * Initializes a new {@link DensityAI} for a playground without any shots
+	 * 
+	 * @param ruleset
+	 *           the ruleset
+	 * @param random
+	 *           the random number generator used for choosing between fields
+	 *           with the same score
+	 * @param densityTables
+	 *           the precomputed opening densities, {@link DensityTables#EMPTY}
+	 *           for calculating them
+	 */
+	public DensityAI(Ruleset ruleset, Random random, DensityTables densityTables)
+	{
+		this.ruleset = ruleset;
+		this.densityTables = densityTables;
+		openingTable = densityTables.find(ruleset);
+		this.random = random;
+		size = ruleset.getSize();
+		fog = new FogOfWar(ruleset);
+		int[] allLengths = new int[ruleset.getShipClassCount()];
+		int lengthCount = 0;
+		for (int c = 0;c < allLengths.length;c++)
+		{
+			int length = ruleset.getShipClass(c).getLength();
+			boolean known = false;
+			for (int l = 0;l < lengthCount;l++)
+			{
+				known |= allLengths[l] == length;
+			}
+			if (!known)
+				allLengths[lengthCount++] = length;
+		}
+		lengths = Arrays.copyOf(allLengths, lengthCount);
+		tables = new PlacementTable[lengthCount];
+		weights = new int[lengthCount];
+		foundSunk = new int[lengthCount];
+		alive = new long[lengthCount][];
+		hitCounts = new byte[lengthCount][];
+		for (int l = 0;l < lengthCount;l++)
+		{
+			tables[l] = ruleset.getPlacementTable(lengths[l]);
+			alive[l] = new long[tables[l].getWordCount()];
+			hitCounts[l] = new byte[tables[l].getPlacementCount()];
+		}
+		density = new int[ruleset.getFieldCount()];
+		targetDensity = new int[ruleset.getFieldCount()];
+		shots = new CellSet(ruleset.getFieldCount());
+		blocked = new CellSet(ruleset.getFieldCount());
+		unsunkHits = new CellSet(ruleset.getFieldCount());
+		knownEmpty = new CellSet(ruleset.getFieldCount());
+		reset();
+	}
+
+	@Override
+	public void reset()
+	{
+		fog.reset();
+		shots.clear();
+		blocked.clear();
+		unsunkHits.clear();
+		if (openingTable >= 0)
+			densityTables.getDensities(openingTable, density);
+		else
+			Arrays.fill(density, 0);
+		Arrays.fill(targetDensity, 0);
+		Arrays.fill(foundSunk, 0);
+		for (int l = 0;l < lengths.length;l++)
+		{
+			PlacementTable table = tables[l];
+			int count = table.getPlacementCount();
+			Arrays.fill(alive[l], -1L);
+			if ((count & 63) != 0)
+				alive[l][alive[l].length - 1] = (1L << count) - 1;
+			Arrays.fill(hitCounts[l], (byte) 0);
+			weights[l] = getAfloatCount(l);
+			if (openingTable >= 0)
+				continue;
+			for (int placement = 0;placement < count;placement++)
+			{
+				addToFields(table.getRect(placement), weights[l], 0);
+			}
+		}
+	}
+
+	@Override
+	public Ruleset getRuleset()
+	{
+		return ruleset;
+	}
+
+	@Override
+	public void recordResult(int x, int y, ShotResult result)
+	{
+		int index = y * size + x;
+		if (result == ShotResult.ALREADY_HIT || shots.contains(index))
+			return;
+		shots.add(index);
+		fog.recordResult(x, y, result);
+		if (result != ShotResult.MISS)
+		{
+			unsunkHits.add(index);
+			updateCovering(index, HIT);
+		}
+		if (result == ShotResult.SUNK)
+		{
+			long rect = fog.getLastSunkRect();
+			if (CellRects.isEmpty(rect))
+			{
+				rect = findCertainSunkShip(x, y);
+				if (!CellRects.isEmpty(rect))
+					foundSunk[getLengthIndex(CellRects.getCellCount(rect))]++;
+			}
+			if (CellRects.isEmpty(rect))
+				retireHits(guessSunkShip(x, y));
+			else
+			{
+				blockFields(rect);
+				retireHits(rect);
+			}
+		}
+		for (int l = 0;l < lengths.length;l++)
+		{
+			int weight = getAfloatCount(l);
+			if (weight != weights[l])
+				reweight(l, weight);
+		}
+		fog.getKnownEmpty(knownEmpty).removeAll(blocked);
+		iterator.reset(knownEmpty);
+		while (iterator.hasNext())
+		{
+			int field = iterator.next();
+			blocked.add(field);
+			updateCovering(field, KILL);
+		}
+	}
+
+	/**
+	 * Chooses the next shot. If there are hits of ships which are not sunk
+	 * the field next to them with the highest target density is chosen,
+	 * otherwise the field with the highest density. Fields with the same score
+	 * are chosen randomly.
+	 */
+	@Override
+	public int chooseShot()
+	{
+		int shot = -1;
+		if (!unsunkHits.isEmpty())
+			shot = chooseBest(targetDensity);
+		if (shot < 0)
+			shot = chooseBest(density);
+		if (shot >= 0)
+			return shot;
+		// No ship fits anywhere, the shots recorded must have been inconsistent
+		int ties = 0;
+		for (int index = 0;index < density.length;index++)
+		{
+			if (!shots.contains(index) && random.nextInt(++ties) == 0)
+				shot = index;
+		}
+		return shot;
+	}
+
+	/**
+	 * Sets the placement habits of the opponent. The scores of the fields are
+	 * multiplied by the weights of the heatmap. The heatmap is read once, later
+	 * changes do not affect this player.
+	 * 
+	 * @param heatmap
+	 *           the heatmap or <code>null</code> for treating all fields alike
+	 * @throws IllegalArgumentException
+	 *            if the heatmap belongs to a playground of another size
+	 */
+	public void setPrior(PlacementHeatmap heatmap) throws IllegalArgumentException
+	{
+		if (heatmap == null)
+		{
+			priorWeights = null;
+			return;
+		}
+		if (heatmap.getRuleset().getFieldCount() != density.length)
+			throw new IllegalArgumentException("The heatmap does not belong to ruleset " + ruleset);
+		if (priorWeights == null)
+			priorWeights = new int[density.length];
+		heatmap.getWeights(priorWeights);
+	}
+
+	/**
+	 * Returns the density of the field at the specified position
+	 * 
+	 * @param x
+	 *           the x position
+	 * @param y
+	 *           the y position
+	 * @return the weighted number of possible placements covering the field
+	 */
+	public int getDensity(int x, int y)
+	{
+		return density[y * size + x];
+	}
+
+	/**
+	 * Returns the field with the highest score which was not shot at and may
+	 * hold a ship. The scores are weighted by the prior if there is one.
+	 * 
+	 * @param scores
+	 *           the scores of the fields
+	 * @return the index of the field or <code>-1</code> if no field has a
+	 *         positive score
+	 */
+	private int chooseBest(int[] scores)
+	{
+		int[] prior = priorWeights;
+		int best = -1;
+		long bestScore = 0;
+		int ties = 0;
+		for (int index = 0;index < scores.length;index++)
+		{
+			long score = prior == null ? scores[index] : (long) scores[index] * prior[index];
+			if (score < bestScore || score == 0 || shots.contains(index) || blocked.contains(index))
+				continue;
+			if (score > bestScore)
+			{
+				bestScore = score;
+				ties = 0;
+			}
+			if (random.nextInt(++ties) == 0)
+				best = index;
+		}
+		return best;
+	}
+
+	/**
+	 * Guesses the ship sunk by a shot if the {@link FogOfWar} can not tell,
+	 * because ships may touch each other. The longest row or column of hits
+	 * which are not sunk through the shot field is taken.
+	 * 
+	 * @param x
+	 *           the x position of the shot
+	 * @param y
+	 *           the y position of the shot
+	 * @return the fields of the guessed ship packed as described in
+	 *         {@link CellRects}
+	 */
+	private long guessSunkShip(int x, int y)
+	{
+		int left = x;
+		while (left > 0 && unsunkHits.contains(y * size + left - 1))
+			left--;
+		int right = x;
+		while (right < size - 1 && unsunkHits.contains(y * size + right + 1))
+			right++;
+		int top = y;
+		while (top > 0 && unsunkHits.contains((top - 1) * size + x))
+			top--;
+		int bottom = y;
+		while (bottom < size - 1 && unsunkHits.contains((bottom + 1) * size + x))
+			bottom++;
+		if (right - left >= bottom - top)
+			return CellRects.pack(left, y, right, y);
+		return CellRects.pack(x, top, x, bottom);
+	}
+
+	/**
+	 * Finds the ship sunk by a shot if the {@link FogOfWar} can not tell, but
+	 * the shot is certain to have sunk a ship of the shortest length afloat:
+	 * the row of hits which do not belong to a known ship through the shot in
+	 * one direction is as long as this length, so the sunk ship covers all of
+	 * them, and the row in the other direction is too short for any ship.
+	 * 
+	 * @param x
+	 *           the x position of the shot
+	 * @param y
+	 *           the y position of the shot
+	 * @return the fields of the sunk ship packed as described in
+	 *         {@link CellRects} or {@link CellRects#EMPTY} if it is not certain
+	 */
+	private long findCertainSunkShip(int x, int y)
+	{
+		int shortest = Integer.MAX_VALUE;
+		for (int l = 0;l < lengths.length;l++)
+		{
+			if (getAfloatCount(l) > 0)
+				shortest = Math.min(shortest, lengths[l]);
+		}
+		int left = x;
+		while (left > 0 && isUnknownHit(left - 1, y))
+			left--;
+		int right = x;
+		while (right < size - 1 && isUnknownHit(right + 1, y))
+			right++;
+		int top = y;
+		while (top > 0 && isUnknownHit(x, top - 1))
+			top--;
+		int bottom = y;
+		while (bottom < size - 1 && isUnknownHit(x, bottom + 1))
+			bottom++;
+		int width = right - left + 1;
+		int height = bottom - top + 1;
+		if (width == shortest && (height < shortest || height == 1))
+			return CellRects.pack(left, y, right, y);
+		if (height == shortest && width < shortest)
+			return CellRects.pack(x, top, x, bottom);
+		return CellRects.EMPTY;
+	}
+
+	/**
+	 * Returns whether the field at the specified position was hit and does not
+	 * belong to a ship which is known to be sunk. Misses and the fields of the
+	 * known ships are blocked.
+	 * 
+	 * @param x
+	 *           the x position
+	 * @param y
+	 *           the y position
+	 * @return <code>true</code> if the field is such a hit
+	 */
+	private boolean isUnknownHit(int x, int y)
+	{
+		int index = y * size + x;
+		return shots.contains(index) && !blocked.contains(index);
+	}
+
+	/**
+	 * Removes the fields of the specified rectangle from the hits of ships
+	 * which are not sunk
+	 * 
+	 * @param rect
+	 *           the fields packed as described in {@link CellRects}
+	 */
+	private void retireHits(long rect)
+	{
+		for (int y = CellRects.getTop(rect);y <= CellRects.getBottom(rect);y++)
+		{
+			for (int x = CellRects.getLeft(rect);x <= CellRects.getRight(rect);x++)
+			{
+				int index = y * size + x;
+				if (unsunkHits.contains(index))
+				{
+					unsunkHits.remove(index);
+					updateCovering(index, RETIRE);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Marks the fields of the specified rectangle as unable to hold another
+	 * ship
+	 * 
+	 * @param rect
+	 *           the fields packed as described in {@link CellRects}
+	 */
+	private void blockFields(long rect)
+	{
+		for (int y = CellRects.getTop(rect);y <= CellRects.getBottom(rect);y++)
+		{
+			for (int x = CellRects.getLeft(rect);x <= CellRects.getRight(rect);x++)
+			{
+				int index = y * size + x;
+				if (!blocked.contains(index))
+				{
+					blocked.add(index);
+					updateCovering(index, KILL);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Applies an operation to all possible placements of all lengths which
+	 * cover the specified field
+	 * 
+	 * @param index
+	 *           the index of the field
+	 * @param op
+	 *           the operation, {@link #KILL}, {@link #HIT} or {@link #RETIRE}
+	 */
+	private void updateCovering(int index, int op)
+	{
+		int x = index % size;
+		int y = index / size;
+		for (int l = 0;l < lengths.length;l++)
+		{
+			int length = lengths[l];
+			PlacementTable table = tables[l];
+			int end = Math.min(x, size - length);
+			for (int x0 = Math.max(0, x - length + 1);x0 <= end;x0++)
+			{
+				update(l, table.getPlacement(x0, y, Orientation.HORIZONTAL), op);
+			}
+			end = Math.min(y, size - length);
+			for (int y0 = Math.max(0, y - length + 1);y0 <= end;y0++)
+			{
+				update(l, table.getPlacement(x, y0, Orientation.VERTICAL), op);
+			}
+		}
+	}
+
+	/**
+	 * Applies an operation to a placement if it is still possible
+	 * 
+	 * @param l
+	 *           the index of the length of the placement
+	 * @param placement
+	 *           the number of the placement
+	 * @param op
+	 *           the operation, {@link #KILL}, {@link #HIT} or {@link #RETIRE}
+	 */
+	private void update(int l, int placement, int op)
+	{
+		long[] bits = alive[l];
+		if ((bits[placement >>> 6] & (1L << placement)) == 0)
+			return;
+		int weight = weights[l];
+		switch (op)
+		{
+			case KILL:
+				bits[placement >>> 6] &= ~(1L << placement);
+				addToFields(tables[l].getRect(placement), -weight, -weight * hitCounts[l][placement]);
+				break;
+			case HIT:
+				hitCounts[l][placement]++;
+				addToFields(tables[l].getRect(placement), 0, weight);
+				break;
+			default:
+				hitCounts[l][placement]--;
+				addToFields(tables[l].getRect(placement), 0, -weight);
+				break;
+		}
+	}
+
+	/**
+	 * Changes the number of ships of a length which may still be afloat and
+	 * updates the densities of the fields covered by its possible placements
+	 * 
+	 * @param l
+	 *           the index of the length
+	 * @param weight
+	 *           the new number of ships
+	 */
+	private void reweight(int l, int weight)
+	{
+		int delta = weight - weights[l];
+		long[] bits = alive[l];
+		for (int w = 0;w < bits.length;w++)
+		{
+			long word = bits[w];
+			while (word != 0)
+			{
+				int placement = (w << 6) + Long.numberOfTrailingZeros(word);
+				addToFields(tables[l].getRect(placement), delta, delta * hitCounts[l][placement]);
+				word &= word - 1;
+			}
+		}
+		weights[l] = weight;
+	}
+
+	/**
+	 * Adds the specified values to the densities of the fields of the
+	 * specified rectangle
+	 * 
+	 * @param rect
+	 *           the fields packed as described in {@link CellRects}
+	 * @param densityDelta
+	 *           the value to add to the density
+	 * @param targetDelta
+	 *           the value to add to the target density
+	 */
+	private void addToFields(long rect, int densityDelta, int targetDelta)
+	{
+		for (int y = CellRects.getTop(rect);y <= CellRects.getBottom(rect);y++)
+		{
+			int index = y * size + CellRects.getLeft(rect);
+			for (int x = CellRects.getLeft(rect);x <= CellRects.getRight(rect);x++)
+			{
+				density[index] += densityDelta;
+				targetDensity[index] += targetDelta;
+				index++;
+			}
+		}
+	}
+
+	/**
+	 * Returns the index of the specified length in {@link #lengths}
+	 * 
+	 * @param length
+	 *           the length
+	 * @return the index or <code>-1</code> if no ship class has the length
+	 */
+	private int getLengthIndex(int length)
+	{
+		for (int l = 0;l < lengths.length;l++)
+		{
+			if (lengths[l] == length)
+				return l;
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the number of ships with the specified length which may still be
+	 * afloat. The ships found by {@link #findCertainSunkShip(int, int)} are not
+	 * counted.
+	 * 
+	 * @param l
+	 *           the index of the length
+	 * @return the number of ships
+	 */
+	private int getAfloatCount(int l)
+	{
+		int length = lengths[l];
+		int count = -foundSunk[l];
+		for (int c = 0;c < ruleset.getShipClassCount();c++)
+		{
+			ShipClass shipClass = ruleset.getShipClass(c);
+			if (shipClass.getLength() == length)
+				count += fog.getAfloatCount(c);
+		}
+		return count;
+	}
+}
@@ -0,0 +1,255 @@
+package me.battleship.core.ai;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+import me.battleship.core.Ruleset;
+import me.battleship.core.ShipClass;
+import me.battleship.core.Zobrist;
+
+/**
+ * The precomputed opening densities of a {@link DensityAI} for a number of
+ * rulesets. The densities are built offline and shipped as an asset, so a new
+ * game does not have to visit every placement of every ship. The tables are
+ * read straight from a memory mapped or direct buffer with absolute reads,
+ * nothing is copied onto the heap besides the densities of the ruleset being
+ * played, so installing more rulesets does not grow the heap.
+ * <p>
+ * The format (version {@value #FORMAT_VERSION}) consists of big endian
+ * integers:
+ * <ul>
+ * <li>the magic number {@value #MAGIC}, the version and the number of
+ * tables</li>
+ * <li>for every table the key of its ruleset (see {@link #getRulesKey(Ruleset)})
+ * as a long, the number of fields and the offset of its densities from the
+ * start of the buffer</li>
+ * <li>the densities of every table, one integer per field</li>
+ * </ul>
+ * 
+ * @author Manuel Vögele
+ */
+public final class DensityTables
+{
+	/**
+	 * Opens the buffer holding the default tables
+	 * 
+	 * @author Manuel Vögele
+	 */
+	public interface Source
+	{
+		/**
+		 * Opens the buffer, e.g. by mapping an asset into memory
+		 * 
+		 * @return the buffer
+		 * @throws IOException
+		 *            if the buffer could not be opened
+		 */
+		public ByteBuffer open() throws IOException;
+	}
+
+	/** The magic number at the start of the tables */
+	public static final int MAGIC = 0x42534454;
+
+	/** The version of the format */
+	public static final int FORMAT_VERSION = 1;
+
+	/** The number of bytes of the header */
+	private static final int HEADER_SIZE = 12;
+
+	/** The number of bytes of an entry of the directory */
+	private static final int ENTRY_SIZE = 16;
+
+	/** The tables without any ruleset */
+	public static final DensityTables EMPTY = new DensityTables();
+
+	/** The source of the default tables or <code>null</code> */
+	private static Source defaultSource;
+
+	/** The default tables or <code>null</code> if they were not opened yet */
+	private static DensityTables defaultTables;
+
+	/** The buffer holding the tables or <code>null</code> for {@link #EMPTY} */
+	private final ByteBuffer buffer;
+
+	/** The number of tables */
+	private final int tableCount;
+
+	/**
+	 * Initializes the empty tables
+	 */
+	private DensityTables()
+	{
+		buffer = null;
+		tableCount = 0;
+	}
+
+	/**
+	 * Initializes new {@link DensityTables} reading from the specified buffer.
+	 * The position of the buffer is not used, the tables start at index
+	 * <code>0</code>.
+	 * 
+	 * @param buffer
+	 *           the buffer, it must not be modified afterwards
+	 * @throws IllegalArgumentException
+	 *            if the buffer does not contain valid tables
+	 */
+	public DensityTables(ByteBuffer buffer) throws IllegalArgumentException
+	{
+		this.buffer = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+		if (this.buffer.limit() < HEADER_SIZE || this.buffer.getInt(0) != MAGIC)
+			throw new IllegalArgumentException("The buffer does not contain density tables");
+		int version = this.buffer.getInt(4);
+		if (version != FORMAT_VERSION)
+			throw new IllegalArgumentException("Unsupported format version " + version);
+		tableCount = this.buffer.getInt(8);
+		if (tableCount < 0 || tableCount > (this.buffer.limit() - HEADER_SIZE) / ENTRY_SIZE)
+			throw new IllegalArgumentException("Invalid number of tables " + tableCount);
+		for (int t = 0;t < tableCount;t++)
+		{
+			int entry = HEADER_SIZE + t * ENTRY_SIZE;
+			int fieldCount = this.buffer.getInt(entry + 8);
+			int offset = this.buffer.getInt(entry + 12);
+			if (fieldCount < 0 || offset < 0 || (offset & 3) != 0 || offset > this.buffer.limit() - 4L * fieldCount)
+				throw new IllegalArgumentException("Table " + t + " is not within the buffer");
+		}
+	}
+
+	/**
+	 * Maps the tables in the specified file into memory
+	 * 
+	 * @param file
+	 *           the file
+	 * @return the tables
+	 * @throws IOException
+	 *            if the file could not be mapped
+	 * @throws IllegalArgumentException
+	 *            if the file does not contain valid tables
+	 */
+	public static DensityTables map(File file) throws IOException, IllegalArgumentException
+	{
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		try
+		{
+			FileChannel channel = in.getChannel();
+			return new DensityTables(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+		finally
+		{
+			// The mapping stays valid after the file is closed
+			in.close();
+		}
+	}
+
+	/**
+	 * Sets the source of the tables returned by {@link #getDefault()}. The
+	 * source is not opened before the tables are needed.
+	 * 
+	 * @param source
+	 *           the source or <code>null</code> for no tables
+	 */
+	public static synchronized void setDefaultSource(Source source)
+	{
+		defaultSource = source;
+		defaultTables = null;
+	}
+
+	/**
+	 * Returns the default tables, opening them on the first call. If there is
+	 * no source or it can not be opened, the densities are calculated.
+	 * 
+	 * @return the default tables or {@link #EMPTY}
+	 */
+	public static synchronized DensityTables getDefault()
+	{
+		if (defaultTables != null)
+			return defaultTables;
+		defaultTables = EMPTY;
+		if (defaultSource == null)
+			return defaultTables;
+		try
+		{
+			defaultTables = new DensityTables(defaultSource.open());
+		}
+		catch (IOException e)
+		{
+			// Without the tables the densities are calculated
+		}
+		catch (IllegalArgumentException e)
+		{
+			// Without the tables the densities are calculated
+		}
+		return defaultTables;
+	}
+
+	/**
+	 * Returns the number of tables
+	 * 
+	 * @return the number of tables
+	 */
+	public int getTableCount()
+	{
+		return tableCount;
+	}
+
+	/**
+	 * Returns the table of the specified ruleset
+	 * 
+	 * @param ruleset
+	 *           the ruleset
+	 * @return the offset of the densities in the buffer or <code>-1</code> if
+	 *         there is no table for the ruleset
+	 */
+	public int find(Ruleset ruleset)
+	{
+		long key = getRulesKey(ruleset);
+		for (int t = 0;t < tableCount;t++)
+		{
+			int entry = HEADER_SIZE + t * ENTRY_SIZE;
+			if (buffer.getLong(entry) == key && buffer.getInt(entry + 8) == ruleset.getFieldCount())
+				return buffer.getInt(entry + 12);
+		}
+		return -1;
+	}
+
+	/**
+	 * Copies the densities of a table into the specified array
+	 * 
+	 * @param table
+	 *           the offset of the table as returned by {@link #find(Ruleset)}
+	 * @param result
+	 *           the array to write the densities to, one per field
+	 * @return the passed array
+	 */
+	public int[] getDensities(int table, int[] result)
+	{
+		for (int index = 0;index < result.length;index++)
+		{
+			result[index] = buffer.getInt(table + 4 * index);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the key of the rules of the specified ruleset. Rulesets with the
+	 * same playground size, touching rule and ships have the same key, the name
+	 * and the sprites do not matter.
+	 * 
+	 * @param ruleset
+	 *           the ruleset
+	 * @return the key
+	 */
+	public static long getRulesKey(Ruleset ruleset)
+	{
+		long key = Zobrist.mix((long) ruleset.getSize() << 1 | (ruleset.isNoTouch() ? 1 : 0));
+		for (int i = 0;i < ruleset.getShipClassCount();i++)
+		{
+			ShipClass shipClass = ruleset.getShipClass(i);
+			key = Zobrist.mix(key ^ ((long) shipClass.getLength() << 32 | shipClass.getCount()));
+		}
+		return key;
+	}
+}
@@ -0,0 +1,609 @@
+package me.battleship.core.ai;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import me.battleship.core.CellSet;
+import me.battleship.core.FogOfWar;
+import me.battleship.core.PlacementTable;
+import me.battleship.core.Ruleset;
+import me.battleship.core.ShotResult;
+import me.battleship.core.Zobrist;
+import me.battleship.core.geometry.CellRects;
+
+/**
+ * A computer player which calculates the exact hit probability of every field
+ * once the game is close enough to its end. All layouts of the ships which are
+ * still afloat that are consistent with the shots so far are enumerated: no
+ * ship covers a field which is known to be empty (see {@link FogOfWar}) or a
+ * known sunk ship, every hit is covered, and a ship lies on hits only if and
+ * only if it covers exactly one shot which sank a ship. The order in which the
+ * fields of a sunk ship were hit is not considered. Every layout is equally
+ * likely, so the probability of a field is the share of layouts covering it.
+ * <p>
+ * The ships are placed longest first, ships of the same length in ascending
+ * placement order, so every layout is enumerated once. Positions which are
+ * reached by different placements with the same occupied fields have the same
+ * completions, so the number of completions and the fields they cover are
+ * kept in a transposition table keyed by the Zobrist hash (see
+ * {@link Zobrist}) of the occupied fields. The table has a fixed size given on
+ * construction and replaces old entries, so the memory used never grows.
+ * <p>
+ * As long as the number of layouts may exceed {@link #SEARCH_SPACE_THRESHOLD}
+ * or the enumeration takes more than {@link #NODE_LIMIT} steps, the shots of
+ * a {@link DensityAI} are used. The same holds for the whole game if the
+ * transposition table and the counts of the enumeration do not fit into the
+ * memory given on construction.
+ * 
+ * @author Manuel Vögele
+ */
+public class EndgameSolver implements ShotStrategy
+{
+	/** The default number of bytes of the transposition table and the counts of the enumeration */
+	public static final int DEFAULT_TABLE_BYTES = 1 << 20;
+
+	/** The estimated number of layouts up to which the solver is used */
+	public static final double SEARCH_SPACE_THRESHOLD = 1e6;
+
+	/** The maximum number of positions visited by one enumeration */
+	public static final int NODE_LIMIT = 50000;
+
+	/** The ruleset */
+	private final Ruleset ruleset;
+
+	/** The size of the playground */
+	private final int size;
+
+	/** The random number generator used for choosing between equal fields */
+	private final Random random;
+
+	/** The strategy used as long as the solver is not used */
+	private final DensityAI density;
+
+	/** The inference of the fields which can not hold a ship */
+	private final FogOfWar fog;
+
+	/** The different lengths of the ship classes */
+	private final int[] lengths;
+
+	/** The placement tables for the lengths */
+	private final PlacementTable[] tables;
+
+	/** The placements of every length which are allowed by the shots as a bit mask */
+	private final long[][] usable;
+
+	/** The number of hits covered by every placement of every length */
+	private final int[][] placementHits;
+
+	/** The index of the length of every ship which is still afloat, longest first */
+	private final int[] ships;
+
+	/** The number of ships which are still afloat */
+	private int shipCount;
+
+	/** The total length of the ships starting at every step */
+	private final int[] remainingLengths;
+
+	/** The fields which were shot at */
+	private final CellSet shots;
+
+	/** The fields which can not hold a ship which is still afloat */
+	private final CellSet blocked;
+
+	/** The hits which must be covered by the ships which are still afloat */
+	private final CellSet hits;
+
+	/** The shots which sank a ship which is not known */
+	private final CellSet sunkShots;
+
+	/** The fields occupied by the ships placed so far */
+	private final CellSet occupied;
+
+	/** The number of hits which are not covered by the ships placed so far */
+	private int uncovered;
+
+	/** The Zobrist hash of the occupied fields */
+	private long hash;
+
+	/** The number of positions visited by the current enumeration */
+	private int nodes;
+
+	/** The number of completions covering every field for every step */
+	private final long[][] cells;
+
+	/** The hashes of the positions in the transposition table */
+	private final long[] tableHashes;
+
+	/** The step and first allowed placement of the positions in the transposition table, 0 for a free entry */
+	private final int[] tableTags;
+
+	/** The number of completions of the positions in the transposition table */
+	private final long[] tableCounts;
+
+	/** The number of completions covering every field of the positions in the transposition table */
+	private final long[] tableCells;
+
+	/** The number of consistent layouts found by the last enumeration */
+	private long layoutCount;
+
+	/** Whether the transposition table and the counts of the enumeration fit into the budget */
+	private final boolean solvable;
+
+	/** Whether the hit probabilities of the last enumeration are up to date */
+	private boolean solved;
+
+	/**
+	 * Initializes a new {@link EndgameSolver} with a transposition table of
+	 * {@link #DEFAULT_TABLE_BYTES}
+	 * 
+	 * @param ruleset
+	 *           the ruleset
+	 * @param random
+	 *           the random number generator used for choosing between fields
+	 *           with the same probability
+	 */
+	public EndgameSolver(Ruleset ruleset, Random random)
+	{
+		this(ruleset, random, DEFAULT_TABLE_BYTES);
+	}
+
+	/**
+	 * Initializes a new {@link EndgameSolver}
+	 * 
+	 * @param ruleset
+	 *           the ruleset
+	 * @param random
+	 *           the random number generator used for choosing between fields
+	 *           with the same probability
+	 * @param tableBytes
+	 *           the maximum number of bytes of the transposition table and the
+	 *           counts of the enumeration; if they do not fit, the solver is
+	 *           never used (see {@link #isSolvable()})
+	 */
+	public EndgameSolver(Ruleset ruleset, Random random, int tableBytes)
+	{
+		this.ruleset = ruleset;
+		this.random = random;
+		size = ruleset.getSize();
+		density = new DensityAI(ruleset, random);
+		fog = new FogOfWar(ruleset);
+		int fieldCount = ruleset.getFieldCount();
+		ships = new int[ruleset.getShipCount()];
+		remainingLengths = new int[ships.length + 1];
+		// The counts of every step are part of the budget, they grow with the playground as well
+		long cellBytes = 8L * (ships.length + 1) * fieldCount;
+		long entryBytes = 8L * (fieldCount + 2) + 4;
+		long entries = tableBytes > cellBytes ? (tableBytes - cellBytes) / entryBytes : 0;
+		solvable = entries > 0;
+		int capacity = solvable ? Integer.highestOneBit((int) entries) : 0;
+		tableHashes = new long[capacity];
+		tableTags = new int[capacity];
+		tableCounts = new long[capacity];
+		tableCells = new long[capacity * fieldCount];
+		cells = new long[solvable ? ships.length + 1 : 0][fieldCount];
+		int[] allLengths = new int[ruleset.getShipClassCount()];
+		int lengthCount = 0;
+		for (int c = 0;c < allLengths.length;c++)
+		{
+			int length = ruleset.getShipClass(c).getLength();
+			boolean known = false;
+			for (int l = 0;l < lengthCount;l++)
+			{
+				known |= allLengths[l] == length;
+			}
+			if (!known)
+				allLengths[lengthCount++] = length;
+		}
+		// Longest first, long ships cut the search space most
+		lengths = Arrays.copyOf(allLengths, lengthCount);
+		Arrays.sort(lengths);
+		for (int l = 0;l < lengthCount / 2;l++)
+		{
+			int length = lengths[l];
+			lengths[l] = lengths[lengthCount - 1 - l];
+			lengths[lengthCount - 1 - l] = length;
+		}
+		tables = new PlacementTable[lengthCount];
+		usable = new long[lengthCount][];
+		placementHits = new int[lengthCount][];
+		for (int l = 0;l < lengthCount;l++)
+		{
+			tables[l] = ruleset.getPlacementTable(lengths[l]);
+			usable[l] = new long[solvable ? tables[l].getWordCount() : 0];
+			placementHits[l] = new int[solvable ? tables[l].getPlacementCount() : 0];
+		}
+		shots = new CellSet(fieldCount);
+		blocked = new CellSet(fieldCount);
+		hits = new CellSet(fieldCount);
+		sunkShots = new CellSet(fieldCount);
+		occupied = new CellSet(fieldCount);
+		reset();
+	}
+
+	@Override
+	public Ruleset getRuleset()
+	{
+		return ruleset;
+	}
+
+	@Override
+	public void reset()
+	{
+		density.reset();
+		fog.reset();
+		shots.clear();
+		blocked.clear();
+		hits.clear();
+		sunkShots.clear();
+		updateShips();
+		solved = false;
+	}
+
+	@Override
+	public void recordResult(int x, int y, ShotResult result)
+	{
+		int index = y * size + x;
+		if (result == ShotResult.ALREADY_HIT || shots.contains(index))
+			return;
+		shots.add(index);
+		density.recordResult(x, y, result);
+		fog.recordResult(x, y, result);
+		if (result != ShotResult.MISS)
+			hits.add(index);
+		long rect = fog.getLastSunkRect();
+		if (result == ShotResult.SUNK && CellRects.isEmpty(rect))
+			sunkShots.add(index);
+		for (int fy = CellRects.getTop(rect);fy <= CellRects.getBottom(rect);fy++)
+		{
+			for (int fx = CellRects.getLeft(rect);fx <= CellRects.getRight(rect);fx++)
+			{
+				hits.remove(fy * size + fx);
+				blocked.add(fy * size + fx);
+			}
+		}
+		blocked.addAll(fog.getKnownEmpty(occupied));
+		updateShips();
+		solved = false;
+	}
+
+	/**
+	 * Chooses the field with the highest hit probability if the solver can be
+	 * used, otherwise the shot of the {@link DensityAI}. If ships may not touch
+	 * each other, only the fields next to hits of ships which are not sunk are
+	 * considered as long as there are such hits: finishing a ship reveals the
+	 * fields around it, which is worth more than a slightly higher probability
+	 * elsewhere. Fields with the same probability are chosen randomly.
+	 */
+	@Override
+	public int chooseShot()
+	{
+		if (!solve())
+			return density.chooseShot();
+		int best = -1;
+		if (ruleset.isNoTouch() && !hits.isEmpty())
+			best = chooseBest(true);
+		if (best < 0)
+			best = chooseBest(false);
+		return best >= 0 ? best : density.chooseShot();
+	}
+
+	/**
+	 * Returns whether the memory given on construction is enough for
+	 * enumerating the layouts. The counts of the enumeration take eight bytes
+	 * per field and ship, so on large playgrounds the {@link DensityAI} is used
+	 * for the whole game.
+	 * 
+	 * @return <code>true</code> if {@link #solve()} may succeed
+	 */
+	public boolean isSolvable()
+	{
+		return solvable;
+	}
+
+	/**
+	 * Enumerates all consistent layouts if the search space is small enough.
+	 * The result is kept until the next shot is recorded.
+	 * 
+	 * @return <code>true</code> if the hit probabilities are known exactly
+	 */
+	public boolean solve()
+	{
+		if (solved)
+			return true;
+		if (!solvable || estimateLayouts() > SEARCH_SPACE_THRESHOLD)
+			return false;
+		Arrays.fill(tableTags, 0);
+		occupied.clear();
+		hash = 0;
+		uncovered = hits.size();
+		nodes = 0;
+		layoutCount = count(0, 0);
+		if (nodes > NODE_LIMIT)
+			return false;
+		solved = layoutCount > 0;
+		return solved;
+	}
+
+	/**
+	 * Returns the number of layouts found by the last successful call of
+	 * {@link #solve()}
+	 * 
+	 * @return the number of layouts consistent with the shots
+	 * @throws IllegalStateException
+	 *            if the hit probabilities are not known
+	 */
+	public long getLayoutCount() throws IllegalStateException
+	{
+		if (!solved)
+			throw new IllegalStateException("The position was not solved");
+		return layoutCount;
+	}
+
+	/**
+	 * Returns the exact probability that there is a ship on the field at the
+	 * specified position
+	 * 
+	 * @param x
+	 *           the x position
+	 * @param y
+	 *           the y position
+	 * @return the share of the consistent layouts covering the field
+	 * @throws IllegalStateException
+	 *            if the hit probabilities are not known
+	 */
+	public double getHitProbability(int x, int y) throws IllegalStateException
+	{
+		if (!solved)
+			throw new IllegalStateException("The position was not solved");
+		return (double) cells[0][y * size + x] / layoutCount;
+	}
+
+	/**
+	 * Returns the field with the most layouts covering it which was not shot
+	 * at
+	 * 
+	 * @param nextToHits
+	 *           whether only fields next to a hit are considered
+	 * @return the index of the field or <code>-1</code> if no such field is
+	 *         covered by a layout
+	 */
+	private int chooseBest(boolean nextToHits)
+	{
+		long[] counts = cells[0];
+		int best = -1;
+		long bestCount = 0;
+		int ties = 0;
+		for (int index = 0;index < counts.length;index++)
+		{
+			long count = counts[index];
+			if (count < bestCount || count == 0 || shots.contains(index) || (nextToHits && !isNextToHit(index % size, index / size)))
+				continue;
+			if (count > bestCount)
+			{
+				bestCount = count;
+				ties = 0;
+			}
+			if (random.nextInt(++ties) == 0)
+				best = index;
+		}
+		return best;
+	}
+
+	/**
+	 * Returns whether a field is next to a hit of a ship which is not sunk
+	 * 
+	 * @param x
+	 *           the x position of the field
+	 * @param y
+	 *           the y position of the field
+	 * @return <code>true</code> if one of the four neighbours is such a hit
+	 */
+	private boolean isNextToHit(int x, int y)
+	{
+		int index = y * size + x;
+		return (x > 0 && hits.contains(index - 1)) || (x < size - 1 && hits.contains(index + 1)) || (y > 0 && hits.contains(index - size)) || (y < size - 1 && hits.contains(index + size));
+	}
+
+	/**
+	 * Updates the ships which may still be afloat, longest first
+	 */
+	private void updateShips()
+	{
+		shipCount = 0;
+		for (int l = 0;l < lengths.length;l++)
+		{
+			for (int c = 0;c < ruleset.getShipClassCount();c++)
+			{
+				if (ruleset.getShipClass(c).getLength() != lengths[l])
+					continue;
+				for (int i = 0;i < fog.getAfloatCount(c);i++)
+				{
+					ships[shipCount++] = l;
+				}
+			}
+		}
+		remainingLengths[shipCount] = 0;
+		for (int step = shipCount - 1;step >= 0;step--)
+		{
+			remainingLengths[step] = remainingLengths[step + 1] + lengths[ships[step]];
+		}
+	}
+
+	/**
+	 * Finds the placements which are allowed by the shots and estimates the
+	 * number of layouts from their counts
+	 * 
+	 * @return an upper bound of the number of layouts
+	 */
+	private double estimateLayouts()
+	{
+		for (int l = 0;l < lengths.length;l++)
+		{
+			Arrays.fill(usable[l], 0);
+		}
+		double estimate = 1;
+		int run = 0;
+		for (int step = 0;step < shipCount;step++)
+		{
+			int l = ships[step];
+			if (step == 0 || ships[step - 1] != l)
+			{
+				updateUsable(l);
+				run = 0;
+			}
+			int count = 0;
+			for (long word : usable[l])
+			{
+				count += Long.bitCount(word);
+			}
+			// Ships of the same length are placed in ascending order
+			estimate = estimate * count / ++run;
+		}
+		return estimate;
+	}
+
+	/**
+	 * Finds the placements of a length which are allowed by the shots
+	 * 
+	 * @param l
+	 *           the index of the length
+	 */
+	private void updateUsable(int l)
+	{
+		PlacementTable table = tables[l];
+		for (int placement = 0;placement < table.getPlacementCount();placement++)
+		{
+			if (!table.isLegal(placement, blocked, null))
+				continue;
+			int hitCount = 0;
+			int sunkCount = 0;
+			long rect = table.getRect(placement);
+			for (int y = CellRects.getTop(rect);y <= CellRects.getBottom(rect);y++)
+			{
+				for (int x = CellRects.getLeft(rect);x <= CellRects.getRight(rect);x++)
+				{
+					int index = y * size + x;
+					if (hits.contains(index))
+						hitCount++;
+					if (sunkShots.contains(index))
+						sunkCount++;
+				}
+			}
+			// A ship is sunk if and only if it lies on hits only
+			boolean sunk = hitCount == table.getLength();
+			if (sunk ? sunkCount != 1 : sunkCount != 0)
+				continue;
+			placementHits[l][placement] = hitCount;
+			usable[l][placement >>> 6] |= 1L << placement;
+		}
+	}
+
+	/**
+	 * Counts the completions of the current position and the fields they cover
+	 * into {@link #cells} of the step
+	 * 
+	 * @param step
+	 *           the number of ships placed so far
+	 * @param first
+	 *           the first placement allowed for the next ship
+	 * @return the number of completions
+	 */
+	private long count(int step, int first)
+	{
+		long[] result = cells[step];
+		Arrays.fill(result, 0);
+		if (step == shipCount)
+			return uncovered == 0 ? 1 : 0;
+		if (uncovered > remainingLengths[step] || nodes > NODE_LIMIT)
+			return 0;
+		int tag = step << 24 | (first + 1);
+		int slot = (int) (hash ^ hash >>> 32) & (tableTags.length - 1);
+		if (tableTags[slot] == tag && tableHashes[slot] == hash)
+		{
+			System.arraycopy(tableCells, slot * result.length, result, 0, result.length);
+			return tableCounts[slot];
+		}
+		nodes++;
+		int l = ships[step];
+		PlacementTable table = tables[l];
+		boolean sameNext = step + 1 < shipCount && ships[step + 1] == l;
+		long total = 0;
+		long[] bits = usable[l];
+		for (int w = first >>> 6;w < bits.length;w++)
+		{
+			long word = bits[w];
+			if (w == first >>> 6)
+				word &= -1L << first;
+			while (word != 0)
+			{
+				int placement = (w << 6) + Long.numberOfTrailingZeros(word);
+				word &= word - 1;
+				if (!table.isLegal(placement, null, occupied) || (ruleset.isNoTouch() && !table.isSeparated(placement, occupied)))
+					continue;
+				place(table, placement, placementHits[l][placement], true);
+				long completions = count(step + 1, sameNext ? placement + 1 : 0);
+				if (completions > 0)
+				{
+					total += completions;
+					long[] next = cells[step + 1];
+					for (int index = 0;index < result.length;index++)
+					{
+						result[index] += next[index];
+					}
+					long rect = table.getRect(placement);
+					for (int y = CellRects.getTop(rect);y <= CellRects.getBottom(rect);y++)
+					{
+						for (int x = CellRects.getLeft(rect);x <= CellRects.getRight(rect);x++)
+						{
+							result[y * size + x] += completions;
+						}
+					}
+				}
+				place(table, placement, placementHits[l][placement], false);
+			}
+		}
+		if (nodes <= NODE_LIMIT)
+		{
+			tableTags[slot] = tag;
+			tableHashes[slot] = hash;
+			tableCounts[slot] = total;
+			System.arraycopy(result, 0, tableCells, slot * result.length, result.length);
+		}
+		return total;
+	}
+
+	/**
+	 * Adds a ship to the current position or removes it again
+	 * 
+	 * @param table
+	 *           the placement table of the ship
+	 * @param placement
+	 *           the number of the placement of the ship
+	 * @param hitCount
+	 *           the number of hits covered by the placement
+	 * @param add
+	 *           <code>true</code> for adding the ship, <code>false</code> for
+	 *           removing it
+	 */
+	private void place(PlacementTable table, int placement, int hitCount, boolean add)
+	{
+		if (add)
+		{
+			table.addFields(placement, occupied);
+			uncovered -= hitCount;
+		}
+		else
+		{
+			table.removeFields(placement, occupied);
+			uncovered += hitCount;
+		}
+		long rect = table.getRect(placement);
+		for (int y = CellRects.getTop(rect);y <= CellRects.getBottom(rect);y++)
+		{
+			for (int x = CellRects.getLeft(rect);x <= CellRects.getRight(rect);x++)
+			{
+				hash ^= Zobrist.getShipFieldKey(y * size + x);
+			}
+		}
+	}
+}
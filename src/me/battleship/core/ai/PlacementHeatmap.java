@@ -0,0 +1,249 @@
+package me.battleship.core.ai;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import me.battleship.core.CellSet;
+import me.battleship.core.FieldIterator;
+import me.battleship.core.Ruleset;
+
+/**
+ * Learns where an opponent likes to place the ships: for every field the
+ * number of finished games in which a ship of the opponent covered it. A game
+ * is recorded in time proportional to the number of fields, the counts take a
+ * fixed two bytes per field, so the history of an opponent has the same size
+ * no matter how many games were played. Once {@value #MAX_GAMES} games are
+ * recorded all counts are halved, so recent games weigh more than old ones.
+ * <p>
+ * The heatmap is blended with the uniform placement density by
+ * {@link #getWeights(int[])}: a field gets a weight of {@link #WEIGHT_ONE}
+ * times the ratio of its learned frequency to the frequency of a uniformly
+ * random field. Few games only move the weights a little, so an opponent who
+ * was met once does not distort the search.
+ * <p>
+ * The encoding (version {@value #FORMAT_VERSION}) consists of big endian
+ * integers: the magic number {@value #MAGIC}, the version, the key of the
+ * rules (see {@link DensityTables#getRulesKey(Ruleset)}) as a long, the number
+ * of games and one unsigned short count per field.
+ * 
+ * @author Manuel Vögele
+ */
+public final class PlacementHeatmap
+{
+	/** The magic number at the start of an encoded heatmap */
+	public static final int MAGIC = 0x4253484D;
+
+	/** The version of the format */
+	public static final int FORMAT_VERSION = 1;
+
+	/** The weight of a field which is covered as often as a uniformly random field */
+	public static final int WEIGHT_ONE = 1024;
+
+	/** The number of games after which the counts are halved */
+	public static final int MAX_GAMES = 0xFFFF;
+
+	/** The number of uniformly random games the learned games are blended with */
+	private static final int PRIOR_GAMES = 4;
+
+	/** The number of bytes of the header */
+	private static final int HEADER_SIZE = 20;
+
+	/** The ruleset */
+	private final Ruleset ruleset;
+
+	/** The number of games in which a ship covered every field */
+	private final char[] counts;
+
+	/** The number of recorded games */
+	private int games;
+
+	/** The iterator reused for iterating the fields of a fleet */
+	private final FieldIterator iterator = new FieldIterator();
+
+	/**
+	 * Initializes a new empty {@link PlacementHeatmap}
+	 * 
+	 * @param ruleset
+	 *           the ruleset
+	 */
+	public PlacementHeatmap(Ruleset ruleset)
+	{
+		this.ruleset = ruleset;
+		counts = new char[ruleset.getFieldCount()];
+	}
+
+	/**
+	 * Returns the ruleset
+	 * 
+	 * @return the ruleset
+	 */
+	public Ruleset getRuleset()
+	{
+		return ruleset;
+	}
+
+	/**
+	 * Returns the number of recorded games
+	 * 
+	 * @return the number of games, halved whenever {@value #MAX_GAMES} games
+	 *         were reached
+	 */
+	public int getGameCount()
+	{
+		return games;
+	}
+
+	/**
+	 * Returns the number of recorded games in which a ship covered the
+	 * specified field
+	 * 
+	 * @param index
+	 *           the index of the field
+	 * @return the number of games
+	 */
+	public int getCount(int index)
+	{
+		return counts[index];
+	}
+
+	/**
+	 * Records the fleet of a finished game
+	 * 
+	 * @param fleetFields
+	 *           the fields covered by the ships of the opponent
+	 * @throws IllegalArgumentException
+	 *            if the set does not belong to the playground of the ruleset
+	 */
+	public void record(CellSet fleetFields) throws IllegalArgumentException
+	{
+		if (fleetFields.getCapacity() != counts.length)
+			throw new IllegalArgumentException("The fields do not belong to a playground of ruleset " + ruleset);
+		if (games == MAX_GAMES)
+		{
+			for (int index = 0;index < counts.length;index++)
+			{
+				counts[index] >>>= 1;
+			}
+			games >>>= 1;
+		}
+		games++;
+		for (iterator.reset(fleetFields);iterator.hasNext();)
+		{
+			counts[iterator.next()]++;
+		}
+	}
+
+	/**
+	 * Writes the weight of every field to the specified array. A weight of
+	 * {@link #WEIGHT_ONE} means that the field is as likely to hold a ship as
+	 * under uniformly random placement. Without any games all fields have this
+	 * weight.
+	 * 
+	 * @param result
+	 *           the array to write the weights to, one per field
+	 * @return the passed array
+	 */
+	public int[] getWeights(int[] result)
+	{
+		long fleetFields = ruleset.getFleetFieldCount();
+		if (games == 0 || fleetFields == 0)
+		{
+			Arrays.fill(result, WEIGHT_ONE);
+			return result;
+		}
+		long divisor = (games + PRIOR_GAMES) * fleetFields;
+		for (int index = 0;index < counts.length;index++)
+		{
+			long frequency = (long) counts[index] * counts.length + PRIOR_GAMES * fleetFields;
+			result[index] = (int) ((frequency * WEIGHT_ONE + divisor / 2) / divisor);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the number of bytes an encoded heatmap of the specified ruleset
+	 * takes
+	 * 
+	 * @param ruleset
+	 *           the ruleset
+	 * @return the number of bytes
+	 */
+	public static int getEncodedSize(Ruleset ruleset)
+	{
+		return HEADER_SIZE + 2 * ruleset.getFieldCount();
+	}
+
+	/**
+	 * Encodes the heatmap at the position of the specified buffer
+	 * 
+	 * @param out
+	 *           the buffer to write to
+	 * @throws BufferOverflowException
+	 *            if the heatmap does not fit into the buffer
+	 */
+	public void encode(ByteBuffer out) throws BufferOverflowException
+	{
+		ByteOrder order = out.order();
+		out.order(ByteOrder.BIG_ENDIAN);
+		out.putInt(MAGIC);
+		out.putInt(FORMAT_VERSION);
+		out.putLong(DensityTables.getRulesKey(ruleset));
+		out.putInt(games);
+		for (int index = 0;index < counts.length;index++)
+		{
+			out.putChar(counts[index]);
+		}
+		out.order(order);
+	}
+
+	/**
+	 * Decodes a heatmap starting at the position of the specified buffer. The
+	 * position is moved behind the heatmap.
+	 * 
+	 * @param in
+	 *           the buffer to read from
+	 * @param ruleset
+	 *           the ruleset the heatmap was recorded with
+	 * @return the heatmap
+	 * @throws IllegalArgumentException
+	 *            if the buffer does not contain a valid heatmap of the ruleset
+	 */
+	public static PlacementHeatmap decode(ByteBuffer in, Ruleset ruleset) throws IllegalArgumentException
+	{
+		ByteOrder order = in.order();
+		in.order(ByteOrder.BIG_ENDIAN);
+		try
+		{
+			if (in.getInt() != MAGIC)
+				throw new IllegalArgumentException("The data is not an encoded heatmap");
+			int version = in.getInt();
+			if (version != FORMAT_VERSION)
+				throw new IllegalArgumentException("Unsupported format version " + version);
+			if (in.getLong() != DensityTables.getRulesKey(ruleset))
+				throw new IllegalArgumentException("The heatmap was not recorded with ruleset " + ruleset);
+			PlacementHeatmap heatmap = new PlacementHeatmap(ruleset);
+			heatmap.games = in.getInt();
+			if (heatmap.games < 0 || heatmap.games > MAX_GAMES)
+				throw new IllegalArgumentException("Invalid number of games " + heatmap.games);
+			for (int index = 0;index < heatmap.counts.length;index++)
+			{
+				char count = in.getChar();
+				if (count > heatmap.games)
+					throw new IllegalArgumentException("Field " + index + " was covered in more than " + heatmap.games + " games");
+				heatmap.counts[index] = count;
+			}
+			return heatmap;
+		}
+		catch (BufferUnderflowException e)
+		{
+			throw new IllegalArgumentException("The encoded heatmap is truncated");
+		}
+		finally
+		{
+			in.order(order);
+		}
+	}
+}
@@ -0,0 +1,156 @@
+package me.battleship.core.ai;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Locale;
+
+import me.battleship.core.CellSet;
+import me.battleship.core.Ruleset;
+
+/**
+ * Keeps the {@link PlacementHeatmap PlacementHeatmaps} of all opponents in a
+ * directory, one small file per opponent and ruleset. Nothing is read before
+ * the heatmap of an opponent is needed, so the number of known opponents does
+ * not slow down the start of a game. The name of a file is derived from a
+ * hash of the opponent and the rules, a file is replaced atomically when a
+ * game is recorded.
+ * 
+ * @author Manuel Vögele
+ */
+public class PlacementHeatmapStore
+{
+	/** The extension of the files */
+	private static final String EXTENSION = ".heat";
+
+	/** The directory holding the files */
+	private final File directory;
+
+	/**
+	 * Initializes a new {@link PlacementHeatmapStore}
+	 * 
+	 * @param directory
+	 *           the directory holding the files, it is created when the first
+	 *           heatmap is saved
+	 */
+	public PlacementHeatmapStore(File directory)
+	{
+		this.directory = directory;
+	}
+
+	/**
+	 * Loads the heatmap of an opponent. A missing or invalid file yields an
+	 * empty heatmap.
+	 * 
+	 * @param opponent
+	 *           the id of the opponent, e.g. the bare jabber id
+	 * @param ruleset
+	 *           the ruleset
+	 * @return the heatmap
+	 * @throws IOException
+	 *            if the file could not be read
+	 */
+	public PlacementHeatmap load(String opponent, Ruleset ruleset) throws IOException
+	{
+		File file = getFile(opponent, ruleset);
+		if (!file.isFile() || file.length() != PlacementHeatmap.getEncodedSize(ruleset))
+			return new PlacementHeatmap(ruleset);
+		byte[] data = new byte[PlacementHeatmap.getEncodedSize(ruleset)];
+		DataInputStream in = new DataInputStream(new FileInputStream(file));
+		try
+		{
+			in.readFully(data);
+		}
+		finally
+		{
+			in.close();
+		}
+		try
+		{
+			return PlacementHeatmap.decode(ByteBuffer.wrap(data), ruleset);
+		}
+		catch (IllegalArgumentException e)
+		{
+			// A damaged file, start over
+			return new PlacementHeatmap(ruleset);
+		}
+	}
+
+	/**
+	 * Saves the heatmap of an opponent, replacing the previous one
+	 * 
+	 * @param opponent
+	 *           the id of the opponent
+	 * @param heatmap
+	 *           the heatmap
+	 * @throws IOException
+	 *            if the file could not be written
+	 */
+	public void save(String opponent, PlacementHeatmap heatmap) throws IOException
+	{
+		if (!directory.isDirectory() && !directory.mkdirs())
+			throw new IOException("Could not create " + directory);
+		File file = getFile(opponent, heatmap.getRuleset());
+		File temp = new File(directory, file.getName() + ".tmp");
+		ByteBuffer data = ByteBuffer.allocate(PlacementHeatmap.getEncodedSize(heatmap.getRuleset()));
+		heatmap.encode(data);
+		FileOutputStream out = new FileOutputStream(temp);
+		try
+		{
+			out.write(data.array());
+		}
+		finally
+		{
+			out.close();
+		}
+		if (!temp.renameTo(file))
+		{
+			temp.delete();
+			throw new IOException("Could not replace " + file);
+		}
+	}
+
+	/**
+	 * Records the fleet of a finished game in the heatmap of an opponent
+	 * 
+	 * @param opponent
+	 *           the id of the opponent
+	 * @param ruleset
+	 *           the ruleset of the game
+	 * @param fleetFields
+	 *           the fields covered by the ships of the opponent
+	 * @return the updated heatmap
+	 * @throws IOException
+	 *            if the heatmap could not be read or written
+	 */
+	public PlacementHeatmap record(String opponent, Ruleset ruleset, CellSet fleetFields) throws IOException
+	{
+		PlacementHeatmap heatmap = load(opponent, ruleset);
+		heatmap.record(fleetFields);
+		save(opponent, heatmap);
+		return heatmap;
+	}
+
+	/**
+	 * Returns the file holding the heatmap of an opponent
+	 * 
+	 * @param opponent
+	 *           the id of the opponent
+	 * @param ruleset
+	 *           the ruleset
+	 * @return the file
+	 */
+	private File getFile(String opponent, Ruleset ruleset)
+	{
+		long hash = DensityTables.getRulesKey(ruleset);
+		String id = opponent.toLowerCase(Locale.ROOT);
+		for (int i = 0;i < id.length();i++)
+		{
+			hash = (hash ^ id.charAt(i)) * 0x100000001B3L;
+		}
+		return new File(directory, String.format(Locale.ROOT, "%016x", hash) + EXTENSION);
+	}
+}
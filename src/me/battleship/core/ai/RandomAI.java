@@ -0,0 +1,97 @@
+package me.battleship.core.ai;
+
+import java.util.Random;
+
+import me.battleship.core.Ruleset;
+import me.battleship.core.ShotResult;
+
+/**
+ * A strategy shooting at a random field which was not shot at yet. It serves
+ * as a baseline for other strategies. The fields are kept in a shuffled order,
+ * so choosing a shot takes constant time and nothing is allocated after the
+ * construction.
+ * 
+ * @author Manuel Vögele
+ */
+public class RandomAI implements ShotStrategy
+{
+	/** The ruleset */
+	private final Ruleset ruleset;
+
+	/** The size of the playground */
+	private final int size;
+
+	/** The random number generator */
+	private final Random random;
+
+	/**
+	 * The fields which were not shot at in the first {@link #remaining}
+	 * entries followed by the fields which were shot at
+	 */
+	private final int[] fields;
+
+	/** The position of every field in {@link #fields} */
+	private final int[] positions;
+
+	/** The number of fields which were not shot at */
+	private int remaining;
+
+	/**
+	 * Initializes a new {@link RandomAI} for a playground without any shots
+	 * 
+	 * @param ruleset
+	 *           the ruleset
+	 * @param random
+	 *           the random number generator
+	 */
+	public RandomAI(Ruleset ruleset, Random random)
+	{
+		this.ruleset = ruleset;
+		this.random = random;
+		size = ruleset.getSize();
+		fields = new int[ruleset.getFieldCount()];
+		positions = new int[fields.length];
+		reset();
+	}
+
+	@Override
+	public Ruleset getRuleset()
+	{
+		return ruleset;
+	}
+
+	@Override
+	public void reset()
+	{
+		// The order of the fields is restored, so a game only depends on the random numbers
+		for (int i = 0;i < fields.length;i++)
+		{
+			fields[i] = i;
+			positions[i] = i;
+		}
+		remaining = fields.length;
+	}
+
+	@Override
+	public int chooseShot()
+	{
+		if (remaining == 0)
+			return -1;
+		return fields[random.nextInt(remaining)];
+	}
+
+	@Override
+	public void recordResult(int x, int y, ShotResult result)
+	{
+		int index = y * size + x;
+		int position = positions[index];
+		if (position >= remaining)
+			return;
+		// Swap the field behind the fields which were not shot at
+		int last = fields[--remaining];
+		fields[position] = last;
+		positions[last] = position;
+		fields[remaining] = index;
+		positions[index] = remaining;
+	}
+}
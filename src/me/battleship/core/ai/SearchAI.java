@@ -0,0 +1,84 @@
+package me.battleship.core.ai;
+
+import java.util.Random;
+
+import me.battleship.core.Ruleset;
+import me.battleship.core.ShotResult;
+
+/**
+ * A computer player choosing its shots by an {@link AnytimeSearch}. Every
+ * shot blocks the calling thread for a fixed number of attempts to sample a
+ * fleet instead of a wall-clock budget, so the shots only depend on the random
+ * number generator. The fleets sampled for a shot are kept for the next shots
+ * as long as they are consistent with the results.
+ * 
+ * @author Manuel Vögele
+ */
+public class SearchAI implements ShotStrategy
+{
+	/** The default number of attempts to sample a fleet per shot */
+	public static final int DEFAULT_ATTEMPTS = 1000;
+
+	/** The search */
+	private final AnytimeSearch search;
+
+	/** The number of attempts to sample a fleet per shot */
+	private final int attempts;
+
+	/**
+	 * Initializes a new {@link SearchAI} with {@link #DEFAULT_ATTEMPTS}
+	 * 
+	 * @param ruleset
+	 *           the ruleset
+	 * @param random
+	 *           the random number generator of the search
+	 */
+	public SearchAI(Ruleset ruleset, Random random)
+	{
+		this(ruleset, random, DEFAULT_ATTEMPTS);
+	}
+
+	/**
+	 * Initializes a new {@link SearchAI}
+	 * 
+	 * @param ruleset
+	 *           the ruleset
+	 * @param random
+	 *           the random number generator of the search
+	 * @param attempts
+	 *           the number of attempts to sample a fleet per shot
+	 * @throws IllegalArgumentException
+	 *            if the number of attempts is not positive
+	 */
+	public SearchAI(Ruleset ruleset, Random random, int attempts) throws IllegalArgumentException
+	{
+		if (attempts <= 0)
+			throw new IllegalArgumentException("The number of attempts must be positive");
+		search = new AnytimeSearch(ruleset, random);
+		this.attempts = attempts;
+	}
+
+	@Override
+	public Ruleset getRuleset()
+	{
+		return search.getRuleset();
+	}
+
+	@Override
+	public void reset()
+	{
+		search.reset();
+	}
+
+	@Override
+	public int chooseShot()
+	{
+		return search.search(attempts);
+	}
+
+	@Override
+	public void recordResult(int x, int y, ShotResult result)
+	{
+		search.recordResult(x, y, result);
+	}
+}
@@ -0,0 +1,45 @@
+package me.battleship.core.ai;
+
+import me.battleship.core.Ruleset;
+import me.battleship.core.ShotResult;
+
+/**
+ * A strategy choosing the shots on the opponents playground. A strategy keeps
+ * track of the results of its shots and can be reused for several games.
+ * 
+ * @author Manuel Vögele
+ */
+public interface ShotStrategy
+{
+	/**
+	 * Returns the ruleset the strategy plays by
+	 * 
+	 * @return the ruleset
+	 */
+	public Ruleset getRuleset();
+
+	/**
+	 * Forgets all shots, e.g. for a new game
+	 */
+	public void reset();
+
+	/**
+	 * Chooses the next shot
+	 * 
+	 * @return the index of the field or <code>-1</code> if every field was
+	 *         shot at
+	 */
+	public int chooseShot();
+
+	/**
+	 * Records the result of a shot
+	 * 
+	 * @param x
+	 *           the x position of the shot
+	 * @param y
+	 *           the y position of the shot
+	 * @param result
+	 *           the result of the shot
+	 */
+	public void recordResult(int x, int y, ShotResult result);
+}
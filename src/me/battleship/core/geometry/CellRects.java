@@ -0,0 +1,247 @@
+package me.battleship.core.geometry;
+
+/**
+ * Utilities for working with rectangles of cells packed into a
+ * <code>long</code>. The left, top, right and bottom edges are stored as signed
+ * 16 bit values in this order starting at the lowest bits. The right and
+ * bottom edges are inclusive - a rectangle covering a single cell has
+ * <code>left == right</code> and <code>top == bottom</code>. A rectangle with
+ * <code>left &gt; right</code> or <code>top &gt; bottom</code> is empty.
+ * <p>
+ * None of the methods allocate memory.
+ * 
+ * @author Manuel Vögele
+ */
+public class CellRects
+{
+	/** An empty rectangle */
+	public static final long EMPTY = pack(0, 0, -1, -1);
+
+	/**
+	 * Packs the specified edges into a rectangle
+	 * 
+	 * @param left
+	 *           the x position of the leftmost cell
+	 * @param top
+	 *           the y position of the topmost cell
+	 * @param right
+	 *           the x position of the rightmost cell
+	 * @param bottom
+	 *           the y position of the bottommost cell
+	 * @return the packed rectangle
+	 */
+	public static long pack(int left, int top, int right, int bottom)
+	{
+		return (left & 0xFFFFL) | (top & 0xFFFFL) << 16 | (right & 0xFFFFL) << 32 | (bottom & 0xFFFFL) << 48;
+	}
+
+	/**
+	 * Returns the rectangle covered by a ship
+	 * 
+	 * @param x
+	 *           the x position of the ship
+	 * @param y
+	 *           the y position of the ship
+	 * @param size
+	 *           the size of the ship
+	 * @param horizontal
+	 *           <code>true</code> if the ship is oriented horizontally
+	 * @return the packed rectangle
+	 */
+	public static long forShip(int x, int y, int size, boolean horizontal)
+	{
+		if (horizontal)
+			return pack(x, y, x + size - 1, y);
+		return pack(x, y, x, y + size - 1);
+	}
+
+	/**
+	 * Returns the x position of the leftmost cell
+	 * 
+	 * @param rect
+	 *           the packed rectangle
+	 * @return the left edge
+	 */
+	public static int getLeft(long rect)
+	{
+		return (short) rect;
+	}
+
+	/**
+	 * Returns the y position of the topmost cell
+	 * 
+	 * @param rect
+	 *           the packed rectangle
+	 * @return the top edge
+	 */
+	public static int getTop(long rect)
+	{
+		return (short) (rect >>> 16);
+	}
+
+	/**
+	 * Returns the x position of the rightmost cell
+	 * 
+	 * @param rect
+	 *           the packed rectangle
+	 * @return the right edge
+	 */
+	public static int getRight(long rect)
+	{
+		return (short) (rect >>> 32);
+	}
+
+	/**
+	 * Returns the y position of the bottommost cell
+	 * 
+	 * @param rect
+	 *           the packed rectangle
+	 * @return the bottom edge
+	 */
+	public static int getBottom(long rect)
+	{
+		return (short) (rect >>> 48);
+	}
+
+	/**
+	 * Returns the number of cells in x direction
+	 * 
+	 * @param rect
+	 *           the packed rectangle
+	 * @return the width or <code>0</code> if the rectangle is empty
+	 */
+	public static int getWidth(long rect)
+	{
+		return isEmpty(rect) ? 0 : getRight(rect) - getLeft(rect) + 1;
+	}
+
+	/**
+	 * Returns the number of cells in y direction
+	 * 
+	 * @param rect
+	 *           the packed rectangle
+	 * @return the height or <code>0</code> if the rectangle is empty
+	 */
+	public static int getHeight(long rect)
+	{
+		return isEmpty(rect) ? 0 : getBottom(rect) - getTop(rect) + 1;
+	}
+
+	/**
+	 * Returns the number of cells covered by the rectangle
+	 * 
+	 * @param rect
+	 *           the packed rectangle
+	 * @return the number of cells
+	 */
+	public static int getCellCount(long rect)
+	{
+		return getWidth(rect) * getHeight(rect);
+	}
+
+	/**
+	 * Returns whether the rectangle contains no cells
+	 * 
+	 * @param rect
+	 *           the packed rectangle
+	 * @return <code>true</code> if the rectangle is empty
+	 */
+	public static boolean isEmpty(long rect)
+	{
+		return getLeft(rect) > getRight(rect) || getTop(rect) > getBottom(rect);
+	}
+
+	/**
+	 * Returns whether the cell at the specified position is within the
+	 * rectangle
+	 * 
+	 * @param rect
+	 *           the packed rectangle
+	 * @param x
+	 *           the x position
+	 * @param y
+	 *           the y position
+	 * @return <code>true</code> if the cell is within the rectangle
+	 */
+	public static boolean contains(long rect, int x, int y)
+	{
+		return x >= getLeft(rect) && x <= getRight(rect) && y >= getTop(rect) && y <= getBottom(rect);
+	}
+
+	/**
+	 * Returns whether the rectangle lies completely within a square playground
+	 * 
+	 * @param rect
+	 *           the packed rectangle
+	 * @param size
+	 *           the size of the playground
+	 * @return <code>true</code> if all cells are on the playground
+	 */
+	public static boolean isWithin(long rect, int size)
+	{
+		return getLeft(rect) >= 0 && getTop(rect) >= 0 && getRight(rect) < size && getBottom(rect) < size;
+	}
+
+	/**
+	 * Returns the intersection between r1 and r2
+	 * 
+	 * @param r1
+	 *           the first packed rectangle
+	 * @param r2
+	 *           the second packed rectangle
+	 * @return the intersection between r1 and r2. The result is empty (see
+	 *         {@link #isEmpty(long)}) if the rectangles do not intersect.
+	 */
+	public static long getIntersection(long r1, long r2)
+	{
+		int left = Math.max(getLeft(r1), getLeft(r2));
+		int top = Math.max(getTop(r1), getTop(r2));
+		int right = Math.min(getRight(r1), getRight(r2));
+		int bottom = Math.min(getBottom(r1), getBottom(r2));
+		if (left > right || top > bottom)
+			return EMPTY;
+		return pack(left, top, right, bottom);
+	}
+
+	/**
+	 * Returns the rectangle grown by the specified number of cells on every
+	 * side. Growing a rectangle by one cell adds all cells touching it, even
+	 * diagonally.
+	 * 
+	 * @param rect
+	 *           the packed rectangle
+	 * @param amount
+	 *           the number of cells to add on every side
+	 * @return the grown rectangle
+	 */
+	public static long grow(long rect, int amount)
+	{
+		return pack(getLeft(rect) - amount, getTop(rect) - amount, getRight(rect) + amount, getBottom(rect) + amount);
+	}
+
+	/**
+	 * Returns whether r1 and r2 have at least one cell in common
+	 * 
+	 * @param r1
+	 *           the first packed rectangle
+	 * @param r2
+	 *           the second packed rectangle
+	 * @return <code>true</code> if the rectangles intersect
+	 */
+	public static boolean intersects(long r1, long r2)
+	{
+		return !isEmpty(getIntersection(r1, r2));
+	}
+
+	/**
+	 * Returns a string representation of the rectangle
+	 * 
+	 * @param rect
+	 *           the packed rectangle
+	 * @return the string representation
+	 */
+	public static String toString(long rect)
+	{
+		return "(" + getLeft(rect) + ", " + getTop(rect) + " - " + getRight(rect) + ", " + getBottom(rect) + ")";
+	}
+}
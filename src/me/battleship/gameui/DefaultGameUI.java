@@ -1,17 +1,21 @@
 package me.battleship.gameui;
 
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Iterator;
 import java.util.List;
-import java.util.Set;
 
-import me.battleship.Orientation;
 import me.battleship.PlaceableShip;
-import me.battleship.Playground;
-import me.battleship.PlaygroundField;
 import me.battleship.R;
-import me.battleship.Ship;
+import me.battleship.core.BoardSnapshot;
+import me.battleship.core.CellSet;
+import me.battleship.core.FieldIterator;
+import me.battleship.core.GameSnapshot;
+import me.battleship.core.ImmutableCellSet;
+import me.battleship.core.Orientation;
+import me.battleship.core.Playground;
+import me.battleship.core.Ruleset;
+import me.battleship.core.Ship;
+import me.battleship.core.ShipClass;
+import me.battleship.core.geometry.CellRects;
 import me.battleship.manager.BitmapManager;
 import me.battleship.services.interfaces.GameServiceConnectedListener;
 import me.battleship.ui.Button;
@@ -21,7 +25,6 @@ import android.graphics.Canvas;
 import android.graphics.Paint;
 import android.graphics.Paint.Align;
 import android.graphics.Paint.Style;
-import android.graphics.Point;
 import android.graphics.Rect;
 import android.util.Log;
 import android.view.MotionEvent;
@@ -55,17 +58,12 @@ public class DefaultGameUI extends GameUI implements Runnable, OnTouchListener,
 	/** The black area in the bottom of the screen */
 	private Rect bottomArea;
 
-	/** The own playground */
-	private Playground ownPlayground;
-
-	/** The opponents playground */
-	private Playground opponentPlayground;
-
-	/** The own ships */
-	private List<Ship> ownShips;
-
-	/** The ships of the opponent */
-	private List<Ship> opponentShips;
+	/**
+	 * The own ships as placed by the player. The ships are kept in the order of
+	 * the own board of the game snapshots, every change is sent to the game
+	 * service.
+	 */
+	private List<PlaceableShip> ownShips;
 
 	/** The accept button */
 	private Button acceptButton;
@@ -91,6 +89,9 @@ public class DefaultGameUI extends GameUI implements Runnable, OnTouchListener,
 	 **/
 	private volatile PlaceableShip grabbedShip;
 
+	/** The index of the grabbed ship in the list of the own ships */
+	private volatile int grabbedShipIndex;
+
 	/**
 	 * Indicates whether the grabbed ship has been moved since it has been
 	 * grabbed
@@ -106,6 +107,42 @@ public class DefaultGameUI extends GameUI implements Runnable, OnTouchListener,
 	/** The text displayed on the bottom */
 	private String bottomText;
 
+	/** The paint for the black area in the bottom of the screen */
+	private final Paint bottomAreaPaint;
+
+	/** The paint for the grid of the playgrounds */
+	private final Paint gridPaint;
+
+	/** The paint for the texts */
+	private final Paint textPaint;
+
+	/** The rectangle reused for the positions of the ships and marks while drawing */
+	private final Rect drawRect = new Rect();
+
+	/** The rectangle reused for the positions of the ships while handling touches */
+	private final Rect touchRect = new Rect();
+
+	/** The size of the playgrounds in fields, until the game service is connected the default size is assumed */
+	private int playgroundSize = Playground.SIZE;
+
+	/** The set used for collecting the marked fields while drawing */
+	private CellSet markedFields;
+
+	/** The iterator used for iterating over the marked fields while drawing */
+	private final FieldIterator fieldIterator = new FieldIterator();
+
+	/** The ruleset of the game, set when the game service is connected */
+	private Ruleset ruleset;
+
+	/** The set used for collecting the fields of the ships which are not grabbed */
+	private CellSet otherShipFields;
+
+	/** The fields on which the grabbed ship can be dropped, see {@link #prepareDropPreview(int)} */
+	private volatile CellSet dropAnchors;
+
+	/** The set which is filled when the next ship is grabbed, so the drawn set is never modified */
+	private CellSet spareDropAnchors;
+
 	@SuppressWarnings("javadoc")
 	public DefaultGameUI(Context context, GameServiceConnectedListener listener)
 	{
@@ -113,6 +150,15 @@ public class DefaultGameUI extends GameUI implements Runnable, OnTouchListener,
 		dp = context.getResources().getDisplayMetrics().density;
 		surfaceView = new SurfaceView(getContext());
 		surfaceView.getHolder().addCallback(this);
+		bottomAreaPaint = new Paint();
+		bottomAreaPaint.setARGB(100, 0, 0, 0);
+		gridPaint = new Paint();
+		gridPaint.setARGB(255, 255, 255, 255);
+		textPaint = new Paint();
+		textPaint.setARGB(255, 255, 255, 255);
+		textPaint.setTextAlign(Align.LEFT);
+		textPaint.setStyle(Style.FILL);
+		textPaint.setAntiAlias(true);
 	}
 
 	@Override
@@ -139,20 +185,20 @@ public class DefaultGameUI extends GameUI implements Runnable, OnTouchListener,
 	@Override
 	public void onGameServiceConnected()
 	{
-		ownShips = gameService.getOwnShips();
-		if (gameService.isInPlacementPhase())
+		GameSnapshot snapshot = gameService.getSnapshot();
+		BoardSnapshot ownBoard = snapshot.getOwnBoard();
+		List<PlaceableShip> ships = new ArrayList<PlaceableShip>(ownBoard.getShipCount());
+		for (int i = 0;i < ownBoard.getShipCount();i++)
 		{
-			List<Ship> tmpShips = new ArrayList<Ship>(ownShips.size());
-			for (Ship ship : ownShips)
-			{
-				tmpShips.add(new PlaceableShip(ship));
-			}
-			ownShips.clear();
-			ownShips.addAll(tmpShips);
+			ships.add(new PlaceableShip(ownBoard.getShipClass(i), ownBoard.getShipX(i), ownBoard.getShipY(i), ownBoard.getShipOrientation(i)));
 		}
-		opponentShips = gameService.getOpponentShips();
-		ownPlayground = gameService.getOwnPlayground();
-		opponentPlayground = gameService.getOpponentPlayground();
+		ownShips = ships;
+		playgroundSize = ownBoard.getSize();
+		ruleset = snapshot.getRuleset();
+		markedFields = new CellSet(ruleset.getFieldCount());
+		otherShipFields = new CellSet(ruleset.getFieldCount());
+		dropAnchors = new CellSet(ruleset.getFieldCount());
+		spareDropAnchors = new CellSet(ruleset.getFieldCount());
 		surfaceView.setOnTouchListener(this);
 		if (drawThread != null && !drawThread.isAlive())
 			drawThread.start();
@@ -213,41 +259,62 @@ public class DefaultGameUI extends GameUI implements Runnable, OnTouchListener,
 				canvas.drawBitmap(water, x, y, null);
 			}
 		}
-		Paint paint = new Paint();
-		paint.setARGB(100, 0, 0, 0);
-		canvas.drawRect(bottomArea, paint);
+		canvas.drawRect(bottomArea, bottomAreaPaint);
 		drawButton(canvas, acceptButton, getContext());
-		drawPlayground(canvas, opponentPlayground, playgroundSmall, opponentShips, getContext());
-		drawPlayground(canvas, ownPlayground, playgroundLarge, ownShips, getContext());
+		GameSnapshot snapshot = gameService.getSnapshot();
+		drawPlayground(canvas, snapshot.getOpponentBoard(), playgroundSmall, null, null, snapshot.getKnownEmptyFields(), getContext());
+		drawPlayground(canvas, snapshot.getOwnBoard(), playgroundLarge, ownShips, snapshot.getInvalidFields(), null, getContext());
+		PlaceableShip ship = grabbedShip;
+		if (ship != null && grabbedShipMoved)
+			drawDropPreview(canvas, ship);
 		drawTexts(canvas);
 		holder.unlockCanvasAndPost(canvas);
 	}
 
 	/**
-	 * Draws the specified playground to the specified canvas at the position
+	 * Draws the specified board to the specified canvas at the position
 	 * specified by pos
 	 * 
 	 * @param canvas
 	 *           the canvas to draw on
-	 * @param playground
-	 *           the playground to draw
+	 * @param board
+	 *           the board to draw
 	 * @param pos
 	 *           the position to draw the playground on
 	 * @param ships
-	 *           the ships to draw
+	 *           the ships to draw instead of the ships of the board or
+	 *           <code>null</code> to draw the placed ships of the board
+	 * @param invalidFields
+	 *           the fields to mark as invalid or <code>null</code>
+	 * @param knownEmptyFields
+	 *           the fields to shade as known to be empty or <code>null</code>
 	 * @param context
 	 *           the context
 	 */
-	private void drawPlayground(Canvas canvas, Playground playground, Rect pos, Collection<Ship> ships, Context context)
+	private void drawPlayground(Canvas canvas, BoardSnapshot board, Rect pos, List<PlaceableShip> ships, ImmutableCellSet invalidFields, ImmutableCellSet knownEmptyFields, Context context)
 	{
-		Paint paint = new Paint();
-		paint.setARGB(255, 255, 255, 255);
-		drawGrid(canvas, pos, Playground.SIZE, Playground.SIZE, paint);
-		for (Ship ship : ships)
+		drawGrid(canvas, pos, playgroundSize, playgroundSize, gridPaint);
+		double fieldsize = getFieldsize(pos);
+		if (ships != null)
+		{
+			for (int i = 0;i < ships.size();i++)
+			{
+				PlaceableShip ship = ships.get(i);
+				drawShip(canvas, ship.getShipClass(), ship.getOrientation(), getShipDrawRectangle(ship, pos, drawRect), fieldsize, context);
+			}
+		}
+		else
 		{
-			drawShip(canvas, ship, pos, context);
+			for (int i = 0;i < board.getShipCount();i++)
+			{
+				if (!board.isShipPlaced(i))
+					continue;
+				int length = board.getShipClass(i).getLength();
+				Rect shipPos = getPlacedShipDrawRectangle(board.getShipX(i), board.getShipY(i), length, pos, drawRect);
+				drawShip(canvas, board.getShipClass(i), board.getShipOrientation(i), shipPos, fieldsize, context);
+			}
 		}
-		drawFieldMarks(canvas, pos, playground, ships, context);
+		drawFieldMarks(canvas, pos, board, invalidFields, knownEmptyFields, context);
 	}
 
 	/**
@@ -287,19 +354,22 @@ public class DefaultGameUI extends GameUI implements Runnable, OnTouchListener,
 	 * 
 	 * @param canvas
 	 *           the canvas to draw on
-	 * @param ship
-	 *           the ship to draw
-	 * @param playgroundPos
-	 *           the position of the playground
+	 * @param shipClass
+	 *           the class of the ship to draw
+	 * @param orientation
+	 *           the orientation of the ship
+	 * @param pos
+	 *           the position of the ship (see
+	 *           {@link #getShipDrawRectangle(int, int, int, double, Rect)})
+	 * @param fieldsize
+	 *           the size of a field
 	 * @param context
 	 *           the context
 	 */
-	private static void drawShip(Canvas canvas, Ship ship, Rect playgroundPos, Context context)
+	private static void drawShip(Canvas canvas, ShipClass shipClass, Orientation orientation, Rect pos, double fieldsize, Context context)
 	{
-		Bitmap image = BitmapManager.getBitmap(context.getResources(), ship.getDrawable());
-		double fieldsize = getFieldsize(playgroundPos);
-		Rect pos = getShipDrawRectangle(ship, playgroundPos);
-		if (ship.getOrientation() == Orientation.VERTICAL)
+		Bitmap image = BitmapManager.getBitmap(context.getResources(), ShipDrawables.getDrawable(context, shipClass));
+		if (orientation == Orientation.VERTICAL)
 		{
 			canvas.drawBitmap(image, null, pos, null);
 		}
@@ -307,7 +377,7 @@ public class DefaultGameUI extends GameUI implements Runnable, OnTouchListener,
 		{
 			canvas.save();
 			canvas.rotate(90, (int)(pos.left + fieldsize / 2), (int) (pos.top + fieldsize / 2));
-			canvas.translate(0, (int) (-(ship.getSize() - 1) * fieldsize));
+			canvas.translate(0, (int) (-(shipClass.getLength() - 1) * fieldsize));
 			canvas.drawBitmap(image, null, pos, null);
 			canvas.restore();
 		}
@@ -321,46 +391,128 @@ public class DefaultGameUI extends GameUI implements Runnable, OnTouchListener,
 	 *           the canvas to draw on
 	 * @param playgroundPos
 	 *           the position of the playground
-	 * @param playground
-	 *           the playground
-	 * @param ships
-	 *           the ships on the playground
+	 * @param board
+	 *           the board
+	 * @param invalidFields
+	 *           the fields to mark as invalid or <code>null</code>
+	 * @param knownEmptyFields
+	 *           the fields to shade as known to be empty or <code>null</code>
 	 * @param context
 	 *           the context
 	 */
-	private void drawFieldMarks(Canvas canvas, Rect playgroundPos, Playground playground, Collection<Ship> ships, Context context)
+	private void drawFieldMarks(Canvas canvas, Rect playgroundPos, BoardSnapshot board, ImmutableCellSet invalidFields, ImmutableCellSet knownEmptyFields, Context context)
 	{
 		double fieldsize = getFieldsize(playgroundPos);
-		Set<Point> invalidFields = gameService.getInvalidFields(ships);
-		for (Point point : invalidFields)
+		if (invalidFields != null)
+			shadeFields(canvas, playgroundPos, playgroundSize, fieldIterator.reset(invalidFields.copyTo(markedFields)), 150, 255, 0, 0, fieldsize);
+		// Fields which were shot at already show their result
+		if (knownEmptyFields != null)
+			shadeFields(canvas, playgroundPos, playgroundSize, fieldIterator.reset(knownEmptyFields.copyDifferenceTo(board.getHits(), markedFields)), 100, 0, 0, 0, fieldsize);
+
+		drawFieldMarks(canvas, playgroundPos, playgroundSize, fieldIterator.reset(board.getShipHits(markedFields)), R.drawable.hit, fieldsize, drawRect, context);
+		drawFieldMarks(canvas, playgroundPos, playgroundSize, fieldIterator.reset(board.getMisses(markedFields)), R.drawable.water, fieldsize, drawRect, context);
+	}
+
+	/**
+	 * Fills every field returned by the iterator with the specified color
+	 * 
+	 * @param canvas
+	 *           the canvas to draw on
+	 * @param playgroundPos
+	 *           the position of the playground
+	 * @param size
+	 *           the size of the playground
+	 * @param fields
+	 *           the fields to shade
+	 * @param a
+	 *           the alpha component of the color
+	 * @param r
+	 *           the red component of the color
+	 * @param g
+	 *           the green component of the color
+	 * @param b
+	 *           the blue component of the color
+	 * @param fieldsize
+	 *           the size of a field
+	 */
+	private static void shadeFields(Canvas canvas, Rect playgroundPos, int size, FieldIterator fields, int a, int r, int g, int b, double fieldsize)
+	{
+		while (fields.hasNext())
 		{
-			int left = (int) (point.x * fieldsize) + playgroundPos.left;
-			int top = (int) (point.y * fieldsize) + playgroundPos.top;
+			int index = fields.next();
+			int left = (int) (index % size * fieldsize) + playgroundPos.left;
+			int top = (int) (index / size * fieldsize) + playgroundPos.top;
 			int right = left + (int) fieldsize;
 			int bottom = top + (int) fieldsize;
 			canvas.save();
 			canvas.clipRect(left, top, right, bottom);
-			canvas.drawARGB(150, 255, 0, 0);
+			canvas.drawARGB(a, r, g, b);
 			canvas.restore();
 		}
+	}
 
-		for (int y = 0;y < Playground.SIZE;y++)
+	/**
+	 * Shades the fields the specified ship would cover if it was dropped at
+	 * its current position. The fields are shaded green if the ship can be
+	 * dropped there and red otherwise.
+	 * 
+	 * @param canvas
+	 *           the canvas to draw on
+	 * @param ship
+	 *           the grabbed ship
+	 */
+	private void drawDropPreview(Canvas canvas, PlaceableShip ship)
+	{
+		long rect = getDropRect(ship);
+		if (CellRects.isEmpty(rect))
+			return;
+		boolean legal = CellRects.isWithin(rect, playgroundSize) && dropAnchors.contains(CellRects.getTop(rect) * playgroundSize + CellRects.getLeft(rect));
+		double fieldsize = getFieldsize(playgroundLarge);
+		int left = (int) (CellRects.getLeft(rect) * fieldsize) + playgroundLarge.left;
+		int top = (int) (CellRects.getTop(rect) * fieldsize) + playgroundLarge.top;
+		int right = (int) ((Math.min(CellRects.getRight(rect), playgroundSize - 1) + 1) * fieldsize) + playgroundLarge.left;
+		int bottom = (int) ((Math.min(CellRects.getBottom(rect), playgroundSize - 1) + 1) * fieldsize) + playgroundLarge.top;
+		canvas.save();
+		canvas.clipRect(left, top, right, bottom);
+		if (legal)
+			canvas.drawARGB(100, 0, 255, 0);
+		else
+			canvas.drawARGB(150, 255, 0, 0);
+		canvas.restore();
+	}
+
+	/**
+	 * Draws the specified image on every field returned by the iterator
+	 * 
+	 * @param canvas
+	 *           the canvas to draw on
+	 * @param playgroundPos
+	 *           the position of the playground
+	 * @param size
+	 *           the size of the playground
+	 * @param fields
+	 *           the fields to draw the image on
+	 * @param resource
+	 *           the resource id of the image
+	 * @param fieldsize
+	 *           the size of a field
+	 * @param rect
+	 *           a rectangle which is reused for the position of the marks
+	 * @param context
+	 *           the context
+	 */
+	private static void drawFieldMarks(Canvas canvas, Rect playgroundPos, int size, FieldIterator fields, int resource, double fieldsize, Rect rect, Context context)
+	{
+		Bitmap image = BitmapManager.getBitmap(context.getResources(), resource);
+		while (fields.hasNext())
 		{
-			for (int x = 0;x < Playground.SIZE;x++)
-			{
-				PlaygroundField field = playground.getField(x, y);
-				if (field.isHit())
-				{
-					int resource = (field.isShip() ? R.drawable.hit : R.drawable.water);
-					int left = (int) (x * fieldsize) + playgroundPos.left + 1;
-					int top = (int) (y * fieldsize) + playgroundPos.top + 1;
-					int right = left + (int) fieldsize;
-					int bottom = top + (int) fieldsize;
-					Rect rect = new Rect(left, top, right, bottom);
-					Bitmap image = BitmapManager.getBitmap(context.getResources(), resource);
-					canvas.drawBitmap(image, null, rect, null);
-				}
-			}
+			int index = fields.next();
+			int left = (int) (index % size * fieldsize) + playgroundPos.left + 1;
+			int top = (int) (index / size * fieldsize) + playgroundPos.top + 1;
+			int right = left + (int) fieldsize;
+			int bottom = top + (int) fieldsize;
+			rect.set(left, top, right, bottom);
+			canvas.drawBitmap(image, null, rect, null);
 		}
 	}
 
@@ -375,13 +527,8 @@ public class DefaultGameUI extends GameUI implements Runnable, OnTouchListener,
 		if (bottomText != null)
 		{
 			double fieldsize = getFieldsize(playgroundLarge);
-			Paint paint = new Paint();
-			paint.setARGB(255, 255, 255, 255);
-			paint.setTextAlign(Align.LEFT);
-			paint.setTextSize((float) fieldsize * 2 / 3);
-			paint.setStyle(Style.FILL);
-			paint.setAntiAlias(true);
-			canvas.drawText(bottomText, bottomArea.left + (float) fieldsize / 2, bottomArea.top + (float) fieldsize * 13 / 6, paint);
+			textPaint.setTextSize((float) fieldsize * 2 / 3);
+			canvas.drawText(bottomText, bottomArea.left + (float) fieldsize / 2, bottomArea.top + (float) fieldsize * 13 / 6, textPaint);
 		}
 	}
 
@@ -406,32 +553,123 @@ public class DefaultGameUI extends GameUI implements Runnable, OnTouchListener,
 	}
 
 	/**
-	 * Returns the rectangle for the specified ship
+	 * Writes the rectangle for the specified ship to result
 	 * 
 	 * @param ship
 	 *           the ship
 	 * @param playgroundPos
 	 *           the position of the playground the ship is on
-	 * @return the rectangle
+	 * @param result
+	 *           the rectangle to write the position to
+	 * @return the passed rectangle
 	 */
-	private static Rect getShipDrawRectangle(Ship ship, Rect playgroundPos)
+	private Rect getShipDrawRectangle(Ship ship, Rect playgroundPos, Rect result)
 	{
-		double fieldsize = getFieldsize(playgroundPos);
-		int left, top, right, bottom;
 		if (ship instanceof PlaceableShip && !((PlaceableShip) ship).isOnPlayground())
 		{
 			PlaceableShip pship = (PlaceableShip) ship;
-			left = pship.getDrawX() + 2;
-			top = pship.getDrawY() + 1;
+			return getShipDrawRectangle(ship.getSize(), pship.getDrawX() + 2, pship.getDrawY() + 1, getFieldsize(playgroundPos), result);
 		}
-		else
+		return getPlacedShipDrawRectangle(ship.getX(), ship.getY(), ship.getSize(), playgroundPos, result);
+	}
+
+	/**
+	 * Writes the rectangle for a ship on the playground to result
+	 * 
+	 * @param x
+	 *           the x position of the ship
+	 * @param y
+	 *           the y position of the ship
+	 * @param length
+	 *           the length of the ship
+	 * @param playgroundPos
+	 *           the position of the playground the ship is on
+	 * @param result
+	 *           the rectangle to write the position to
+	 * @return the passed rectangle
+	 */
+	private Rect getPlacedShipDrawRectangle(int x, int y, int length, Rect playgroundPos, Rect result)
+	{
+		double fieldsize = getFieldsize(playgroundPos);
+		int left = (int) (x * fieldsize + playgroundPos.left + 1);
+		int top = (int) (y * fieldsize + playgroundPos.top + 1);
+		return getShipDrawRectangle(length, left, top, fieldsize, result);
+	}
+
+	/**
+	 * Writes the rectangle for a ship starting at the specified screen position
+	 * to result
+	 * 
+	 * @param length
+	 *           the length of the ship
+	 * @param left
+	 *           the left edge
+	 * @param top
+	 *           the top edge
+	 * @param fieldsize
+	 *           the size of a field
+	 * @param result
+	 *           the rectangle to write the position to
+	 * @return the passed rectangle
+	 */
+	private static Rect getShipDrawRectangle(int length, int left, int top, double fieldsize, Rect result)
+	{
+		int right = (int) (left + fieldsize);
+		int bottom = (int) (top + length * fieldsize - 1);
+		result.set(left, top, right, bottom - 1);
+		return result;
+	}
+
+	/**
+	 * Lays out the start positions of the own ships in the area below the
+	 * playground. The ships are placed horizontally in rows, longest first, every
+	 * ship into the first row with enough space left. If the rows do not fit
+	 * into the area, they are moved closer together.
+	 * 
+	 * @param fieldsize
+	 *           the size of a field of the large playground
+	 */
+	private void arrangePlaceableShips(float fieldsize)
+	{
+		int count = ownShips.size();
+		int[] order = new int[count];
+		for (int i = 0;i < count;i++)
 		{
-			left = (int) (ship.getX() * fieldsize + playgroundPos.left + 1);
-			top = (int) (ship.getY() * fieldsize + playgroundPos.top + 1);
+			int length = ownShips.get(i).getSize();
+			int j = i;
+			for (;j > 0 && ownShips.get(order[j - 1]).getSize() < length;j--)
+			{
+				order[j] = order[j - 1];
+			}
+			order[j] = i;
+		}
+		float gap = fieldsize / 2;
+		float left = bottomArea.left + gap;
+		float right = bottomArea.right - gap;
+		float[] rowEnds = new float[count];
+		int[] rows = new int[count];
+		float[] lefts = new float[count];
+		int rowCount = 0;
+		for (int i = 0;i < count;i++)
+		{
+			float width = ownShips.get(order[i]).getSize() * fieldsize;
+			int row = 0;
+			while (row < rowCount && rowEnds[row] + gap + width > right)
+				row++;
+			if (row == rowCount)
+				rowEnds[rowCount++] = left - gap;
+			rows[i] = row;
+			lefts[i] = rowEnds[row] + gap;
+			rowEnds[row] = lefts[i] + width;
+		}
+		float rowStep = fieldsize;
+		float top = bottomArea.top + Math.max(0, Math.min(gap, (bottomArea.height() - rowCount * fieldsize) / 2));
+		if (rowCount > 1 && rowCount * fieldsize > bottomArea.height())
+			rowStep = Math.max(0, (bottomArea.height() - fieldsize) / (rowCount - 1));
+		for (int i = 0;i < count;i++)
+		{
+			rearangePlaceableShip(ownShips.get(order[i]), Math.round(lefts[i]), Math.round(top + rows[i] * rowStep), Orientation.HORIZONTAL);
 		}
-		right = (int) (left + fieldsize);
-		bottom = (int) (top + ship.getSize() * fieldsize - 1);
-		return new Rect(left, top, right, bottom - 1);
 	}
 
 	/**
@@ -452,7 +690,7 @@ public class DefaultGameUI extends GameUI implements Runnable, OnTouchListener,
 		ship.setStartPos(startX, startY);
 		if (ship.isOnPlayground())
 		{
-			Rect rect = getShipDrawRectangle(ship, playgroundLarge);
+			Rect rect = getShipDrawRectangle(ship, playgroundLarge, touchRect);
 			ship.setDrawPos(rect.left, rect.top);
 		}
 		else
@@ -462,6 +700,72 @@ public class DefaultGameUI extends GameUI implements Runnable, OnTouchListener,
 		}
 	}
 
+	/**
+	 * Places all own ships randomly on the playground
+	 */
+	private void autoPlaceFleet()
+	{
+		if (gameService.autoPlaceFleet())
+			updateShips();
+	}
+
+	@Override
+	public boolean undoPlacement()
+	{
+		if (grabbedShip != null || !super.undoPlacement())
+			return false;
+		updateShips();
+		return true;
+	}
+
+	@Override
+	public boolean redoPlacement()
+	{
+		if (grabbedShip != null || !super.redoPlacement())
+			return false;
+		updateShips();
+		return true;
+	}
+
+	/**
+	 * Moves the own ships to the positions of the latest snapshot of the game
+	 */
+	private void updateShips()
+	{
+		BoardSnapshot ownBoard = gameService.getSnapshot().getOwnBoard();
+		for (int i = 0;i < ownShips.size();i++)
+		{
+			PlaceableShip ship = ownShips.get(i);
+			if (ownBoard.isShipPlaced(i))
+			{
+				ship.setOrientation(ownBoard.getShipOrientation(i));
+				ship.setPos(ownBoard.getShipX(i), ownBoard.getShipY(i));
+				ship.setOnPlayground(true);
+				Rect pos = getPlacedShipDrawRectangle(ship.getX(), ship.getY(), ship.getSize(), playgroundLarge, touchRect);
+				ship.setDrawPos(pos.left, pos.top);
+			}
+			else
+			{
+				ship.setOnPlayground(false);
+				ship.setOrientation(ship.getStartOrientation());
+				ship.setDrawPos(ship.getStartX(), ship.getStartY());
+			}
+		}
+		setAcceptButtonVisibility();
+	}
+
+	/**
+	 * Sends the current position of the specified own ship to the game
+	 * 
+	 * @param index
+	 *           the index of the ship
+	 */
+	private void moveShip(int index)
+	{
+		PlaceableShip ship = ownShips.get(index);
+		gameService.moveShip(index, ship.getX(), ship.getY(), ship.getOrientation());
+	}
+
 	/**
 	 * Sets the visibility of the accept button
 	 * 
@@ -492,22 +796,8 @@ public class DefaultGameUI extends GameUI implements Runnable, OnTouchListener,
 	 */
 	private void setAcceptButtonVisibility()
 	{
-		if (!gameService.isInPlacementPhase())
-		{
-			setAcceptButtonVisible(false);
-			return;
-		}
-		if (!gameService.areAllShipsPlaced(ownShips))
-		{
-			setAcceptButtonVisible(false);
-			return;
-		}
-		if (gameService.getInvalidFields(ownShips).size() > 0)
-		{
-			setAcceptButtonVisible(false);
-			return;
-		}
-		setAcceptButtonVisible(true);
+		GameSnapshot snapshot = gameService.getSnapshot();
+		setAcceptButtonVisible(snapshot.isInPlacementPhase() && snapshot.isPlacementValid());
 	}
 
 	@Override
@@ -517,39 +807,24 @@ public class DefaultGameUI extends GameUI implements Runnable, OnTouchListener,
 		int border = dpToPx(8);
 		final int smallFieldSize = dpToPx(5);
 		int oneDP = dpToPx(1);
-		int size = (smallFieldSize + oneDP) * Playground.SIZE + oneDP + border;
+		int size = Math.min((smallFieldSize + oneDP) * playgroundSize + oneDP, width / 3) + border;
 		playgroundSmall = new Rect(border, border, size, size);
 
-		float fieldsize = (height - playgroundSmall.bottom - 2 * border) / (Playground.SIZE + 3);
-		int largeFieldSize = Math.round(fieldsize * Playground.SIZE);
+		// The area below the large playground keeps the height of 3 fields of a default sized playground
+		float fieldsize = (height - playgroundSmall.bottom - 2 * border) / (playgroundSize + 3 * playgroundSize / Playground.SIZE);
+		int largeFieldSize = Math.round(fieldsize * playgroundSize);
 		int spaceW = width - 2 * border;
 		if (largeFieldSize > spaceW)
 		{
 			largeFieldSize = spaceW;
-			fieldsize = largeFieldSize / Playground.SIZE;
+			fieldsize = largeFieldSize / playgroundSize;
 		}
 		playgroundLarge = new Rect(border, size + border, border + largeFieldSize, size + border + largeFieldSize);
 		bottomArea = new Rect(0, playgroundLarge.bottom + border, width, height);
 
-		if (gameService.isInPlacementPhase())
+		if (gameService.getSnapshot().isInPlacementPhase())
 		{
-			int halfFieldsize = Math.round(fieldsize / 2);
-			int oneAndAHalfFieldsize = Math.round(fieldsize * 1.5f);
-			int threeAndAHalfFieldsize = Math.round(fieldsize * 3.5f);
-			int aircraftCarrierLeft = bottomArea.left + halfFieldsize;
-			int aircraftCarrierRight = aircraftCarrierLeft + Math.round(5 * fieldsize);
-			int submarineLeft = bottomArea.right - threeAndAHalfFieldsize;
-			Iterator<Ship> iterator = ownShips.iterator();
-			Ship ship = iterator.next();
-			rearangePlaceableShip((PlaceableShip) ship, aircraftCarrierLeft, bottomArea.top + halfFieldsize, Orientation.HORIZONTAL);
-			ship = iterator.next();
-			rearangePlaceableShip((PlaceableShip) ship, bottomArea.left + Math.round(fieldsize), bottomArea.bottom - oneAndAHalfFieldsize, Orientation.HORIZONTAL);
-			ship = iterator.next();
-			rearangePlaceableShip((PlaceableShip) ship, submarineLeft, bottomArea.top + halfFieldsize, Orientation.HORIZONTAL);
-			ship = iterator.next();
-			rearangePlaceableShip((PlaceableShip) ship, submarineLeft, bottomArea.bottom - oneAndAHalfFieldsize, Orientation.HORIZONTAL);
-			ship = iterator.next();
-			rearangePlaceableShip((PlaceableShip) ship, Math.round(aircraftCarrierRight + (submarineLeft - aircraftCarrierRight) / 2 - fieldsize / 2), bottomArea.top + bottomArea.height() / 2 - Math.round(fieldsize), Orientation.VERTICAL);
+			arrangePlaceableShips(fieldsize);
 			setAcceptButtonVisibility();
 		}
 	}
@@ -598,37 +873,44 @@ public class DefaultGameUI extends GameUI implements Runnable, OnTouchListener,
 					bottomText = getContext().getResources().getText(R.string.waiting_for_opponent).toString();
 					return true;
 				}
-				for (Ship ship : ownShips)
+				if (!gameService.getSnapshot().isInPlacementPhase())
+					break;
+				for (int i = 0;i < ownShips.size();i++)
 				{
-					if (ship instanceof PlaceableShip)
+					PlaceableShip ship = ownShips.get(i);
+					int left = ship.getDrawX();
+					int top = ship.getDrawY();
+					int right, bottom;
+					if (ship.getOrientation() == Orientation.HORIZONTAL)
 					{
-						PlaceableShip pShip = (PlaceableShip) ship;
-						int left = pShip.getDrawX();
-						int top = pShip.getDrawY();
-						int right, bottom;
-						if (ship.getOrientation() == Orientation.HORIZONTAL)
-						{
-							right = left + (int) (ship.getSize() * fieldsize);
-							bottom = top + (int) fieldsize;
-						}
-						else
-						{
-							right = left + (int) fieldsize;
-							bottom = top + (int) (ship.getSize() * fieldsize);
-						}
-						Rect rect = new Rect(left, top, right, bottom);
-						if (rect.contains(x, y))
-						{
-							grabbedShipWasOnPlayground = pShip.isOnPlayground();
-							pShip.setOnPlayground(false);
-							grabbedShip = pShip;
-							grabX = x - left;
-							grabY = y - top;
-							grabbedShipMoved = false;
-							return true;
-						}
+						right = left + (int) (ship.getSize() * fieldsize);
+						bottom = top + (int) fieldsize;
+					}
+					else
+					{
+						right = left + (int) fieldsize;
+						bottom = top + (int) (ship.getSize() * fieldsize);
+					}
+					if (x >= left && x < right && y >= top && y < bottom)
+					{
+						grabbedShipWasOnPlayground = ship.isOnPlayground();
+						ship.setOnPlayground(false);
+						prepareDropPreview(i);
+						grabbedShip = ship;
+						grabbedShipIndex = i;
+						grabX = x - left;
+						grabY = y - top;
+						grabbedShipMoved = false;
+						moveShip(i);
+						return true;
 					}
 				}
+				// A tap on the empty bottom area places the whole fleet randomly
+				if (bottomArea.contains(x, y))
+				{
+					autoPlaceFleet();
+					return true;
+				}
 			break;
 			case MotionEvent.ACTION_MOVE:
 				if (grabbedShip != null)
@@ -643,8 +925,8 @@ public class DefaultGameUI extends GameUI implements Runnable, OnTouchListener,
 				{
 					if (!grabbedShipMoved && grabbedShipWasOnPlayground)
 					{
-						int grabOffsetX = (int) ((float) grabX / playgroundLarge.width() * Playground.SIZE);
-						int grabOffsetY = (int) ((float) grabY / playgroundLarge.height() * Playground.SIZE);
+						int grabOffsetX = (int) ((float) grabX / playgroundLarge.width() * playgroundSize);
+						int grabOffsetY = (int) ((float) grabY / playgroundLarge.height() * playgroundSize);
 						int xpos = grabbedShip.getLastX();
 						int ypos = grabbedShip.getLastY();
 						
@@ -659,37 +941,36 @@ public class DefaultGameUI extends GameUI implements Runnable, OnTouchListener,
 							xpos = 0;
 						else if (grabbedShip.getOrientation() == Orientation.HORIZONTAL)
 						{
-							if (xpos + grabbedShip.getSize() - 1 > Playground.SIZE)
-								xpos = Playground.SIZE - grabbedShip.getSize();
+							if (xpos + grabbedShip.getSize() - 1 > playgroundSize)
+								xpos = playgroundSize - grabbedShip.getSize();
 						}
-						else if (xpos > Playground.SIZE - 1)
-							xpos = Playground.SIZE - 1;
+						else if (xpos > playgroundSize - 1)
+							xpos = playgroundSize - 1;
 
 						if (ypos < 0)
 							ypos = 0;
 						else if (grabbedShip.getOrientation() == Orientation.VERTICAL)
 						{
-							if (ypos + grabbedShip.getSize() - 1 > Playground.SIZE)
-								ypos = Playground.SIZE - grabbedShip.getSize();
+							if (ypos + grabbedShip.getSize() - 1 > playgroundSize)
+								ypos = playgroundSize - grabbedShip.getSize();
 						}
-						else if (ypos > Playground.SIZE - 1)
-							ypos = Playground.SIZE - 1;
+						else if (ypos > playgroundSize - 1)
+							ypos = playgroundSize - 1;
 
 						grabbedShip.setPos(xpos, ypos);
 						grabbedShip.setOnPlayground(true);
-						Rect pos = getShipDrawRectangle(grabbedShip, playgroundLarge);
+						Rect pos = getShipDrawRectangle(grabbedShip, playgroundLarge, touchRect);
 						grabbedShip.setDrawPos(pos.left, pos.top);
 					}
 					else
 					{
-						Rect snappingRect = new Rect(playgroundLarge.left - (int) fieldsize / 2, playgroundLarge.top - (int) fieldsize / 2, playgroundLarge.right, playgroundLarge.bottom);
-						if (snappingRect.contains(grabbedShip.getDrawX(), grabbedShip.getDrawY()))
+						long rect = getDropRect(grabbedShip);
+						if (!CellRects.isEmpty(rect))
 						{
-							int xpos = Math.round(((float) grabbedShip.getDrawX() - playgroundLarge.left) / playgroundLarge.width() * Playground.SIZE);
-							int ypos = Math.round(((float) grabbedShip.getDrawY() - playgroundLarge.top) / playgroundLarge.height() * Playground.SIZE);
+							int xpos = CellRects.getLeft(rect);
+							int ypos = CellRects.getTop(rect);
 							grabbedShip.setPos(xpos, ypos);
-							Rect rect = grabbedShip.getRect();
-							if (rect.left < 0 || rect.top < 0 || rect.right >= Playground.SIZE || rect.bottom >= Playground.SIZE)
+							if (!CellRects.isWithin(rect, playgroundSize))
 							{
 								grabbedShip.setOrientation(grabbedShip.getStartOrientation());
 								grabbedShip.setDrawPos(grabbedShip.getStartX(), grabbedShip.getStartY());
@@ -697,7 +978,7 @@ public class DefaultGameUI extends GameUI implements Runnable, OnTouchListener,
 							}
 							else
 							{
-								Rect pos = getShipDrawRectangle(new Ship(grabbedShip), playgroundLarge);
+								Rect pos = getPlacedShipDrawRectangle(xpos, ypos, grabbedShip.getSize(), playgroundLarge, touchRect);
 								grabbedShip.setDrawPos(pos.left, pos.top);
 								grabbedShip.setOnPlayground(true);
 							}
@@ -709,6 +990,7 @@ public class DefaultGameUI extends GameUI implements Runnable, OnTouchListener,
 							grabbedShip.setOnPlayground(false);
 						}
 					}
+					moveShip(grabbedShipIndex);
 					grabbedShip = null;
 					setAcceptButtonVisibility();
 					return true;
@@ -725,8 +1007,65 @@ public class DefaultGameUI extends GameUI implements Runnable, OnTouchListener,
 	 *           the playground
 	 * @return the field size
 	 */
-	private static double getFieldsize(Rect playground)
+	private double getFieldsize(Rect playground)
+	{
+		int width = playground.right - playground.left;
+		if (width < playgroundSize)
+			return (double) width / playgroundSize;
+		return width / playgroundSize + 0.5;
+	}
+
+	/**
+	 * Returns the fields the specified ship would cover if it was dropped at
+	 * its current drawing position
+	 * 
+	 * @param ship
+	 *           the ship
+	 * @return the fields packed as described in {@link CellRects} or
+	 *         {@link CellRects#EMPTY} if the ship is not over the own
+	 *         playground
+	 */
+	private long getDropRect(PlaceableShip ship)
+	{
+		double fieldsize = getFieldsize(playgroundLarge);
+		int drawX = ship.getDrawX();
+		int drawY = ship.getDrawY();
+		if (drawX < playgroundLarge.left - (int) fieldsize / 2 || drawX >= playgroundLarge.right || drawY < playgroundLarge.top - (int) fieldsize / 2 || drawY >= playgroundLarge.bottom)
+			return CellRects.EMPTY;
+		int xpos = Math.round(((float) drawX - playgroundLarge.left) / playgroundLarge.width() * playgroundSize);
+		int ypos = Math.round(((float) drawY - playgroundLarge.top) / playgroundLarge.height() * playgroundSize);
+		return Ship.getRectForPos(xpos, ypos, ship.getSize(), ship.getOrientation());
+	}
+
+	/**
+	 * Calculates the fields on which the ship with the specified index can be
+	 * dropped without overlapping (or, depending on the ruleset, touching) the
+	 * other ships. This is done once when the ship is grabbed, so drawing the
+	 * preview only needs a lookup in the resulting set.
+	 * 
+	 * @param index
+	 *           the index of the grabbed ship
+	 */
+	private void prepareDropPreview(int index)
 	{
-		return (playground.right - playground.left) / Playground.SIZE + 0.5;
+		otherShipFields.clear();
+		for (int i = 0;i < ownShips.size();i++)
+		{
+			PlaceableShip ship = ownShips.get(i);
+			if (i == index || !ship.isOnPlayground())
+				continue;
+			long rect = ship.getRect();
+			for (int y = CellRects.getTop(rect);y <= CellRects.getBottom(rect);y++)
+			{
+				for (int x = CellRects.getLeft(rect);x <= CellRects.getRight(rect);x++)
+				{
+					otherShipFields.add(y * playgroundSize + x);
+				}
+			}
+		}
+		PlaceableShip ship = ownShips.get(index);
+		CellSet anchors = ruleset.getLegalAnchors(ship.getSize(), ship.getOrientation(), otherShipFields, spareDropAnchors);
+		spareDropAnchors = dropAnchors;
+		dropAnchors = anchors;
 	}
 }
@@ -89,6 +89,27 @@ public abstract class GameUI implements ServiceConnection, GameServiceConnectedL
 		gameService = null;
 	}
 
+	/**
+	 * Undoes the latest movement of the own ships in the placement phase
+	 * 
+	 * @return <code>true</code> if a movement was undone
+	 */
+	public boolean undoPlacement()
+	{
+		return gameService != null && gameService.undoPlacement();
+	}
+
+	/**
+	 * Redoes the latest undone movement of the own ships in the placement
+	 * phase
+	 * 
+	 * @return <code>true</code> if a movement was redone
+	 */
+	public boolean redoPlacement()
+	{
+		return gameService != null && gameService.redoPlacement();
+	}
+
 	/**
 	 * Returns the view to which the game will be rendered
 	 * 
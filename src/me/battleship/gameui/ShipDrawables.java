@@ -0,0 +1,43 @@
+package me.battleship.gameui;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import me.battleship.core.ShipClass;
+import android.content.Context;
+
+/**
+ * Maps the ship classes of the game core to the drawables used to render them.
+ * The sprite name of a ship class is resolved to a drawable once and cached.
+ * 
+ * @author Manuel Vögele
+ */
+public class ShipDrawables
+{
+	/** The resolved drawable ids */
+	private static final Map<ShipClass, Integer> drawables = new HashMap<ShipClass, Integer>();
+
+	/**
+	 * Returns the id of the drawable for the specified ship class
+	 * 
+	 * @param context
+	 *           the context used to resolve the sprite name
+	 * @param shipClass
+	 *           the class of the ship
+	 * @return the id of the drawable
+	 * @throws IllegalArgumentException
+	 *            if there is no drawable for the sprite of the ship class
+	 */
+	public static synchronized int getDrawable(Context context, ShipClass shipClass) throws IllegalArgumentException
+	{
+		Integer id = drawables.get(shipClass);
+		if (id == null)
+		{
+			id = Integer.valueOf(context.getResources().getIdentifier(shipClass.getSprite(), "drawable", context.getPackageName()));
+			if (id.intValue() == 0)
+				throw new IllegalArgumentException("There is no drawable " + shipClass.getSprite() + " for ship class " + shipClass.getName());
+			drawables.put(shipClass, id);
+		}
+		return id.intValue();
+	}
+}
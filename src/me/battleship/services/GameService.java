@@ -1,28 +1,41 @@
 package me.battleship.services;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collection;
-import java.util.HashSet;
-import java.util.List;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.Random;
-import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
-import me.battleship.Orientation;
-import me.battleship.Playground;
-import me.battleship.Ship;
-import me.battleship.ShipType;
+import me.battleship.core.CellSet;
+import me.battleship.core.Game;
+import me.battleship.core.GameSnapshot;
+import me.battleship.core.GameStateCodec;
+import me.battleship.core.MatchState;
+import me.battleship.core.Orientation;
+import me.battleship.core.Ruleset;
+import me.battleship.core.ai.DensityTables;
+import me.battleship.core.ai.PlacementHeatmap;
+import me.battleship.core.ai.PlacementHeatmapStore;
 import me.battleship.services.interfaces.GameServiceConnection;
 import me.battleship.services.interfaces.OpponentConnection;
 import me.battleship.services.interfaces.OpponentMessageListener;
 import me.battleship.services.interfaces.XMPPConnection;
-import me.battleship.utils.RectUtils;
+import me.battleship.xmpp.JID;
+import me.battleship.xmpp.JID.JIDFormatException;
 import android.app.Service;
 import android.content.ComponentName;
 import android.content.Intent;
 import android.content.ServiceConnection;
-import android.graphics.Point;
-import android.graphics.Rect;
+import android.content.pm.PackageManager.NameNotFoundException;
+import android.content.res.AssetFileDescriptor;
 import android.os.Binder;
 import android.os.IBinder;
 import android.util.Log;
@@ -37,20 +50,20 @@ public class GameService extends Service implements ServiceConnection, OpponentM
 	/** The log tag */
 	public static final String LOG_TAG = GameService.class.getSimpleName();
 
-	/** Indicates whether the service is running */
-	private static boolean isRunning = false;
+	/** The name of the file the running match is saved to */
+	private static final String SAVE_FILE = "match.bin";
 
-	/** A set containing the own ships */
-	List<Ship> ownShips;
+	/** The name of the asset holding the precomputed densities of the computer players */
+	private static final String DENSITY_ASSET = "density.tables";
 
-	/** A set containing the opponents ships */
-	List<Ship> opponentShips;
+	/** The name of the directory holding the placement habits of the opponents */
+	private static final String HEATMAP_DIRECTORY = "heatmaps";
 
-	/** The own playground */
-	Playground ownPlayground;
+	/** Indicates whether the service is running */
+	private static boolean isRunning = false;
 
-	/** The enemies playground */
-	Playground opponentPlayground;
+	/** The rules engine of the match */
+	Game game;
 
 	/** The xmpp connection */
 	XMPPConnection xmppConnection;
@@ -64,8 +77,44 @@ public class GameService extends Service implements ServiceConnection, OpponentM
 	/** The match id */
 	String matchId;
 
-	/** Indicates whether the game is in the placement phase */
-	boolean placementPhase;
+	/** The placement habits of all opponents */
+	PlacementHeatmapStore heatmapStore;
+
+	/** The placement habits of the opponent or <code>null</code> if they were not loaded yet */
+	private PlacementHeatmap opponentHeatmap;
+
+	/** The own dice roll or <code>0</code> if the dice was not rolled or the turn order is decided */
+	private int ownDice;
+
+	/** The dice roll of the opponent or <code>0</code> if it was not received yet */
+	private int opponentDice;
+
+	/** The executor saving the match off the UI thread */
+	private final ExecutorService saver = Executors.newSingleThreadExecutor();
+
+	/** The lock guarding the save file */
+	private final Object saveLock = new Object();
+
+	/** The version of the last saved snapshot or <code>-1</code> if none was saved */
+	private long savedVersion = -1;
+
+	/** Indicates whether the match was finished, so it must not be saved again */
+	private boolean finished;
+
+	@Override
+	public void onCreate()
+	{
+		super.onCreate();
+		DensityTables.setDefaultSource(new DensityTables.Source()
+		{
+			@Override
+			public ByteBuffer open() throws IOException
+			{
+				return mapAsset(DENSITY_ASSET);
+			}
+		});
+		heatmapStore = new PlacementHeatmapStore(new File(getFilesDir(), HEATMAP_DIRECTORY));
+	}
 
 	@Override
 	public int onStartCommand(Intent intent, int flags, int startId)
@@ -74,18 +123,12 @@ public class GameService extends Service implements ServiceConnection, OpponentM
 			return START_NOT_STICKY;
 		opponentJID = intent.getStringExtra("opponentJID");
 		matchId = intent.getStringExtra("matchId");
+		String ruleset = intent.getStringExtra("ruleset");
 		Intent intent2 = new Intent(this, XMPPConnectionService.class);
 		bindService(intent2, this, BIND_AUTO_CREATE);
-		ownShips = new ArrayList<Ship>(
-		          Arrays.asList(new Ship(ShipType.AIRCRAFT_CARRIER, -1, -1, null),
-		                        new Ship(ShipType.BATTLESHIP, -1, -1, null),
-		                        new Ship(ShipType.SUBMARINE, -1, -1, null),
-		                        new Ship(ShipType.SUBMARINE, -1, -1, null),
-		                        new Ship(ShipType.DESTROYER, -1, -1, null)));
-		opponentShips = new ArrayList<Ship>(ownShips.size());
-		ownPlayground = new Playground();
-		opponentPlayground = new Playground();
-		placementPhase = true;
+		game = restoreGame();
+		if (game == null)
+			game = new Game(ruleset == null ? Ruleset.CLASSIC : Ruleset.forName(ruleset));
 		isRunning = true;
 		return START_NOT_STICKY;
 	}
@@ -102,9 +145,279 @@ public class GameService extends Service implements ServiceConnection, OpponentM
 	public void onDestroy()
 	{
 		super.onDestroy();
+		saver.shutdown();
+		if (game != null && game.isOpponentDefeated())
+			finishMatch();
+		else if (game != null)
+			saveGame();
 		isRunning = false;
 	}
 
+	/**
+	 * Saves the state of the match on the executor of the service, so the
+	 * calling thread is not blocked by the file system
+	 */
+	void saveGameLater()
+	{
+		saver.execute(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				saveGame();
+			}
+		});
+	}
+
+	/**
+	 * Saves the state of the match, so it can be restored if the process of
+	 * the service dies. The state is written to a temporary file first, so a
+	 * process dying while saving does not leave a broken file behind. Nothing
+	 * is written if the latest snapshot was saved already.
+	 */
+	void saveGame()
+	{
+		synchronized (saveLock)
+		{
+			GameSnapshot snapshot = game.getSnapshot();
+			if (finished || snapshot.getVersion() == savedVersion)
+				return;
+			File file = new File(getFilesDir(), SAVE_FILE);
+			File temp = new File(getFilesDir(), SAVE_FILE + ".tmp");
+			byte[] data = GameStateCodec.encode(matchId, snapshot);
+			try
+			{
+				FileOutputStream out = new FileOutputStream(temp);
+				try
+				{
+					out.write(data);
+				}
+				finally
+				{
+					out.close();
+				}
+				if (!temp.renameTo(file))
+					throw new IOException("Could not replace " + file);
+				savedVersion = snapshot.getVersion();
+			}
+			catch (IOException e)
+			{
+				Log.e(LOG_TAG, "Could not save the match", e);
+			}
+		}
+	}
+
+	/**
+	 * Records the fleet of the defeated opponent in its placement habits. The
+	 * saved state is deleted, so the match is recorded only once.
+	 */
+	void finishMatch()
+	{
+		synchronized (saveLock)
+		{
+			finished = true;
+			new File(getFilesDir(), SAVE_FILE).delete();
+		}
+		String opponent = getOpponentId();
+		if (opponent == null)
+			return;
+		CellSet fleetFields = game.getSnapshot().getOpponentBoard().getShipFields().copyTo(new CellSet(game.getRuleset().getFieldCount()));
+		try
+		{
+			PlacementHeatmap heatmap = heatmapStore.record(opponent, game.getRuleset(), fleetFields);
+			synchronized (this)
+			{
+				opponentHeatmap = heatmap;
+			}
+		}
+		catch (IOException e)
+		{
+			Log.e(LOG_TAG, "Could not record the fleet of " + opponent, e);
+		}
+	}
+
+	/**
+	 * Returns the placement habits of the opponent, loading them on the first
+	 * call
+	 * 
+	 * @return the heatmap, empty if the opponent is unknown
+	 */
+	synchronized PlacementHeatmap getOpponentHeatmap()
+	{
+		if (opponentHeatmap != null)
+			return opponentHeatmap;
+		opponentHeatmap = new PlacementHeatmap(game.getRuleset());
+		String opponent = getOpponentId();
+		if (opponent == null)
+			return opponentHeatmap;
+		try
+		{
+			opponentHeatmap = heatmapStore.load(opponent, game.getRuleset());
+		}
+		catch (IOException e)
+		{
+			Log.e(LOG_TAG, "Could not load the placement habits of " + opponent, e);
+		}
+		return opponentHeatmap;
+	}
+
+	/**
+	 * Returns the bare jabber id of the opponent, the placement habits are
+	 * kept per account and not per device
+	 * 
+	 * @return the id or <code>null</code> if there is no valid opponent
+	 */
+	private String getOpponentId()
+	{
+		if (opponentJID == null)
+			return null;
+		try
+		{
+			JID jid = new JID(opponentJID);
+			return jid.getNode() + "@" + jid.getDomain();
+		}
+		catch (JIDFormatException e)
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * Restores the saved state of the match
+	 * 
+	 * @return the game or <code>null</code> if there is no saved state for the
+	 *         current match
+	 */
+	private Game restoreGame()
+	{
+		File file = new File(getFilesDir(), SAVE_FILE);
+		if (matchId == null || !file.isFile())
+			return null;
+		try
+		{
+			byte[] data = new byte[(int) file.length()];
+			DataInputStream in = new DataInputStream(new FileInputStream(file));
+			try
+			{
+				in.readFully(data);
+			}
+			finally
+			{
+				in.close();
+			}
+			MatchState state = GameStateCodec.decode(data);
+			if (!matchId.equals(state.getMatchId()))
+				return null;
+			Log.i(LOG_TAG, "Restored match " + matchId);
+			return new Game(state.getSnapshot());
+		}
+		catch (IOException e)
+		{
+			Log.e(LOG_TAG, "Could not restore the match", e);
+		}
+		catch (IllegalArgumentException e)
+		{
+			Log.e(LOG_TAG, "The saved match is invalid", e);
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the time the package was installed or updated, which tells
+	 * whether the assets may have changed
+	 * 
+	 * @return the time in milliseconds or <code>0</code> if it is not known
+	 */
+	private long getPackageUpdateTime()
+	{
+		try
+		{
+			return getPackageManager().getPackageInfo(getPackageName(), 0).lastUpdateTime;
+		}
+		catch (NameNotFoundException e)
+		{
+			Log.e(LOG_TAG, "The own package was not found", e);
+			return 0;
+		}
+	}
+
+	/**
+	 * Maps an asset into memory. An asset which is stored uncompressed is
+	 * mapped straight from the package, otherwise it is extracted to the cache
+	 * once per installation of the package and mapped from there. Copies
+	 * extracted from an older package are deleted.
+	 * 
+	 * @param name
+	 *           the name of the asset
+	 * @return the buffer holding the asset
+	 * @throws IOException
+	 *            if the asset could not be mapped
+	 */
+	ByteBuffer mapAsset(String name) throws IOException
+	{
+		try
+		{
+			AssetFileDescriptor descriptor = getAssets().openFd(name);
+			FileInputStream in = descriptor.createInputStream();
+			try
+			{
+				return in.getChannel().map(FileChannel.MapMode.READ_ONLY, descriptor.getStartOffset(), descriptor.getLength());
+			}
+			finally
+			{
+				in.close();
+			}
+		}
+		catch (FileNotFoundException e)
+		{
+			// The asset is compressed
+		}
+		String prefix = name + ".";
+		File file = new File(getCacheDir(), prefix + getPackageUpdateTime());
+		if (!file.isFile())
+		{
+			File[] stale = getCacheDir().listFiles();
+			for (int i = 0;stale != null && i < stale.length;i++)
+			{
+				if (stale[i].getName().equals(name) || stale[i].getName().startsWith(prefix))
+					stale[i].delete();
+			}
+			File temp = new File(getCacheDir(), name + ".tmp");
+			InputStream in = getAssets().open(name);
+			try
+			{
+				FileOutputStream out = new FileOutputStream(temp);
+				try
+				{
+					byte[] buffer = new byte[8192];
+					int count;
+					while ((count = in.read(buffer)) >= 0)
+						out.write(buffer, 0, count);
+				}
+				finally
+				{
+					out.close();
+				}
+			}
+			finally
+			{
+				in.close();
+			}
+			if (!temp.renameTo(file))
+				throw new IOException("Could not extract asset " + name);
+		}
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		try
+		{
+			FileChannel channel = in.getChannel();
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
 	/**
 	 * Returns whether this service is running
 	 * 
@@ -119,8 +432,20 @@ public class GameService extends Service implements ServiceConnection, OpponentM
 	public void onServiceConnected(ComponentName name, IBinder service)
 	{
 		xmppConnection = (XMPPConnection) service;
-		connection = xmppConnection.getOpponentConnection(opponentJID, this);
+		synchronized (this)
+		{
+			connection = xmppConnection.getOpponentConnection(opponentJID, matchId, this);
+		}
 		Log.i(LOG_TAG, "The XMPPConnectionService connected");
+		// A match restored in the battle phase may have been saved before the turn order was decided
+		new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				rollDiceIfUndecided();
+			}
+		}).start();
 	}
 
 	@Override
@@ -134,10 +459,59 @@ public class GameService extends Service implements ServiceConnection, OpponentM
 	 * Roll the dice and perform actions if the opponents dice was already
 	 * received
 	 */
-	public void rollDice()
+	public synchronized void rollDice()
+	{
+		ownDice = new Random().nextInt(6) + 1;
+		connection.sendDiceRoll(ownDice);
+		decideTurnOrder();
+	}
+
+	/**
+	 * Rolls the dice if the match is in the battle phase, the turn order is
+	 * not decided yet and the dice was not rolled already. Does nothing as
+	 * long as there is no connection to the opponent, the dice is rolled once
+	 * it is established.
+	 */
+	synchronized void rollDiceIfUndecided()
+	{
+		GameSnapshot snapshot = game.getSnapshot();
+		if (connection == null || ownDice != 0 || snapshot.isInPlacementPhase() || snapshot.isTurnDecided())
+			return;
+		rollDice();
+	}
+
+	@Override
+	public synchronized void onDiceRolled(int dice)
 	{
-		connection.sendDiceRoll(new Random().nextInt(6) + 1);
-		// TODO Compare dice values
+		if (dice < 1 || dice > 6 || opponentDice != 0)
+		{
+			Log.w(LOG_TAG, "Ignoring unexpected dice roll " + dice);
+			return;
+		}
+		opponentDice = dice;
+		decideTurnOrder();
+	}
+
+	/**
+	 * Decides who shoots first once both dice rolls are known. Both players
+	 * roll again if the dice are equal.
+	 */
+	private void decideTurnOrder()
+	{
+		if (ownDice == 0 || opponentDice == 0)
+			return;
+		if (ownDice == opponentDice)
+		{
+			opponentDice = 0;
+			rollDice();
+			return;
+		}
+		boolean ownTurn = ownDice > opponentDice;
+		ownDice = 0;
+		game.setOwnTurn(ownTurn);
+		saveGameLater();
+		if (Log.isLoggable(LOG_TAG, Log.INFO))
+			Log.i(LOG_TAG, ownTurn ? "Shooting first" : "The opponent shoots first");
 	}
 
 	/**
@@ -147,7 +521,6 @@ public class GameService extends Service implements ServiceConnection, OpponentM
 	 */
 	private class GameServiceBinder extends Binder implements GameServiceConnection
 	{
-		// TODO Restrict writing access on returned data
 		/**
 		 * Initializes a new {@link GameServiceBinder}
 		 */
@@ -157,112 +530,71 @@ public class GameService extends Service implements ServiceConnection, OpponentM
 		}
 
 		@Override
-		public List<Ship> getOwnShips()
+		public GameSnapshot getSnapshot()
 		{
-			return ownShips;
+			return game.getSnapshot();
 		}
 
 		@Override
-		public List<Ship> getOpponentShips()
+		public boolean moveShip(int index, int x, int y, Orientation orientation)
 		{
-			return opponentShips;
+			if (!game.moveShip(index, x, y, orientation))
+				return false;
+			saveGameLater();
+			return true;
 		}
 
 		@Override
-		public Playground getOwnPlayground()
+		public boolean autoPlaceFleet()
 		{
-			return ownPlayground;
+			if (!game.placeShipsRandomly())
+				return false;
+			saveGameLater();
+			return true;
 		}
 
 		@Override
-		public Playground getOpponentPlayground()
+		public boolean undoPlacement()
 		{
-			return opponentPlayground;
-		}
-		
-		@Override
-		public boolean areAllShipsPlaced(Collection<Ship> ships)
-		{
-			for (Ship ship : ships)
-			{
-				Rect rect = ship.getRect();
-				if (rect.left < 0 || rect.top < 0 || rect.right >= Playground.SIZE || rect.bottom >= Playground.SIZE)
-				{
-					return false;
-				}
-			}
+			if (!game.undoPlacement())
+				return false;
+			saveGameLater();
 			return true;
 		}
 
 		@Override
-		public Set<Point> getInvalidFields(Collection<Ship> ships)
+		public boolean redoPlacement()
 		{
-			Set<Point> fields = new HashSet<Point>();
-			for (Ship ship : ships)
-			{
-				if (ship.getX() < 0 || ship.getY() < 0)
-					continue;
-				for (Ship ship2 : ships)
-				{
-					if (ship == ship2)
-						continue;
-					if (ship2.getX() < 0 || ship2.getY() < 0)
-						continue;
-					Rect rect = RectUtils.getIntersection(ship.getRect(), ship2.getRect());
-					if (rect != null)
-					{
-						if (ship.getOrientation() == Orientation.HORIZONTAL)
-						{
-							for (int x = rect.left;x <= rect.right;x++)
-							{
-								fields.add(new Point(x, rect.top));
-							}
-						}
-						else
-						{
-							for (int y = rect.top;y <= rect.bottom;y++)
-							{
-								fields.add(new Point(rect.left, y));
-							}
-						}
-					}
-				}
-			}
-			return fields;
+			if (!game.redoPlacement())
+				return false;
+			saveGameLater();
+			return true;
 		}
 
 		@Override
 		public boolean confirmShips()
 		{
-			if (!areAllShipsPlaced(ownShips) || !getInvalidFields(ownShips).isEmpty())
+			if (!game.getSnapshot().isPlacementValid())
 				return false;
 			new Thread(new Runnable()
 			{
 				@Override
 				public void run()
 				{
-					placementPhase = false;
-					for (Ship ship : ownShips)
+					if (game.confirmShips())
 					{
-						Rect rect = ship.getRect();
-						for (int y = rect.top;y <= rect.bottom;y++)
-						{
-							for (int x = rect.left;x <= rect.right;x++)
-							{
-								ownPlayground.getField(x, y).setShip(ship);
-							}
-						}
+						saveGame();
+						rollDiceIfUndecided();
 					}
-					rollDice();
 				}
 			}).start();
 			return true;
 		}
 
 		@Override
-		public boolean isInPlacementPhase()
+		public int[] getOpponentPlacementWeights(int[] result)
 		{
-			return placementPhase;
+			return getOpponentHeatmap().getWeights(result);
 		}
 	}
 }
@@ -4,6 +4,7 @@ import java.util.Map;
 import java.util.Timer;
 import java.util.TimerTask;
 
+import me.battleship.core.Ruleset;
 import me.battleship.services.interfaces.MatchmakerConnection;
 import me.battleship.services.interfaces.MatchmakerMessageListener;
 import me.battleship.services.interfaces.OpponentConnection;
@@ -14,6 +15,7 @@ import me.battleship.xmpp.BattleshipPacketExtension;
 import me.battleship.xmpp.ExtensionElements;
 import me.battleship.xmpp.JID;
 import me.battleship.xmpp.MessageUtil;
+import me.battleship.xmpp.message.DiceRollMessage;
 import me.battleship.xmpp.message.QueueMessage;
 
 import org.jivesoftware.smack.Chat;
@@ -132,10 +134,10 @@ public class XMPPConnectionService extends Service
 		}
 
 		@Override
-		public OpponentConnection getOpponentConnection(String opponentJID, OpponentMessageListener listener)
+		public OpponentConnection getOpponentConnection(String opponentJID, String matchId, OpponentMessageListener listener)
 		{
 			Chat chat = connection.getChatManager().createChat(opponentJID, null);
-			return new OpponentConnectionImpl(chat, listener);
+			return new OpponentConnectionImpl(chat, matchId, listener);
 		}
 
 		@Override
@@ -177,6 +179,9 @@ public class XMPPConnectionService extends Service
 			/** The chat */
 			private Chat chat;
 
+			/** The match id */
+			private String matchId;
+
 			/** The listener for messages from the opponent */
 			private OpponentMessageListener listener;
 
@@ -185,12 +190,15 @@ public class XMPPConnectionService extends Service
 			 * 
 			 * @param chat
 			 *           the chat
+			 * @param matchId
+			 *           the match id
 			 * @param listener
 			 *           the listener for messages from the matchmaker
 			 */
-			public OpponentConnectionImpl(Chat chat, OpponentMessageListener listener)
+			public OpponentConnectionImpl(Chat chat, String matchId, OpponentMessageListener listener)
 			{
 				this.chat = chat;
+				this.matchId = matchId;
 				this.listener = listener;
 				chat.addMessageListener(this);
 			}
@@ -198,13 +206,44 @@ public class XMPPConnectionService extends Service
 			@Override
 			public void sendDiceRoll(int dice)
 			{
-				// TODO Auto-generated method stub
+				if (Log.isLoggable(LOG_TAG, Log.INFO))
+					Log.i(LOG_TAG, "Sending dice roll " + dice);
+				try
+				{
+					chat.sendMessage(new DiceRollMessage(matchId, dice));
+				}
+				catch (XMPPException e)
+				{
+					Log.e(LOG_TAG, "Error while sending dice roll", e);
+				}
 			}
 
 			@Override
-			public void processMessage(Chat arg0, Message arg1)
+			public void processMessage(@SuppressWarnings("hiding") Chat chat, Message message)
 			{
-				// TODO Auto-generated method stub
+				BattleshipPacketExtension root = MessageUtil.getPacketExtension(message, ExtensionElements.BATTLESHIP);
+				BattleshipPacketExtension diceroll = root == null ? null : root.getSubElement(ExtensionElements.DICEROLL);
+				if (diceroll == null)
+				{
+					logUnparsableMessage(message);
+					return;
+				}
+				Map<String, String> attributes = diceroll.getAttributes();
+				// Without a match id the messages are sent without one, too
+				String messageMatchId = attributes.get("mid");
+				if (matchId == null ? messageMatchId != null : !matchId.equals(messageMatchId))
+				{
+					Log.i(LOG_TAG, "Ignoring a dice roll of another match");
+					return;
+				}
+				try
+				{
+					listener.onDiceRolled(Integer.parseInt(attributes.get("value")));
+				}
+				catch (NumberFormatException e)
+				{
+					logUnparsableMessage(message);
+				}
 			}
 		}
 
@@ -224,6 +263,9 @@ public class XMPPConnectionService extends Service
 			/** The queue id */
 			private String queueId;
 
+			/** The ruleset of the requested match */
+			private Ruleset ruleset;
+
 			/** A timer */
 			private Timer timer;
 
@@ -244,7 +286,7 @@ public class XMPPConnectionService extends Service
 			}
 
 			@Override
-			public void queue() throws XMPPException
+			public void queue(@SuppressWarnings("hiding") Ruleset ruleset) throws XMPPException
 			{
 				Log.i(LOG_TAG, "Queuing at matchmaker");
 				if (queueId != null)
@@ -252,7 +294,8 @@ public class XMPPConnectionService extends Service
 					Log.i(LOG_TAG, "Allready queued. Queuing aborted.");
 					return;
 				}
-				chat.sendMessage(new QueueMessage());
+				this.ruleset = ruleset;
+				chat.sendMessage(new QueueMessage(ruleset));
 			}
 
 			@Override
@@ -289,6 +332,18 @@ public class XMPPConnectionService extends Service
 				}
 				if (action.equals("assign"))
 				{
+					// A matchmaker which does not know about rulesets assigns a match with the requested one
+					String rules = attributes.get("rules");
+					Ruleset assignedRuleset;
+					try
+					{
+						assignedRuleset = rules == null ? ruleset : Ruleset.forName(rules);
+					}
+					catch (IllegalArgumentException e)
+					{
+						logUnparsableMessage(message);
+						return;
+					}
 					timer.cancel();
 					String opponentJID = attributes.get("jid");
 					String matchId = attributes.get("mid");
@@ -296,7 +351,7 @@ public class XMPPConnectionService extends Service
 						Log.i(LOG_TAG, "Assigned to: " + opponentJID + " mid: " + matchId);
 					try
 					{
-						chat.sendMessage(new QueueMessage(opponentJID, matchId));
+						chat.sendMessage(new QueueMessage(opponentJID, matchId, assignedRuleset));
 					}
 					catch (XMPPException e)
 					{
@@ -304,7 +359,7 @@ public class XMPPConnectionService extends Service
 					}
 					chat.removeMessageListener(this);
 					queueId = null;
-					listener.onOpponentAssigned(opponentJID, matchId);
+					listener.onOpponentAssigned(opponentJID, matchId, assignedRuleset);
 					return;
 				}
 				logUnparsableMessage(message);
@@ -1,65 +1,62 @@
 package me.battleship.services.interfaces;
 
-import java.util.Collection;
-import java.util.List;
-import java.util.Set;
-
-import me.battleship.Playground;
-import me.battleship.Ship;
-import android.graphics.Point;
+import me.battleship.core.GameSnapshot;
+import me.battleship.core.Orientation;
+import me.battleship.core.ai.PlacementHeatmap;
 
 /**
- * The connection to the game service
+ * The connection to the game service. The state of the game is only handed out
+ * as immutable {@link GameSnapshot GameSnapshots}, all changes are made through
+ * the methods of this connection.
  * 
  * @author Manuel Vögele
  */
 public interface GameServiceConnection
 {
 	/**
-	 * Returns the players ships
-	 * 
-	 * @return the players ships
-	 */
-	public List<Ship> getOwnShips();
-
-	/**
-	 * Returns the opponents ships
+	 * Returns the latest snapshot of the game. This does not lock and can be
+	 * called from any thread.
 	 * 
-	 * @return the opponents ships
+	 * @return the snapshot
 	 */
-	public List<Ship> getOpponentShips();
+	public GameSnapshot getSnapshot();
 
 	/**
-	 * Returns the own playground
+	 * Moves one of the players ships. Pass a negative position to take the ship
+	 * from the playground.
 	 * 
-	 * @return the own playground
+	 * @param index
+	 *           the index of the ship on the own board of the snapshot
+	 * @param x
+	 *           the new x position
+	 * @param y
+	 *           the new y position
+	 * @param orientation
+	 *           the new orientation
+	 * @return <code>true</code> if the ship was moved
 	 */
-	public Playground getOwnPlayground();
+	public boolean moveShip(int index, int x, int y, Orientation orientation);
 
 	/**
-	 * Returns the opponents playground
+	 * Places the players ships randomly on the playground
 	 * 
-	 * @return the opponents playground
+	 * @return <code>true</code> if the ships were placed
 	 */
-	public Playground getOpponentPlayground();
+	public boolean autoPlaceFleet();
 
 	/**
-	 * Returns whether all ships are placed on the playground
+	 * Undoes the latest movement of the players ships
 	 * 
-	 * @param ships
-	 *           the ships
-	 * @return <code>true</code> is all ships are placed on the playground
+	 * @return <code>true</code> if a movement was undone
 	 */
-	public boolean areAllShipsPlaced(Collection<Ship> ships);
+	public boolean undoPlacement();
 
 	/**
-	 * Returns the fields on which the specified ships overlap
+	 * Redoes the latest undone movement of the players ships
 	 * 
-	 * @param ships
-	 *           the ships
-	 * @return the fields on which the specified ships overlap
+	 * @return <code>true</code> if a movement was redone
 	 */
-	public Set<Point> getInvalidFields(Collection<Ship> ships);
+	public boolean redoPlacement();
 
 	/**
 	 * Confirms the current placement of the ships. Validates if all ships are
@@ -71,9 +68,14 @@ public interface GameServiceConnection
 	public boolean confirmShips();
 
 	/**
-	 * Returns whether the game is in the placement phase
+	 * Writes the placement habits of the opponent learned from earlier matches
+	 * to the specified array, e.g. for highlighting likely fields. The weights
+	 * are described in {@link PlacementHeatmap#getWeights(int[])}, all fields
+	 * have the same weight if the opponent is unknown.
 	 * 
-	 * @return <code>true</code> if the game is in the placement phase
+	 * @param result
+	 *           the array to write the weights to, one per field
+	 * @return the passed array
 	 */
-	public boolean isInPlacementPhase();
-}
\ No newline at end of file
+	public int[] getOpponentPlacementWeights(int[] result);
+}
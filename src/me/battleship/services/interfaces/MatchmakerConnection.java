@@ -1,5 +1,7 @@
 package me.battleship.services.interfaces;
 
+import me.battleship.core.Ruleset;
+
 import org.jivesoftware.smack.XMPPException;
 
 /**
@@ -12,10 +14,12 @@ public interface MatchmakerConnection
 	/**
 	 * Adds the client to the queue on the matchmaker
 	 * 
+	 * @param ruleset
+	 *           the ruleset of the requested match
 	 * @throws XMPPException
 	 *            if queuing fails
 	 */
-	public void queue() throws XMPPException;
+	public void queue(Ruleset ruleset) throws XMPPException;
 
 	/**
 	 * Closes any background processes. The instance will be unstable after that
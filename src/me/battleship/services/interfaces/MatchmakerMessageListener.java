@@ -1,5 +1,7 @@
 package me.battleship.services.interfaces;
 
+import me.battleship.core.Ruleset;
+
 /**
  * A listener for messages from the matchmaker
  * 
@@ -14,6 +16,8 @@ public interface MatchmakerMessageListener
 	 *           the jid of the opponent
 	 * @param matchId
 	 *           the id of the match
+	 * @param ruleset
+	 *           the ruleset of the match
 	 */
-	public void onOpponentAssigned(String opponentJID, String matchId);
+	public void onOpponentAssigned(String opponentJID, String matchId, Ruleset ruleset);
 }
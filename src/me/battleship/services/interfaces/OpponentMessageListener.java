@@ -7,5 +7,11 @@ package me.battleship.services.interfaces;
  */
 public interface OpponentMessageListener
 {
-
+	/**
+	 * Called when the opponent sent a dice roll
+	 * 
+	 * @param dice
+	 *           the dice roll of the opponent
+	 */
+	public void onDiceRolled(int dice);
 }
@@ -43,15 +43,17 @@ public interface XMPPConnection
 	public MatchmakerConnection getMatchmakerConnection(MatchmakerMessageListener listener);
 
 	/**
-	 * Returns the opponent connection for the specified JID
+	 * Returns the opponent connection for the specified JID and match
 	 * 
 	 * @param opponentJID
 	 *           the JID of the opponent
+	 * @param matchId
+	 *           the match id assigned by the matchmaker
 	 * @param listener
 	 *           a listener for messages from the opponent
 	 * @return the connection to the opponent
 	 */
-	public OpponentConnection getOpponentConnection(String opponentJID, OpponentMessageListener listener);
+	public OpponentConnection getOpponentConnection(String opponentJID, String matchId, OpponentMessageListener listener);
 
 	/**
 	 * Disconnects from the XMPP server
@@ -0,0 +1,31 @@
+package me.battleship.xmpp.message;
+
+import me.battleship.xmpp.BattleshipPacketExtension;
+import me.battleship.xmpp.ExtensionElements;
+
+/**
+ * A message telling the opponent the own dice roll, which decides who shoots
+ * first. Both players roll again if the dice are equal.
+ * 
+ * @author Manuel Vögele
+ */
+public class DiceRollMessage extends BattleshipMessage
+{
+	/**
+	 * Creates a message for a dice roll
+	 * 
+	 * @param matchId
+	 *           the match id
+	 * @param dice
+	 *           the dice roll
+	 */
+	public DiceRollMessage(String matchId, int dice)
+	{
+		BattleshipPacketExtension root = new BattleshipPacketExtension(ExtensionElements.BATTLESHIP);
+		BattleshipPacketExtension diceroll = new BattleshipPacketExtension(ExtensionElements.DICEROLL);
+		diceroll.setAttribute("mid", matchId);
+		diceroll.setAttribute("value", Integer.toString(dice));
+		root.addSubElement(diceroll);
+		addExtension(root);
+	}
+}
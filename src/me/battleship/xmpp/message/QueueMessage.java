@@ -1,5 +1,6 @@
 package me.battleship.xmpp.message;
 
+import me.battleship.core.Ruleset;
 import me.battleship.xmpp.BattleshipPacketExtension;
 import me.battleship.xmpp.ExtensionElements;
 
@@ -12,12 +13,16 @@ public class QueueMessage extends BattleshipMessage
 {
 	/**
 	 * Creates a message for adding the client to the matchmaker queue
+	 * 
+	 * @param ruleset
+	 *           the ruleset of the requested match
 	 */
-	public QueueMessage()
+	public QueueMessage(Ruleset ruleset)
 	{
 		BattleshipPacketExtension root = new BattleshipPacketExtension(ExtensionElements.BATTLESHIP);
 		BattleshipPacketExtension queueing = new BattleshipPacketExtension(ExtensionElements.QUEUEING);
 		queueing.setAttribute("action", "request");
+		queueing.setAttribute("rules", ruleset.getName());
 		root.addSubElement(queueing);
 		addExtension(root);
 	}
@@ -45,14 +50,17 @@ public class QueueMessage extends BattleshipMessage
 	 *           the opponent id
 	 * @param matchId
 	 *           the match id
+	 * @param ruleset
+	 *           the ruleset of the match
 	 */
-	public QueueMessage(String opponentJID, String matchId)
+	public QueueMessage(String opponentJID, String matchId, Ruleset ruleset)
 	{
 		BattleshipPacketExtension root = new BattleshipPacketExtension(ExtensionElements.BATTLESHIP);
 		BattleshipPacketExtension queueing = new BattleshipPacketExtension(ExtensionElements.QUEUEING);
 		queueing.setAttribute("action", "assigned");
 		queueing.setAttribute("jid", opponentJID);
 		queueing.setAttribute("mid", matchId);
+		queueing.setAttribute("rules", ruleset.getName());
 		root.addSubElement(queueing);
 		addExtension(root);
 	}
@@ -0,0 +1,58 @@
+package me.battleship.xmpp.message;
+
+import java.util.Locale;
+
+import me.battleship.core.ShotResult;
+import me.battleship.xmpp.BattleshipPacketExtension;
+import me.battleship.xmpp.ExtensionElements;
+
+/**
+ * A message answering a {@link ShootMessage} with the result of the shot
+ * 
+ * @author Manuel Vögele
+ */
+public class ResultMessage extends BattleshipMessage
+{
+	/**
+	 * Creates a message for the result of a shot
+	 * 
+	 * @param matchId
+	 *           the match id
+	 * @param x
+	 *           the x position of the field
+	 * @param y
+	 *           the y position of the field
+	 * @param result
+	 *           the result
+	 */
+	public ResultMessage(String matchId, int x, int y, ShotResult result)
+	{
+		BattleshipPacketExtension root = new BattleshipPacketExtension(ExtensionElements.BATTLESHIP);
+		BattleshipPacketExtension shot = new BattleshipPacketExtension(ExtensionElements.RESULT);
+		shot.setAttribute("mid", matchId);
+		shot.setAttribute("x", Integer.toString(x));
+		shot.setAttribute("y", Integer.toString(y));
+		shot.setAttribute("result", result.name().toLowerCase(Locale.ROOT));
+		root.addSubElement(shot);
+		addExtension(root);
+	}
+
+	/**
+	 * Parses the result attribute of a result element
+	 * 
+	 * @param value
+	 *           the value of the attribute
+	 * @return the result or <code>null</code> if the value is not valid
+	 */
+	public static ShotResult parseResult(String value)
+	{
+		if (value == null)
+			return null;
+		for (ShotResult result : ShotResult.values())
+		{
+			if (result.name().toLowerCase(Locale.ROOT).equals(value))
+				return result;
+		}
+		return null;
+	}
+}
@@ -0,0 +1,34 @@
+package me.battleship.xmpp.message;
+
+import me.battleship.xmpp.BattleshipPacketExtension;
+import me.battleship.xmpp.ExtensionElements;
+
+/**
+ * A message for shooting at a field of the opponent. The opponent answers with
+ * a {@link ResultMessage}.
+ * 
+ * @author Manuel Vögele
+ */
+public class ShootMessage extends BattleshipMessage
+{
+	/**
+	 * Creates a message for a shot
+	 * 
+	 * @param matchId
+	 *           the match id
+	 * @param x
+	 *           the x position of the field
+	 * @param y
+	 *           the y position of the field
+	 */
+	public ShootMessage(String matchId, int x, int y)
+	{
+		BattleshipPacketExtension root = new BattleshipPacketExtension(ExtensionElements.BATTLESHIP);
+		BattleshipPacketExtension shoot = new BattleshipPacketExtension(ExtensionElements.SHOOT);
+		shoot.setAttribute("mid", matchId);
+		shoot.setAttribute("x", Integer.toString(x));
+		shoot.setAttribute("y", Integer.toString(y));
+		root.addSubElement(shoot);
+		addExtension(root);
+	}
+}
@@ -0,0 +1,394 @@
+package me.battleship.tools.bot;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import me.battleship.core.Game;
+import me.battleship.core.Ruleset;
+import me.battleship.core.ShotResult;
+import me.battleship.core.ai.ShotStrategy;
+import me.battleship.tools.selfplay.StrategyType;
+import me.battleship.xmpp.BattleshipPacketExtension;
+import me.battleship.xmpp.ExtensionElements;
+import me.battleship.xmpp.message.DiceRollMessage;
+import me.battleship.xmpp.message.ResultMessage;
+import me.battleship.xmpp.message.ShootMessage;
+
+/**
+ * One match of the bot. The match owns its own {@link Game} and strategy, so
+ * matches do not share any state. The messages of the opponent are queued in
+ * a mailbox and handled one after another by a task of the executor of the
+ * {@link BotRunner}; a match never occupies a thread while it waits for the
+ * opponent, so a small pool plays many matches.
+ * <p>
+ * The protocol: both players place their fleets and send a
+ * {@link DiceRollMessage}, the higher roll shoots first and both roll again if
+ * the rolls are equal. Every {@link ShootMessage} is answered by a
+ * {@link ResultMessage}, the turn passes after a miss. The match ends when all
+ * ships of a player are sunk.
+ * 
+ * @author Manuel Vögele
+ */
+public class BotMatch implements Runnable
+{
+	/** The runner sending the messages of the match */
+	private final BotRunner runner;
+
+	/** The JID the messages to the opponent are sent to */
+	private final String opponentJID;
+
+	/** The match id */
+	private final String matchId;
+
+	/** The rules engine of the match */
+	private final Game game;
+
+	/** The strategy choosing the shots */
+	private final ShotStrategy strategy;
+
+	/** The random number generator of the match */
+	private final Random random;
+
+	/** The elements received from the opponent which were not handled yet */
+	private final Queue<BattleshipPacketExtension> mailbox = new ConcurrentLinkedQueue<BattleshipPacketExtension>();
+
+	/** Indicates whether a task handling the mailbox is scheduled */
+	private final AtomicBoolean scheduled = new AtomicBoolean();
+
+	/** Indicates whether the fleet was placed and the dice was rolled */
+	private boolean started;
+
+	/** Indicates whether the match is over */
+	private final AtomicBoolean finished = new AtomicBoolean();
+
+	/** The time of the last message of the opponent in milliseconds */
+	private volatile long lastActivity;
+
+	/** The own dice roll or <code>0</code> if the turn order is decided */
+	private int ownDice;
+
+	/** The dice roll of the opponent or <code>0</code> if it was not received yet */
+	private int opponentDice;
+
+	/** The field of the own shot waiting for its result or <code>-1</code> */
+	private int pendingShot = -1;
+
+	/** The number of own shots */
+	private int shots;
+
+	/**
+	 * Initializes a new {@link BotMatch}
+	 * 
+	 * @param runner
+	 *           the runner sending the messages of the match
+	 * @param opponentJID
+	 *           the JID the messages to the opponent are sent to
+	 * @param matchId
+	 *           the match id
+	 * @param ruleset
+	 *           the ruleset
+	 * @param strategyType
+	 *           the strategy choosing the shots
+	 * @param seed
+	 *           the seed of the match
+	 */
+	public BotMatch(BotRunner runner, String opponentJID, String matchId, Ruleset ruleset, StrategyType strategyType, long seed)
+	{
+		this.runner = runner;
+		this.opponentJID = opponentJID;
+		this.matchId = matchId;
+		random = new Random(seed);
+		game = new Game(ruleset);
+		strategy = strategyType.create(ruleset, random);
+		lastActivity = System.currentTimeMillis();
+	}
+
+	/**
+	 * Returns the JID of the opponent
+	 * 
+	 * @return the JID
+	 */
+	public String getOpponentJID()
+	{
+		return opponentJID;
+	}
+
+	/**
+	 * Returns the match id
+	 * 
+	 * @return the match id
+	 */
+	public String getMatchId()
+	{
+		return matchId;
+	}
+
+	/**
+	 * Returns whether the match is over
+	 * 
+	 * @return <code>true</code> if the match is over
+	 */
+	public boolean isFinished()
+	{
+		return finished.get();
+	}
+
+	/**
+	 * Returns the time of the last message of the opponent
+	 * 
+	 * @return the time in milliseconds
+	 */
+	public long getLastActivity()
+	{
+		return lastActivity;
+	}
+
+	/**
+	 * Queues an element received from the opponent and schedules its handling
+	 * if no task of this match is scheduled yet. This can be called from any
+	 * thread.
+	 * 
+	 * @param element
+	 *           the element below the battleship root element
+	 */
+	public void deliver(BattleshipPacketExtension element)
+	{
+		lastActivity = System.currentTimeMillis();
+		mailbox.add(element);
+		schedule();
+	}
+
+	/**
+	 * Schedules a task handling the mailbox if none is scheduled yet. A new
+	 * match is started by the first task.
+	 */
+	public void schedule()
+	{
+		if (scheduled.compareAndSet(false, true))
+			runner.execute(this);
+	}
+
+	/**
+	 * Handles all queued elements. Only one task of a match runs at any time,
+	 * so the state of the match is never accessed concurrently.
+	 */
+	@Override
+	public void run()
+	{
+		do
+		{
+			try
+			{
+				if (!started)
+					start();
+				BattleshipPacketExtension element;
+				while (!finished.get() && (element = mailbox.poll()) != null)
+				{
+					handle(element);
+				}
+			}
+			catch (RuntimeException e)
+			{
+				abort("Failed: " + e);
+			}
+			scheduled.set(false);
+		}
+		while (!finished.get() && !mailbox.isEmpty() && scheduled.compareAndSet(false, true));
+	}
+
+	/**
+	 * Ends the match without a winner, e.g. because the opponent did not answer
+	 * 
+	 * @param reason
+	 *           the reason written to the log
+	 */
+	public void abort(String reason)
+	{
+		finish(BotRunner.Outcome.ABORTED, reason);
+	}
+
+	/**
+	 * Ends the match and reports it to the runner unless it already ended
+	 * 
+	 * @param outcome
+	 *           the outcome
+	 * @param reason
+	 *           the reason written to the log or <code>null</code>
+	 */
+	private void finish(BotRunner.Outcome outcome, String reason)
+	{
+		if (finished.compareAndSet(false, true))
+			runner.onMatchFinished(this, outcome, shots, reason);
+	}
+
+	/**
+	 * Places the fleet and rolls the dice
+	 */
+	private void start()
+	{
+		started = true;
+		if (!game.placeShipsRandomly() || !game.confirmShips())
+		{
+			abort("The fleet does not fit on the playground");
+			return;
+		}
+		rollDice();
+	}
+
+	/**
+	 * Rolls the own dice and sends it to the opponent
+	 */
+	private void rollDice()
+	{
+		ownDice = random.nextInt(6) + 1;
+		runner.send(opponentJID, new DiceRollMessage(matchId, ownDice));
+		decideTurnOrder();
+	}
+
+	/**
+	 * Handles an element received from the opponent
+	 * 
+	 * @param element
+	 *           the element
+	 */
+	private void handle(BattleshipPacketExtension element)
+	{
+		String name = element.getElementName();
+		Map<String, String> attributes = element.getAttributes();
+		if (name.equals(ExtensionElements.DICEROLL.getElementName()))
+		{
+			int dice = parseInt(attributes.get("value"));
+			if (ownDice == 0 || opponentDice != 0 || dice < 1 || dice > 6)
+			{
+				abort("Unexpected dice roll " + attributes.get("value"));
+				return;
+			}
+			opponentDice = dice;
+			decideTurnOrder();
+		}
+		else if (name.equals(ExtensionElements.SHOOT.getElementName()))
+			receiveShot(parseInt(attributes.get("x")), parseInt(attributes.get("y")));
+		else if (name.equals(ExtensionElements.RESULT.getElementName()))
+			receiveResult(parseInt(attributes.get("x")), parseInt(attributes.get("y")), ResultMessage.parseResult(attributes.get("result")));
+		else
+			abort("Unexpected element " + name);
+	}
+
+	/**
+	 * Decides who shoots first once both dice rolls are known
+	 */
+	private void decideTurnOrder()
+	{
+		if (ownDice == 0 || opponentDice == 0)
+			return;
+		if (ownDice == opponentDice)
+		{
+			opponentDice = 0;
+			rollDice();
+			return;
+		}
+		boolean ownTurn = ownDice > opponentDice;
+		ownDice = 0;
+		game.setOwnTurn(ownTurn);
+		if (ownTurn)
+			shoot();
+	}
+
+	/**
+	 * Chooses a shot and sends it to the opponent
+	 */
+	private void shoot()
+	{
+		int field = strategy.chooseShot();
+		if (field < 0)
+		{
+			abort("No field left to shoot at");
+			return;
+		}
+		int size = game.getSize();
+		pendingShot = field;
+		shots++;
+		runner.send(opponentJID, new ShootMessage(matchId, field % size, field / size));
+	}
+
+	/**
+	 * Resolves a shot of the opponent and answers it
+	 * 
+	 * @param x
+	 *           the x position
+	 * @param y
+	 *           the y position
+	 */
+	private void receiveShot(int x, int y)
+	{
+		int size = game.getSize();
+		if (ownDice != 0 || game.isOwnTurn() || x < 0 || y < 0 || x >= size || y >= size)
+		{
+			abort("Unexpected shot at " + x + "," + y);
+			return;
+		}
+		ShotResult result = game.receiveShot(x, y);
+		runner.send(opponentJID, new ResultMessage(matchId, x, y, result));
+		if (game.isDefeated())
+			finish(BotRunner.Outcome.LOST, null);
+		else if (result == ShotResult.MISS || result == ShotResult.ALREADY_HIT)
+		{
+			game.setOwnTurn(true);
+			shoot();
+		}
+	}
+
+	/**
+	 * Records the result of the pending own shot
+	 * 
+	 * @param x
+	 *           the x position
+	 * @param y
+	 *           the y position
+	 * @param result
+	 *           the result or <code>null</code> if it could not be parsed
+	 */
+	private void receiveResult(int x, int y, ShotResult result)
+	{
+		int size = game.getSize();
+		if (pendingShot < 0 || result == null || x != pendingShot % size || y != pendingShot / size)
+		{
+			abort("Unexpected result at " + x + "," + y);
+			return;
+		}
+		pendingShot = -1;
+		game.receiveShotResult(x, y, result);
+		strategy.recordResult(x, y, result);
+		if (game.isOpponentDefeated())
+			finish(BotRunner.Outcome.WON, null);
+		else if (result == ShotResult.MISS || result == ShotResult.ALREADY_HIT)
+			game.setOwnTurn(false);
+		else
+			shoot();
+	}
+
+	/**
+	 * Parses an integer attribute
+	 * 
+	 * @param value
+	 *           the value of the attribute
+	 * @return the integer or <code>-1</code> if the value is not a valid
+	 *         integer
+	 */
+	private static int parseInt(String value)
+	{
+		if (value == null)
+			return -1;
+		try
+		{
+			return Integer.parseInt(value);
+		}
+		catch (NumberFormatException e)
+		{
+			return -1;
+		}
+	}
+}
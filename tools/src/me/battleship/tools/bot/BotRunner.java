@@ -0,0 +1,574 @@
+package me.battleship.tools.bot;
+
+import java.lang.reflect.Method;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import me.battleship.core.Ruleset;
+import me.battleship.core.Zobrist;
+import me.battleship.tools.selfplay.StrategyType;
+import me.battleship.xmpp.BattleshipPacketExtension;
+import me.battleship.xmpp.ExtensionElements;
+import me.battleship.xmpp.JID;
+import me.battleship.xmpp.JID.JIDFormatException;
+import me.battleship.xmpp.MessageUtil;
+import me.battleship.xmpp.message.QueueMessage;
+
+import org.jivesoftware.smack.ConnectionConfiguration;
+import org.jivesoftware.smack.PacketListener;
+import org.jivesoftware.smack.XMPPConnection;
+import org.jivesoftware.smack.XMPPException;
+import org.jivesoftware.smack.filter.PacketExtensionFilter;
+import org.jivesoftware.smack.packet.Message;
+import org.jivesoftware.smack.packet.Packet;
+import org.jivesoftware.smack.packet.Presence;
+import org.jivesoftware.smack.packet.Presence.Mode;
+import org.jivesoftware.smack.packet.Presence.Type;
+import org.jivesoftware.smack.util.StringUtils;
+
+/**
+ * Plays many matches at once as a bot without the app. The runner logs in
+ * once and keeps queueing at the matchmaker while fewer than the allowed
+ * number of matches are running; a dice roll of an unknown match is accepted
+ * as a challenge as well. Every received element is routed by the bare JID of
+ * its sender and its match id to a {@link BotMatch}, which plays on its own
+ * {@link me.battleship.core.Game} in tasks of a small thread pool, or of
+ * virtual threads if the JVM supports them. This provides opponents which are
+ * always available and puts the protocol under load.
+ * <p>
+ * Usage:
+ * 
+ * <pre>
+ * BotRunner --jid node@domain[/resource] --password p [--port n]
+ *           [--matches n] [--games n] [--threads n] [--idle s] [--seed s]
+ *           [--rules classic|classic-no-touch] [--matchmaker jid] [strategy]
+ * </pre>
+ * 
+ * @author Manuel Vögele
+ */
+public class BotRunner implements PacketListener
+{
+	/**
+	 * The outcome of a match
+	 * 
+	 * @author Manuel Vögele
+	 */
+	public enum Outcome
+	{
+		/** All ships of the opponent were sunk */
+		WON,
+
+		/** All own ships were sunk */
+		LOST,
+
+		/** The match ended without a winner */
+		ABORTED
+	}
+
+	/** The default resource of the bot */
+	public static final String DEFAULT_RESOURCE = "battleshipbot";
+
+	/** The default JID of the matchmaker */
+	public static final String DEFAULT_MATCHMAKER_JID = "matchmaker@battleship.me";
+
+	/** The interval the matchmaker is pinged and idle matches are checked in milliseconds */
+	private static final long PING_INTERVAL = 15000;
+
+	/** The interval the statistics are written in milliseconds */
+	private static final long REPORT_INTERVAL = 60000;
+
+	/** The connection to the XMPP server */
+	private final XMPPConnection connection;
+
+	/** The bare JID of the matchmaker */
+	private final String matchmakerJID;
+
+	/** The ruleset */
+	private final Ruleset ruleset;
+
+	/** The strategy of the bot */
+	private final StrategyType strategy;
+
+	/** The seed of the run */
+	private final long seed;
+
+	/** The maximum number of matches played at once */
+	private final int maxMatches;
+
+	/** The number of matches to play or <code>0</code> for playing until stopped */
+	private final int games;
+
+	/** The time after which a match without any message of the opponent is aborted in milliseconds */
+	private final long idleTimeout;
+
+	/** The executor running the tasks of the matches */
+	private final ExecutorService executor;
+
+	/** The timer pinging the matchmaker and aborting idle matches */
+	private final Timer timer = new Timer(true);
+
+	/** The running matches by their key (see {@link #getKey(String, String)}) */
+	private final Map<String, BotMatch> matches = new ConcurrentHashMap<String, BotMatch>();
+
+	/** Released when the requested number of matches has ended */
+	private final CountDownLatch done = new CountDownLatch(1);
+
+	/** The number of started matches */
+	private int startedCount;
+
+	/** Indicates whether the bot is queued at the matchmaker */
+	private boolean queued;
+
+	/** The queue id assigned by the matchmaker or <code>null</code> */
+	private volatile String queueId;
+
+	/** The number of won matches */
+	private final AtomicInteger wonCount = new AtomicInteger();
+
+	/** The number of lost matches */
+	private final AtomicInteger lostCount = new AtomicInteger();
+
+	/** The number of aborted matches */
+	private final AtomicInteger abortedCount = new AtomicInteger();
+
+	/** The number of shots in won matches */
+	private final AtomicLong wonShots = new AtomicLong();
+
+	/**
+	 * Initializes a new {@link BotRunner}
+	 * 
+	 * @param connection
+	 *           the connection to the XMPP server, it is connected by
+	 *           {@link #login(String, String, String)}
+	 * @param matchmakerJID
+	 *           the JID of the matchmaker
+	 * @param ruleset
+	 *           the ruleset
+	 * @param strategy
+	 *           the strategy of the bot
+	 * @param seed
+	 *           the seed of the run
+	 * @param maxMatches
+	 *           the maximum number of matches played at once
+	 * @param games
+	 *           the number of matches to play or <code>0</code> for playing
+	 *           until stopped
+	 * @param idleTimeout
+	 *           the time after which a match without any message of the
+	 *           opponent is aborted in milliseconds
+	 * @param executor
+	 *           the executor running the tasks of the matches
+	 */
+	public BotRunner(XMPPConnection connection, String matchmakerJID, Ruleset ruleset, StrategyType strategy, long seed, int maxMatches, int games, long idleTimeout, ExecutorService executor)
+	{
+		this.connection = connection;
+		this.matchmakerJID = StringUtils.parseBareAddress(matchmakerJID);
+		this.ruleset = ruleset;
+		this.strategy = strategy;
+		this.seed = seed;
+		this.maxMatches = maxMatches;
+		this.games = games;
+		this.idleTimeout = idleTimeout;
+		this.executor = executor;
+	}
+
+	/**
+	 * Connects to the server, logs in and starts queueing at the matchmaker
+	 * 
+	 * @param node
+	 *           the node of the JID of the bot
+	 * @param password
+	 *           the password
+	 * @param resource
+	 *           the resource
+	 * @throws XMPPException
+	 *            if connecting or logging in fails
+	 */
+	public void login(String node, String password, String resource) throws XMPPException
+	{
+		// Creating the filter registers the providers of the battleship elements
+		PacketExtensionFilter filter = new PacketExtensionFilter(ExtensionElements.BATTLESHIP.getElementName(), BattleshipPacketExtension.NAMESPACE);
+		connection.connect();
+		connection.addPacketListener(this, filter);
+		connection.login(node, password, resource);
+		connection.sendPacket(new Presence(Type.available, "ready", 0, Mode.available));
+		timer.schedule(new TimerTask()
+		{
+			@Override
+			public void run()
+			{
+				pingAndSweep();
+			}
+		}, PING_INTERVAL, PING_INTERVAL);
+		timer.schedule(new TimerTask()
+		{
+			@Override
+			public void run()
+			{
+				printStatus();
+			}
+		}, REPORT_INTERVAL, REPORT_INTERVAL);
+		requestMatch();
+	}
+
+	/**
+	 * Waits until the requested number of matches has ended
+	 * 
+	 * @throws InterruptedException
+	 *            if the thread was interrupted while waiting
+	 */
+	public void awaitDone() throws InterruptedException
+	{
+		done.await();
+	}
+
+	/**
+	 * Aborts all running matches and disconnects
+	 */
+	public void shutdown()
+	{
+		timer.cancel();
+		for (BotMatch match : matches.values())
+		{
+			match.abort("Shutting down");
+		}
+		executor.shutdown();
+		connection.disconnect();
+	}
+
+	@Override
+	public void processPacket(Packet packet)
+	{
+		if (!(packet instanceof Message))
+			return;
+		Message message = (Message) packet;
+		BattleshipPacketExtension root = MessageUtil.getPacketExtension(message, ExtensionElements.BATTLESHIP);
+		if (root == null || message.getFrom() == null)
+			return;
+		String from = StringUtils.parseBareAddress(message.getFrom());
+		for (BattleshipPacketExtension element : root.getSubElements())
+		{
+			if (element.getElementName().equals(ExtensionElements.QUEUEING.getElementName()))
+			{
+				if (from.equalsIgnoreCase(matchmakerJID))
+					processQueueing(element.getAttributes());
+				continue;
+			}
+			String matchId = element.getAttributes().get("mid");
+			if (matchId == null)
+				continue;
+			BotMatch match = matches.get(getKey(from, matchId));
+			if (match == null && element.getElementName().equals(ExtensionElements.DICEROLL.getElementName()))
+				match = startMatch(message.getFrom(), matchId);
+			if (match != null)
+				match.deliver(element);
+		}
+	}
+
+	/**
+	 * Handles a message of the matchmaker
+	 * 
+	 * @param attributes
+	 *           the attributes of the queueing element
+	 */
+	private void processQueueing(Map<String, String> attributes)
+	{
+		String action = attributes.get("action");
+		if ("success".equals(action))
+			queueId = attributes.get("id");
+		else if ("assign".equals(action))
+		{
+			String opponentJID = attributes.get("jid");
+			String matchId = attributes.get("mid");
+			String rules = attributes.get("rules");
+			synchronized (this)
+			{
+				queued = false;
+				queueId = null;
+			}
+			if (opponentJID == null || matchId == null || (rules != null && !rules.equals(ruleset.getName())))
+			{
+				System.err.println("Invalid assignment " + attributes);
+				requestMatch();
+				return;
+			}
+			send(matchmakerJID, new QueueMessage(opponentJID, matchId, ruleset));
+			startMatch(opponentJID, matchId);
+			requestMatch();
+		}
+	}
+
+	/**
+	 * Queues at the matchmaker unless the bot is queued already or plays as
+	 * many matches as allowed
+	 */
+	synchronized void requestMatch()
+	{
+		if (queued || matches.size() >= maxMatches || (games > 0 && startedCount >= games))
+			return;
+		queued = true;
+		send(matchmakerJID, new QueueMessage(ruleset));
+	}
+
+	/**
+	 * Starts a new match unless it is running already or the bot plays as many
+	 * matches as allowed
+	 * 
+	 * @param opponentJID
+	 *           the JID of the opponent
+	 * @param matchId
+	 *           the match id
+	 * @return the match or <code>null</code> if it was not started
+	 */
+	private synchronized BotMatch startMatch(String opponentJID, String matchId)
+	{
+		String key = getKey(StringUtils.parseBareAddress(opponentJID), matchId);
+		BotMatch match = matches.get(key);
+		if (match != null)
+			return match;
+		if (matches.size() >= maxMatches || (games > 0 && startedCount >= games))
+			return null;
+		startedCount++;
+		match = new BotMatch(this, opponentJID, matchId, ruleset, strategy, Zobrist.mix(seed + startedCount * 0x9E3779B97F4A7C15L));
+		matches.put(key, match);
+		match.schedule();
+		return match;
+	}
+
+	/**
+	 * Called by a match when it has ended. This may be called from any thread.
+	 * 
+	 * @param match
+	 *           the match
+	 * @param outcome
+	 *           the outcome
+	 * @param shots
+	 *           the number of own shots
+	 * @param reason
+	 *           the reason an aborted match ended or <code>null</code>
+	 */
+	void onMatchFinished(BotMatch match, Outcome outcome, int shots, String reason)
+	{
+		matches.remove(getKey(StringUtils.parseBareAddress(match.getOpponentJID()), match.getMatchId()));
+		switch (outcome)
+		{
+			case WON:
+				wonCount.incrementAndGet();
+				wonShots.addAndGet(shots);
+				break;
+			case LOST:
+				lostCount.incrementAndGet();
+				break;
+			default:
+				abortedCount.incrementAndGet();
+				System.err.println("Match " + match.getMatchId() + " against " + match.getOpponentJID() + " aborted: " + reason);
+				break;
+		}
+		if (games > 0 && wonCount.get() + lostCount.get() + abortedCount.get() >= games)
+			done.countDown();
+		else
+			requestMatch();
+	}
+
+	/**
+	 * Sends a message
+	 * 
+	 * @param to
+	 *           the JID of the receiver
+	 * @param message
+	 *           the message
+	 */
+	void send(String to, Message message)
+	{
+		message.setTo(to);
+		connection.sendPacket(message);
+	}
+
+	/**
+	 * Runs a task of a match
+	 * 
+	 * @param task
+	 *           the task
+	 */
+	void execute(Runnable task)
+	{
+		executor.execute(task);
+	}
+
+	/**
+	 * Pings the matchmaker if the bot is queued and aborts the matches in
+	 * which the opponent did not send anything for too long
+	 */
+	void pingAndSweep()
+	{
+		String id = queueId;
+		if (id != null)
+			send(matchmakerJID, new QueueMessage(id));
+		long now = System.currentTimeMillis();
+		for (BotMatch match : matches.values())
+		{
+			if (now - match.getLastActivity() > idleTimeout)
+				match.abort("The opponent did not answer");
+		}
+	}
+
+	/**
+	 * Writes the statistics to the standard output
+	 */
+	void printStatus()
+	{
+		int won = wonCount.get();
+		System.out.printf(Locale.ROOT, "# %d running, %d won, %d lost, %d aborted, %.1f shots per won match%n", matches.size(), won, lostCount.get(), abortedCount.get(), won == 0 ? 0 : (double) wonShots.get() / won);
+		System.out.flush();
+	}
+
+	/**
+	 * Returns the key of a match
+	 * 
+	 * @param bareJID
+	 *           the bare JID of the opponent
+	 * @param matchId
+	 *           the match id
+	 * @return the key
+	 */
+	private static String getKey(String bareJID, String matchId)
+	{
+		return bareJID.toLowerCase(Locale.ROOT) + ' ' + matchId;
+	}
+
+	/**
+	 * Creates the executor running the tasks of the matches. Without a number
+	 * of threads virtual threads are used if the JVM supports them (Java 21 and
+	 * newer), otherwise one thread per core.
+	 * 
+	 * @param threads
+	 *           the number of threads or <code>0</code>
+	 * @return the executor
+	 */
+	static ExecutorService createExecutor(int threads)
+	{
+		if (threads > 0)
+			return Executors.newFixedThreadPool(threads);
+		try
+		{
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		}
+		catch (ReflectiveOperationException e)
+		{
+			// Virtual threads are not supported
+		}
+		return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Runs the bot
+	 * 
+	 * @param args
+	 *           the command line arguments
+	 */
+	public static void main(String[] args)
+	{
+		String jidArg = null;
+		String password = null;
+		int port = 5222;
+		int maxMatches = 16;
+		int games = 0;
+		int threads = 0;
+		long idleSeconds = 120;
+		long seed = System.nanoTime();
+		Ruleset ruleset = Ruleset.CLASSIC;
+		String matchmaker = DEFAULT_MATCHMAKER_JID;
+		StrategyType strategy = StrategyType.DENSITY;
+		JID jid;
+		try
+		{
+			for (int i = 0;i < args.length;i++)
+			{
+				String arg = args[i];
+				if (arg.equals("--jid"))
+					jidArg = args[++i];
+				else if (arg.equals("--password"))
+					password = args[++i];
+				else if (arg.equals("--port"))
+					port = Integer.parseInt(args[++i]);
+				else if (arg.equals("--matches"))
+					maxMatches = Integer.parseInt(args[++i]);
+				else if (arg.equals("--games"))
+					games = Integer.parseInt(args[++i]);
+				else if (arg.equals("--threads"))
+					threads = Integer.parseInt(args[++i]);
+				else if (arg.equals("--idle"))
+					idleSeconds = Long.parseLong(args[++i]);
+				else if (arg.equals("--seed"))
+					seed = Long.parseLong(args[++i]);
+				else if (arg.equals("--rules"))
+					ruleset = Ruleset.forName(args[++i]);
+				else if (arg.equals("--matchmaker"))
+					matchmaker = args[++i];
+				else
+					strategy = StrategyType.forName(arg);
+			}
+			if (jidArg == null || password == null)
+				throw new IllegalArgumentException("The JID and the password are required");
+			if (maxMatches <= 0 || games < 0 || threads < 0 || idleSeconds <= 0)
+				throw new IllegalArgumentException("Counts must be positive");
+			jid = new JID(jidArg);
+		}
+		catch (RuntimeException e)
+		{
+			System.err.println(e.getMessage());
+			printUsage();
+			System.exit(1);
+			return;
+		}
+		catch (JIDFormatException e)
+		{
+			System.err.println(e.getMessage());
+			printUsage();
+			System.exit(1);
+			return;
+		}
+
+		XMPPConnection connection = new XMPPConnection(new ConnectionConfiguration(jid.getDomain(), port));
+		BotRunner runner = new BotRunner(connection, matchmaker, ruleset, strategy, seed, maxMatches, games, idleSeconds * 1000, createExecutor(threads));
+		String resource = jid.getResource() == null ? DEFAULT_RESOURCE : jid.getResource();
+		try
+		{
+			runner.login(jid.getNode(), password, resource);
+			System.out.println("# logged in as " + jid.getNode() + "@" + jid.getDomain() + "/" + resource + ", playing " + strategy.name().toLowerCase(Locale.ROOT));
+			runner.awaitDone();
+		}
+		catch (XMPPException e)
+		{
+			System.err.println("Could not log in: " + e.getMessage());
+			System.exit(1);
+			return;
+		}
+		catch (InterruptedException e)
+		{
+			System.err.println("Interrupted");
+		}
+		finally
+		{
+			runner.printStatus();
+			runner.shutdown();
+		}
+	}
+
+	/**
+	 * Writes the usage to the standard error
+	 */
+	private static void printUsage()
+	{
+		System.err.println("Usage: BotRunner --jid node@domain[/resource] --password p [--port n] [--matches n] [--games n] [--threads n] [--idle s] [--seed s] [--rules classic|classic-no-touch] [--matchmaker jid] [strategy]");
+	}
+}
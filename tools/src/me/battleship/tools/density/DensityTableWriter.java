@@ -0,0 +1,123 @@
+package me.battleship.tools.density;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import me.battleship.core.Ruleset;
+import me.battleship.core.ai.DensityAI;
+import me.battleship.core.ai.DensityTables;
+
+/**
+ * Precomputes the opening densities of the {@link DensityAI} for the built-in
+ * rulesets and writes them in the format of {@link DensityTables}. It runs as
+ * part of the build, the output is shipped as asset of the app.
+ * <p>
+ * Usage:
+ * 
+ * <pre>
+ * DensityTableWriter file [ruleset...]
+ * </pre>
+ * 
+ * @author Manuel Vögele
+ */
+public class DensityTableWriter
+{
+	/**
+	 * This class should not be instantiated
+	 */
+	private DensityTableWriter()
+	{
+		// Nothing to do
+	}
+
+	/**
+	 * Writes the tables of the specified rulesets
+	 * 
+	 * @param out
+	 *           the stream to write to
+	 * @param rulesets
+	 *           the rulesets
+	 * @throws IOException
+	 *            if the tables could not be written
+	 */
+	public static void write(DataOutputStream out, List<Ruleset> rulesets) throws IOException
+	{
+		out.writeInt(DensityTables.MAGIC);
+		out.writeInt(DensityTables.FORMAT_VERSION);
+		out.writeInt(rulesets.size());
+		int offset = 12 + 16 * rulesets.size();
+		for (Ruleset ruleset : rulesets)
+		{
+			out.writeLong(DensityTables.getRulesKey(ruleset));
+			out.writeInt(ruleset.getFieldCount());
+			out.writeInt(offset);
+			offset += 4 * ruleset.getFieldCount();
+		}
+		for (Ruleset ruleset : rulesets)
+		{
+			DensityAI ai = new DensityAI(ruleset, new Random(0), DensityTables.EMPTY);
+			int size = ruleset.getSize();
+			for (int index = 0;index < ruleset.getFieldCount();index++)
+			{
+				out.writeInt(ai.getDensity(index % size, index / size));
+			}
+		}
+	}
+
+	/**
+	 * Runs the writer
+	 * 
+	 * @param args
+	 *           the command line arguments
+	 */
+	public static void main(String[] args)
+	{
+		if (args.length == 0)
+		{
+			System.err.println("Usage: DensityTableWriter file [ruleset...]");
+			System.exit(1);
+			return;
+		}
+		List<Ruleset> rulesets = new ArrayList<Ruleset>();
+		for (int i = 1;i < args.length;i++)
+		{
+			if (args[i].equals(Ruleset.CLASSIC.getName()))
+				rulesets.add(Ruleset.CLASSIC);
+			else if (args[i].equals(Ruleset.CLASSIC_NO_TOUCH.getName()))
+				rulesets.add(Ruleset.CLASSIC_NO_TOUCH);
+			else
+			{
+				System.err.println("Unknown ruleset " + args[i]);
+				System.exit(1);
+				return;
+			}
+		}
+		if (rulesets.isEmpty())
+		{
+			rulesets.add(Ruleset.CLASSIC);
+			rulesets.add(Ruleset.CLASSIC_NO_TOUCH);
+		}
+		try
+		{
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(args[0])));
+			try
+			{
+				write(out, rulesets);
+			}
+			finally
+			{
+				out.close();
+			}
+		}
+		catch (IOException e)
+		{
+			System.err.println("Could not write " + args[0] + ": " + e.getMessage());
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,233 @@
+package me.battleship.tools.placement;
+
+import java.util.List;
+import java.util.Random;
+
+import me.battleship.core.CellSet;
+import me.battleship.core.FleetGenerator;
+import me.battleship.core.PlacementTable;
+import me.battleship.core.Playground;
+import me.battleship.core.Ruleset;
+import me.battleship.core.Ship;
+import me.battleship.core.ShipClass;
+import me.battleship.core.ShotResult;
+import me.battleship.core.ai.ShotStrategy;
+import me.battleship.tools.selfplay.StrategyType;
+
+/**
+ * Searches fleets which a targeting strategy needs many shots to sink, by
+ * simulated annealing on one thread. A step moves one ship to a random legal
+ * placement, overlaps are checked on a bit mask of the occupied fields. A
+ * fleet is scored by the mean number of shots the strategy needs against it
+ * in a fixed set of games, so two fleets are always compared on the same
+ * games. All objects are allocated once and reused.
+ * 
+ * @author Manuel Vögele
+ */
+public class FleetAnnealer
+{
+	/** The temperature at the start of a search in shots */
+	private static final double START_TEMPERATURE = 2;
+
+	/** The temperature at the end of a search in shots */
+	private static final double END_TEMPERATURE = 0.05;
+
+	/** The ruleset */
+	private final Ruleset ruleset;
+
+	/** The strategy the fleets are played against */
+	private final ShotStrategy strategy;
+
+	/** The random number generator of the strategy */
+	private final Random strategyRandom;
+
+	/** The random number generator of the search */
+	private final Random random;
+
+	/** The generator for the initial fleets */
+	private final FleetGenerator fleetGenerator;
+
+	/** The placement tables of the ships in fleet order */
+	private final PlacementTable[] tables;
+
+	/** The ships in fleet order */
+	private final List<Ship> ships;
+
+	/** The playground the games are played on */
+	private final Playground playground;
+
+	/** The number of fields covered by a fleet */
+	private final int fleetFieldCount;
+
+	/** The fields occupied by the current fleet */
+	private final CellSet occupied;
+
+	/** The placements of the current fleet */
+	private final int[] current;
+
+	/**
+	 * Initializes a new {@link FleetAnnealer}
+	 * 
+	 * @param ruleset
+	 *           the ruleset
+	 * @param strategyType
+	 *           the strategy the fleets are played against
+	 */
+	public FleetAnnealer(Ruleset ruleset, StrategyType strategyType)
+	{
+		this.ruleset = ruleset;
+		strategyRandom = new Random();
+		strategy = strategyType.create(ruleset, strategyRandom);
+		random = new Random();
+		fleetGenerator = new FleetGenerator(ruleset, random);
+		tables = new PlacementTable[ruleset.getShipCount()];
+		int ship = 0;
+		int fields = 0;
+		for (int i = 0;i < ruleset.getShipClassCount();i++)
+		{
+			ShipClass shipClass = ruleset.getShipClass(i);
+			for (int j = 0;j < shipClass.getCount();j++)
+			{
+				tables[ship++] = ruleset.getPlacementTable(shipClass.getLength());
+				fields += shipClass.getLength();
+			}
+		}
+		fleetFieldCount = fields;
+		ships = ruleset.createFleet();
+		playground = new Playground(ruleset.getSize());
+		occupied = new CellSet(ruleset.getFieldCount());
+		current = new int[tables.length];
+	}
+
+	/**
+	 * Searches a fleet which the strategy needs many shots to sink
+	 * 
+	 * @param seed
+	 *           the seed of the search
+	 * @param iterations
+	 *           the number of steps
+	 * @param games
+	 *           the seeds of the games a fleet is scored by
+	 * @param result
+	 *           the array to write the placements of the best fleet to, in the
+	 *           format of {@link FleetGenerator#generate(int[])}
+	 * @return the score of the best fleet
+	 * @throws IllegalStateException
+	 *            if the ships of the ruleset do not fit on the playground
+	 */
+	public double anneal(long seed, int iterations, long[] games, int[] result) throws IllegalStateException
+	{
+		random.setSeed(seed);
+		if (!fleetGenerator.generate(current))
+			throw new IllegalStateException("The fleet does not fit on the playground of " + ruleset);
+		occupied.clear();
+		for (int i = 0;i < tables.length;i++)
+		{
+			tables[i].addFields(current[i], occupied);
+		}
+		double score = evaluate(current, games);
+		double bestScore = score;
+		System.arraycopy(current, 0, result, 0, current.length);
+		for (int step = 0;step < iterations;step++)
+		{
+			double temperature = START_TEMPERATURE * Math.pow(END_TEMPERATURE / START_TEMPERATURE, (double) step / iterations);
+			int ship = random.nextInt(tables.length);
+			PlacementTable table = tables[ship];
+			int oldPlacement = current[ship];
+			int newPlacement = random.nextInt(table.getPlacementCount());
+			table.removeFields(oldPlacement, occupied);
+			if (newPlacement == oldPlacement || !table.isLegal(newPlacement, null, occupied) || (ruleset.isNoTouch() && !table.isSeparated(newPlacement, occupied)))
+			{
+				table.addFields(oldPlacement, occupied);
+				continue;
+			}
+			current[ship] = newPlacement;
+			double newScore = evaluate(current, games);
+			if (newScore >= score || random.nextDouble() < Math.exp((newScore - score) / temperature))
+			{
+				table.addFields(newPlacement, occupied);
+				score = newScore;
+				if (score > bestScore)
+				{
+					bestScore = score;
+					System.arraycopy(current, 0, result, 0, current.length);
+				}
+			}
+			else
+			{
+				current[ship] = oldPlacement;
+				table.addFields(oldPlacement, occupied);
+			}
+		}
+		return bestScore;
+	}
+
+	/**
+	 * Returns the mean number of shots the strategy needs to sink a fleet
+	 * 
+	 * @param placements
+	 *           the placements of the fleet in the format of
+	 *           {@link FleetGenerator#generate(int[])}
+	 * @param games
+	 *           the seeds of the strategy in the games
+	 * @return the mean number of shots
+	 * @throws IllegalStateException
+	 *            if the strategy gives up before sinking the fleet
+	 */
+	public double evaluate(int[] placements, long[] games) throws IllegalStateException
+	{
+		for (int i = 0;i < tables.length;i++)
+		{
+			Ship ship = ships.get(i);
+			PlacementTable table = tables[i];
+			ship.setOrientation(table.getOrientation(placements[i]));
+			ship.setPos(table.getX(placements[i]), table.getY(placements[i]));
+		}
+		int size = ruleset.getSize();
+		long total = 0;
+		for (long game : games)
+		{
+			playground.clear();
+			for (Ship ship : ships)
+			{
+				ship.repair();
+				playground.placeShip(ship);
+			}
+			strategyRandom.setSeed(game);
+			strategy.reset();
+			int remaining = fleetFieldCount;
+			while (remaining > 0)
+			{
+				int field = strategy.chooseShot();
+				if (field < 0)
+					throw new IllegalStateException("The strategy gave up");
+				int x = field % size;
+				int y = field / size;
+				ShotResult result = playground.shoot(x, y);
+				strategy.recordResult(x, y, result);
+				total++;
+				if (result == ShotResult.HIT || result == ShotResult.SUNK)
+					remaining--;
+			}
+		}
+		return (double) total / games.length;
+	}
+
+	/**
+	 * Generates a random fleet
+	 * 
+	 * @param seed
+	 *           the seed
+	 * @param result
+	 *           the array to write the placements to, in the format of
+	 *           {@link FleetGenerator#generate(int[])}
+	 * @throws IllegalStateException
+	 *            if the ships of the ruleset do not fit on the playground
+	 */
+	public void generate(long seed, int[] result) throws IllegalStateException
+	{
+		random.setSeed(seed);
+		if (!fleetGenerator.generate(result))
+			throw new IllegalStateException("The fleet does not fit on the playground of " + ruleset);
+	}
+}
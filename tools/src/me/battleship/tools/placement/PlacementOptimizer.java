@@ -0,0 +1,314 @@
+package me.battleship.tools.placement;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import me.battleship.core.FleetLibrary;
+import me.battleship.core.Ruleset;
+import me.battleship.core.Zobrist;
+import me.battleship.tools.selfplay.StrategyType;
+
+/**
+ * Builds a {@link FleetLibrary} of fleets which a targeting strategy needs
+ * many shots to sink. Every fleet is searched by an independent
+ * {@link FleetAnnealer} run, the runs are spread over all cores. The fleets
+ * are scored once more on games which were not used by the search, sorted by
+ * that score and written to a file in the encoding of {@link FleetLibrary}.
+ * The results only depend on the seed, not on the number of threads.
+ * <p>
+ * Usage:
+ * 
+ * <pre>
+ * PlacementOptimizer [--fleets n] [--iterations n] [--games n]
+ *                    [--validation n] [--seed s]
+ *                    [--rules classic|classic-no-touch] [--threads n]
+ *                    [--out file] [strategy]
+ * </pre>
+ * 
+ * @author Manuel Vögele
+ */
+public class PlacementOptimizer
+{
+	/** The ruleset */
+	private final Ruleset ruleset;
+
+	/** The strategy the fleets are played against */
+	private final StrategyType strategy;
+
+	/** The seed of the run */
+	private final long seed;
+
+	/** The annealer of every thread */
+	private final ThreadLocal<FleetAnnealer> annealers = new ThreadLocal<FleetAnnealer>()
+	{
+		@Override
+		protected FleetAnnealer initialValue()
+		{
+			return new FleetAnnealer(ruleset, strategy);
+		}
+	};
+
+	/**
+	 * Initializes a new {@link PlacementOptimizer} run
+	 * 
+	 * @param ruleset
+	 *           the ruleset
+	 * @param strategy
+	 *           the strategy the fleets are played against
+	 * @param seed
+	 *           the seed of the run
+	 */
+	public PlacementOptimizer(Ruleset ruleset, StrategyType strategy, long seed)
+	{
+		this.ruleset = ruleset;
+		this.strategy = strategy;
+		this.seed = seed;
+	}
+
+	/**
+	 * A fleet with its scores
+	 * 
+	 * @author Manuel Vögele
+	 */
+	static class ScoredFleet
+	{
+		/** The placements of the ships */
+		final int[] placements;
+
+		/** The score on the games of the search */
+		final double searchScore;
+
+		/** The score on the validation games */
+		final double validationScore;
+
+		/**
+		 * Initializes a new {@link ScoredFleet}
+		 * 
+		 * @param placements
+		 *           the placements of the ships
+		 * @param searchScore
+		 *           the score on the games of the search
+		 * @param validationScore
+		 *           the score on the validation games
+		 */
+		ScoredFleet(int[] placements, double searchScore, double validationScore)
+		{
+			this.placements = placements;
+			this.searchScore = searchScore;
+			this.validationScore = validationScore;
+		}
+	}
+
+	/**
+	 * Searches the fleets
+	 * 
+	 * @param pool
+	 *           the pool to search in
+	 * @param fleetCount
+	 *           the number of fleets
+	 * @param iterations
+	 *           the number of annealing steps per fleet
+	 * @param games
+	 *           the number of games a fleet is scored by during the search
+	 * @param validation
+	 *           the number of games the found fleets are scored by
+	 * @return the fleets, best first
+	 * @throws InterruptedException
+	 *            if the search was interrupted
+	 * @throws ExecutionException
+	 *            if a search failed
+	 */
+	List<ScoredFleet> search(ForkJoinPool pool, int fleetCount, final int iterations, int games, int validation) throws InterruptedException, ExecutionException
+	{
+		final long[] searchGames = createSeeds(seed, games);
+		final long[] validationGames = createSeeds(~seed, validation);
+		List<Callable<ScoredFleet>> tasks = new ArrayList<Callable<ScoredFleet>>(fleetCount);
+		for (int i = 0;i < fleetCount;i++)
+		{
+			final long fleetSeed = Zobrist.mix(seed + (i + 1) * 0x9E3779B97F4A7C15L);
+			tasks.add(new Callable<ScoredFleet>()
+			{
+				@Override
+				public ScoredFleet call()
+				{
+					FleetAnnealer annealer = annealers.get();
+					int[] placements = new int[ruleset.getShipCount()];
+					double score = annealer.anneal(fleetSeed, iterations, searchGames, placements);
+					return new ScoredFleet(placements, score, annealer.evaluate(placements, validationGames));
+				}
+			});
+		}
+		List<ScoredFleet> fleets = new ArrayList<ScoredFleet>(fleetCount);
+		for (Future<ScoredFleet> future : pool.invokeAll(tasks))
+		{
+			ScoredFleet fleet = future.get();
+			int index = fleets.size();
+			while (index > 0 && fleets.get(index - 1).validationScore < fleet.validationScore)
+				index--;
+			fleets.add(index, fleet);
+		}
+		return fleets;
+	}
+
+	/**
+	 * Returns the mean score of random fleets on the validation games
+	 * 
+	 * @param fleetCount
+	 *           the number of random fleets
+	 * @param validation
+	 *           the number of validation games
+	 * @return the mean number of shots
+	 */
+	public double scoreRandomFleets(int fleetCount, int validation)
+	{
+		long[] validationGames = createSeeds(~seed, validation);
+		FleetAnnealer annealer = annealers.get();
+		int[] placements = new int[ruleset.getShipCount()];
+		double total = 0;
+		for (int i = 0;i < fleetCount;i++)
+		{
+			annealer.generate(Zobrist.mix(~seed - (i + 1) * 0x9E3779B97F4A7C15L), placements);
+			total += annealer.evaluate(placements, validationGames);
+		}
+		return total / fleetCount;
+	}
+
+	/**
+	 * Runs the optimizer
+	 * 
+	 * @param args
+	 *           the command line arguments
+	 */
+	public static void main(String[] args)
+	{
+		int fleetCount = 64;
+		int iterations = 500;
+		int games = 64;
+		int validation = 1000;
+		long seed = 1;
+		int threads = Runtime.getRuntime().availableProcessors();
+		Ruleset ruleset = Ruleset.CLASSIC;
+		StrategyType strategy = StrategyType.DENSITY;
+		String out = null;
+		try
+		{
+			for (int i = 0;i < args.length;i++)
+			{
+				String arg = args[i];
+				if (arg.equals("--fleets"))
+					fleetCount = Integer.parseInt(args[++i]);
+				else if (arg.equals("--iterations"))
+					iterations = Integer.parseInt(args[++i]);
+				else if (arg.equals("--games"))
+					games = Integer.parseInt(args[++i]);
+				else if (arg.equals("--validation"))
+					validation = Integer.parseInt(args[++i]);
+				else if (arg.equals("--seed"))
+					seed = Long.parseLong(args[++i]);
+				else if (arg.equals("--threads"))
+					threads = Integer.parseInt(args[++i]);
+				else if (arg.equals("--rules"))
+					ruleset = Ruleset.forName(args[++i]);
+				else if (arg.equals("--out"))
+					out = args[++i];
+				else
+					strategy = StrategyType.forName(arg);
+			}
+			if (fleetCount <= 0 || iterations < 0 || games <= 0 || validation <= 0 || threads <= 0)
+				throw new IllegalArgumentException("Counts must be positive");
+		}
+		catch (RuntimeException e)
+		{
+			System.err.println(e.getMessage());
+			System.err.println("Usage: PlacementOptimizer [--fleets n] [--iterations n] [--games n] [--validation n] [--seed s] [--rules classic|classic-no-touch] [--threads n] [--out file] [strategy]");
+			System.exit(1);
+			return;
+		}
+		if (out == null)
+			out = "fleets-" + ruleset.getName() + ".bin";
+
+		PlacementOptimizer run = new PlacementOptimizer(ruleset, strategy, seed);
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		long start = System.nanoTime();
+		List<ScoredFleet> fleets;
+		try
+		{
+			fleets = run.search(pool, fleetCount, iterations, games, validation);
+		}
+		catch (InterruptedException e)
+		{
+			System.err.println("Interrupted");
+			System.exit(1);
+			return;
+		}
+		catch (ExecutionException e)
+		{
+			System.err.println(e.getCause().getMessage());
+			System.exit(1);
+			return;
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+		System.out.printf(Locale.ROOT, "# %.1fs, %d fleets against %s%n", (System.nanoTime() - start) / 1e9, fleets.size(), strategy.name().toLowerCase(Locale.ROOT));
+		System.out.println("fleet,searchShots,validationShots");
+		List<int[]> placements = new ArrayList<int[]>(fleets.size());
+		double total = 0;
+		for (int i = 0;i < fleets.size();i++)
+		{
+			ScoredFleet fleet = fleets.get(i);
+			System.out.printf(Locale.ROOT, "%d,%.3f,%.3f%n", i, fleet.searchScore, fleet.validationScore);
+			placements.add(fleet.placements);
+			total += fleet.validationScore;
+		}
+		System.out.printf(Locale.ROOT, "# library mean %.3f shots, random fleets %.3f shots%n", total / fleets.size(), run.scoreRandomFleets(fleetCount, validation));
+
+		FleetLibrary library = new FleetLibrary(ruleset, placements);
+		try
+		{
+			OutputStream stream = new FileOutputStream(out);
+			try
+			{
+				stream.write(library.encode());
+			}
+			finally
+			{
+				stream.close();
+			}
+		}
+		catch (IOException e)
+		{
+			System.err.println("Could not write " + out + ": " + e.getMessage());
+			System.exit(1);
+		}
+		System.out.println("# wrote " + out + " (" + library.getEncodedSize() + " bytes)");
+	}
+
+	/**
+	 * Creates the seeds of a number of games
+	 * 
+	 * @param seed
+	 *           the seed of the run
+	 * @param count
+	 *           the number of games
+	 * @return the seeds
+	 */
+	private static long[] createSeeds(long seed, int count)
+	{
+		long[] seeds = new long[count];
+		for (int i = 0;i < count;i++)
+		{
+			seeds[i] = Zobrist.mix(seed ^ Zobrist.mix(i + 1));
+		}
+		return seeds;
+	}
+}
@@ -0,0 +1,173 @@
+package me.battleship.tools.selfplay;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import me.battleship.core.FleetGenerator;
+import me.battleship.core.Playground;
+import me.battleship.core.Ruleset;
+import me.battleship.core.Ship;
+import me.battleship.core.ShotResult;
+import me.battleship.core.Zobrist;
+import me.battleship.core.ai.ShotStrategy;
+
+/**
+ * Plays self-play games on one thread. All playgrounds, fleets and strategies
+ * are allocated once and reused for every game. Every game is seeded from its
+ * index only, so its result does not depend on the thread playing it or on the
+ * games played before.
+ * 
+ * @author Manuel Vögele
+ */
+public class MatchRunner
+{
+	/** The ruleset */
+	private final Ruleset ruleset;
+
+	/** The strategies in the order of the statistics */
+	private final StrategyType[] strategies;
+
+	/** The pairs of strategies playing against each other, as indices into {@link #strategies} */
+	private final int[][] pairings;
+
+	/** The seed of the run */
+	private final long seed;
+
+	/** The instances of every strategy for both players, indexed by player and strategy */
+	private final ShotStrategy[][] players;
+
+	/** The random number generators of the strategies of both players */
+	private final Random[] strategyRandoms;
+
+	/** The random number generator used for placing the fleets */
+	private final Random fleetRandom;
+
+	/** The generator for placing the fleets */
+	private final FleetGenerator fleetGenerator;
+
+	/** The fleets of both players */
+	private final List<List<Ship>> fleets;
+
+	/** The playgrounds of both players */
+	private final Playground[] playgrounds;
+
+	/** The number of fields covered by a fleet */
+	private final int fleetFieldCount;
+
+	/** The strategies of both players in the current game */
+	private final ShotStrategy[] shooters = new ShotStrategy[2];
+
+	/** The number of shots of both players in the current game */
+	private final int[] shots = new int[2];
+
+	/** The number of fields of the fleets of both players which were not hit yet */
+	private final int[] remaining = new int[2];
+
+	/**
+	 * Initializes a new {@link MatchRunner}
+	 * 
+	 * @param ruleset
+	 *           the ruleset
+	 * @param strategies
+	 *           the strategies in the order of the statistics
+	 * @param pairings
+	 *           the pairs of strategies playing against each other
+	 * @param seed
+	 *           the seed of the run
+	 */
+	public MatchRunner(Ruleset ruleset, StrategyType[] strategies, int[][] pairings, long seed)
+	{
+		this.ruleset = ruleset;
+		this.strategies = strategies;
+		this.pairings = pairings;
+		this.seed = seed;
+		players = new ShotStrategy[2][strategies.length];
+		strategyRandoms = new Random[2];
+		fleets = new ArrayList<List<Ship>>(2);
+		playgrounds = new Playground[2];
+		for (int p = 0;p < 2;p++)
+		{
+			strategyRandoms[p] = new Random();
+			for (int s = 0;s < strategies.length;s++)
+			{
+				players[p][s] = strategies[s].create(ruleset, strategyRandoms[p]);
+			}
+			fleets.add(ruleset.createFleet());
+			playgrounds[p] = new Playground(ruleset.getSize());
+		}
+		fleetRandom = new Random();
+		fleetGenerator = new FleetGenerator(ruleset, fleetRandom);
+		int fields = 0;
+		for (Ship ship : fleets.get(0))
+		{
+			fields += ship.getSize();
+		}
+		fleetFieldCount = fields;
+	}
+
+	/**
+	 * Plays the game with the specified index and records its result
+	 * 
+	 * @param game
+	 *           the index of the game
+	 * @param stats
+	 *           the statistics to record the result in
+	 * @throws IllegalStateException
+	 *            if the fleets do not fit on the playground, a strategy
+	 *            gives up before sinking the fleet or shoots at a field
+	 *            twice
+	 */
+	public void play(long game, SelfPlayStats stats) throws IllegalStateException
+	{
+		int[] pairing = pairings[(int) (game % pairings.length)];
+		long gameSeed = Zobrist.mix(seed + game * 0x9E3779B97F4A7C15L);
+		fleetRandom.setSeed(gameSeed);
+		strategyRandoms[0].setSeed(Zobrist.mix(gameSeed ^ 1));
+		strategyRandoms[1].setSeed(Zobrist.mix(gameSeed ^ 2));
+		for (int p = 0;p < 2;p++)
+		{
+			shooters[p] = players[p][pairing[p]];
+			shots[p] = 0;
+			remaining[p] = fleetFieldCount;
+			List<Ship> fleet = fleets.get(p);
+			if (!fleetGenerator.place(fleet))
+				throw new IllegalStateException("The fleet does not fit on the playground of " + ruleset);
+			Playground playground = playgrounds[p];
+			playground.clear();
+			for (Ship ship : fleet)
+			{
+				ship.repair();
+				playground.placeShip(ship);
+			}
+			shooters[p].reset();
+		}
+
+		// Both players shoot first equally often
+		int first = (int) (game / pairings.length & 1);
+		int turn = first;
+		int size = ruleset.getSize();
+		while (true)
+		{
+			ShotStrategy shooter = shooters[turn];
+			int field = shooter.chooseShot();
+			if (field < 0)
+				throw new IllegalStateException(strategies[pairing[turn]] + " gave up in game " + game);
+			int x = field % size;
+			int y = field / size;
+			ShotResult result = playgrounds[1 - turn].shoot(x, y);
+			// A game would otherwise take more shots than there are fields
+			if (result == ShotResult.ALREADY_HIT)
+				throw new IllegalStateException(strategies[pairing[turn]] + " shot at " + x + "," + y + " twice in game " + game);
+			shooter.recordResult(x, y, result);
+			shots[turn]++;
+			if (result == ShotResult.HIT || result == ShotResult.SUNK)
+			{
+				if (--remaining[1 - turn] == 0)
+					break;
+			}
+			turn = 1 - turn;
+		}
+		stats.recordGame(pairing[turn], pairing[1 - turn], shots[turn], turn == first);
+	}
+}
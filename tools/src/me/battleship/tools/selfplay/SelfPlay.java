@@ -0,0 +1,173 @@
+package me.battleship.tools.selfplay;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+
+import me.battleship.core.Ruleset;
+
+/**
+ * Plays large numbers of complete games between computer strategies on all
+ * cores and prints aggregated statistics while the games are running. Every
+ * pair of the specified strategies plays the same number of games. The
+ * results only depend on the seed, not on the number of threads.
+ * <p>
+ * Usage:
+ * 
+ * <pre>
+ * SelfPlay [--games n] [--seed s] [--rules classic|classic-no-touch]
+ *          [--threads n] [--report n] strategy...
+ * </pre>
+ * 
+ * @author Manuel Vögele
+ */
+public class SelfPlay
+{
+	/** The ruleset */
+	private final Ruleset ruleset;
+
+	/** The strategies */
+	private final StrategyType[] strategies;
+
+	/** The pairs of strategies playing against each other */
+	private final int[][] pairings;
+
+	/** The seed of the run */
+	private final long seed;
+
+	/** The runner of every thread */
+	private final ThreadLocal<MatchRunner> runners = new ThreadLocal<MatchRunner>()
+	{
+		@Override
+		protected MatchRunner initialValue()
+		{
+			return new MatchRunner(ruleset, strategies, pairings, seed);
+		}
+	};
+
+	/**
+	 * Initializes a new {@link SelfPlay} run
+	 * 
+	 * @param ruleset
+	 *           the ruleset
+	 * @param strategies
+	 *           the strategies, a single strategy plays against itself
+	 * @param seed
+	 *           the seed of the run
+	 */
+	public SelfPlay(Ruleset ruleset, StrategyType[] strategies, long seed)
+	{
+		this.ruleset = ruleset;
+		this.strategies = strategies;
+		this.seed = seed;
+		List<int[]> pairs = new ArrayList<int[]>();
+		for (int a = 0;a < strategies.length;a++)
+		{
+			for (int b = a + 1;b < strategies.length;b++)
+			{
+				pairs.add(new int[] { a, b });
+			}
+		}
+		if (pairs.isEmpty())
+			pairs.add(new int[] { 0, 0 });
+		pairings = pairs.toArray(new int[pairs.size()][]);
+	}
+
+	/**
+	 * Returns the runner of the current thread
+	 * 
+	 * @return the runner
+	 */
+	MatchRunner getRunner()
+	{
+		return runners.get();
+	}
+
+	/**
+	 * Creates empty statistics for this run
+	 * 
+	 * @return the statistics
+	 */
+	SelfPlayStats createStats()
+	{
+		return new SelfPlayStats(strategies, ruleset.getFieldCount());
+	}
+
+	/**
+	 * Plays the games with the indices in the specified range
+	 * 
+	 * @param pool
+	 *           the pool to play the games in
+	 * @param from
+	 *           the index of the first game
+	 * @param to
+	 *           the index after the last game
+	 * @return the statistics of the games
+	 */
+	public SelfPlayStats play(ForkJoinPool pool, long from, long to)
+	{
+		return pool.invoke(new SelfPlayTask(this, from, to));
+	}
+
+	/**
+	 * Runs the self-play
+	 * 
+	 * @param args
+	 *           the command line arguments
+	 */
+	public static void main(String[] args)
+	{
+		long games = 1000000;
+		long seed = 1;
+		long report = 1000000;
+		int threads = Runtime.getRuntime().availableProcessors();
+		Ruleset ruleset = Ruleset.CLASSIC;
+		List<StrategyType> strategies = new ArrayList<StrategyType>();
+		try
+		{
+			for (int i = 0;i < args.length;i++)
+			{
+				String arg = args[i];
+				if (arg.equals("--games"))
+					games = Long.parseLong(args[++i]);
+				else if (arg.equals("--seed"))
+					seed = Long.parseLong(args[++i]);
+				else if (arg.equals("--report"))
+					report = Long.parseLong(args[++i]);
+				else if (arg.equals("--threads"))
+					threads = Integer.parseInt(args[++i]);
+				else if (arg.equals("--rules"))
+					ruleset = Ruleset.forName(args[++i]);
+				else
+					strategies.add(StrategyType.forName(arg));
+			}
+			if (strategies.isEmpty())
+				throw new IllegalArgumentException("No strategy specified");
+			if (games <= 0 || report <= 0 || threads <= 0)
+				throw new IllegalArgumentException("Counts must be positive");
+		}
+		catch (RuntimeException e)
+		{
+			System.err.println(e.getMessage());
+			System.err.println("Usage: SelfPlay [--games n] [--seed s] [--rules classic|classic-no-touch] [--threads n] [--report n] strategy...");
+			System.exit(1);
+			return;
+		}
+
+		SelfPlay run = new SelfPlay(ruleset, strategies.toArray(new StrategyType[strategies.size()]), seed);
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		SelfPlayStats total = run.createStats();
+		long start = System.nanoTime();
+		for (long from = 0;from < games;from += report)
+		{
+			total.add(run.play(pool, from, Math.min(games, from + report)));
+			double seconds = (System.nanoTime() - start) / 1e9;
+			System.out.printf(Locale.ROOT, "# %.1fs, %.0f games/s, ", seconds, total.getTotalGames() / seconds);
+			total.printSummary(System.out);
+			System.out.flush();
+		}
+		pool.shutdown();
+		total.printDistributions(System.out);
+	}
+}
@@ -0,0 +1,232 @@
+package me.battleship.tools.selfplay;
+
+import java.io.PrintStream;
+import java.util.Locale;
+
+/**
+ * Aggregated results of self-play games. Statistics of disjoint sets of games
+ * are merged with {@link #add(SelfPlayStats)}, so the result does not depend
+ * on how the games were split between threads.
+ * 
+ * @author Manuel Vögele
+ */
+public class SelfPlayStats
+{
+	/** The strategies */
+	private final StrategyType[] strategies;
+
+	/** The number of games played by every strategy */
+	private final long[] games;
+
+	/** The number of games won by every strategy */
+	private final long[] wins;
+
+	/** The number of games won against every other strategy, indexed by winner and loser */
+	private final long[][] winsAgainst;
+
+	/**
+	 * The distribution of the number of shots needed to win for every
+	 * strategy, indexed by strategy and number of shots
+	 */
+	private final long[][] shotsToWin;
+
+	/** The number of games won by the player shooting first */
+	private long firstPlayerWins;
+
+	/** The total number of games */
+	private long totalGames;
+
+	/**
+	 * Initializes new empty {@link SelfPlayStats}
+	 * 
+	 * @param strategies
+	 *           the strategies
+	 * @param fieldCount
+	 *           the number of fields of the playground
+	 */
+	public SelfPlayStats(StrategyType[] strategies, int fieldCount)
+	{
+		this.strategies = strategies;
+		games = new long[strategies.length];
+		wins = new long[strategies.length];
+		winsAgainst = new long[strategies.length][strategies.length];
+		shotsToWin = new long[strategies.length][fieldCount + 1];
+	}
+
+	/**
+	 * Records the result of a game
+	 * 
+	 * @param winner
+	 *           the index of the winning strategy
+	 * @param loser
+	 *           the index of the losing strategy
+	 * @param shots
+	 *           the number of shots the winner needed
+	 * @param firstPlayerWon
+	 *           <code>true</code> if the winner shot first
+	 */
+	public void recordGame(int winner, int loser, int shots, boolean firstPlayerWon)
+	{
+		games[winner]++;
+		if (loser != winner)
+			games[loser]++;
+		wins[winner]++;
+		winsAgainst[winner][loser]++;
+		shotsToWin[winner][shots]++;
+		if (firstPlayerWon)
+			firstPlayerWins++;
+		totalGames++;
+	}
+
+	/**
+	 * Adds the results of the specified statistics to these statistics
+	 * 
+	 * @param stats
+	 *           the statistics of other games
+	 * @return these statistics
+	 */
+	public SelfPlayStats add(SelfPlayStats stats)
+	{
+		for (int s = 0;s < strategies.length;s++)
+		{
+			games[s] += stats.games[s];
+			wins[s] += stats.wins[s];
+			for (int o = 0;o < strategies.length;o++)
+			{
+				winsAgainst[s][o] += stats.winsAgainst[s][o];
+			}
+			for (int i = 0;i < shotsToWin[s].length;i++)
+			{
+				shotsToWin[s][i] += stats.shotsToWin[s][i];
+			}
+		}
+		firstPlayerWins += stats.firstPlayerWins;
+		totalGames += stats.totalGames;
+		return this;
+	}
+
+	/**
+	 * Returns the total number of games
+	 * 
+	 * @return the number of games
+	 */
+	public long getTotalGames()
+	{
+		return totalGames;
+	}
+
+	/**
+	 * Prints a summary line for every strategy
+	 * 
+	 * @param out
+	 *           the stream to print to
+	 */
+	public void printSummary(PrintStream out)
+	{
+		out.printf(Locale.ROOT, "games=%d firstPlayerWinRate=%.4f%n", totalGames, rate(firstPlayerWins, totalGames));
+		for (int s = 0;s < strategies.length;s++)
+		{
+			out.printf(Locale.ROOT, "  %s: games=%d wins=%d winRate=%.4f meanShotsToWin=%.3f p50=%d p90=%d p99=%d", strategies[s].name().toLowerCase(Locale.ROOT), games[s], wins[s], rate(wins[s], games[s]), mean(shotsToWin[s]), percentile(shotsToWin[s], 0.5), percentile(shotsToWin[s], 0.9), percentile(shotsToWin[s], 0.99));
+			for (int o = 0;o < strategies.length;o++)
+			{
+				if (o != s)
+					out.printf(Locale.ROOT, " vs.%s=%.4f", strategies[o].name().toLowerCase(Locale.ROOT), rate(winsAgainst[s][o], winsAgainst[s][o] + winsAgainst[o][s]));
+			}
+			out.println();
+		}
+	}
+
+	/**
+	 * Prints the distributions of the shots needed to win as CSV
+	 * 
+	 * @param out
+	 *           the stream to print to
+	 */
+	public void printDistributions(PrintStream out)
+	{
+		out.print("shots");
+		for (int s = 0;s < strategies.length;s++)
+		{
+			out.print(',');
+			out.print(strategies[s].name().toLowerCase(Locale.ROOT));
+		}
+		out.println();
+		for (int i = 0;i < shotsToWin[0].length;i++)
+		{
+			boolean empty = true;
+			for (int s = 0;s < strategies.length;s++)
+			{
+				empty &= shotsToWin[s][i] == 0;
+			}
+			if (empty)
+				continue;
+			out.print(i);
+			for (int s = 0;s < strategies.length;s++)
+			{
+				out.print(',');
+				out.print(shotsToWin[s][i]);
+			}
+			out.println();
+		}
+	}
+
+	/**
+	 * Returns the quotient of the specified values
+	 * 
+	 * @param count
+	 *           the dividend
+	 * @param total
+	 *           the divisor
+	 * @return the quotient or <code>0</code> if the divisor is <code>0</code>
+	 */
+	private static double rate(long count, long total)
+	{
+		return total == 0 ? 0 : (double) count / total;
+	}
+
+	/**
+	 * Returns the mean of a distribution
+	 * 
+	 * @param distribution
+	 *           the number of occurrences of every value
+	 * @return the mean
+	 */
+	private static double mean(long[] distribution)
+	{
+		long count = 0;
+		long sum = 0;
+		for (int i = 0;i < distribution.length;i++)
+		{
+			count += distribution[i];
+			sum += distribution[i] * i;
+		}
+		return rate(sum, count);
+	}
+
+	/**
+	 * Returns a percentile of a distribution
+	 * 
+	 * @param distribution
+	 *           the number of occurrences of every value
+	 * @param fraction
+	 *           the fraction of the values which are less or equal to the
+	 *           returned value
+	 * @return the percentile or <code>0</code> if the distribution is empty
+	 */
+	private static int percentile(long[] distribution, double fraction)
+	{
+		long count = 0;
+		for (int i = 0;i < distribution.length;i++)
+		{
+			count += distribution[i];
+		}
+		long seen = 0;
+		for (int i = 0;i < distribution.length;i++)
+		{
+			seen += distribution[i];
+			if (seen > 0 && seen >= fraction * count)
+				return i;
+		}
+		return 0;
+	}
+}
@@ -0,0 +1,64 @@
+package me.battleship.tools.selfplay;
+
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * A range of self-play games which is split between the threads of a
+ * {@link java.util.concurrent.ForkJoinPool}
+ * 
+ * @author Manuel Vögele
+ */
+public class SelfPlayTask extends RecursiveTask<SelfPlayStats>
+{
+	/** The serial version uid */
+	private static final long serialVersionUID = 1L;
+
+	/** The number of games below which a range is not split any more */
+	private static final int THRESHOLD = 256;
+
+	/** The run the games belong to */
+	private final SelfPlay run;
+
+	/** The index of the first game */
+	private final long from;
+
+	/** The index after the last game */
+	private final long to;
+
+	/**
+	 * Initializes a new {@link SelfPlayTask}
+	 * 
+	 * @param run
+	 *           the run the games belong to
+	 * @param from
+	 *           the index of the first game
+	 * @param to
+	 *           the index after the last game
+	 */
+	public SelfPlayTask(SelfPlay run, long from, long to)
+	{
+		this.run = run;
+		this.from = from;
+		this.to = to;
+	}
+
+	@Override
+	protected SelfPlayStats compute()
+	{
+		if (to - from <= THRESHOLD)
+		{
+			SelfPlayStats stats = run.createStats();
+			MatchRunner runner = run.getRunner();
+			for (long game = from;game < to;game++)
+			{
+				runner.play(game, stats);
+			}
+			return stats;
+		}
+		long middle = (from + to) >>> 1;
+		SelfPlayTask second = new SelfPlayTask(run, middle, to);
+		second.fork();
+		SelfPlayStats stats = new SelfPlayTask(run, from, middle).compute();
+		return stats.add(second.join());
+	}
+}
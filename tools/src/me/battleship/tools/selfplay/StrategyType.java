@@ -0,0 +1,88 @@
+package me.battleship.tools.selfplay;
+
+import java.util.Random;
+
+import me.battleship.core.Ruleset;
+import me.battleship.core.ai.DensityAI;
+import me.battleship.core.ai.EndgameSolver;
+import me.battleship.core.ai.RandomAI;
+import me.battleship.core.ai.SearchAI;
+import me.battleship.core.ai.ShotStrategy;
+
+/**
+ * The strategies which can play in a self-play run
+ * 
+ * @author Manuel Vögele
+ */
+public enum StrategyType
+{
+	/** The {@link DensityAI} */
+	DENSITY
+	{
+		@Override
+		public ShotStrategy create(Ruleset ruleset, Random random)
+		{
+			return new DensityAI(ruleset, random);
+		}
+	},
+
+	/** The {@link EndgameSolver} */
+	ENDGAME
+	{
+		@Override
+		public ShotStrategy create(Ruleset ruleset, Random random)
+		{
+			return new EndgameSolver(ruleset, random);
+		}
+	},
+
+	/** The {@link SearchAI} */
+	SEARCH
+	{
+		@Override
+		public ShotStrategy create(Ruleset ruleset, Random random)
+		{
+			return new SearchAI(ruleset, random);
+		}
+	},
+
+	/** The {@link RandomAI} */
+	RANDOM
+	{
+		@Override
+		public ShotStrategy create(Ruleset ruleset, Random random)
+		{
+			return new RandomAI(ruleset, random);
+		}
+	};
+
+	/**
+	 * Creates a new instance of the strategy
+	 * 
+	 * @param ruleset
+	 *           the ruleset
+	 * @param random
+	 *           the random number generator of the strategy
+	 * @return the strategy
+	 */
+	public abstract ShotStrategy create(Ruleset ruleset, Random random);
+
+	/**
+	 * Returns the strategy with the specified name
+	 * 
+	 * @param name
+	 *           the name, case is ignored
+	 * @return the strategy
+	 * @throws IllegalArgumentException
+	 *            if there is no strategy with the name
+	 */
+	public static StrategyType forName(String name) throws IllegalArgumentException
+	{
+		for (StrategyType type : values())
+		{
+			if (type.name().equalsIgnoreCase(name))
+				return type;
+		}
+		throw new IllegalArgumentException("Unknown strategy " + name);
+	}
+}